@@ -12,6 +12,7 @@ repositories {
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.9.1"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")  // Gradle 9 не подкладывает запускатель JUnit сам
 
     val springVersion = "6.1.5"
     implementation("org.springframework:spring-core:${springVersion}")
@@ -26,3 +27,104 @@ dependencies {
 tasks.test {
     useJUnitPlatform()
 }
+
+// Запуск редактора с агентом AspectJ: аспекты из META-INF/aop.xml вплетаются при загрузке классов
+// (редакторы создаются через new, прокси Spring до них не доходят). Метрики видны через JMX в домене texteditor.
+// Классы берутся из jar, а не из каталога: AppCDS архивирует только классы из jar-файлов.
+val editorClasspath = files(tasks.named("jar"), configurations.runtimeClasspath)
+val weaverAgent = configurations.runtimeClasspath.get().filter { it.name.startsWith("aspectjweaver") }
+val cdsArchiveFile = layout.buildDirectory.file("cds/editor.jsa")
+
+tasks.register<JavaExec>("run") {
+    group = "application"
+    description = "Runs the editor with load-time weaving of the logging and metrics aspects"
+    classpath = editorClasspath
+    mainClass.set("TextEditorApplication")
+    jvmArgumentProviders.add(CommandLineArgumentProvider {
+        val archive = cdsArchiveFile.get().asFile
+        listOf("-javaagent:" + weaverAgent.singleFile.absolutePath) +
+                (if (archive.exists()) listOf("-XX:SharedArchiveFile=" + archive.absolutePath) else emptyList())
+    })
+}
+
+// Архив AppCDS: пробный запуск до первого окна записывает загруженные классы (JDK, Spring, Swing, редактор)
+// в build/cds/editor.jsa, следующие запуски берут их из архива без разбора и проверки. Нужен дисплей.
+// Пробный запуск идёт без агента AspectJ (JVM не архивирует с агентом); при запуске с агентом вплетаемые классы
+// всё равно проходят через него.
+tasks.register<JavaExec>("cdsArchive") {
+    group = "application"
+    description = "Creates an AppCDS archive from a run of the editor up to its first window"
+    classpath = editorClasspath
+    mainClass.set("TextEditorApplication")
+    outputs.file(cdsArchiveFile)
+    jvmArgumentProviders.add(CommandLineArgumentProvider {
+        listOf("-XX:ArchiveClassesAtExit=" + cdsArchiveFile.get().asFile.absolutePath,
+                "-Deditor.exitAfterStartup=true")
+    })
+    doFirst { cdsArchiveFile.get().asFile.parentFile.mkdirs() }
+}
+
+// Микробенчмарки JMH: исходники в src/jmh/java, запуск - gradle jmh.
+// Результаты пишутся в build/reports/jmh/results.json; параметры JMH можно передать через -PjmhArgs="...",
+// например -PjmhArgs="SaveBenchmark -p size=1024,1048576 -f 1 -wi 2 -i 3".
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    val jmhVersion = "1.37"
+    jmh.implementationConfigurationName("org.openjdk.jmh:jmh-core:${jmhVersion}")
+    jmh.annotationProcessorConfigurationName("org.openjdk.jmh:jmh-generator-annprocess:${jmhVersion}")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks and writes JSON results to build/reports/jmh/results.json"
+    dependsOn(jmh.classesTaskName)
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("reports/jmh/results.json")
+    val extra = (project.findProperty("jmhArgs") as String?)?.trim()?.split(Regex("\\s+"))?.filter { it.isNotEmpty() } ?: emptyList()
+    // Документ в 1 ГБ занимает несколько гигабайт кучи
+    args = listOf("-rf", "json", "-rff", results.get().asFile.absolutePath, "-jvmArgsAppend", "-Xmx8g") + extra
+    doFirst {
+        results.get().asFile.parentFile.mkdirs()
+    }
+}
+
+// Время до первого окна: редактор запускается -PstartupRuns раз без архива AppCDS и с ним (если есть, см. cdsArchive)
+tasks.register<JavaExec>("startupBenchmark") {
+    group = "benchmark"
+    description = "Measures time to first window of the editor, with and without the AppCDS archive"
+    dependsOn("jar")
+    classpath = jmh.runtimeClasspath
+    mainClass.set("benchmark.StartupBenchmark")
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf((project.findProperty("startupRuns") as String?) ?: "10",
+                javaLauncher.get().executablePath.asFile.absolutePath,
+                editorClasspath.asPath,
+                weaverAgent.singleFile.absolutePath,
+                cdsArchiveFile.get().asFile.absolutePath)
+    })
+}
+
+// Репликация между процессами: сервер и -PreplicationClients клиентов в отдельных JVM на localhost делают
+// по -PreplicationEdits случайных правок с частотой -PreplicationRate в секунду; тексты клиентов должны совпасть
+tasks.register<JavaExec>("replicationBenchmark") {
+    group = "benchmark"
+    description = "Replicates random edits between editor processes on localhost and checks that they converge"
+    dependsOn("jar")
+    classpath = jmh.runtimeClasspath
+    mainClass.set("benchmark.ReplicationBenchmark")
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf((project.findProperty("replicationClients") as String?) ?: "4",
+                (project.findProperty("replicationEdits") as String?) ?: "5000",
+                (project.findProperty("replicationRate") as String?) ?: "500",
+                javaLauncher.get().executablePath.asFile.absolutePath,
+                editorClasspath.asPath)
+    })
+}
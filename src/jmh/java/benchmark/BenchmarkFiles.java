@@ -0,0 +1,65 @@
+package benchmark;
+
+import document.MappedFile;
+import document.PagedDocument;
+
+import javax.swing.text.BadLocationException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+// Тестовые тексты и файлы для бенчмарков: строки по 64 символа ASCII, чтобы размер в байтах совпадал с числом символов
+final class BenchmarkFiles {
+
+    static final String LINE = "The quick brown fox jumps over the lazy dog 0123456789 abcdefgh\n";
+    private static final long APPEND_BYTES = 4L << 20;  // Порция декодирования и вставки, как в OpenFileHandler
+
+    private BenchmarkFiles() {
+    }
+
+    // Текст длиной ровно size символов
+    static String text(long size) {
+        StringBuilder text = new StringBuilder((int) size);
+        while (text.length() + LINE.length() <= size) {
+            text.append(LINE);
+        }
+        text.append(LINE, 0, (int) (size - text.length()));
+        return text.toString();
+    }
+
+    // Временный файл размером size байт
+    static Path file(long size) throws IOException {
+        Path file = Files.createTempFile("editor-bench", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long written = 0;
+            while (written + LINE.length() <= size) {
+                writer.write(LINE);
+                written += LINE.length();
+            }
+            writer.write(LINE, 0, (int) (size - written));
+        }
+        return file;
+    }
+
+    // Загружает файл так же, как OpenFileHandler.openMapped: страницы декодируются параллельно порциями,
+    // куски вставляются без копирования
+    static PagedDocument load(Path file) throws IOException {
+        MappedFile mapped = MappedFile.map(file, StandardCharsets.UTF_8);
+        PagedDocument document = new PagedDocument();
+        int loaded = 0;
+        try {
+            while (!mapped.isIndexed()) {
+                mapped.indexNextPages(ForkJoinPool.commonPool(), APPEND_BYTES);
+                int count = mapped.indexedChars() - loaded;
+                document.insertSource(document.getLength(), mapped, loaded, count);
+                loaded += count;
+            }
+        } catch (BadLocationException e) {
+            throw new IOException(e);
+        }
+        return document;
+    }
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import codec.Codec;
+import codec.CompressedFiles;
+import codec.DeflateCodec;
+import codec.GzipCodec;
+import document.PagedDocument;
+import io.SaveResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Открытие и сохранение сжатого файла потоком (CompressedFiles) для GZIP и DEFLATE; размер - байты текста до сжатия
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompressedBenchmark {
+
+    @Param({"1048576", "67108864"})
+    public long size;
+
+    @Param({"gzip", "deflate"})
+    public String codecName;
+
+    private Codec codec;
+    private Path file;
+    private Path target;
+    private PagedDocument document;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        codec = codecName.equals("gzip") ? new GzipCodec() : new DeflateCodec();
+        Path text = BenchmarkFiles.file(size);
+        file = Files.createTempFile("editor-bench", "." + codecName);
+        try (InputStream in = Files.newInputStream(text); OutputStream out = codec.compress(Files.newOutputStream(file))) {
+            in.transferTo(out);
+        }
+        Files.delete(text);
+        target = Files.createTempFile("editor-bench-save", "." + codecName);
+        document = new PagedDocument();
+        CompressedFiles.load(file, codec, StandardCharsets.UTF_8, document);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        PagedDocument loaded = new PagedDocument();
+        CompressedFiles.load(file, codec, StandardCharsets.UTF_8, loaded);
+        return loaded.getLength();
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        SaveResult result = CompressedFiles.save(document.snapshot(), target, StandardCharsets.UTF_8, codec);
+        return result.getBytes();
+    }
+}
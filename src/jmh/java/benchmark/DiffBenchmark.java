@@ -0,0 +1,84 @@
+package benchmark;
+
+import diff.DiffResult;
+import diff.TextDiff;
+import document.LineIndex;
+import document.PagedDocument;
+import document.TextSnapshot;
+import engine.DocumentEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Сравнение двух документов (TextDiff) и применение разницы как правки; во втором документе заменена
+// каждая every-я строка (0 - документы совпадают)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiffBenchmark {
+
+    @Param({"1048576", "67108864"})
+    public long size;
+
+    @Param({"0", "1000"})
+    public int every;
+
+    private TextSnapshot a;
+    private TextSnapshot b;
+    private DocumentEngine target;
+    private DiffResult patch;
+
+    @Setup(Level.Trial)
+    public void createDocuments() throws IOException, BadLocationException {
+        Path file = BenchmarkFiles.file(size);
+        PagedDocument first = BenchmarkFiles.load(file);
+        PagedDocument second = BenchmarkFiles.load(file);
+        Files.delete(file);
+        LineIndex lines = second.getLineIndex();
+        for (int line = every - 1; every > 0 && line < lines.getLineCount() - 1; line += every) {
+            int start = lines.getLineStart(line);
+            second.remove(start, lines.getLineStart(line + 1) - start);
+            second.insertString(start, "changed line " + line + "\n", null);
+        }
+        a = first.snapshot();
+        b = second.snapshot();
+    }
+
+    // Свежая копия первого документа и разница с ней; правка ссылается на второй снимок без копирования
+    @Setup(Level.Invocation)
+    public void createTarget() throws BadLocationException {
+        PagedDocument document = new PagedDocument();
+        document.insertSource(0, a, 0, a.length());
+        target = new DocumentEngine(document);
+        patch = TextDiff.diff(document.snapshot(), b, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public int diff() {
+        return TextDiff.diff(a, b, ForkJoinPool.commonPool()).getHunks().size();
+    }
+
+    @Benchmark
+    public int apply() throws InterruptedException {
+        return target.apply(patch).length();
+    }
+}
@@ -0,0 +1,81 @@
+package benchmark;
+
+import document.PagedDocument;
+import history.EditHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.util.concurrent.TimeUnit;
+
+// Отмена и повтор: небольшая правка, удаление половины документа и запись набора в историю
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long size;
+
+    private PagedDocument document;
+    private EditHistory history;
+
+    @Setup(Level.Trial)
+    public void load() throws BadLocationException {
+        document = new PagedDocument();
+        document.insertString(0, BenchmarkFiles.text(size), null);
+        history = new EditHistory(EditHistory.DEFAULT_BUDGET_BYTES);
+        history.attach(document);
+    }
+
+    // Перед каждой итерацией в истории ровно две записи: правка в середине и удаление второй половины документа
+    @Setup(Level.Iteration)
+    public void edit() throws BadLocationException {
+        while (history.undo()) {
+            // Возвращаем документ к исходному тексту, чтобы он не укорачивался от итерации к итерации
+        }
+        history.clear();
+        int middle = document.getLength() / 2;
+        history.beginGroup();
+        document.insertString(middle, "edit", null);
+        history.endGroup();
+        history.beginGroup();
+        document.remove(middle, document.getLength() - middle);
+        history.endGroup();
+    }
+
+    // Отмена и повтор удаления половины документа: удалённый текст хранится ссылкой на снимок, а не копией
+    @Benchmark
+    public boolean largeUndoRedo() {
+        return history.undo() & history.redo();
+    }
+
+    // Отмена и повтор обеих записей
+    @Benchmark
+    public boolean undoRedo() {
+        boolean done = history.undo() & history.undo();
+        return done & history.redo() & history.redo();
+    }
+
+    // Набор символа с записью в историю и его удаление Backspace; правки склеиваются в одну запись
+    @Benchmark
+    public int typing() throws BadLocationException {
+        int end = document.getLength();
+        document.insertString(end, "x", null);
+        document.remove(end, 1);
+        return history.getUndoCount();
+    }
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import document.LineIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Индекс строк: построение при загрузке порциями по 1М символов, строка по смещению, начало строки по номеру
+// и набор текста с переводами строк в середине документа (строки по 20 символов, до 50 миллионов строк)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class LineIndexBenchmark {
+
+    private static final int LINE_CHARS = 20;
+    private static final int LOAD_CHARS = 1 << 20;  // Порция вставки, как при загрузке файла
+
+    @Param({"1000000", "50000000"})
+    public int lines;
+
+    private LineIndex index;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final char[] newline = {'\n'};
+    private final char[] letter = {'x'};
+
+    @Setup(Level.Iteration)
+    public void load() {
+        index = build(lines);
+    }
+
+    // Построение индекса: время загрузки файла без чтения самого файла
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LineIndex build() {
+        return build(lines);
+    }
+
+    @Benchmark
+    public int lineOfOffset() {
+        return index.getLineOfOffset(random.nextInt(index.getLength() + 1));
+    }
+
+    @Benchmark
+    public int lineStart() {
+        return index.getLineStart(random.nextInt(index.getLineCount()));
+    }
+
+    // Перевод строки или буква в случайном месте, затем удаление символа: документ не растёт между замерами
+    @Benchmark
+    public int typing() {
+        int offset = random.nextInt(index.getLength());
+        index.insert(offset, random.nextBoolean() ? newline : letter, 0, 1);
+        index.remove(offset, 1);
+        return index.getLineCount();
+    }
+
+    private static LineIndex build(int lines) {
+        char[] chunk = new char[LOAD_CHARS];
+        Arrays.fill(chunk, 'a');
+        for (int i = LINE_CHARS - 1; i < chunk.length; i += LINE_CHARS) {
+            chunk[i] = '\n';
+        }
+        LineIndex index = new LineIndex();
+        long total = (long) lines * LINE_CHARS;
+        while (index.getLength() < total) {
+            int count = (int) Math.min(chunk.length - chunk.length % LINE_CHARS, total - index.getLength());
+            index.insert(index.getLength(), chunk, 0, count);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import controller.ReadWriteLock;
+import document.PagedDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.util.concurrent.TimeUnit;
+
+// Блокировка редактора под нагрузкой: несколько читателей (снимки для наблюдателей и сохранения) против одного писателя (набор)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Group)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LockBenchmark {
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long size;
+
+    private final ReadWriteLock lock = new ReadWriteLock();
+    private PagedDocument document;
+
+    @Setup(Level.Trial)
+    public void load() throws BadLocationException {
+        document = new PagedDocument();
+        document.insertString(0, BenchmarkFiles.text(size), null);
+    }
+
+    // Короткое чтение: оптимистично, при записи - под блокировкой
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public int optimisticRead() throws InterruptedException {
+        return lock.read(document::getLength);
+    }
+
+    // Чтение под захватом блокировки, как снимок документа для сохранения
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public Object lockedRead() throws InterruptedException {
+        lock.readLock();
+        try {
+            return document.snapshot();
+        } finally {
+            lock.readUnlock();
+        }
+    }
+
+    // Набор одного символа и его удаление; длина документа не растёт
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void write() throws InterruptedException {
+        lock.write(() -> {
+            try {
+                int middle = document.getLength() / 2;
+                document.insertString(middle, "x", null);
+                document.remove(middle, 1);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,116 @@
+package benchmark;
+
+import document.PagedDocument;
+import document.TextSnapshot;
+import observer.BackPressurePolicy;
+import observer.EditorChange;
+import observer.EditorChangeObserver;
+import observer.ObserverDispatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Рассылка изменений наблюдателям через ObserverDispatcher: от публикации до получения последним наблюдателем
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NotifyBenchmark {
+
+    private static final int BURST = 64;  // Изменений за одну операцию, как быстрый набор между сбросами очередей
+
+    // Наблюдатель, который только запоминает последнюю полученную версию и число полных синхронизаций
+    static final class CountingObserver implements EditorChangeObserver {
+        volatile long version;
+        volatile int updates;
+
+        @Override
+        public void changed(EditorChange change) {
+            version = change.getVersion();
+        }
+
+        @Override
+        public void update(String text) {
+            updates++;
+        }
+
+        @Override
+        public void update(TextSnapshot text) {
+            updates++;
+        }
+    }
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long size;
+
+    @Param({"1", "4", "16", "64"})
+    public int observers;
+
+    private PagedDocument document;
+    private ObserverDispatcher dispatcher;
+    private final List<CountingObserver> subscribed = new ArrayList<>();
+    private long version;
+
+    @Setup(Level.Trial)
+    public void subscribe() throws BadLocationException {
+        document = new PagedDocument();
+        document.insertString(0, BenchmarkFiles.text(size), null);
+        dispatcher = new ObserverDispatcher(1, 4096, BackPressurePolicy.RESYNC,
+                () -> new ObserverDispatcher.Snapshot(document.snapshot(), version));
+        for (int i = 0; i < observers; i++) {
+            CountingObserver observer = new CountingObserver();
+            subscribed.add(observer);
+            dispatcher.subscribe(observer);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        dispatcher.close();
+    }
+
+    // Набор текста: пачка мелких изменений, как от слушателя документа в Editor
+    @Benchmark
+    public long typing() {
+        for (int i = 0; i < BURST; i++) {
+            dispatcher.publish(new EditorChange(i, 0, "x", ++version));
+        }
+        for (CountingObserver observer : subscribed) {
+            while (observer.version < version) {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+        return version;
+    }
+
+    // Полная синхронизация: каждый наблюдатель получает весь текст документа
+    @Benchmark
+    public int resync() {
+        int expected = subscribed.get(0).updates + 1;
+        dispatcher.publishText();
+        for (CountingObserver observer : subscribed) {
+            while (observer.updates < expected) {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+        return expected;
+    }
+}
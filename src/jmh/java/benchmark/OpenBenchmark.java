@@ -0,0 +1,92 @@
+package benchmark;
+
+import document.MappedFile;
+import document.PagedDocument;
+import engine.DocumentEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Открытие файла: путь через отображение в память (большие файлы) и построчное чтение (небольшие файлы),
+// а также декодирование страниц отображённого файла по одной и параллельно порциями (зависит от числа ядер)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OpenBenchmark {
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long size;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = BenchmarkFiles.file(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int mapped() throws IOException {
+        return BenchmarkFiles.load(file).getLength();
+    }
+
+    @Benchmark
+    public int decodeSequential() throws IOException {
+        MappedFile mapped = MappedFile.map(file, StandardCharsets.UTF_8);
+        while (mapped.indexNextPage() >= 0) {
+            // Все страницы по очереди одним декодером
+        }
+        return mapped.indexedChars();
+    }
+
+    @Benchmark
+    public int decodeParallel() throws IOException {
+        MappedFile mapped = MappedFile.map(file, StandardCharsets.UTF_8);
+        while (mapped.indexNextPages(ForkJoinPool.commonPool(), DocumentEngine.LOAD_BATCH_BYTES) >= 0) {
+            // Порции по кускам в общем пуле
+        }
+        return mapped.indexedChars();
+    }
+
+    // Как OpenFileHandler для файлов меньше порога: чтение строк в StringBuilder и вставка всего текста
+    @Benchmark
+    public int reader() throws IOException, BadLocationException {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file.toFile()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append("\n");
+            }
+        }
+        PagedDocument document = new PagedDocument();
+        document.insertString(0, content.toString(), null);
+        return document.getLength();
+    }
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import engine.DocumentEngine;
+import macro.Macro;
+import macro.MacroRecorder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.util.concurrent.TimeUnit;
+
+// Запись и воспроизведение макроса: набор текста по символу, каждое десятое нажатие - Backspace,
+// каждая строка начинается с перехода в начало документа
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReplayBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int keystrokes;
+
+    private Macro macro;
+    private DocumentEngine engine;
+
+    @Setup(Level.Trial)
+    public void record() {
+        macro = typing(keystrokes).toMacro();
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        engine = new DocumentEngine();
+    }
+
+    // Воспроизведение в новый документ пачками под блокировкой записи
+    @Benchmark
+    public Macro.Stats replay() throws BadLocationException, InterruptedException {
+        return engine.replay(macro);
+    }
+
+    // Стоимость записи: кодирование правок в массив байт
+    @Benchmark
+    public int recording() {
+        return typing(keystrokes).toMacro().size();
+    }
+
+    private static MacroRecorder typing(int keystrokes) {
+        MacroRecorder recorder = new MacroRecorder();
+        int cursor = 0;
+        int line = 0;
+        for (int i = 1; i <= keystrokes; i++) {
+            if (i % 10 == 0) {
+                cursor--;
+                recorder.removed(cursor, 1);
+            } else if (line == 60) {
+                recorder.inserted(0, "\n");  // Новая строка в начале документа: смещение относительно курсора отрицательное
+                cursor = 1;
+                line = 0;
+            } else {
+                recorder.inserted(cursor, String.valueOf((char) ('a' + i % 26)));
+                cursor++;
+                line++;
+            }
+        }
+        return recorder;
+    }
+}
@@ -0,0 +1,77 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Репликация между процессами: сервер и несколько клиентов (ReplicationApplication), каждый в своей JVM на localhost.
+// Клиенты одновременно делают случайные правки, чётные ещё и переподключаются по ходу; после правок у всех клиентов
+// должен получиться один и тот же текст (контрольная сумма). Печатается задержка репликации и скорость операций.
+// Аргументы: число клиентов, правок на клиента, правок в секунду на клиента, путь к java, classpath редактора.
+public class ReplicationBenchmark {
+
+    private static final String PORT_MARKER = "Сервер слушает порт ";
+    private static final String RESULT_MARKER = "Итог: ";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int clients = Integer.parseInt(args[0]);
+        int edits = Integer.parseInt(args[1]);
+        int rate = Integer.parseInt(args[2]);
+        String java = args[3];
+        String classpath = args[4];
+
+        Process server = new ProcessBuilder(java, "-cp", classpath, "ReplicationApplication", "server", "-report", "5")
+                .redirectErrorStream(true).start();
+        try {
+            BufferedReader serverOutput = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+            String line = serverOutput.readLine();
+            if (line == null || !line.startsWith(PORT_MARKER)) {
+                throw new IllegalStateException("Сервер не запустился: " + line);
+            }
+            int port = Integer.parseInt(line.substring(PORT_MARKER.length()).trim());
+            CompletableFuture.runAsync(() -> serverOutput.lines().forEach(text -> System.out.println("[сервер] " + text)));
+
+            long started = System.nanoTime();
+            List<Process> processes = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", classpath, "ReplicationApplication", "client",
+                        "localhost:" + port, "-edits", String.valueOf(edits), "-rate", String.valueOf(rate), "-seed", String.valueOf(i)));
+                if (i % 2 == 0) {
+                    command.addAll(Arrays.asList("-reconnectEvery", String.valueOf(Math.max(1, edits / 3))));
+                }
+                processes.add(new ProcessBuilder(command).redirectErrorStream(true).start());
+            }
+            List<String> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Process process = processes.get(i);
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                    String text;
+                    while ((text = reader.readLine()) != null) {
+                        System.out.println("[клиент " + i + "] " + text);
+                        if (text.startsWith(RESULT_MARKER)) {
+                            results.add(text);
+                        }
+                    }
+                }
+                process.waitFor();
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+            boolean same = results.size() == clients && results.stream().distinct().count() == 1;
+            System.out.println(String.format("Клиентов %d, правок %d за %.1f с (%.0f правок/с всего): %s", clients,
+                    (long) clients * edits, seconds, clients * (double) edits / seconds,
+                    same ? "тексты совпали" : "ТЕКСТЫ РАЗОШЛИСЬ"));
+            if (!same) {
+                System.exit(1);
+            }
+        } finally {
+            server.destroy();
+            server.waitFor(5, TimeUnit.SECONDS);
+        }
+    }
+}
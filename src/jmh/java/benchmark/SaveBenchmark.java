@@ -0,0 +1,112 @@
+package benchmark;
+
+import document.PagedDocument;
+import io.ByteIndex;
+import io.DirtyRanges;
+import io.IncrementalSaver;
+import io.SaveBaseline;
+import io.SaveResult;
+import io.SnapshotSaver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Сохранение: полное атомарное сохранение снимка и сохранение на месте после правки одного символа
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SaveBenchmark {
+
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long size;
+
+    private Path source;
+    private Path target;
+    private PagedDocument document;
+    private final DirtyRanges dirtyRanges = new DirtyRanges();
+    private SaveBaseline baseline;
+    private char next = 'a';
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        source = BenchmarkFiles.file(size);
+        target = Files.createTempFile("editor-bench-save", ".txt");
+        document = BenchmarkFiles.load(source);
+        document.addDocumentListener(new DocumentListener() {  // Как слушатель Editor: изменённые диапазоны для сохранения на месте
+            public void insertUpdate(DocumentEvent e) {
+                dirtyRanges.insert(e.getOffset(), e.getLength());
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                dirtyRanges.remove(e.getOffset(), e.getLength());
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        ByteIndex index = new ByteIndex();
+        SnapshotSaver.save(document.snapshot(), target, CHARSET, index);
+        baseline = SaveBaseline.of(target, document.snapshot(), index, CHARSET, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public SaveResult full() throws IOException {
+        SaveResult result = SnapshotSaver.save(document.snapshot(), target, CHARSET);
+        baseline = null;  // Файл переписан целиком, следующее сохранение на месте начнёт с нового исходного состояния
+        return result;
+    }
+
+    // Замена одного символа в середине документа и сохранение только его байта
+    @Benchmark
+    public SaveResult incremental() throws IOException, BadLocationException {
+        if (baseline == null) {
+            dirtyRanges.reset();
+            ByteIndex index = new ByteIndex();
+            SnapshotSaver.save(document.snapshot(), target, CHARSET, index);
+            baseline = SaveBaseline.of(target, document.snapshot(), index, CHARSET, null);
+        }
+        int middle = document.getLength() / 2;
+        document.remove(middle, 1);
+        document.insertString(middle, String.valueOf(next), null);
+        next = next == 'z' ? 'a' : (char) (next + 1);
+
+        ByteIndex index = new ByteIndex(baseline.getIndex());
+        SaveResult result = IncrementalSaver.save(baseline, dirtyRanges.reset(), document.snapshot(), target, CHARSET, index);
+        if (result == null) {
+            throw new IllegalStateException("Сохранение на месте недоступно");
+        }
+        baseline = SaveBaseline.of(target, document.snapshot(), index, CHARSET, null);
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package benchmark;
+
+import document.PagedDocument;
+import engine.DocumentEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import search.DocumentSearch;
+import search.Replacement;
+import search.SearchQuery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Поиск по отображённому файлу: строка (Хорспул), строка без учёта регистра и регулярное выражение параллельно по участкам,
+// и замена всех вхождений одной правкой (одно слово в каждой строке файла)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long size;
+
+    private final SearchQuery literal = SearchQuery.literal("lazy dog", true);
+    private final SearchQuery ignoreCase = SearchQuery.literal("LAZY DOG", false);
+    private final SearchQuery regex = SearchQuery.regex("(\\w+) dog \\d+", true);
+    private Path file;
+    private PagedDocument document;
+    private DocumentEngine engine;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = BenchmarkFiles.file(size);
+        document = BenchmarkFiles.load(file);
+    }
+
+    // Замена меняет документ, поэтому каждый замер начинает с загруженного заново файла
+    @Setup(Level.Iteration)
+    public void loadEngine() throws IOException {
+        engine = new DocumentEngine(BenchmarkFiles.load(file));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int findLiteral() {
+        return DocumentSearch.findAll(document.snapshot(), literal, ForkJoinPool.commonPool(), null).size();
+    }
+
+    @Benchmark
+    public int findIgnoreCase() {
+        return DocumentSearch.findAll(document.snapshot(), ignoreCase, ForkJoinPool.commonPool(), null).size();
+    }
+
+    @Benchmark
+    public int findRegex() {
+        return DocumentSearch.findAll(document.snapshot(), regex, ForkJoinPool.commonPool(), null).size();
+    }
+
+    @Benchmark
+    public int replaceAll() throws InterruptedException {
+        Replacement done = engine.replaceAll(literal, "busy cat", null);
+        return done.getCount();
+    }
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import controller.ReadWriteLock;
+import document.PagedDocument;
+import history.EditHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.util.concurrent.TimeUnit;
+
+// Замена всего текста, как Editor.setText: под блокировкой записи и одной записью истории
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SetTextBenchmark {
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long size;
+
+    private final ReadWriteLock lock = new ReadWriteLock();
+    private String text;
+    private PagedDocument document;
+    private EditHistory history;
+
+    @Setup(Level.Trial)
+    public void createText() {
+        text = BenchmarkFiles.text(size);
+    }
+
+    // Новый документ на каждый замер: буфер вставок документа не уменьшается, и повторные замены копили бы память
+    @Setup(Level.Iteration)
+    public void createDocument() throws BadLocationException {
+        document = new PagedDocument();
+        document.insertString(0, "Old text\n", null);
+        history = new EditHistory(EditHistory.DEFAULT_BUDGET_BYTES);
+        history.attach(document);
+    }
+
+    @Benchmark
+    public int setText() throws InterruptedException {
+        lock.write(() -> {
+            history.beginGroup();
+            try {
+                document.replace(0, document.getLength(), text, null);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                history.endGroup();
+            }
+        });
+        return document.getLength();
+    }
+}
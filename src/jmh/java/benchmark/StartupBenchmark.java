@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Время до первого окна редактора. JMH для этого не подходит: каждый замер - новый процесс JVM.
+// Редактор запускается с -Deditor.exitAfterStartup=true, печатает "Первое окно через N мс" и завершается;
+// замеряется и это время (от запуска JVM), и время снаружи - от старта процесса до этой строки.
+// Аргументы: число запусков, путь к java, classpath редактора, агент aspectjweaver, архив AppCDS.
+public class StartupBenchmark {
+
+    private static final String MARKER = "Первое окно через ";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = Integer.parseInt(args[0]);
+        String java = args[1];
+        String classpath = args[2];
+        String agent = args[3];
+        File archive = new File(args[4]);
+
+        measure("без архива", runs, java, classpath, agent, null);
+        if (archive.exists()) {
+            measure("AppCDS", runs, java, classpath, agent, archive);
+        } else {
+            System.out.println("Архив " + archive + " не найден, запуск с AppCDS пропущен (gradle cdsArchive)");
+        }
+    }
+
+    private static void measure(String name, int runs, String java, String classpath, String agent, File archive)
+            throws IOException, InterruptedException {
+        long[] inside = new long[runs];
+        long[] outside = new long[runs];
+        run(java, classpath, agent, archive);  // Прогрев файлового кеша ОС
+        for (int i = 0; i < runs; i++) {
+            long started = System.nanoTime();
+            inside[i] = run(java, classpath, agent, archive);
+            outside[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        }
+        System.out.println(name + ": от запуска JVM " + summary(inside) + ", от старта процесса " + summary(outside));
+    }
+
+    // Запускает редактор и возвращает время до первого окна, которое он напечатал
+    private static long run(String java, String classpath, String agent, File archive) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-javaagent:" + agent, "-Deditor.exitAfterStartup=true"));
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        }
+        command.addAll(Arrays.asList("-cp", classpath, "TextEditorApplication"));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long millis = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int at = line.indexOf(MARKER);
+                if (at >= 0) {
+                    millis = Long.parseLong(line.substring(at + MARKER.length()).replaceAll("\\D.*", ""));
+                }
+            }
+        }
+        if (process.waitFor() != 0 || millis < 0) {
+            throw new IllegalStateException("Редактор не дошёл до первого окна (код " + process.exitValue() + ")");
+        }
+        return millis;
+    }
+
+    private static String summary(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return "мин " + sorted[0] + " мс, медиана " + sorted[sorted.length / 2] + " мс, макс " + sorted[sorted.length - 1] + " мс";
+    }
+}
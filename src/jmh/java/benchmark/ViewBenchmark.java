@@ -0,0 +1,87 @@
+package benchmark;
+
+import document.PagedDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ui.VirtualTextArea;
+
+import javax.swing.*;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Кадр прокрутки: перерисовка окна 1000x800 в случайном месте отображённого файла и изменение размера окна.
+// Один кадр должен укладываться в 16 мс при любом размере файла.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Djava.awt.headless=true")
+public class ViewBenchmark {
+
+    @Param({"1048576", "67108864", "1073741824"})
+    public long size;
+
+    private Path file;
+    private PagedDocument document;
+    private JScrollPane pane;
+    private VirtualTextArea area;
+    private final BufferedImage image = new BufferedImage(1200, 1000, BufferedImage.TYPE_INT_RGB);
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        file = BenchmarkFiles.file(size);
+        document = BenchmarkFiles.load(file);
+        area = new VirtualTextArea(document);
+        pane = new JScrollPane(area);
+        pane.setSize(1000, 800);
+        pane.doLayout();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int scroll() {
+        int height = Math.max(1, area.getPreferredSize().height - pane.getViewport().getHeight());
+        pane.getViewport().setViewPosition(new Point(0, random.nextInt(height)));
+        return paint();
+    }
+
+    @Benchmark
+    public int resize() {
+        pane.setSize(800 + random.nextInt(400), 600 + random.nextInt(400));
+        pane.validate();
+        return paint();
+    }
+
+    private int paint() {
+        Graphics2D g = image.createGraphics();
+        try {
+            pane.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return image.getRGB(10, 10);
+    }
+}
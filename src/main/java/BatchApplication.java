@@ -0,0 +1,95 @@
+import engine.BatchProcessor;
+import engine.EditScript;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Пакетная обработка без окна: применяет сценарий правок ко всем указанным файлам и каталогам.
+// Использование: BatchApplication [-threads N] [-out каталог] [-charset имя] сценарий файл|каталог...
+// Без -charset кодировка каждого файла определяется по его началу.
+// Без -out файлы сохраняются на месте (переписываются только изменённые места), с -out - в каталог с той же структурой.
+public class BatchApplication {
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path out = null;
+        Charset charset = null;  // Определяется по файлу
+        List<String> positional = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "-out":
+                        out = Paths.get(args[++i]);
+                        break;
+                    case "-charset":
+                        charset = Charset.forName(args[++i]);
+                        break;
+                    default:
+                        positional.add(args[i]);
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {  // Нет значения параметра или неверное значение
+            usage("Неверные параметры: " + e);
+            return;
+        }
+        if (positional.size() < 2) {
+            usage("Нужны сценарий и хотя бы один файл или каталог");
+            return;
+        }
+
+        try {
+            EditScript script = EditScript.read(Paths.get(positional.get(0)));
+            List<BatchProcessor.Job> jobs = new ArrayList<>();
+            for (String argument : positional.subList(1, positional.size())) {
+                collect(Paths.get(argument), out, jobs);
+            }
+            System.out.println("Сценарий: операций " + script.getOperations().size() + ", файлов " + jobs.size() + ", потоков " + threads);
+
+            BatchProcessor processor = new BatchProcessor(script, charset, threads);
+            BatchProcessor.Report report = processor.run(jobs, result -> {
+                synchronized (System.out) {  // Строки разных потоков не перемешиваются
+                    System.out.println(result);
+                }
+            });
+            System.out.println(report);
+            if (report.getFailed() > 0) {
+                System.exit(1);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    // Добавляет файл или все обычные файлы каталога; при заданном out результат кладётся по тому же относительному пути
+    private static void collect(Path path, Path out, List<BatchProcessor.Job> jobs) throws IOException {
+        if (!Files.isDirectory(path)) {
+            jobs.add(new BatchProcessor.Job(path, out == null ? path : out.resolve(path.getFileName())));
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(path)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            jobs.add(new BatchProcessor.Job(file, out == null ? file : out.resolve(path.relativize(file))));
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Использование: BatchApplication [-threads N] [-out каталог] [-charset имя] сценарий файл|каталог...");
+        System.exit(2);
+    }
+}
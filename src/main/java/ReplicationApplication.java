@@ -0,0 +1,190 @@
+import document.PagedDocument;
+import engine.DocumentEngine;
+import replication.ReplicationClient;
+import replication.ReplicationServer;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+// Совместное редактирование без окна: сервер или клиент, который делает случайные правки и печатает итог.
+// Использование:
+//   ReplicationApplication server [-port N] [-log записей] [-report секунд]
+//   ReplicationApplication client хост:порт [-edits N] [-rate правок/с] [-seed S] [-reconnectEvery N] [-idle мс] [-report секунд]
+// Сервер печатает "Сервер слушает порт N" и работает, пока процесс не завершат. Клиент после правок ждёт, пока его
+// правки подтверждены и ревизия не меняется -idle мс, и печатает "Итог: ревизия R, длина L, контрольная сумма C":
+// у всех клиентов, закончивших одновременно, итог должен совпасть (так проверяет ReplicationBenchmark).
+public class ReplicationApplication {
+
+    private static final String ALPHABET = "abc абв\n\t😀";  // Перевод строки, табуляция и половинки суррогатной пары
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage("Нужен режим server или client");
+            return;
+        }
+        int port = 0;
+        int logOps = ReplicationServer.DEFAULT_LOG_OPS;
+        int report = 0;
+        int edits = 1000;
+        int rate = 100;
+        long seed = System.nanoTime();
+        int reconnectEvery = 0;
+        long idle = 2000;
+        String address = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "-log":
+                        logOps = Integer.parseInt(args[++i]);
+                        break;
+                    case "-report":
+                        report = Integer.parseInt(args[++i]);
+                        break;
+                    case "-edits":
+                        edits = Integer.parseInt(args[++i]);
+                        break;
+                    case "-rate":
+                        rate = Integer.parseInt(args[++i]);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "-reconnectEvery":
+                        reconnectEvery = Integer.parseInt(args[++i]);
+                        break;
+                    case "-idle":
+                        idle = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        address = args[i];
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {  // Нет значения параметра или неверное значение
+            usage("Неверные параметры: " + e);
+            return;
+        }
+
+        if (args[0].equals("server")) {
+            ReplicationServer server = new ReplicationServer(port, null, logOps, 0);  // Отчёт печатается здесь
+            server.start();
+            System.out.println("Сервер слушает порт " + server.getPort());
+            if (report <= 0) {
+                Thread.currentThread().join();  // До завершения процесса
+            }
+            while (true) {
+                Thread.sleep(report * 1000L);
+                System.out.println("Сервер: ревизия " + server.getRevision() + ", клиентов " + server.getClients() + ", "
+                        + server.getStats().report());
+            }
+        } else if (args[0].equals("client") && address != null && address.contains(":")) {
+            int colon = address.lastIndexOf(':');
+            InetSocketAddress server = new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+            System.exit(client(server, edits, rate, new Random(seed), reconnectEvery, idle, report));
+        } else {
+            usage("Неизвестный режим или нет адреса сервера");
+        }
+    }
+
+    // Делает случайные правки с заданной частотой, дожидается согласия с сервером и печатает итог
+    private static int client(InetSocketAddress server, int edits, int rate, Random random, int reconnectEvery, long idle,
+                              int report) throws IOException, InterruptedException {
+        DocumentEngine engine = new DocumentEngine();
+        PagedDocument document = engine.getDocument();
+        ReplicationClient client = new ReplicationClient(server, document, engine.readWriteLock, Runnable::run, 0, "client", 0,
+                System.err::println);
+        if (report > 0) {
+            Thread reporter = new Thread(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(report * 1000L);
+                        System.out.println("Клиент: ревизия " + client.getRevision() + ", " + client.getStats().report());
+                    }
+                } catch (InterruptedException e) {
+                    // Процесс завершается
+                }
+            }, "replication-report");
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+        if (!client.awaitSynced(30_000)) {
+            System.err.println("Нет связи с сервером " + server);
+            return 1;
+        }
+        long started = System.nanoTime();
+        long interval = 1_000_000_000L / Math.max(1, rate);
+        for (int i = 0; i < edits; i++) {
+            long due = started + i * interval;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+            engine.readWriteLock.write(() -> edit(document, random));
+            if (reconnectEvery > 0 && (i + 1) % reconnectEvery == 0) {
+                client.reconnect();
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        long revision = -1;
+        long stableSince = System.currentTimeMillis();
+        while (System.currentTimeMillis() - stableSince < idle) {  // Пока идут чужие правки, ревизия растёт
+            Thread.sleep(50);
+            long current = client.getRevision();
+            if (current != revision || !client.isIdle()) {
+                revision = current;
+                stableSince = System.currentTimeMillis();
+            }
+        }
+        String summary = engine.readWriteLock.read(() -> "Итог: ревизия " + client.getRevision() + ", длина " + document.getLength()
+                + ", контрольная сумма " + checksum(document));
+        System.out.println(summary);
+        System.out.println(String.format("Клиент: правок %d за %.1f с; %s", edits, seconds, client.getStats()));
+        client.close();
+        return 0;
+    }
+
+    // Вставка одного-четырёх символов или удаление до четырёх символов в случайном месте
+    private static void edit(PagedDocument document, Random random) {
+        try {
+            int length = document.getLength();
+            if (length > 0 && random.nextInt(3) == 0) {
+                int offset = random.nextInt(length);
+                document.remove(offset, Math.min(length - offset, 1 + random.nextInt(4)));
+            } else {
+                StringBuilder text = new StringBuilder();
+                for (int j = 1 + random.nextInt(4); j > 0; j--) {
+                    text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                document.insertString(random.nextInt(length + 1), text.toString(), null);
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long checksum(PagedDocument document) {
+        CRC32 crc = new CRC32();
+        document.snapshot().forEachSegment(0, document.getLength(), segment -> {
+            for (int i = segment.offset; i < segment.offset + segment.count; i++) {
+                crc.update(segment.array[i] >> 8);
+                crc.update(segment.array[i]);
+            }
+        });
+        return crc.getValue();
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Использование: ReplicationApplication server [-port N] [-log записей] [-report секунд]");
+        System.err.println("               ReplicationApplication client хост:порт [-edits N] [-rate правок/с] [-seed S]"
+                + " [-reconnectEvery N] [-idle мс] [-report секунд]");
+        System.exit(2);
+    }
+}
@@ -1,36 +1,169 @@
 import aspect.LoggingAspect;
 import config.AppConfig;
+import controller.CommandExecutor;
 import controller.Editor;
+import journal.EditJournal;
+import journal.JournalRecovery;
+import log.EventLog;
+import metrics.EdtStallDetector;
 import observer.TextEditorObserver;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import replication.ReplicationServer;
 import ui.EditorUI;
-import javax.swing.undo.UndoManager;
+
+import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
 
 public class TextEditorApplication {
 
     public static void main(String[] args) {
 
+        // Замер событий потока Swing и сообщения о зависаниях дольше порога (мс, -Deditor.edtStallMillis=...)
+        EdtStallDetector.install(Long.getLong("editor.edtStallMillis", 100));
+
+        // Журнал событий в ~/.texteditor/log; при переполнении события отбрасываются (-Deditor.eventLogOverflow=BLOCK - ждать)
+        installEventLog(EventLog.Overflow.valueOf(System.getProperty("editor.eventLogOverflow", "DROP")));
+
         // Создание контекста на основе конфигурации AppConfig
         ApplicationContext context = new AnnotationConfigApplicationContext(AppConfig.class);
 
         // Получение бинов из контекста
         EditorUI editorUI1 = context.getBean(EditorUI.class);
         EditorUI editorUI2 = context.getBean(EditorUI.class);
-        UndoManager undoManager = context.getBean(UndoManager.class); // Получение экземпляра UndoManager из контекста
         LoggingAspect loggingAspect = context.getBean(LoggingAspect.class); // Получение экземпляра LoggingAspect из контекста
+        CommandExecutor commandExecutor = context.getBean(CommandExecutor.class); // Общий исполнитель команд редакторов
 
         // Создание и конфигурирование редакторов с использованием полученных бинов
-        Editor editor1 = new Editor(editorUI1, undoManager, loggingAspect);
-        Editor editor2 = new Editor(editorUI2, undoManager, loggingAspect);
+        Editor editor1 = new Editor(editorUI1, loggingAspect, commandExecutor);
+        Editor editor2 = new Editor(editorUI2, loggingAspect, commandExecutor);
+        editor1.peer = editor2;  // Команда Compare сравнивает документы двух редакторов
+        editor2.peer = editor1;
+
+        // Восстановление документов из журналов, оставшихся после сбоя, и запуск новых журналов
+        Path journalDirectory = EditJournal.defaultDirectory();
+        attachJournal(editor1, journalDirectory, "editor1");
+        attachJournal(editor2, journalDirectory, "editor2");
 
-        // Создание и регистрация наблюдателей для обновления редакторов
-        TextEditorObserver observer1 = new TextEditorObserver(editor2);
-        TextEditorObserver observer2 = new TextEditorObserver(editor1);
+        // Совместное редактирование между процессами: -Deditor.replication.listen=ПОРТ запускает в этом процессе сервер
+        // с текстом первого редактора, -Deditor.replication.connect=хост:порт подключает к серверу другого процесса.
+        // Оба редактора становятся клиентами сервера и согласуются через него, а не наблюдателями друг друга.
+        String listen = System.getProperty("editor.replication.listen");
+        String connect = System.getProperty("editor.replication.connect");
+        if (listen != null || connect != null) {
+            startReplication(listen, connect, Integer.getInteger("editor.replication.reportSeconds", 0), editor1, editor2);
+        } else {
+            // Создание и регистрация наблюдателей для обновления редакторов
+            TextEditorObserver observer1 = new TextEditorObserver(editor2);
+            TextEditorObserver observer2 = new TextEditorObserver(editor1);
+
+            // Регистрация наблюдателей в редакторах
+            editor1.addObserver(observer1);
+            editor2.addObserver(observer2);
+        }
+
+        // Время до первого окна (-Deditor.startupReport=true); с -Deditor.exitAfterStartup=true приложение сразу завершается
+        // (так запускают StartupBenchmark и задача cdsArchive)
+        if (Boolean.getBoolean("editor.startupReport") || Boolean.getBoolean("editor.exitAfterStartup")) {
+            reportStartup(editor1, editor2);
+        }
+    }
+
+    // Печатает время от запуска JVM до показа первого окна
+    private static void reportStartup(Editor... editors) {
+        JFrame frame = editors[0].frame;
+        Runnable report = () -> {
+            long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.println("Первое окно через " + millis + " мс");
+            if (Boolean.getBoolean("editor.exitAfterStartup")) {
+                for (Editor editor : editors) {
+                    editor.closeJournal();  // Пробный запуск не должен оставлять журналы для восстановления
+                }
+                System.exit(0);
+            }
+        };
+        SwingUtilities.invokeLater(() -> {
+            if (frame.isShowing()) {
+                report.run();
+            } else {
+                frame.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowOpened(WindowEvent e) {
+                        report.run();
+                    }
+                });
+            }
+        });
+    }
+
+    // Запускает сервер репликации (если задан порт) и подключает к нему редакторы
+    private static void startReplication(String listen, String connect, int reportSeconds, Editor... editors) {
+        try {
+            InetSocketAddress address;
+            if (listen != null) {
+                ReplicationServer server = new ReplicationServer(Integer.parseInt(listen), editors[0].engine.snapshot(),
+                        ReplicationServer.DEFAULT_LOG_OPS, reportSeconds);
+                server.start();
+                address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+                EventLog.global().log(0, "Replication server started", 0, server.getPort());  // Порт - в поле байт
+                editors[0].statusBar.show("Сервер репликации слушает порт " + server.getPort());
+            } else {
+                int colon = connect.lastIndexOf(':');
+                address = new InetSocketAddress(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1)));
+            }
+            for (Editor editor : editors) {
+                editor.replicate(address, reportSeconds);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();  // Редакторы работают и без репликации
+        }
+    }
+
+    // Подключает журнал событий; при выходе оставшиеся записи дописываются в файл
+    private static void installEventLog(EventLog.Overflow overflow) {
+        try {
+            EventLog log = EventLog.open(EventLog.defaultDirectory(), overflow);
+            EventLog.install(log);
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close, "event-log-close"));
+        } catch (IOException e) {
+            e.printStackTrace();  // Редактор работает и без журнала событий
+        }
+    }
 
-        // Регистрация наблюдателей в редакторах
-        editor1.addObserver(observer1);
-        editor2.addObserver(observer2);
+    // Если журнал редактора не был закрыт штатно, восстанавливает из него документ и продолжает его,
+    // иначе начинает новый журнал. Журналы, открытые другим запущенным редактором, пропускаются:
+    // этот процесс берёт первое свободное имя name, name-2, name-3...
+    private static void attachJournal(Editor editor, Path directory, String name) {
+        try {
+            String slot = name;
+            FileLock lock = EditJournal.lock(directory, slot);
+            for (int n = 2; lock == null; n++) {
+                slot = name + "-" + n;
+                lock = EditJournal.lock(directory, slot);
+            }
+            JournalRecovery.Recovered recovered = JournalRecovery.recover(directory, slot);
+            if (recovered != null && recovered.getDocument() != null) {
+                editor.setDocument(recovered.getDocument());
+                editor.openedFile = recovered.getFile();
+                editor.workspace.refreshTitle();  // Вкладка называется по восстановленному файлу
+                editor.attachJournal(EditJournal.resume(directory, slot, lock));
+            } else {
+                editor.attachJournal(EditJournal.create(directory, slot, lock));
+            }
+            if (recovered != null) {  // Итог, в том числе отброшенные правки, пользователь видит в строке состояния
+                EventLog.global().log(editor.id, recovered.getMessage(), 0, recovered.getEdits());
+                editor.statusBar.show(recovered.getMessage());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();  // Редактор работает и без журнала; при ошибке имя остаётся занятым до выхода
+        }
     }
 }
 
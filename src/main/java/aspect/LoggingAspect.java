@@ -1,27 +1,27 @@
 package aspect;
 
+import controller.Editor;
+import log.EventLog;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
 import org.springframework.stereotype.Component;
 
+import java.awt.event.ActionEvent;
+
 @Aspect
 @Component
 public class LoggingAspect {
 
-    // Определение среза, который будет срабатывать перед выполнением любого метода в классе Editor
-    @Before("execution(void controller.Editor.*(..)) && args(actionCommand)")
-    public void logEditorActions(String actionCommand) {
-        // Метод, который будет выполняться перед целевым методом, указанный в срезе
-
-        switch (actionCommand) {
-            case "Open":
-                System.out.println("Файл открыт");
-                break;
-            case "Save":
-                System.out.println("Файл сохранён");
-                break;
-            default:
-                break;
+    // Определение среза, который срабатывает при обработке команды меню в классе Editor.
+    // Команда пишется в журнал событий (редактор, команда, длительность); запись не ждёт диска и не блокирует поток Swing.
+    @Around("execution(void controller.Editor.actionPerformed(java.awt.event.ActionEvent)) && this(editor) && args(event)")
+    public Object logEditorActions(ProceedingJoinPoint joinPoint, Editor editor, ActionEvent event) throws Throwable {
+        long started = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            EventLog.global().log(editor.id, event.getActionCommand(), System.nanoTime() - started, 0);
         }
     }
 }
@@ -0,0 +1,97 @@
+package aspect;
+
+import codec.CodecResult;
+import document.MappedFile;
+import io.SaveResult;
+import metrics.EditorMetrics;
+import metrics.LatencyHistogram;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.awt.event.ActionEvent;
+
+// Замеры времени команд, замены текста и ввода-вывода. Значения пишутся в гистограммы EditorMetrics (видны через JMX);
+// сама запись не выделяет память. Уведомление наблюдателей и ожидание блокировки идут на каждое нажатие клавиши,
+// их замеряют сами Editor и ReadWriteLock: совет @Around выделял бы точку соединения на каждый вызов.
+// Редакторы создаются через new, поэтому совет срабатывает при вплетении агентом AspectJ (gradle run, META-INF/aop.xml).
+@Aspect
+@Component
+public class MetricsAspect {
+
+    // Команда меню целиком в потоке Swing: цепочка обработчиков и постановка в очередь
+    @Around("execution(void controller.Editor.actionPerformed(java.awt.event.ActionEvent)) && args(event)")
+    public Object timeCommand(ProceedingJoinPoint joinPoint, ActionEvent event) throws Throwable {
+        return time(joinPoint, EditorMetrics.command(event.getActionCommand()));
+    }
+
+    // Выполнение команды в очереди документа: задача оборачивается замером, команды - действия пользователя, не горячий путь
+    @Around("execution(java.util.concurrent.Future controller.Editor.execute(String, Runnable)) && args(name, command)")
+    public Object timeBackgroundCommand(ProceedingJoinPoint joinPoint, String name, Runnable command) throws Throwable {
+        LatencyHistogram histogram = EditorMetrics.backgroundCommand(name);
+        Runnable timed = () -> {
+            long started = System.nanoTime();
+            try {
+                command.run();
+            } finally {
+                histogram.record(System.nanoTime() - started);
+            }
+        };
+        return joinPoint.proceed(new Object[]{name, timed});
+    }
+
+    @Around("execution(void controller.Editor.setText(String))")
+    public Object timeSetText(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, EditorMetrics.SET_TEXT);
+    }
+
+    // Открытие файла через отображение в память: время и размер файла
+    @Around("execution(document.MappedFile document.MappedFile.map(..))")
+    public Object timeOpen(ProceedingJoinPoint joinPoint) throws Throwable {
+        long started = System.nanoTime();
+        MappedFile mapped = (MappedFile) joinPoint.proceed();
+        EditorMetrics.OPEN.record(System.nanoTime() - started);
+        EditorMetrics.READ_BYTES.record(mapped.size());
+        return mapped;
+    }
+
+    // Сохранение (полное или на месте): время и записанные байты
+    @Around("execution(io.SaveResult engine.DocumentEngine.save(..))")
+    public Object timeSave(ProceedingJoinPoint joinPoint) throws Throwable {
+        long started = System.nanoTime();
+        SaveResult result = (SaveResult) joinPoint.proceed();
+        EditorMetrics.SAVE.record(System.nanoTime() - started);
+        EditorMetrics.WRITTEN_BYTES.record(result.getBytes());
+        return result;
+    }
+
+    // Открытие сжатого файла: время, байты файла и байты текста после распаковки
+    @Around("execution(codec.CodecResult codec.CompressedFiles.load(..))")
+    public Object timeDecompress(ProceedingJoinPoint joinPoint) throws Throwable {
+        CodecResult result = (CodecResult) joinPoint.proceed();
+        EditorMetrics.DECOMPRESS.record(result.getNanos());
+        EditorMetrics.COMPRESSED_READ_BYTES.record(result.getCompressedBytes());
+        EditorMetrics.DECOMPRESSED_BYTES.record(result.getTextBytes());
+        return result;
+    }
+
+    // Сохранение в сжатый файл: время, байты файла и байты текста до сжатия
+    @Around("execution(io.SaveResult codec.CompressedFiles.save(..))")
+    public Object timeCompress(ProceedingJoinPoint joinPoint) throws Throwable {
+        SaveResult result = (SaveResult) joinPoint.proceed();
+        EditorMetrics.COMPRESS.record(result.getNanos());
+        EditorMetrics.COMPRESSED_WRITTEN_BYTES.record(result.getBytes());
+        EditorMetrics.UNCOMPRESSED_BYTES.record(result.getTextBytes());
+        return result;
+    }
+
+    private static Object time(ProceedingJoinPoint joinPoint, LatencyHistogram histogram) throws Throwable {
+        long started = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            histogram.record(System.nanoTime() - started);
+        }
+    }
+}
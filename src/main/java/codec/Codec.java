@@ -0,0 +1,25 @@
+package codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Формат сжатия файла. Кодек выбирается по первым байтам файла или по расширению имени (Codecs).
+// Кроме встроенных (GZIP, DEFLATE), реализации находятся через ServiceLoader (файл META-INF/services/codec.Codec в jar).
+public interface Codec {
+
+    // Имя для метрик и сообщений
+    String getName();
+
+    // Расширение имени файла этого формата, например ".gz"
+    boolean matchesName(String fileName);
+
+    // Начинается ли файл с подписи этого формата; head - первые length байт файла
+    boolean matchesMagic(byte[] head, int length);
+
+    // Поток распакованных байт; закрывает in при закрытии
+    InputStream decompress(InputStream in) throws IOException;
+
+    // Поток, сжимающий записанные байты в out; close() дописывает конец формата и закрывает out
+    OutputStream compress(OutputStream out) throws IOException;
+}
@@ -0,0 +1,60 @@
+package codec;
+
+// Итог распаковки или сжатия: байты файла, байты текста и время, пропускная способность по тем и другим
+public final class CodecResult {
+
+    private final String codec;  // Имя кодека
+    private final long compressedBytes;  // Байт сжатого файла
+    private final long textBytes;  // Байт текста после распаковки или до сжатия
+    private final long chars;  // Символов текста
+    private final long nanos;
+
+    public CodecResult(String codec, long compressedBytes, long textBytes, long chars, long nanos) {
+        this.codec = codec;
+        this.compressedBytes = compressedBytes;
+        this.textBytes = textBytes;
+        this.chars = chars;
+        this.nanos = nanos;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public long getTextBytes() {
+        return textBytes;
+    }
+
+    public long getChars() {
+        return chars;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    // Мегабайт сжатого файла в секунду
+    public double getCompressedMegabytesPerSecond() {
+        return megabytesPerSecond(compressedBytes);
+    }
+
+    // Мегабайт текста в секунду
+    public double getTextMegabytesPerSecond() {
+        return megabytesPerSecond(textBytes);
+    }
+
+    private double megabytesPerSecond(long bytes) {
+        return nanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d байт сжато (%.1f МБ/с), %d байт текста (%.1f МБ/с), %d символов за %.1f мс",
+                codec, compressedBytes, getCompressedMegabytesPerSecond(), textBytes, getTextMegabytesPerSecond(), chars,
+                nanos / 1_000_000.0);
+    }
+}
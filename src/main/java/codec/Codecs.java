@@ -0,0 +1,70 @@
+package codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+// Известные кодеки сжатия. При открытии формат определяется по первым байтам файла (расширение может врать),
+// при сохранении - по расширению нового имени, а если его нет - по формату, в котором файл уже лежит на диске.
+public final class Codecs {
+
+    private static final int MAGIC_BYTES = 4;  // Сколько первых байт файла сравнивать с подписями
+
+    private static final List<Codec> codecs = load();
+
+    private Codecs() {
+    }
+
+    // Встроенные кодеки и кодеки расширений
+    private static List<Codec> load() {
+        List<Codec> list = new ArrayList<>();
+        list.add(new GzipCodec());
+        list.add(new DeflateCodec());
+        try {
+            for (Codec codec : ServiceLoader.load(Codec.class)) {
+                list.add(codec);
+            }
+        } catch (ServiceConfigurationError e) {
+            e.printStackTrace();  // Сломанное расширение не мешает открывать файлы
+        }
+        return list;
+    }
+
+    public static List<Codec> all() {
+        return codecs;
+    }
+
+    // Кодек сжатого файла по его первым байтам или null, если файл не сжат (или его нет)
+    public static Codec detect(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        byte[] head = new byte[MAGIC_BYTES];
+        int length;
+        try (InputStream in = Files.newInputStream(file)) {
+            length = in.readNBytes(head, 0, head.length);
+        }
+        for (Codec codec : codecs) {
+            if (codec.matchesMagic(head, length)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    // Кодек для сохранения в file: по расширению имени, иначе по формату существующего файла; null - без сжатия
+    public static Codec forTarget(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        for (Codec codec : codecs) {
+            if (codec.matchesName(name)) {
+                return codec;
+            }
+        }
+        return detect(file);
+    }
+}
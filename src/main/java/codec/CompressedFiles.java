@@ -0,0 +1,109 @@
+package codec;
+
+import document.ArraySource;
+import document.DecodeStats;
+import document.EncodingDetector;
+import document.PagedDocument;
+import document.TextSnapshot;
+import io.SaveResult;
+import io.SnapshotSaver;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Открытие и сохранение сжатых файлов потоком, без распакованной копии на диске.
+// Открытие: распакованные байты порциями декодируются и вставляются в конец документа; каждая порция - свой неизменяемый
+// массив символов, на который куски документа ссылаются без копирования. Отобразить в память сжатый файл нельзя,
+// поэтому текст занимает в куче два байта на символ, а сохранение на месте невозможно - файл всегда пишется заново.
+// Сохранение: снимок кодируется прямо в поток сжатия временного файла, затем force() и атомарное переименование,
+// как в SnapshotSaver.
+public final class CompressedFiles {
+
+    private static final int CHUNK_BYTES = 1 << 20;  // Распакованных байт на одну вставку в документ
+
+    private CompressedFiles() {
+    }
+
+    // Загружает сжатый файл в пустой документ; загрузка не считается правкой. charset null - определить по началу текста.
+    public static CodecResult load(Path file, Codec codec, Charset charset, PagedDocument document) throws IOException {
+        long started = System.nanoTime();
+        ByteBuffer bytes = ByteBuffer.allocate(CHUNK_BYTES);
+        DecodeStats stats = new DecodeStats();
+        CharsetDecoder decoder = null;
+        CharBuffer chars = null;
+        long textBytes = 0;
+        try (InputStream in = codec.decompress(Files.newInputStream(file))) {
+            boolean end = false;
+            while (!end) {
+                int wanted = bytes.remaining();
+                int read = in.readNBytes(bytes.array(), bytes.position(), wanted);  // Неполная порция - конец текста
+                end = read < wanted;
+                bytes.position(bytes.position() + read);
+                textBytes += read;
+                bytes.flip();
+                if (decoder == null) {  // Кодировка - по началу распакованного текста, как у несжатого файла
+                    if (charset == null) {
+                        charset = EncodingDetector.detect(bytes, Charset.defaultCharset());
+                    }
+                    decoder = charset.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                    chars = CharBuffer.allocate((int) Math.ceil(CHUNK_BYTES * (double) decoder.maxCharsPerByte()) + 2);
+                }
+                chars.clear();
+                decoder.decode(bytes, chars, end);
+                if (end) {
+                    decoder.flush(chars);
+                }
+                bytes.compact();  // Начало символа, разрезанного порцией, остаётся до следующей
+                chars.flip();
+                if (chars.hasRemaining()) {
+                    char[] text = Arrays.copyOf(chars.array(), chars.limit());
+                    stats.count(text, 0, text.length);
+                    document.insertSource(document.getLength(), new ArraySource(text), 0, text.length);
+                }
+            }
+        } catch (BadLocationException e) {
+            throw new IOException(e);
+        }
+        document.setCharset(charset);
+        document.setLineSeparator(stats.getLineSeparator());
+        return new CodecResult(codec.getName(), Files.size(file), textBytes, document.getLength(), System.nanoTime() - started);
+    }
+
+    // Сохраняет снимок в сжатый файл; в итоге bytes - байты сжатого файла, textBytes - байты текста до сжатия
+    public static SaveResult save(TextSnapshot snapshot, Path target, Charset charset, Codec codec) throws IOException {
+        long started = System.nanoTime();
+        Path file = SnapshotSaver.resolve(target);
+        Path temp = SnapshotSaver.createTemp(file);
+        try {
+            long textBytes;
+            try (OutputStream out = codec.compress(Files.newOutputStream(temp, StandardOpenOption.TRUNCATE_EXISTING));
+                 WritableByteChannel channel = Channels.newChannel(out)) {
+                textBytes = SnapshotSaver.encode(snapshot, channel, charset);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);  // Данные на диске до переименования
+            }
+            long bytes = Files.size(temp);
+            SnapshotSaver.move(temp, file);
+            return new SaveResult(snapshot.length(), bytes, textBytes, System.nanoTime() - started);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// DEFLATE в обёртке zlib (.zz, .zlib, .deflate). Подпись - байт 78 (метод 8, окно 32 КБ, как пишут все распространённые
+// упаковщики) и второй байт без словаря, с которым первые два байта как число кратны 31. Другие окна не узнаются по
+// содержимому: подпись из одного полубайта слишком часто совпадает с началом обычного текста.
+public class DeflateCodec implements Codec {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    public String getName() {
+        return "deflate";
+    }
+
+    public boolean matchesName(String fileName) {
+        String name = fileName.toLowerCase();
+        return name.endsWith(".zz") || name.endsWith(".zlib") || name.endsWith(".deflate");
+    }
+
+    public boolean matchesMagic(byte[] head, int length) {
+        return length >= 2 && (head[0] & 0xFF) == 0x78 && (head[1] & 0x20) == 0
+                && (((head[0] & 0xFF) << 8) | (head[1] & 0xFF)) % 31 == 0;
+    }
+
+    // Свой Inflater с большим буфером; его память освобождается при закрытии потока
+    public InputStream decompress(InputStream in) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, BUFFER_BYTES) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    public OutputStream compress(OutputStream out) {
+        Deflater deflater = new Deflater();
+        return new DeflaterOutputStream(out, deflater, BUFFER_BYTES) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+}
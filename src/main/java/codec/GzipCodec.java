@@ -0,0 +1,34 @@
+package codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// GZIP (.gz): подпись 1F 8B. Несколько склеенных членов (cat a.gz b.gz) читаются подряд.
+public class GzipCodec implements Codec {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    public String getName() {
+        return "gzip";
+    }
+
+    public boolean matchesName(String fileName) {
+        String name = fileName.toLowerCase();
+        return name.endsWith(".gz") || name.endsWith(".gzip");
+    }
+
+    public boolean matchesMagic(byte[] head, int length) {
+        return length >= 2 && (head[0] & 0xFF) == 0x1F && (head[1] & 0xFF) == 0x8B;
+    }
+
+    public InputStream decompress(InputStream in) throws IOException {
+        return new GZIPInputStream(in, BUFFER_BYTES);
+    }
+
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_BYTES);
+    }
+}
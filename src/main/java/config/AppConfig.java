@@ -1,18 +1,19 @@
 package config;
 
 import aspect.LoggingAspect;
+import controller.CommandExecutor;
 import controller.Editor;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Scope;
-import javax.swing.undo.UndoManager;
 import ui.EditorUI;
 
-@Configuration // Объявление класса как конфигурационного для Spring контекста
-@EnableAspectJAutoProxy // Включение поддержки аспектов в приложении
-@ComponentScan({"controller", "aspect", "ui", "observer"}) // Сканирование компонентов в указанных пакетах
+// Быстрый старт: все бины перечислены явно вместо сканирования пакетов (classpath не обходится при запуске),
+// конфигурация не оборачивается CGLIB-подклассом, и все бины создаются только при первом запросе.
+// Аспекты вплетаются агентом AspectJ при загрузке классов (META-INF/aop.xml), поэтому прокси Spring не нужны.
+@Configuration(proxyBeanMethods = false) // Объявление класса как конфигурационного для Spring контекста
+@Lazy // Бины создаются при первом обращении, а не при запуске контекста
 
 public class AppConfig {
 
@@ -30,18 +31,13 @@ public class AppConfig {
 
     @Bean
     @Scope("prototype") // Указание области видимости бина как prototype
-    public Editor editor(EditorUI editorUI, UndoManager undoManager, LoggingAspect loggingAspect) {
-        return new Editor(editorUI, undoManager, loggingAspect); // Создание и возвращение нового экземпляра Editor
+    public Editor editor(EditorUI editorUI, LoggingAspect loggingAspect, CommandExecutor commandExecutor) {
+        return new Editor(editorUI, loggingAspect, commandExecutor); // Создание и возвращение нового экземпляра Editor (история отмены у каждого своя)
     }
 
     @Bean
-    @Scope("singleton") // Указание области видимости бина как singleton
-    public UndoManager undoManager() {
-        return new UndoManager(); // Создание и возвращение нового экземпляра UndoManager
+    @Scope("singleton") // Один исполнитель команд на все редакторы
+    public CommandExecutor commandExecutor() {
+        return new CommandExecutor(); // Создание и возвращение исполнителя команд
     }
 }
-
-
-
-
-
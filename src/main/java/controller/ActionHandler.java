@@ -1,5 +1,11 @@
 package controller;
 
-interface ActionHandler {  // Интерфейс для обработчиков команд действий
+public interface ActionHandler {  // Интерфейс для обработчиков команд действий (и для команд расширений, см. CommandProvider)
     void handleRequest(String actionCommand);
+
+    // Выполнение при воспроизведении макроса, в том месте, где команда записана. По умолчанию - как из меню;
+    // обработчик, который ставит работу в очередь редактора, выполняет её здесь же, иначе она пойдёт после всего макроса
+    default void replayRequest(String actionCommand) {
+        handleRequest(actionCommand);
+    }
 }
@@ -1,21 +1,21 @@
 package controller;
 
+import javax.swing.*;
+
 class BackHandler implements ActionHandler {
     private final Editor editor;
-    private ActionHandler next;
 
-    BackHandler(Editor editor, ActionHandler next) {
+    BackHandler(Editor editor) {
         this.editor = editor;
-        this.next = next;
     }
 
     public void handleRequest(String actionCommand) {
-        if (actionCommand.equals("Following")) {
-            if (editor.previousState != null) {
-                editor.textArea.setText(editor.previousState);  // Установка предыдущего состояния текстовой области
+        SwingUtilities.invokeLater(() -> {  // История меняет документ в потоке Swing
+            try {
+                editor.readWriteLock.write(editor.history::redo);  // Повтор последней отменённой записи
+            } catch (InterruptedException ex) {
+                ex.printStackTrace();
             }
-        } else {
-            next.handleRequest(actionCommand);
-        }
+        });
     }
 }
@@ -2,27 +2,21 @@ package controller;
 
 class CloseHandler implements ActionHandler {
     private final Editor editor;
-    private ActionHandler next;
 
-    CloseHandler(Editor editor, ActionHandler next) {
+    CloseHandler(Editor editor) {
         this.editor = editor;
-        this.next = next;
     }
 
     public void handleRequest(String actionCommand) {
-        if (actionCommand.equals("Close")) {
-            new Thread(() -> {  // Создание нового потока
-                try {
-                    editor.readWriteLock.writeLock();
-                    editor.frame.dispose();  // Закрытие окна приложения
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                } finally {
-                    editor.readWriteLock.writeUnlock();
-                }
-            }).start();
-        } else {
-            next.handleRequest(actionCommand);
-        }
+        editor.execute(actionCommand, () -> {  // Команда выполняется в очереди документа
+            try {
+                editor.readWriteLock.write(() -> editor.frame.dispose());  // Закрытие окна приложения
+                editor.closeJournal();  // Окно закрыто штатно - журнал для восстановления больше не нужен
+                editor.workspace.dispose();  // Файл подкачки вкладок тоже
+                editor.stopFollowing();
+            } catch (InterruptedException ex) {
+                ex.printStackTrace();
+            }
+        });
     }
 }
@@ -0,0 +1,23 @@
+package controller;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+
+// Обработчик для команды "Close tab": закрывает показанный документ рабочей области, окно остаётся
+class CloseTabHandler implements ActionHandler {
+    private final Editor editor;
+
+    CloseTabHandler(Editor editor) {
+        this.editor = editor;
+    }
+
+    public void handleRequest(String actionCommand) {
+        editor.execute(actionCommand, () -> {  // Команда выполняется в очереди документа
+            try {
+                editor.workspace.closeActive();
+            } catch (IOException | InterruptedException | InvocationTargetException ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+}
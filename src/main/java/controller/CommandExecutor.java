@@ -0,0 +1,135 @@
+package controller;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Общий исполнитель команд редакторов (New, Open, Save, Save as, Close) вместо отдельного потока на каждую команду.
+// У каждого документа своя очередь: его команды выполняются строго по порядку, команды разных документов - параллельно.
+// Команды выполняются в виртуальных потоках, если их поддерживает JVM (Java 21+), иначе в пуле обычных потоков.
+public class CommandExecutor {
+
+    // Очередь команд одного документа
+    private static final class Lane {
+        private final ArrayDeque<Command> queue = new ArrayDeque<>();
+        private Command current;  // Выполняющаяся команда
+        private boolean running;  // Есть ли поток, разбирающий очередь
+    }
+
+    // Команда с именем для потока и отмены
+    private static final class Command extends FutureTask<Void> {
+        private final String name;
+
+        Command(String name, Runnable task) {
+            super(task, null);
+            this.name = name;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final Map<Object, Lane> lanes = new HashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();  // Команды в очередях и в работе
+
+    public CommandExecutor() {
+        this.executor = createExecutor();
+    }
+
+    // Ставит команду в очередь документа document и возвращает Future для ожидания или отмены
+    public Future<?> submit(Object document, String name, Runnable task) {
+        Command command = new Command(name, task);
+        inFlight.incrementAndGet();
+        synchronized (lanes) {
+            Lane lane = lanes.computeIfAbsent(document, key -> new Lane());
+            lane.queue.add(command);
+            if (!lane.running) {
+                lane.running = true;
+                executor.execute(() -> drain(document, lane));
+            }
+        }
+        return command;
+    }
+
+    // Отменяет ожидающие команды документа и прерывает выполняющуюся (долгое открытие или сохранение)
+    public int cancel(Object document) {
+        int cancelled = 0;
+        synchronized (lanes) {
+            Lane lane = lanes.get(document);
+            if (lane == null) {
+                return 0;
+            }
+            for (Command command : lane.queue) {
+                if (command.cancel(false)) {
+                    cancelled++;
+                }
+            }
+            if (lane.current != null && lane.current.cancel(true)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    // Количество команд всех документов, которые ещё не завершились
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    // Количество незавершённых команд одного документа
+    public int inFlight(Object document) {
+        synchronized (lanes) {
+            Lane lane = lanes.get(document);
+            return lane == null ? 0 : lane.queue.size() + (lane.current == null ? 0 : 1);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Выполняет команды очереди по одной, пока очередь не опустеет
+    private void drain(Object document, Lane lane) {
+        Thread thread = Thread.currentThread();
+        String threadName = thread.getName();
+        while (true) {
+            Command command;
+            synchronized (lanes) {
+                command = lane.queue.poll();
+                lane.current = command;
+                if (command == null) {
+                    lane.running = false;
+                    lanes.remove(document);  // Пустая очередь не держит ссылку на документ
+                    return;
+                }
+            }
+            try {
+                thread.setName("editor-command-" + command.name);
+                command.run();  // Исключения команды сохраняются в её Future
+            } finally {
+                thread.setName(threadName);
+                Thread.interrupted();  // Прерывание отменённой команды не должно достаться следующей
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    // Виртуальные потоки доступны с Java 21; на более старой JVM используется пул потоков-демонов
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            ThreadFactory factory = runnable -> {
+                Thread thread = new Thread(runnable, "editor-command-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package controller;
+
+// Расширение с командами редактора. Реализации находятся через ServiceLoader
+// (файл META-INF/services/controller.CommandProvider в jar расширения); их команды попадают в меню "Tools".
+public interface CommandProvider {
+
+    void register(CommandRegistry registry, Editor editor);
+}
@@ -0,0 +1,130 @@
+package controller;
+
+import log.EventLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+// Команды редактора по именам. Строится один раз при создании редактора; команда находится по имени за O(1),
+// без цепочки обработчиков и сравнения строк по очереди. Кроме встроенных команд подключаются команды расширений.
+public class CommandRegistry {
+
+    // Команда и её поведение при записи и воспроизведении макроса
+    private static final class Command {
+        private final ActionHandler handler;
+        private final boolean recorded;  // Попадает в запись макроса
+        private final boolean replayed;  // Выполняется заново при воспроизведении (иначе в макросе уже есть её правки)
+
+        Command(ActionHandler handler, boolean recorded, boolean replayed) {
+            this.handler = handler;
+            this.recorded = recorded;
+            this.replayed = replayed;
+        }
+    }
+
+    private final Editor editor;
+    private final Map<String, Command> commands = new HashMap<>();
+    private final List<String> extensionNames = new ArrayList<>();
+    private boolean loadingExtensions;
+
+    CommandRegistry(Editor editor) {
+        this.editor = editor;
+    }
+
+    // Встроенные команды меню и команды расширений
+    static CommandRegistry standard(Editor editor) {
+        CommandRegistry registry = new CommandRegistry(editor);
+        // Правки отмены и повтора попадают в макрос сами; Open и Save as спрашивают файл у пользователя,
+        // New и Close tab меняют вкладку. Поэтому при воспроизведении выполняется заново только Save.
+        registry.register("New", new NewFileHandler(editor), true, false);
+        registry.register("Open", new OpenFileHandler(editor), true, false);
+        registry.register(FollowHandler.FOLLOW, new FollowHandler(editor), false, false);  // Дописанный текст в макрос не пишется
+        registry.register("Save", new SaveFileHandler(editor), true, true);
+        registry.register("Save as", new SaveAsFileHandler(editor), true, false);
+        CompareHandler compare = new CompareHandler(editor);
+        registry.register(CompareHandler.COMPARE, compare, false, false);  // Принятые различия попадают в макрос правками
+        registry.register(CompareHandler.COMPARE_FILE, compare, false, false);
+        registry.register("Close tab", new CloseTabHandler(editor), true, false);
+        registry.register("Close", new CloseHandler(editor), true, false);
+        registry.register("Previous", new ForwardHandler(editor), true, false);
+        registry.register("Following", new BackHandler(editor), true, false);
+        SearchHandler search = new SearchHandler(editor);
+        registry.register(SearchHandler.FIND, search, false, false);
+        registry.register(SearchHandler.FIND_NEXT, search, false, false);
+        registry.register(SearchHandler.REPLACE_ALL, search, true, false);  // Замена попадает в макрос правками
+        registry.register(GoToLineHandler.GO_TO_LINE, new GoToLineHandler(editor), false, false);  // Курсор в макрос не пишется
+        MacroHandler macros = new MacroHandler(editor);
+        registry.register(MacroHandler.RECORD, macros, false, false);
+        registry.register(MacroHandler.STOP, macros, false, false);
+        registry.register(MacroHandler.PLAY, macros, false, false);
+
+        registry.loadingExtensions = true;
+        try {
+            for (CommandProvider provider : ServiceLoader.load(CommandProvider.class)) {
+                provider.register(registry, editor);
+            }
+        } catch (RuntimeException | ServiceConfigurationError e) {
+            e.printStackTrace();  // Сломанное расширение не мешает запуску редактора
+        } finally {
+            registry.loadingExtensions = false;
+        }
+        return registry;
+    }
+
+    // Регистрирует команду расширения: она записывается в макрос и выполняется при воспроизведении
+    public void register(String name, ActionHandler handler) {
+        register(name, handler, true, true);
+    }
+
+    public void register(String name, ActionHandler handler, boolean recorded, boolean replayed) {
+        Command previous = commands.put(name, new Command(handler, recorded, replayed));
+        if (loadingExtensions && previous == null) {  // Расширение, заменившее встроенную команду, уже есть в меню
+            extensionNames.add(name);
+        }
+    }
+
+    // Выполняет команду; неизвестная команда только отмечается в журнале событий. Возвращает false, если команды нет.
+    public boolean dispatch(String name) {
+        Command command = commands.get(name);
+        if (command == null) {
+            EventLog.global().log(editor.id, "Unknown command " + name, 0, 0);
+            return false;
+        }
+        if (command.recorded) {
+            editor.recordCommand(name);
+        }
+        command.handler.handleRequest(name);
+        return true;
+    }
+
+    // Выполняет команду при воспроизведении макроса (в макрос она заново не пишется); false, если команды нет
+    public boolean replay(String name) {
+        Command command = commands.get(name);
+        if (command == null) {
+            EventLog.global().log(editor.id, "Unknown command " + name, 0, 0);
+            return false;
+        }
+        command.handler.replayRequest(name);
+        return true;
+    }
+
+    public boolean contains(String name) {
+        return commands.containsKey(name);
+    }
+
+    // Нужно ли выполнить команду заново при воспроизведении макроса
+    public boolean isReplayed(String name) {
+        Command command = commands.get(name);
+        return command != null && command.replayed;
+    }
+
+    // Имена команд расширений в порядке регистрации (для меню)
+    public List<String> getExtensionNames() {
+        return Collections.unmodifiableList(extensionNames);
+    }
+}
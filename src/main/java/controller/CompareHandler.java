@@ -0,0 +1,126 @@
+package controller;
+
+import diff.DiffResult;
+import diff.TextDiff;
+import document.PagedDocument;
+import document.TextSnapshot;
+import engine.DocumentEngine;
+import log.EventLog;
+import ui.DiffView;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+// Обработчик для команд "Compare" и "Compare with file": сравнивает документ со вторым редактором или с файлом на диске
+// и показывает различия рядом. Сравнение идёт по снимкам в очереди команд редактора и не мешает набору текста.
+// Принятые различия применяются к документу одной правкой, как замена всех вхождений; файл на диске не меняется.
+class CompareHandler implements ActionHandler {
+    static final String COMPARE = "Compare";
+    static final String COMPARE_FILE = "Compare with file";
+
+    private final Editor editor;
+
+    CompareHandler(Editor editor) {
+        this.editor = editor;
+    }
+
+    public void handleRequest(String actionCommand) {
+        if (COMPARE.equals(actionCommand)) {
+            Editor peer = editor.peer;
+            if (peer == null) {
+                JOptionPane.showMessageDialog(editor.frame, "Нет второго редактора", COMPARE, JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            comparePeer(actionCommand, peer);
+        } else {
+            File file = editor.openedFile;
+            if (file == null) {
+                JOptionPane.showMessageDialog(editor.frame, "Нет открытого файла", COMPARE_FILE, JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            compareFile(actionCommand, file);
+        }
+    }
+
+    private void comparePeer(String actionCommand, Editor peer) {
+        PagedDocument left = editor.engine.getDocument();
+        PagedDocument right = peer.engine.getDocument();
+        DiffView.Sides sides = new DiffView.Sides() {
+            public void compare(Consumer<DiffResult> done) {
+                editor.execute(actionCommand, () -> diff(left.snapshot(), right.snapshot(), done));
+            }
+
+            public void apply(boolean toLeft, DiffResult patch, Consumer<TextSnapshot> done) {
+                Editor target = toLeft ? editor : peer;
+                target.execute(actionCommand, () -> applyDiff(target, patch, done));
+            }
+
+            public boolean canApply(boolean toLeft) {
+                return true;
+            }
+        };
+        editor.execute(actionCommand, () -> diff(left.snapshot(), right.snapshot(),
+                diff -> new DiffView("Compare", left, right, diff, sides).display()));
+    }
+
+    // Файл читается заново при каждом сравнении; его сторона только для чтения
+    private void compareFile(String actionCommand, File file) {
+        PagedDocument left = editor.engine.getDocument();
+        editor.execute(actionCommand, () -> {
+            PagedDocument right = read(file, left);
+            if (right == null) {
+                return;
+            }
+            DiffView.Sides sides = new DiffView.Sides() {
+                public void compare(Consumer<DiffResult> done) {
+                    editor.execute(actionCommand, () -> {
+                        PagedDocument reread = read(file, left);
+                        if (reread != null) {
+                            diff(left.snapshot(), reread.snapshot(), done);
+                        }
+                    });
+                }
+
+                public void apply(boolean toLeft, DiffResult patch, Consumer<TextSnapshot> done) {
+                    editor.execute(actionCommand, () -> applyDiff(editor, patch, done));
+                }
+
+                public boolean canApply(boolean toLeft) {
+                    return toLeft;
+                }
+            };
+            diff(left.snapshot(), right.snapshot(),
+                    diff -> new DiffView("Compare with " + file.getName(), left, right, diff, sides).display());
+        });
+    }
+
+    private PagedDocument read(File file, PagedDocument document) {
+        try {
+            return DocumentEngine.read(file.toPath(), document.getCharset()).document;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    // Сравнивает снимки в текущем потоке и передаёт разницу в поток Swing
+    private void diff(TextSnapshot a, TextSnapshot b, Consumer<DiffResult> done) {
+        DiffResult diff = TextDiff.diff(a, b, ForkJoinPool.commonPool());
+        EventLog.global().log(editor.id, COMPARE, diff.getNanos(), (a.length() + b.length()) * 2L);
+        SwingUtilities.invokeLater(() -> done.accept(diff));
+    }
+
+    private static void applyDiff(Editor target, DiffResult patch, Consumer<TextSnapshot> done) {
+        TextSnapshot applied = null;
+        try {
+            applied = target.applyDiff(patch);
+        } catch (InterruptedException ex) {
+            ex.printStackTrace();
+        }
+        TextSnapshot result = applied;
+        SwingUtilities.invokeLater(() -> done.accept(result));
+    }
+}
@@ -1,48 +1,159 @@
 package controller;
 
 import javax.swing.*;
-import javax.swing.undo.UndoManager;
 import java.io.*;
 
 import aspect.LoggingAspect;
+import diff.DiffResult;
+import document.PagedDocument;
+import document.TextSnapshot;
+import engine.DocumentEngine;
+import history.EditHistory;
+import journal.EditJournal;
+import log.EventLog;
+import macro.Macro;
+import macro.MacroRecorder;
+import metrics.EditorMetrics;
+import search.Match;
+import search.Replacement;
+import search.SearchQuery;
+import io.FileFollower;
+import io.SaveResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import ui.EditorUI;
+import ui.VirtualTextArea;
 
+import replication.ReplicationClient;
+import observer.EditorChange;
+import observer.EditorChangeObserver;
 import observer.EditorObserver;
+import observer.BackPressurePolicy;
+import observer.ObserverDispatcher;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.lang.reflect.InvocationTargetException;
+import java.awt.BorderLayout;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
 
 @Component
 public class Editor implements ActionListener {
 
+    private static final AtomicInteger ids = new AtomicInteger();
+    private static final int REPLAY_BATCH = 1024;  // Записей макроса за один заход в поток Swing
+    private static final int CHANGE_NOTIFY_CHARS = 1 << 16;  // Замена больше этого передаётся наблюдателям полным текстом
+
+    public final int id = ids.incrementAndGet();  // Номер редактора в журнале событий
+
     public JTextArea textArea;  // Текстовая область для ввода текста
     public JFrame frame;  // Основное окно приложения
     public File openedFile = null;  // Текущий открытый файл, если есть
 
-    public UndoManager undoManager;  // Менеджер отмены действий для текстовой области
+    public final DocumentEngine engine = new DocumentEngine();  // Документ, история, журнал и сохранение без привязки к окну
+
+    public final EditHistory history = engine.history;  // История отмены и повтора этого документа
 
     public List<EditorObserver> observers = new ArrayList<>();  // Список наблюдателей, которые будут уведомлены об изменениях текста
 
+    // Диспетчер доставляет изменения наблюдателям в фоне: пачками раз в кадр, у каждого наблюдателя своя очередь
+    public ObserverDispatcher dispatcher = new ObserverDispatcher(16, 4096, BackPressurePolicy.RESYNC, this::observerSnapshot);
+
     public boolean isUpdating = false;  // Флаг для предотвращения рекурсивных вызовов при обновлении текста
 
-    public String previousState;  // Предыдущее состояние текста, используется для функции отмены
+    public long version = 0;  // Версия документа, увеличивается при каждом изменении
 
     @Autowired
     public LoggingAspect loggingAspect;  // Логирования действий
 
-    public final ReadWriteLock readWriteLock = new ReadWriteLock();
+    public final ReadWriteLock readWriteLock = engine.readWriteLock;
+
+    public CommandExecutor commandExecutor;  // Общий исполнитель команд; команды этого редактора идут по порядку
+
+    public final CommandRegistry commands;  // Команды меню и расширений по именам
+
+    public final Workspace workspace;  // Открытые документы во вкладках
+
+    public final StatusBar statusBar;  // Строка и столбец курсора, число строк
+
+    public volatile MacroRecorder recorder;  // Запись макроса; null - макрос не записывается
+
+    public volatile ReplicationClient replication;  // Совместное редактирование с другими процессами; null - выключено
+
+    public volatile FileFollower follower;  // Слежение за дописыванием в открытый файл; null - выключено
+
+    public volatile Editor peer;  // Второй редактор для сравнения документов; null - нет
+
+    // Слушатель изменений документа: превращает события Swing в изменения для наблюдателей
+    private final DocumentListener documentListener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {  // Метод вызывается при вставке текста
+            version++;
+            MacroRecorder currentRecorder = recorder;
+            PagedDocument document = (PagedDocument) e.getDocument();
+            boolean source = document.isSourceInsert();  // Загрузка файла в макрос не пишется и не копируется
+            boolean record = currentRecorder != null && !source;
+            boolean silent = isUpdating || engine.isBatchEdit();  // Замену всех вхождений наблюдатели получают одним изменением
+            if (source) {
+                if (!silent) {  // Наблюдатели получают ссылку на вставленное в снимке документа
+                    notifyObservers(EditorChange.fromSource(e.getOffset(), 0, document.snapshot(), e.getOffset(), e.getLength(), version));
+                }
+            } else if (!silent || record) {
+                try {
+                    String inserted = e.getDocument().getText(e.getOffset(), e.getLength());  // Только вставленный фрагмент
+                    if (record) {
+                        currentRecorder.inserted(e.getOffset(), inserted);
+                    }
+                    if (!silent) {
+                        notifyObservers(new EditorChange(e.getOffset(), 0, inserted, version));  // Уведомление наблюдателей об изменении
+                    }
+                } catch (BadLocationException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            if (!source && !isRemoteEdit()) {
+                statusBar.clearMessage();
+            }
+            statusBar.refresh();  // Число строк (загрузка файла меняет его без движения курсора)
+        }
+
+        public void removeUpdate(DocumentEvent e) {  // Метод вызывается при удалении текста
+            version++;
+            MacroRecorder currentRecorder = recorder;
+            boolean source = ((PagedDocument) e.getDocument()).isSourceRemove();
+            if (currentRecorder != null && !source) {
+                currentRecorder.removed(e.getOffset(), e.getLength());
+            }
+            if (!isUpdating && !engine.isBatchEdit()) {
+                notifyObservers(source ? EditorChange.fromSource(e.getOffset(), e.getLength(), null, 0, 0, version)
+                        : new EditorChange(e.getOffset(), e.getLength(), "", version));  // Уведомление наблюдателей об изменении
+            }
+            if (!source && !isRemoteEdit()) {
+                statusBar.clearMessage();
+            }
+            statusBar.refresh();
+        }
+
+        public void changedUpdate(DocumentEvent e) {  // Метод вызывается при изменении атрибутов текста
+            if (!isUpdating) {
+                notifyObservers();  // Уведомление наблюдателей об изменении текста
+            }
+        }
+    };
 
     @Autowired
-    public Editor(EditorUI editorUI, UndoManager undoManager, LoggingAspect loggingAspect) {
+    public Editor(EditorUI editorUI, LoggingAspect loggingAspect, CommandExecutor commandExecutor) {
         this.frame = editorUI.getFrame();  // Инициализация окна
-        this.textArea = new JTextArea();  // Создание текстовой области
-        this.undoManager = undoManager;  // Инициализация менеджера отмены
+        this.textArea = new VirtualTextArea(engine.getDocument());  // Текстовая область показывает документ ядра, рисуя только видимые строки
         this.loggingAspect = loggingAspect;  // Инициализация аспекта логирования
+        this.commandExecutor = commandExecutor;  // Инициализация исполнителя команд
 
         JMenuBar menuBar = new JMenuBar();
         JMenu fileMenu = new JMenu("File");
@@ -50,103 +161,408 @@ public class Editor implements ActionListener {
 
         JMenuItem newMenuItem = new JMenuItem("New");
         JMenuItem openMenuItem = new JMenuItem("Open");
+        JMenuItem followMenuItem = new JMenuItem(FollowHandler.FOLLOW);
         JMenuItem saveMenuItem = new JMenuItem("Save");
         JMenuItem saveAsMenuItem = new JMenuItem("Save as");
+        JMenuItem compareMenuItem = new JMenuItem(CompareHandler.COMPARE);
+        JMenuItem compareFileMenuItem = new JMenuItem(CompareHandler.COMPARE_FILE);
+        JMenuItem closeTabMenuItem = new JMenuItem("Close tab");
         JMenuItem closeMenuItem = new JMenuItem("Close");
 
         JMenuItem forwardMenuItem = new JMenuItem("Previous");
         JMenuItem backMenuItem = new JMenuItem("Following");
 
+        JMenu searchMenu = new JMenu("Search");
+        JMenuItem findMenuItem = new JMenuItem(SearchHandler.FIND);
+        JMenuItem findNextMenuItem = new JMenuItem(SearchHandler.FIND_NEXT);
+        JMenuItem replaceAllMenuItem = new JMenuItem(SearchHandler.REPLACE_ALL);
+        JMenuItem goToLineMenuItem = new JMenuItem(GoToLineHandler.GO_TO_LINE);
+
+        JMenu macroMenu = new JMenu("Macro");
+        JMenuItem recordMenuItem = new JMenuItem(MacroHandler.RECORD);
+        JMenuItem stopMenuItem = new JMenuItem(MacroHandler.STOP);
+        JMenuItem playMenuItem = new JMenuItem(MacroHandler.PLAY);
+
         // Установка команд действий для каждого пункта меню
-        setActionCommands(newMenuItem, openMenuItem, saveMenuItem, saveAsMenuItem, closeMenuItem, forwardMenuItem, backMenuItem);
+        setActionCommands(newMenuItem, openMenuItem, followMenuItem, saveMenuItem, saveAsMenuItem, compareMenuItem, compareFileMenuItem,
+                closeTabMenuItem, closeMenuItem, forwardMenuItem,
+                backMenuItem, findMenuItem, findNextMenuItem, replaceAllMenuItem, goToLineMenuItem, recordMenuItem, stopMenuItem,
+                playMenuItem);
 
         // Добавление слушателей действий для каждого пункта меню
-        addActionListeners(newMenuItem, openMenuItem, saveMenuItem, saveAsMenuItem, closeMenuItem, forwardMenuItem, backMenuItem);
+        addActionListeners(newMenuItem, openMenuItem, followMenuItem, saveMenuItem, saveAsMenuItem, compareMenuItem, compareFileMenuItem,
+                closeTabMenuItem, closeMenuItem, forwardMenuItem,
+                backMenuItem, findMenuItem, findNextMenuItem, replaceAllMenuItem, goToLineMenuItem, recordMenuItem, stopMenuItem,
+                playMenuItem);
 
         fileMenu.add(newMenuItem);
         fileMenu.add(openMenuItem);
+        fileMenu.add(followMenuItem);
         fileMenu.add(saveMenuItem);
         fileMenu.add(saveAsMenuItem);
+        fileMenu.add(compareMenuItem);
+        fileMenu.add(compareFileMenuItem);
+        fileMenu.add(closeTabMenuItem);
         fileMenu.add(closeMenuItem);
         editMenu.add(forwardMenuItem);
         editMenu.add(backMenuItem);
+        searchMenu.add(findMenuItem);
+        searchMenu.add(findNextMenuItem);
+        searchMenu.add(replaceAllMenuItem);
+        searchMenu.add(goToLineMenuItem);
+        macroMenu.add(recordMenuItem);
+        macroMenu.add(stopMenuItem);
+        macroMenu.add(playMenuItem);
 
         menuBar.add(fileMenu);  // Добавление меню "File" в меню-бар
         menuBar.add(editMenu);  // Добавление меню "Correction" в меню-бар
-
-        frame.setJMenuBar(menuBar);  // Установка меню-бара в окне
-        frame.add(textArea);  // Добавление текстовой области в окно
-
-        textArea.getDocument().addUndoableEditListener(undoManager);  // Добавление слушателя изменений для менеджера отмены
-
-        // Добавление слушателя изменений документа
-        textArea.getDocument().addDocumentListener(new DocumentListener() {
-            public void insertUpdate(DocumentEvent e) {  // Метод вызывается при вставке текста
-                if (!isUpdating) {
-                    notifyObservers();  // Уведомление наблюдателей об изменении текста
-                }
+        menuBar.add(searchMenu);  // Добавление меню "Search" в меню-бар
+        menuBar.add(macroMenu);  // Добавление меню "Macro" в меню-бар
+
+        commands = CommandRegistry.standard(this);  // Встроенные команды и команды расширений
+        if (!commands.getExtensionNames().isEmpty()) {
+            JMenu toolsMenu = new JMenu("Tools");
+            for (String name : commands.getExtensionNames()) {
+                JMenuItem item = new JMenuItem(name);
+                setActionCommands(item);
+                addActionListeners(item);
+                toolsMenu.add(item);
             }
+            menuBar.add(toolsMenu);  // Меню "Tools" с командами расширений
+        }
 
-            public void removeUpdate(DocumentEvent e) {  // Метод вызывается при удалении текста
-                if (!isUpdating) {
-                    notifyObservers();  // Уведомление наблюдателей об изменении текста
-                }
-            }
+        workspace = new Workspace(this);  // Первая вкладка - документ ядра
+        statusBar = new StatusBar(this);
 
-            public void changedUpdate(DocumentEvent e) {  // Метод вызывается при изменении атрибутов текста
-                if (!isUpdating) {
-                    notifyObservers();  // Уведомление наблюдателей об изменении текста
-                }
-            }
-        });
+        frame.setJMenuBar(menuBar);  // Установка меню-бара в окне
+        frame.add(workspace.tabs, BorderLayout.NORTH);  // Вкладки открытых документов над текстом
+        frame.add(new JScrollPane(textArea));  // Добавление текстовой области с прокруткой в окно
+        frame.add(statusBar.label, BorderLayout.SOUTH);  // Строка состояния под текстом
+
+        textArea.getDocument().addDocumentListener(documentListener);  // Добавление слушателя изменений документа
         editorUI.display();
     }
 
     // Добавляет нового наблюдателя
     public void addObserver(EditorObserver observer) {
         try {
-            readWriteLock.writeLock();  // Захват блокировки
-            observers.add(observer);  // Добавление нового наблюдателя в список
+            readWriteLock.write(() -> {  // Действие под блокировкой записи
+                observers.add(observer);  // Добавление нового наблюдателя в список
+                dispatcher.subscribe(observer);  // Создание очереди наблюдателя в диспетчере
+            });
         } catch (InterruptedException e) {  // Обработка исключения при возникновении ошибки во время захвата блокировки
             e.printStackTrace();  // Вывод стека вызовов для отладки
-        } finally {
-            readWriteLock.writeUnlock();  // Освобождение блокировки
         }
     }
 
 
     // Уведомляет всех наблюдателей о текущем тексте в текстовой области.
+    // Сам текст берётся диспетчером в фоне, поэтому поток Swing не ждёт наблюдателей.
     public void notifyObservers() {
+        long started = System.nanoTime();
+        dispatcher.publishText();
+        EditorMetrics.NOTIFY_OBSERVERS.record(System.nanoTime() - started);
+    }
+
+    // Передаёт одно изменение документа диспетчеру.
+    // Наблюдатели EditorChangeObserver получают склеенные изменения, остальные - последний полный текст.
+    public void notifyObservers(EditorChange change) {
+        long started = System.nanoTime();
+        dispatcher.publish(change);
+        EditorMetrics.NOTIFY_OBSERVERS.record(System.nanoTime() - started);
+    }
+
+    // Неизменяемый снимок текста. Создаётся за O(1), читается без readWriteLock и не мешает набору текста.
+    public TextSnapshot snapshot() {
+        return engine.snapshot();
+    }
+
+    // Сохраняет текст в файл через ядро: на месте, если файл не менялся с последнего сохранения, иначе целиком.
+    // Текст пишется в кодировке, в которой файл был открыт.
+    public SaveResult save(File file) throws IOException, InterruptedException {
+        SaveResult result = engine.save(file.toPath(), engine.getDocument().getCharset());
+        EventLog.global().log(id, "Saved", result.getNanos(), result.getBytes());  // Время и объём сохранения
+        return result;
+    }
+
+    // Применяет разницу к документу одной правкой и одной записью истории; наблюдатели получают снимок текста.
+    // Возвращает снимок после правки или null, если документ изменился после сравнения. Вызывается из очереди команд редактора.
+    public TextSnapshot applyDiff(DiffResult diff) throws InterruptedException {
+        long started = System.nanoTime();
+        TextSnapshot applied = engine.apply(diff);
+        if (applied != null) {
+            notifyObservers();
+            EventLog.global().log(id, "Apply diff", System.nanoTime() - started, diff.getHunks().size());
+        }
+        return applied;
+    }
+
+    // Подключает журнал правок: дальнейшие правки документа пишутся в него
+    public void attachJournal(EditJournal journal) {
+        engine.attachJournal(journal);
+    }
+
+    // Начинает журнал заново с файла, который сейчас загружается в документ (вызывается в потоке Swing сразу после setDocument)
+    public void restartJournal(File file) {
+        engine.restartJournal(file.toPath());
+    }
+
+    // Останавливает слежение за открытым файлом, если оно идёт
+    public void stopFollowing() {
+        FileFollower current = follower;
+        follower = null;
+        if (current == null) {
+            return;
+        }
         try {
-            readWriteLock.readLock();
-            String text = textArea.getText();  // Получение текста из текстовой области
-            for (EditorObserver observer : observers) {  // Перебор всех наблюдателей
-                observer.update(text);  // Уведомление каждого наблюдателя о новом тексте
-            }
-        } catch (InterruptedException e) {
+            current.close();
+        } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            readWriteLock.readUnlock();
         }
+        EventLog.global().log(id, "Follow stop", 0, current.getAppendedBytes());  // Сколько байт дописано за время слежения
+    }
+
+    // Подключает текущий документ к серверу совместного редактирования: чужие правки применяются в потоке Swing
+    // под блокировкой редактора, свои уходят на сервер. Документы, открытые позже в других вкладках, не реплицируются.
+    public void replicate(InetSocketAddress server, int reportSeconds) throws IOException {
+        replication = new ReplicationClient(server, engine.getDocument(), readWriteLock, SwingUtilities::invokeLater,
+                id, "editor" + id, reportSeconds, statusBar::show);
+    }
+
+    // Правка пришла с сервера совместного редактирования, а не от пользователя этого окна
+    private boolean isRemoteEdit() {
+        ReplicationClient current = replication;
+        return current != null && current.isApplying();
+    }
+
+    // Закрывает журнал и удаляет его: документ закрыт пользователем, восстанавливать нечего
+    public void closeJournal() {
+        engine.closeJournal();
+    }
+
+    // Текущий текст вместе с версией: снимок берётся под блокировкой документа; текст не копируется
+    private ObserverDispatcher.Snapshot observerSnapshot() {
+        PagedDocument document;
+        try {
+            document = readWriteLock.read(() -> (PagedDocument) textArea.getDocument());  // Оптимистичное чтение без захвата
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            document = (PagedDocument) textArea.getDocument();
+        }
+        TextSnapshot[] text = new TextSnapshot[1];
+        long[] textVersion = new long[1];
+        PagedDocument current = document;
+        current.render(() -> {
+            text[0] = current.snapshot();
+            textVersion[0] = version;
+        });
+        return new ObserverDispatcher.Snapshot(text[0], textVersion[0]);
     }
 
     // Устанавливает новый текст в текстовой области.
     public void setText(String text) {
+        try {
+            readWriteLock.write(() -> {
+                isUpdating = true;  // Установка флага обновления текста
+                history.beginGroup();  // Замена текста отменяется одним шагом
+                try {
+                    textArea.setText(text);  // Установка нового текста в текстовую область
+                } finally {
+                    history.endGroup();
+                    isUpdating = false;  // Сброс флага обновления текста после установки текста
+                }
+            });
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Устанавливает текст снимка (полная синхронизация от другого редактора): куски документа ссылаются на снимок,
+    // текст не копируется. Замена отменяется одним шагом, как setText.
+    public void setText(TextSnapshot text) {
+        try {
+            readWriteLock.write(() -> {
+                isUpdating = true;
+                history.beginGroup();
+                PagedDocument document = (PagedDocument) textArea.getDocument();
+                try {
+                    document.edit(() -> {
+                        try {
+                            document.remove(0, document.getLength());
+                            document.insertPieces(0, text, 0, text.length());
+                        } catch (BadLocationException e) {
+                            e.printStackTrace();
+                        }
+                    });
+                } finally {
+                    history.endGroup();
+                    isUpdating = false;
+                }
+            });
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Заменяет все вхождения одной правкой: одна запись истории и одно уведомление наблюдателей.
+    // Поиск идёт параллельно по снимку, listener получает найденное по мере поиска. Вызывается из очереди команд редактора.
+    public Replacement replaceAll(SearchQuery query, String replacement, Consumer<List<Match>> listener) throws InterruptedException {
+        Replacement done = engine.replaceAll(query, replacement, listener);
+        if (done.getCount() == 0) {
+            return done;
+        }
+        if (done.getRemovedLength() + done.getInsertedLength() <= CHANGE_NOTIFY_CHARS) {
+            notifyObservers(new EditorChange(done.getStart(), done.getRemovedLength(), done.getInsertedText(), version));
+        } else {
+            notifyObservers();  // Большой участок: наблюдатели берут полный текст в фоне
+        }
+        return done;
+    }
+
+    // Применяет изменение, пришедшее от другого редактора, к своему документу без замены всего текста.
+    public void applyChange(EditorChange change) {
+        try {
+            readWriteLock.write(() -> {
+                isUpdating = true;  // Изменение не должно вернуться обратно к источнику
+                try {
+                    Document document = textArea.getDocument();
+                    if (change.getOffset() + change.getRemovedLength() > document.getLength()) {
+                        throw new BadLocationException("Изменение не совпадает с документом: " + change, change.getOffset());
+                    }
+                    if (change.isFromSource()) {  // Загрузка: куски ссылаются на снимок другого редактора
+                        PagedDocument paged = (PagedDocument) document;
+                        if (change.getRemovedLength() > 0) {
+                            paged.removeSource(change.getOffset(), change.getRemovedLength());
+                        }
+                        if (change.getInsertedLength() > 0) {
+                            paged.insertSource(change.getOffset(), change.getSource(), change.getSourceStart(),
+                                    change.getInsertedLength());
+                        }
+                        return;
+                    }
+                    if (change.getRemovedLength() > 0) {
+                        document.remove(change.getOffset(), change.getRemovedLength());  // Удаление заменённого фрагмента
+                    }
+                    if (!change.getInsertedText().isEmpty()) {
+                        document.insertString(change.getOffset(), change.getInsertedText(), null);  // Вставка нового фрагмента
+                    }
+                } catch (BadLocationException e) {
+                    e.printStackTrace();
+                } finally {
+                    isUpdating = false;
+                }
+            });
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Заменяет документ текстовой области (например, документом отображённого файла) и переносит слушателей.
+    // Наблюдатели получают снимок нового документа (без копирования текста).
+    public void setDocument(PagedDocument document) {
+        setDocument(document, null);
+    }
+
+    // То же, но история отмены нового документа продолжается с записей, взятых у него history.detach (вкладки)
+    public void setDocument(PagedDocument document, EditHistory.Records records) {
         try {
             readWriteLock.writeLock();
-            isUpdating = true;  // Установка флага обновления текста
             try {
-                textArea.setText(text);  // Установка нового текста в текстовую область
+                Document old = textArea.getDocument();
+                old.removeDocumentListener(documentListener);
+                textArea.setDocument(document);
+                engine.setDocument(document, records);  // Повторный захват записи: исходное состояние прежнего документа сбрасывается
+                document.addDocumentListener(documentListener);
+                version++;
             } finally {
-                isUpdating = false;  // Сброс флага обновления текста после установки текста
+                readWriteLock.writeUnlock();
             }
         } catch (InterruptedException e) {
             e.printStackTrace();
-        } finally {
-            readWriteLock.writeUnlock();
+            return;
+        }
+        notifyObservers();
+        statusBar.refresh();
+    }
+
+    // Начинает запись макроса: дальнейшие правки документа и команды меню пишутся в него
+    public void startRecording() {
+        recorder = new MacroRecorder();
+    }
+
+    // Заканчивает запись и возвращает макрос; null, если запись не шла
+    public Macro stopRecording() {
+        MacroRecorder current = recorder;
+        recorder = null;
+        return current == null ? null : current.toMacro();
+    }
+
+    // Записывает выполненную команду в макрос, если он записывается
+    public void recordCommand(String name) {
+        MacroRecorder current = recorder;
+        if (current != null) {
+            current.command(name);
         }
     }
 
+    // Воспроизводит макрос без пауз записи. Правки применяются к документу пачками в потоке Swing под блокировкой записи,
+    // между пачками окно перерисовывается; заново выполняются только команды, чьих правок нет в макросе (Save),
+    // и сразу, в месте записи, а не в очереди редактора после всего макроса. Вызывается из очереди команд редактора.
+    public Macro.Stats replay(Macro macro) throws InterruptedException, InvocationTargetException, BadLocationException {
+        Macro.Player player = macro.player(new Macro.Target() {
+            public void insert(int offset, String text) throws BadLocationException {
+                textArea.getDocument().insertString(offset, text, null);
+            }
+
+            public void remove(int offset, int length) throws BadLocationException {
+                textArea.getDocument().remove(offset, length);
+            }
+
+            public void command(String name) {
+                if (commands.isReplayed(name)) {
+                    commands.replay(name);
+                }
+            }
+        });
+        BadLocationException[] failure = new BadLocationException[1];
+        while (!player.isDone() && failure[0] == null) {
+            SwingUtilities.invokeAndWait(() -> {
+                try {
+                    readWriteLock.write(() -> {
+                        try {
+                            player.step(REPLAY_BATCH);
+                        } catch (BadLocationException e) {
+                            failure[0] = e;
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            });  // Отмена команды прерывает ожидание invokeAndWait
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        Macro.Stats stats = player.getStats();
+        EventLog.global().log(id, "MacroPlayed", stats.getNanos(), macro.size());  // Время воспроизведения и размер макроса
+        return stats;
+    }
+
+    // Ставит команду в очередь этого редактора: команды одного документа выполняются по порядку
+    public Future<?> execute(String name, Runnable command) {
+        return commandExecutor.submit(this, name, command);
+    }
+
+    // Отменяет ожидающие и прерывает выполняющуюся команду этого редактора
+    public int cancelCommands() {
+        return commandExecutor.cancel(this);
+    }
+
+    // Количество незавершённых команд этого редактора
+    public int commandsInFlight() {
+        return commandExecutor.inFlight(this);
+    }
+
     // Метод для установки команд действий для пунктов меню
     public void setActionCommands(JMenuItem... items) {
         for (JMenuItem item : items) {
@@ -165,14 +581,7 @@ public class Editor implements ActionListener {
     public void actionPerformed(ActionEvent e) {
         String actionCommand = e.getActionCommand();  // Получение команды действия
 
-        // Создание цепочки ответственности для обработки команд действий
-        ActionHandler handlerChain = new NewFileHandler(this, new OpenFileHandler(this, new SaveFileHandler(this, new SaveAsFileHandler(this, new CloseHandler(this, new ForwardHandler(this, new BackHandler(this, null)))))));
-        handlerChain.handleRequest(actionCommand);  // Обработка команды действия
-
-        // Вызов метода логирования действий через внедренный аспект
-        this.loggingAspect.logEditorActions(actionCommand);
-
-        System.out.println("Action performed: " + actionCommand);
+        commands.dispatch(actionCommand);  // Обработка команды действия (журнал событий и замеры - советы аспектов)
     }
 
 }
\ No newline at end of file
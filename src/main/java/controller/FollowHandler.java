@@ -0,0 +1,119 @@
+package controller;
+
+import document.ArraySource;
+import document.LineIndex;
+import document.PagedDocument;
+import io.FileFollower;
+import io.SaveBaseline;
+import log.EventLog;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Обработчик для команды "Follow": включает и выключает слежение за открытым файлом (tail -f).
+// Дописанный в файл текст добавляется в конец документа одной вставкой без копирования, как при загрузке:
+// в историю отмены, журнал и макрос он не попадает. Курсор в конце документа остаётся в конце.
+// С -Deditor.follow.maxLines=N в документе хранятся только последние N строк, начало удаляется.
+// Править документ можно и во время слежения: записи истории сдвигаются вслед за обрезкой (задетые - удаляются),
+// журнал продолжается с контрольной точки текущего текста.
+// Слежение прекращается, если в окне показан другой документ.
+class FollowHandler implements ActionHandler {
+    static final String FOLLOW = "Follow";
+    static final int MAX_LINES = Integer.getInteger("editor.follow.maxLines", 0);  // Предел строк документа; 0 - без предела
+
+    private final Editor editor;
+
+    FollowHandler(Editor editor) {
+        this.editor = editor;
+    }
+
+    public void handleRequest(String actionCommand) {
+        if (editor.follower != null) {
+            editor.stopFollowing();
+            return;
+        }
+        File file = editor.openedFile;
+        if (file == null) {
+            JOptionPane.showMessageDialog(editor.frame, "Нет открытого файла", FOLLOW, JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        editor.execute(actionCommand, () -> {  // После загрузки файла: она идёт в той же очереди команд
+            try {
+                start(file.toPath());
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    private void start(Path file) throws IOException {
+        PagedDocument document = editor.engine.getDocument();
+        SaveBaseline baseline = editor.engine.baseline;
+        // Документ показывает файл до размера, с которым он открыт или сохранён
+        long position = baseline != null && baseline.getFile().equals(file.toAbsolutePath()) ? baseline.getSize() : Files.size(file);
+        FileFollower follower = new FileFollower(file, document.getCharset(), position, new FileFollower.Listener() {
+            public void appended(char[] text) throws InterruptedException {
+                apply(document, text, false);
+            }
+
+            public void reset() throws InterruptedException {
+                apply(document, null, true);
+            }
+        });
+        editor.follower = follower;
+        follower.start();
+        EventLog.global().log(editor.id, "Follow start", 0, position);  // С какого байта файла идёт слежение
+    }
+
+    // Добавляет текст в конец документа (clear - сначала удаляет весь текст) в потоке Swing под блокировкой редактора.
+    // Поток слежения ждёт вставки, поэтому не обгоняет поток Swing.
+    private void apply(PagedDocument document, char[] text, boolean clear) throws InterruptedException {
+        long started = System.nanoTime();
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                if (editor.engine.getDocument() != document) {
+                    editor.stopFollowing();  // Открыт другой документ
+                    return;
+                }
+                boolean atEnd = editor.textArea.getCaretPosition() == document.getLength();
+                try {
+                    editor.readWriteLock.write(() -> {
+                        try {
+                            if (clear) {
+                                document.removeSource(0, document.getLength());
+                            }
+                            if (text != null) {
+                                document.insertSource(document.getLength(), new ArraySource(text), 0, text.length);
+                            }
+                            trim(document);
+                        } catch (BadLocationException ex) {
+                            ex.printStackTrace();
+                        }
+                    });
+                } catch (InterruptedException ex) {
+                    ex.printStackTrace();
+                }
+                if (atEnd) {
+                    editor.textArea.setCaretPosition(document.getLength());
+                }
+            });
+        } catch (InvocationTargetException ex) {
+            ex.printStackTrace();
+        }
+        EventLog.global().log(editor.id, FOLLOW, System.nanoTime() - started, text == null ? 0 : text.length * 2L);
+    }
+
+    // Удаляет строки в начале документа сверх MAX_LINES (последняя, ещё не законченная строка тоже считается)
+    private void trim(PagedDocument document) throws BadLocationException {
+        LineIndex lines = document.getLineIndex();
+        int extra = lines.getLineCount() - MAX_LINES;
+        if (MAX_LINES > 0 && extra > 0) {
+            document.removeSource(0, lines.getLineStart(extra));
+        }
+    }
+}
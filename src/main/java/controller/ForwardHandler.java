@@ -4,19 +4,18 @@ import javax.swing.*;
 
 class ForwardHandler implements ActionHandler {
     private final Editor editor;
-    private ActionHandler next;
 
-    ForwardHandler(Editor editor, ActionHandler next) {
+    ForwardHandler(Editor editor) {
         this.editor = editor;
-        this.next = next;
     }
 
     public void handleRequest(String actionCommand) {
-        if (actionCommand.equals("Previous")) {
-            editor.previousState = editor.textArea.getText();  // Сохранение предыдущего состояния текстовой области
-            SwingUtilities.invokeLater(() -> editor.undoManager.undo());  // Выполнение операции отмены
-        } else {
-            next.handleRequest(actionCommand);
-        }
+        SwingUtilities.invokeLater(() -> {  // История меняет документ в потоке Swing
+            try {
+                editor.readWriteLock.write(editor.history::undo);  // Отмена последней записи истории
+            } catch (InterruptedException ex) {
+                ex.printStackTrace();
+            }
+        });
     }
 }
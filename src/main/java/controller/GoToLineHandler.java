@@ -0,0 +1,38 @@
+package controller;
+
+import document.LineIndex;
+
+import javax.swing.*;
+
+// Обработчик для команды "Go to line": курсор ставится в начало строки с введённым номером.
+// Начало строки берётся из индекса строк документа, поэтому переход мгновенный при любом размере файла.
+class GoToLineHandler implements ActionHandler {
+    static final String GO_TO_LINE = "Go to line";
+
+    private final Editor editor;
+
+    GoToLineHandler(Editor editor) {
+        this.editor = editor;
+    }
+
+    public void handleRequest(String actionCommand) {
+        LineIndex lines = editor.engine.getDocument().getLineIndex();
+        int count = lines.getLineCount();
+        int current = lines.getLineOfOffset(editor.textArea.getCaretPosition()) + 1;
+        String answer = (String) JOptionPane.showInputDialog(editor.frame, "Line (1 - " + count + "):", GO_TO_LINE,
+                JOptionPane.PLAIN_MESSAGE, null, null, String.valueOf(current));
+        if (answer == null) {
+            return;
+        }
+        int line;
+        try {
+            line = Integer.parseInt(answer.trim());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(editor.frame, "Не номер строки: " + answer, GO_TO_LINE, JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        line = Math.max(1, Math.min(line, lines.getLineCount()));  // Документ мог догрузиться, пока был открыт диалог
+        editor.textArea.requestFocusInWindow();
+        editor.textArea.setCaretPosition(Math.min(lines.getLineStart(line - 1), editor.textArea.getDocument().getLength()));
+    }
+}
@@ -0,0 +1,75 @@
+package controller;
+
+import log.EventLog;
+import macro.Macro;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+
+// Обработчик команд макросов: начало и конец записи, воспроизведение из файла
+class MacroHandler implements ActionHandler {
+    static final String RECORD = "Record macro";
+    static final String STOP = "Stop recording";
+    static final String PLAY = "Play macro";
+
+    private final Editor editor;
+
+    MacroHandler(Editor editor) {
+        this.editor = editor;
+    }
+
+    public void handleRequest(String actionCommand) {
+        switch (actionCommand) {
+            case RECORD:
+                editor.startRecording();  // Дальнейшие правки и команды пишутся в макрос
+                break;
+            case STOP:
+                stopRecording();
+                break;
+            case PLAY:
+                play();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void stopRecording() {
+        Macro macro = editor.stopRecording();
+        if (macro == null) {
+            return;  // Запись не шла
+        }
+        JFileChooser fileChooser = new JFileChooser();  // Создание диалогового окна
+        if (fileChooser.showSaveDialog(editor.frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File selectedFile = fileChooser.getSelectedFile();
+        editor.execute(STOP, () -> {  // Запись файла в очереди документа
+            try {
+                long started = System.nanoTime();
+                macro.write(selectedFile.toPath());
+                EventLog.global().log(editor.id, "MacroSaved", System.nanoTime() - started, macro.size());
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    private void play() {
+        JFileChooser fileChooser = new JFileChooser();  // Создание диалогового окна
+        if (fileChooser.showOpenDialog(editor.frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File selectedFile = fileChooser.getSelectedFile();
+        editor.execute(PLAY, () -> {  // Чтение и воспроизведение в очереди документа, правки применяются в потоке Swing
+            try {
+                editor.replay(Macro.read(selectedFile.toPath()));  // Время и размер пишет в журнал событий сам replay
+            } catch (IOException | BadLocationException | InterruptedException | InvocationTargetException ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+}
@@ -1,54 +1,128 @@
 package controller;
 
+import codec.Codecs;
+import document.MappedFile;
+import document.PagedDocument;
+import io.SaveBaseline;
+import log.EventLog;
+
 import javax.swing.*;
-import java.io.BufferedReader;
+import javax.swing.text.BadLocationException;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ForkJoinPool;
 
-// Обработчик для команды "Open"
+// Обработчик для команды "Open": файл открывается в новой вкладке рабочей области, уже открытый файл просто показывается
 class OpenFileHandler implements ActionHandler {
+    static final long MAPPED_OPEN_THRESHOLD = 8L << 20;  // Файлы больше 8 МБ открываются через отображение в память
+    private static final long APPEND_BYTES = 4L << 20;  // Сколько байт файла декодировать и добавлять в документ за одно обновление
+
     private final Editor editor;
-    private ActionHandler next;
 
-    OpenFileHandler(Editor editor, ActionHandler next) {
+    OpenFileHandler(Editor editor) {
         this.editor = editor;
-        this.next = next;
     }
 
     public void handleRequest(String actionCommand) {
-        if (actionCommand.equals("Open")) {
-            JFileChooser fileChooser = new JFileChooser();  // Создание диалогового окна
-            int returnValue = fileChooser.showOpenDialog(editor.frame);  // Отображение диалогового окна
-
-            if (returnValue == JFileChooser.APPROVE_OPTION) {  // Проверка, был ли файл выбран
-                File selectedFile = fileChooser.getSelectedFile();  // Получение выбранного файла
-
-                // Чтение файла в отдельном потоке
-                new Thread(() -> {
-                    try {
-                        editor.readWriteLock.writeLock();
-                        editor.openedFile = selectedFile;  // Установка открытого файла
-
-                        BufferedReader reader = new BufferedReader(new FileReader(selectedFile));  // BufferedReader для чтения файла
-                        StringBuilder content = new StringBuilder();  //StringBuilder для накопления содержимого файла
-                        String line;
-                        while ((line = reader.readLine()) != null) {  // Чтение файла построчно
-                            content.append(line).append("\n");  // Добавление строки в StringBuilder
+        JFileChooser fileChooser = new JFileChooser();  // Создание диалогового окна
+        int returnValue = fileChooser.showOpenDialog(editor.frame);  // Отображение диалогового окна
+
+        if (returnValue == JFileChooser.APPROVE_OPTION) {  // Проверка, был ли файл выбран
+            File selectedFile = fileChooser.getSelectedFile();  // Получение выбранного файла
+            if (selectedFile.length() > MAPPED_OPEN_THRESHOLD && editor.workspace.find(selectedFile) == null
+                    && !isCompressed(selectedFile)) {
+                openMapped(selectedFile);  // Большой файл загружается постранично
+                return;
+            }
+
+            // Чтение файла в очереди команд документа: файл отображается в память целиком (сжатый - распаковывается)
+            // и показывается в своей вкладке
+            editor.execute(actionCommand, () -> {
+                try {
+                    editor.workspace.open(selectedFile);
+                } catch (IOException | InterruptedException | InvocationTargetException ex) {
+                    ex.printStackTrace();
+                }
+            });
+        }
+    }
+
+    // Сжатый файл не отображается в память постранично, а распаковывается целиком
+    private static boolean isCompressed(File file) {
+        try {
+            return Codecs.detect(file.toPath()) != null;
+        } catch (IOException ex) {
+            return false;  // Ошибку чтения покажет открытие
+        }
+    }
+
+    // Открытие большого файла: файл отображается в память, документ ссылается на его страницы.
+    // Первая страница показывается сразу, остальные декодируются параллельно порциями и добавляются по мере построения индекса,
+    // ход загрузки виден в заголовке окна. Кодировка и перевод строки файла запоминаются в документе для сохранения.
+    private void openMapped(File selectedFile) {
+        editor.execute("Open", () -> {
+            String title = editor.frame.getTitle();
+            PagedDocument document = new PagedDocument();
+            try {
+                MappedFile mapped = MappedFile.map(selectedFile.toPath());
+                document.setCharset(mapped.getCharset());
+
+                document.setLoading(true);
+                SwingUtilities.invokeAndWait(() -> {
+                    editor.workspace.openLoading(selectedFile, document);  // Новая вкладка, открытый файл - выбранный
+                    editor.restartJournal(selectedFile);  // Журнал продолжается правками поверх файла
+                });
+
+                int loaded = 0;  // Символы, уже добавленные в документ
+                mapped.indexNextPage();  // Первая страница - сразу, без ожидания целой порции
+                // Загрузка прекращается, если открыли другой файл или команду отменили
+                while (editor.textArea.getDocument() == document && !Thread.currentThread().isInterrupted()) {
+                    if (loaded == mapped.indexedChars()) {
+                        mapped.indexNextPages(ForkJoinPool.commonPool(), APPEND_BYTES);
+                    }
+                    int from = loaded;
+                    int count = mapped.indexedChars() - loaded;
+                    int percent = mapped.size() == 0 ? 100 : (int) (mapped.indexedBytes() * 100 / mapped.size());
+                    SwingUtilities.invokeAndWait(() -> {  // Ожидание не даёт загрузчику обогнать поток Swing
+                        try {
+                            document.insertSource(document.getLength(), mapped, from, count);
+                        } catch (BadLocationException ex) {
+                            ex.printStackTrace();
                         }
-                        reader.close();  // Закрытие файла
-
-                        // Обновление текстовой области в главном потоке
-                        SwingUtilities.invokeLater(() -> editor.textArea.setText(content.toString()));  // Установка текста в текстовую область
-                    } catch (IOException | InterruptedException ex) {
-                        ex.printStackTrace();
-                    } finally {
-                        editor.readWriteLock.writeUnlock();
+                        document.setLineSeparator(mapped.getLineSeparator());  // По уже прочитанной части
+                        editor.frame.setTitle(title + " - " + selectedFile.getName() + " (" + percent + "%)");
+                    });
+                    loaded += count;
+                    if (mapped.isIndexed()) {
+                        break;
                     }
-                }).start();
+                }
+                if (mapped.isTruncated()) {
+                    EventLog.global().log(editor.id, "Open truncated", 0, loaded * 2L);  // Сколько текста поместилось в документ
+                    editor.statusBar.show("Файл слишком большой, загружено " + loaded + " символов");
+                } else if (mapped.isIndexed()) {
+                    SwingUtilities.invokeAndWait(() -> setBaseline(document, mapped));
+                }
+            } catch (IOException | InterruptedException | InvocationTargetException ex) {
+                ex.printStackTrace();
+            } finally {
+                document.setLoading(false);
+                SwingUtilities.invokeLater(() -> editor.frame.setTitle(title));
             }
-        } else {
-            next.handleRequest(actionCommand);
+        });
+    }
+
+    // Загруженный без правок документ совпадает с файлом: следующее сохранение может переписать только изменённые места
+    private void setBaseline(PagedDocument document, MappedFile mapped) {
+        if (editor.textArea.getDocument() != document || document.isModified()) {
+            return;
+        }
+        try {
+            editor.engine.baseline = SaveBaseline.ofMapped(mapped, document.snapshot(), mapped.getCharset());
+            editor.engine.dirtyRanges.reset();  // Загрузка страниц не считается изменением
+        } catch (IOException ex) {
+            ex.printStackTrace();
         }
     }
 }
@@ -1,50 +1,245 @@
 package controller;
 
+import metrics.EditorMetrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+// Блокировка чтения и записи редактора на основе StampedLock.
+// Повторный захват тем же потоком не блокирует (чтение внутри записи, запись внутри записи, чтение внутри чтения),
+// поэтому наблюдатель может вызвать setText изнутри уведомления. Для коротких чтений есть оптимистичный режим
+// без захвата. Блокировка считает захваты, время ожидания и наибольшее время удержания; время ожидания первого захвата
+// пишется и в гистограммы EditorMetrics.
 public class ReadWriteLock {
-    private int readers = 0; // Читатели
-    private int writers = 0; // Писатели
 
-    private boolean writerActive = false; // Наличие писателей
+    // Что держит текущий поток
+    private static final class Holder {
+        private long stamp;  // Штамп StampedLock, 0 - ничего не захвачено
+        private int reads;  // Вложенные захваты чтения
+        private int writes;  // Вложенные захваты записи
+        private boolean upgraded;  // Запись получена из чтения, при освобождении вернуть чтение
+        private long acquiredAt;  // Время первого захвата, для времени удержания
+        private long writeAcquiredAt;  // Время захвата записи (при повышении из чтения - позже acquiredAt)
+    }
+
+    // Неизменяемая сводка счётчиков блокировки
+    public static final class Stats {
+        private final long readAcquisitions;
+        private final long writeAcquisitions;
+        private final long optimisticReads;
+        private final long optimisticFailures;
+        private final long readWaitNanos;
+        private final long writeWaitNanos;
+        private final long maxReadHoldNanos;
+        private final long maxWriteHoldNanos;
+
+        Stats(long readAcquisitions, long writeAcquisitions, long optimisticReads, long optimisticFailures,
+              long readWaitNanos, long writeWaitNanos, long maxReadHoldNanos, long maxWriteHoldNanos) {
+            this.readAcquisitions = readAcquisitions;
+            this.writeAcquisitions = writeAcquisitions;
+            this.optimisticReads = optimisticReads;
+            this.optimisticFailures = optimisticFailures;
+            this.readWaitNanos = readWaitNanos;
+            this.writeWaitNanos = writeWaitNanos;
+            this.maxReadHoldNanos = maxReadHoldNanos;
+            this.maxWriteHoldNanos = maxWriteHoldNanos;
+        }
+
+        public long getReadAcquisitions() {
+            return readAcquisitions;
+        }
+
+        public long getWriteAcquisitions() {
+            return writeAcquisitions;
+        }
+
+        public long getOptimisticReads() {
+            return optimisticReads;
+        }
+
+        public long getOptimisticFailures() {
+            return optimisticFailures;
+        }
+
+        public long getReadWaitNanos() {
+            return readWaitNanos;
+        }
+
+        public long getWriteWaitNanos() {
+            return writeWaitNanos;
+        }
+
+        public long getMaxReadHoldNanos() {
+            return maxReadHoldNanos;
+        }
+
+        public long getMaxWriteHoldNanos() {
+            return maxWriteHoldNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "reads=" + readAcquisitions + ", writes=" + writeAcquisitions
+                    + ", optimistic=" + optimisticReads + " (failed " + optimisticFailures + ")"
+                    + ", readWait=" + readWaitNanos / 1_000_000 + "ms, writeWait=" + writeWaitNanos / 1_000_000 + "ms"
+                    + ", maxReadHold=" + maxReadHoldNanos / 1_000_000 + "ms, maxWriteHold=" + maxWriteHoldNanos / 1_000_000 + "ms";
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final ThreadLocal<Holder> holders = ThreadLocal.withInitial(Holder::new);
+
+    private final LongAdder readAcquisitions = new LongAdder();
+    private final LongAdder writeAcquisitions = new LongAdder();
+    private final LongAdder optimisticReads = new LongAdder();
+    private final LongAdder optimisticFailures = new LongAdder();
+    private final LongAdder readWaitNanos = new LongAdder();
+    private final LongAdder writeWaitNanos = new LongAdder();
+    private final AtomicLong maxReadHoldNanos = new AtomicLong();
+    private final AtomicLong maxWriteHoldNanos = new AtomicLong();
 
-    // Блокировки для чтения
-    public synchronized void readLock() throws InterruptedException {
-        // Пока есть ждущие писатели или уже есть писатель, поток будет ждать
-        while (writers > 0 || writerActive) {
-            wait();
+    // Блокировка для чтения
+    public void readLock() throws InterruptedException {
+        Holder holder = holders.get();
+        if (holder.stamp != 0) {
+            holder.reads++;  // Уже держим чтение или запись - повторный захват
+            return;
         }
-        // Увеличиваем количество читателей
-        readers++;
+        long started = System.nanoTime();
+        holder.stamp = lock.readLockInterruptibly();
+        holder.acquiredAt = System.nanoTime();
+        holder.reads = 1;
+        readWaitNanos.add(holder.acquiredAt - started);
+        EditorMetrics.LOCK_READ_WAIT.record(holder.acquiredAt - started);
+        readAcquisitions.increment();
     }
 
     // Разблокировка для чтения
-    public synchronized void readUnlock() {
-        // Уменьшаем количество читателей
-        readers--;
-        // Если больше нет читателей, уведомляем все ожидающие потоки
-        if (readers == 0) {
-            notifyAll();
+    public void readUnlock() {
+        Holder holder = holders.get();
+        if (holder.reads == 0) {
+            throw new IllegalMonitorStateException("Поток не держит блокировку чтения");
+        }
+        holder.reads--;
+        if (holder.reads == 0 && holder.writes == 0) {
+            maxReadHoldNanos.accumulateAndGet(System.nanoTime() - holder.acquiredAt, Math::max);
+            lock.unlockRead(holder.stamp);
+            holder.stamp = 0;
         }
     }
 
     // Метод блокировки для записи
-    public synchronized void writeLock() throws InterruptedException {
-        // Увеличиваем количество писателей
-        writers++;
-        // Пока есть читатели или работающий писатель, поток будет ждать
-        while (readers > 0 || writerActive) {
-            wait();
+    public void writeLock() throws InterruptedException {
+        Holder holder = holders.get();
+        if (holder.writes > 0) {
+            holder.writes++;  // Повторный захват записи
+            return;
+        }
+        long started = System.nanoTime();
+        if (holder.reads > 0) {
+            // Запись изнутри чтения: пробуем повысить без ожидания, иначе отпускаем чтение и ждём запись,
+            // чтобы поток не ждал сам себя
+            long stamp = lock.tryConvertToWriteLock(holder.stamp);
+            if (stamp == 0) {
+                lock.unlockRead(holder.stamp);
+                try {
+                    stamp = lock.writeLockInterruptibly();
+                } catch (InterruptedException e) {
+                    holder.stamp = lock.readLock();  // Поток по-прежнему должен держать своё чтение
+                    throw e;
+                }
+            }
+            holder.stamp = stamp;
+            holder.upgraded = true;
+        } else {
+            holder.stamp = lock.writeLockInterruptibly();
+            holder.acquiredAt = System.nanoTime();
         }
-        // Писатель работает
-        writerActive = true;
-        // Уменьшаем количество писателей, один из них уже работает
-        writers--;
+        holder.writes = 1;
+        holder.writeAcquiredAt = System.nanoTime();
+        long waited = holder.writeAcquiredAt - started;
+        writeWaitNanos.add(waited);
+        EditorMetrics.LOCK_WRITE_WAIT.record(waited);
+        writeAcquisitions.increment();
     }
 
     // Метод разблокировки для записи
-    public synchronized void writeUnlock() {
-        // Писатель закончил работу
-        writerActive = false;
-        // Уведомляем все ожидающие потоки
-        notifyAll();
+    public void writeUnlock() {
+        Holder holder = holders.get();
+        if (holder.writes == 0) {
+            throw new IllegalMonitorStateException("Поток не держит блокировку записи");
+        }
+        holder.writes--;
+        if (holder.writes > 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        maxWriteHoldNanos.accumulateAndGet(now - holder.writeAcquiredAt, Math::max);
+        if (holder.reads > 0) {
+            holder.stamp = lock.tryConvertToReadLock(holder.stamp);  // Поток ещё держит чтение - запись превращается в чтение
+        } else {
+            if (holder.upgraded) {  // Чтение, из которого повышена запись, отпущено внутри записи
+                maxReadHoldNanos.accumulateAndGet(now - holder.acquiredAt, Math::max);
+            }
+            lock.unlockWrite(holder.stamp);
+            holder.stamp = 0;
+        }
+        holder.upgraded = false;
+    }
+
+    // Оптимистичное чтение: возвращает штамп без захвата, 0 - если сейчас идёт запись
+    public long tryOptimisticRead() {
+        optimisticReads.increment();
+        return lock.tryOptimisticRead();
+    }
+
+    // Проверяет, что после tryOptimisticRead не было записи
+    public boolean validate(long stamp) {
+        boolean valid = lock.validate(stamp);
+        if (!valid) {
+            optimisticFailures.increment();
+        }
+        return valid;
+    }
+
+    // Читает значение оптимистично; если за это время была запись, повторяет чтение под блокировкой
+    public <T> T read(Supplier<T> reader) throws InterruptedException {
+        if (holders.get().stamp == 0) {
+            long stamp = tryOptimisticRead();
+            if (stamp != 0) {
+                T value = reader.get();
+                if (validate(stamp)) {
+                    return value;
+                }
+            }
+        }
+        readLock();
+        try {
+            return reader.get();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    // Выполняет действие под блокировкой записи
+    public void write(Runnable action) throws InterruptedException {
+        writeLock();
+        try {
+            action.run();
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    // Держит ли текущий поток блокировку записи
+    public boolean isWriteLockedByCurrentThread() {
+        return holders.get().writes > 0;
+    }
+
+    public Stats getStats() {
+        return new Stats(readAcquisitions.sum(), writeAcquisitions.sum(), optimisticReads.sum(), optimisticFailures.sum(),
+                readWaitNanos.sum(), writeWaitNanos.sum(), maxReadHoldNanos.get(), maxWriteHoldNanos.get());
     }
 }
@@ -2,46 +2,30 @@ package controller;
 
 import javax.swing.*;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 
 class SaveAsFileHandler implements ActionHandler {
     private final Editor editor;
-    private ActionHandler next;
 
-    SaveAsFileHandler(Editor editor, ActionHandler next) {
+    SaveAsFileHandler(Editor editor) {
         this.editor = editor;
-        this.next = next;
     }
 
     public void handleRequest(String actionCommand) {
-        if (actionCommand.equals("Save as")) {
-            new Thread(() -> {  // Создание нового потока
-                try {
-                    editor.readWriteLock.writeLock();
-                    JFileChooser fileChooser = new JFileChooser();  // Создание диалогового окна
-                    int returnValue = fileChooser.showSaveDialog(editor.frame);  // Отображение диалогового окна и получение результата
-
-                    if (returnValue == JFileChooser.APPROVE_OPTION) {  // Проверка, был ли файл выбран
-                        File selectedFile = fileChooser.getSelectedFile();  // Получение выбранного файла
-                        editor.openedFile = selectedFile;  // Установка открытого файла
+        editor.execute(actionCommand, () -> {  // Команда выполняется в очереди документа
+            JFileChooser fileChooser = new JFileChooser();  // Создание диалогового окна
+            int returnValue = fileChooser.showSaveDialog(editor.frame);  // Отображение диалогового окна и получение результата
 
-                        try {
-                            FileWriter writer = new FileWriter(selectedFile);  // FileWriter для записи в файл
-                            writer.write(editor.textArea.getText());  // Запись содержимого текстовой области в файл
-                            writer.close();  // Закрытие файла
-                        } catch (IOException ex) {
-                            ex.printStackTrace();
-                        }
-                    }
-                } catch (InterruptedException ex) {
+            if (returnValue == JFileChooser.APPROVE_OPTION) {  // Проверка, был ли файл выбран
+                File selectedFile = fileChooser.getSelectedFile();  // Получение выбранного файла
+                try {
+                    editor.readWriteLock.write(() -> editor.openedFile = selectedFile);  // Установка открытого файла
+                    editor.save(selectedFile);  // Запись снимка текста без удержания блокировки
+                    editor.workspace.refreshTitle();  // Вкладка называется по новому файлу
+                } catch (IOException | InterruptedException ex) {
                     ex.printStackTrace();
-                } finally {
-                    editor.readWriteLock.writeUnlock();
                 }
-            }).start();
-        } else {
-            next.handleRequest(actionCommand);
-        }
+            }
+        });
     }
 }
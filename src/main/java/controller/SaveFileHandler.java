@@ -2,60 +2,43 @@ package controller;
 
 import javax.swing.*;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 
 class SaveFileHandler implements ActionHandler {
     private final Editor editor;
-    private ActionHandler next;
 
-    SaveFileHandler(Editor editor, ActionHandler next) {
+    SaveFileHandler(Editor editor) {
         this.editor = editor;
-        this.next = next;
     }
 
     public void handleRequest(String actionCommand) {
-        if (actionCommand.equals("Save")) {
-            new Thread(() -> {  // Создание нового потока для обработки команды сохранения файла
-                try {
-                    editor.readWriteLock.writeLock();
-                    saveFile();  // Вызов метода сохранения файла
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                } finally {
-                    editor.readWriteLock.writeUnlock();
-                }
-            }).start();
-        } else {
-            next.handleRequest(actionCommand);
-        }
+        editor.execute(actionCommand, this::saveFile);  // Сохранение выполняется в очереди документа
     }
 
-    private void saveFile() {
-        if (editor.openedFile != null) {  // Проверка, открыт ли файл
-            try {
-                FileWriter writer = new FileWriter(editor.openedFile);  // Создание FileWriter для записи в файл
-                writer.write(editor.textArea.getText());  // Запись содержимого текстовой области в файл
-                writer.close();  // Закрытие файла
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
-        } else {
-            JFileChooser fileChooser = new JFileChooser();  // Создание диалогового окна
-            int returnValue = fileChooser.showSaveDialog(editor.frame);  // Отображение диалогового окна
+    // При воспроизведении макроса сохраняется текст на момент записи команды, а не после всего макроса
+    @Override
+    public void replayRequest(String actionCommand) {
+        saveFile();
+    }
 
-            if (returnValue == JFileChooser.APPROVE_OPTION) {  // Проверка, был ли файл выбран
-                File selectedFile = fileChooser.getSelectedFile();  // Получение выбранного файла
-                editor.openedFile = selectedFile;  // Установка открытого файла
+    private void saveFile() {
+        try {
+            File file = editor.readWriteLock.read(() -> editor.openedFile);  // Текущий открытый файл
+            if (file == null) {  // Файл ещё не сохранялся
+                JFileChooser fileChooser = new JFileChooser();  // Создание диалогового окна
+                int returnValue = fileChooser.showSaveDialog(editor.frame);  // Отображение диалогового окна
 
-                try {
-                    FileWriter writer = new FileWriter(selectedFile);  // FileWriter для записи в файл
-                    writer.write(editor.textArea.getText());  // Запись содержимого текстовой области в файл
-                    writer.close();  // Закрытие файла
-                } catch (IOException ex) {
-                    ex.printStackTrace();
+                if (returnValue != JFileChooser.APPROVE_OPTION) {  // Файл не выбран
+                    return;
                 }
+                file = fileChooser.getSelectedFile();  // Получение выбранного файла
+                File selectedFile = file;
+                editor.readWriteLock.write(() -> editor.openedFile = selectedFile);  // Установка открытого файла
+                editor.workspace.refreshTitle();  // Вкладка называется по файлу
             }
+            editor.save(file);  // Запись снимка текста без удержания блокировки
+        } catch (IOException | InterruptedException ex) {
+            ex.printStackTrace();
         }
     }
 }
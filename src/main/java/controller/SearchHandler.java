@@ -0,0 +1,161 @@
+package controller;
+
+import log.EventLog;
+import search.DocumentSearch;
+import search.Match;
+import search.Replacement;
+import search.SearchQuery;
+
+import javax.swing.*;
+import java.awt.GridLayout;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.PatternSyntaxException;
+
+// Обработчик команд поиска: "Find" (все вхождения, выделяется ближайшее после курсора), "Find next" и "Replace all".
+// Поиск идёт по снимку документа в очереди команд, а не по textArea.getText() в потоке Swing;
+// число найденного растёт в заголовке окна по мере поиска.
+class SearchHandler implements ActionHandler {
+    static final String FIND = "Find";
+    static final String FIND_NEXT = "Find next";
+    static final String REPLACE_ALL = "Replace all";
+
+    private final Editor editor;
+    private volatile SearchQuery query;  // Последний поиск
+    private String replacement = "";
+
+    SearchHandler(Editor editor) {
+        this.editor = editor;
+    }
+
+    public void handleRequest(String actionCommand) {
+        switch (actionCommand) {
+            case FIND:
+                if (ask(false)) {
+                    findAll();
+                }
+                break;
+            case FIND_NEXT:
+                if (query != null || ask(false)) {
+                    findNext();
+                }
+                break;
+            case REPLACE_ALL:
+                if (ask(true)) {
+                    replaceAll();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Диалог поиска; false - отменён или в выражении ошибка
+    private boolean ask(boolean replace) {
+        SearchQuery previous = query;
+        JTextField findField = new JTextField(previous == null ? "" : previous.getText(), 30);
+        JTextField replaceField = new JTextField(replacement, 30);
+        JCheckBox regexBox = new JCheckBox("Regular expression", previous != null && previous.isRegex());
+        JCheckBox caseBox = new JCheckBox("Match case", previous == null || previous.isMatchCase());
+        JPanel panel = new JPanel(new GridLayout(0, 1));
+        panel.add(new JLabel("Find:"));
+        panel.add(findField);
+        if (replace) {
+            panel.add(new JLabel("Replace with:"));
+            panel.add(replaceField);
+        }
+        panel.add(regexBox);
+        panel.add(caseBox);
+
+        int returnValue = JOptionPane.showConfirmDialog(editor.frame, panel, replace ? REPLACE_ALL : FIND,
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (returnValue != JOptionPane.OK_OPTION || findField.getText().isEmpty()) {
+            return false;
+        }
+        try {
+            query = regexBox.isSelected()
+                    ? SearchQuery.regex(findField.getText(), caseBox.isSelected())
+                    : SearchQuery.literal(findField.getText(), caseBox.isSelected());
+        } catch (PatternSyntaxException ex) {
+            JOptionPane.showMessageDialog(editor.frame, ex.getMessage(), FIND, JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+        if (replace) {
+            replacement = replaceField.getText();
+        }
+        return true;
+    }
+
+    private void findAll() {
+        SearchQuery current = query;
+        int caret = editor.textArea.getSelectionStart();
+        String title = editor.frame.getTitle();
+        editor.execute(FIND, () -> {
+            long started = System.nanoTime();
+            int length = editor.snapshot().length();
+            List<Match> matches = DocumentSearch.findAll(editor.snapshot(), current, ForkJoinPool.commonPool(), progress(title));
+            EventLog.global().log(editor.id, FIND, System.nanoTime() - started, length * 2L);
+            Match next = matches.isEmpty() ? null : matches.get(0);
+            for (Match match : matches) {
+                if (match.getStart() >= caret) {
+                    next = match;
+                    break;
+                }
+            }
+            editor.statusBar.show("Найдено " + matches.size());
+            Match selected = next;
+            SwingUtilities.invokeLater(() -> {
+                editor.frame.setTitle(title);
+                select(selected);
+            });
+        });
+    }
+
+    private void findNext() {
+        SearchQuery current = query;
+        int caret = editor.textArea.getSelectionEnd();  // Выделенное вхождение пропускается
+        editor.execute(FIND_NEXT, () -> {
+            Match next = DocumentSearch.findNext(editor.snapshot(), current, caret);
+            SwingUtilities.invokeLater(() -> select(next));
+        });
+    }
+
+    private void replaceAll() {
+        SearchQuery current = query;
+        String with = replacement;
+        String title = editor.frame.getTitle();
+        editor.execute(REPLACE_ALL, () -> {
+            long started = System.nanoTime();
+            try {
+                Replacement done = editor.replaceAll(current, with, progress(title));
+                EventLog.global().log(editor.id, REPLACE_ALL, System.nanoTime() - started, done.getInsertedLength() * 2L);
+                editor.statusBar.show("Заменено " + done.getCount());
+            } catch (InterruptedException ex) {
+                ex.printStackTrace();
+            } finally {
+                SwingUtilities.invokeLater(() -> editor.frame.setTitle(title));
+            }
+        });
+    }
+
+    // Слушатель поиска: число найденного в заголовке окна
+    private Consumer<List<Match>> progress(String title) {
+        AtomicInteger found = new AtomicInteger();
+        return part -> {
+            int count = found.addAndGet(part.size());
+            SwingUtilities.invokeLater(() -> editor.frame.setTitle(title + " - найдено " + count));
+        };
+    }
+
+    // Выделяет вхождение в текстовой области
+    private void select(Match match) {
+        if (match == null) {
+            JOptionPane.showMessageDialog(editor.frame, "Не найдено: " + query.getText(), FIND, JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        editor.textArea.requestFocusInWindow();
+        editor.textArea.select(match.getStart(), match.getEnd());
+    }
+}
@@ -0,0 +1,57 @@
+package controller;
+
+import document.LineIndex;
+import document.PagedDocument;
+
+import javax.swing.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Строка состояния под текстом: строка и столбец курсора, число строк документа и итог последней команды (поиска, замены).
+// Номера берутся из индекса строк документа за O(log n), а не из текста; обновления из любых потоков
+// склеиваются в одно в потоке Swing, поэтому загрузка большого файла не засыпает очередь событий.
+public class StatusBar {
+
+    public final JLabel label = new JLabel(" ");
+
+    private final Editor editor;
+    private final AtomicBoolean scheduled = new AtomicBoolean();  // Обновление уже стоит в очереди Swing
+    private volatile String message;  // Итог последней команды; держится до следующей правки пользователя
+
+    StatusBar(Editor editor) {
+        this.editor = editor;
+        label.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        editor.textArea.addCaretListener(e -> refresh());
+    }
+
+    // Запрашивает обновление строки состояния; можно вызывать из любого потока
+    public void refresh() {
+        if (scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::update);
+        }
+    }
+
+    // Показывает итог команды; можно вызывать из любого потока
+    public void show(String message) {
+        this.message = message;
+        refresh();
+    }
+
+    // Убирает итог команды: после правки он уже не про этот текст
+    public void clearMessage() {
+        if (message != null) {
+            message = null;
+            refresh();
+        }
+    }
+
+    private void update() {
+        scheduled.set(false);
+        PagedDocument document = (PagedDocument) editor.textArea.getDocument();
+        LineIndex lines = document.getLineIndex();
+        int caret = editor.textArea.getCaretPosition();
+        int line = lines.getLineOfOffset(caret);
+        int column = Math.max(0, caret - lines.getLineStart(line));
+        label.setText("Ln " + (line + 1) + ", Col " + (column + 1) + "    Lines: " + lines.getLineCount()
+                + (document.isLoading() ? " (loading)" : "") + (message != null ? "    " + message : ""));
+    }
+}
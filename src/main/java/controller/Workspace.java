@@ -0,0 +1,200 @@
+package controller;
+
+import document.PagedDocument;
+import engine.DocumentEngine;
+import log.EventLog;
+import workspace.Buffer;
+import workspace.BufferCache;
+import workspace.SwapFile;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Рабочая область редактора: несколько документов во вкладках над одной текстовой областью.
+// При переключении вкладки текстовая область получает документ вкладки, вместе с ним возвращаются исходное состояние
+// файла, изменённые диапазоны (сохранение на месте продолжает работать) и история отмены. Пока вкладка скрыта,
+// её документ меняет только догрузка файла в конец, поэтому записи истории остаются верными.
+// Документы хранит BufferCache: недавно использованные остаются в памяти и показываются сразу, остальные вытесняются
+// в пределах бюджета (-Deditor.bufferCacheMB, по умолчанию четверть кучи).
+public class Workspace {
+
+    public final JTabbedPane tabs = new JTabbedPane(JTabbedPane.TOP, JTabbedPane.SCROLL_TAB_LAYOUT);  // Вкладки без содержимого: документ показывает textArea
+
+    private final Editor editor;
+    private final SwapFile swap;
+    private final BufferCache cache;
+    private final List<Buffer> order = new ArrayList<>();  // Документы в порядке вкладок; меняется только в потоке Swing
+    private volatile Buffer active;  // Документ, показанный в окне
+
+    Workspace(Editor editor) {
+        this.editor = editor;
+        this.swap = new SwapFile(defaultSwapDirectory().resolve("editor" + editor.id + "-" + ProcessHandle.current().pid() + ".swap"));
+        this.cache = new BufferCache(defaultBudgetBytes(), swap);
+        Buffer first = cache.add(null, editor.engine.getDocument(), null);
+        order.add(first);
+        tabs.addTab(first.getName(), null);
+        cache.activate(first);
+        active = first;
+        tabs.addChangeListener(e -> {  // Пользователь выбрал вкладку
+            int index = tabs.getSelectedIndex();
+            if (index >= 0 && order.get(index) != active) {
+                Buffer selected = order.get(index);
+                editor.execute("Switch tab", () -> {
+                    try {
+                        switchTo(selected);
+                    } catch (IOException | InterruptedException | InvocationTargetException ex) {
+                        ex.printStackTrace();
+                    }
+                });
+            }
+        });
+    }
+
+    // Каталог файлов подкачки по умолчанию
+    public static Path defaultSwapDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".texteditor", "swap");
+    }
+
+    // Бюджет памяти документов: -Deditor.bufferCacheMB или четверть наибольшей кучи
+    static long defaultBudgetBytes() {
+        return Long.getLong("editor.bufferCacheMB", Runtime.getRuntime().maxMemory() / 4 >> 20) << 20;
+    }
+
+    public BufferCache getCache() {
+        return cache;
+    }
+
+    // Открывает файл в новой вкладке или переключается на уже открытый. Вызывается из очереди команд редактора.
+    public void open(File file) throws IOException, InterruptedException, InvocationTargetException {
+        Buffer buffer = cache.find(file);
+        if (buffer == null) {
+            DocumentEngine.Opened opened = DocumentEngine.read(file.toPath(), null);
+            if (opened.codec != null) {  // Сжатый файл: время распаковки и объём до и после
+                EventLog.global().log(editor.id, "Decompress " + opened.codec.getCodec(), opened.codec.getNanos(),
+                        opened.codec.getTextBytes());
+            }
+            buffer = cache.add(file, opened.document, opened.baseline);
+        }
+        switchTo(buffer);
+    }
+
+    // Новый пустой документ в новой вкладке. Вызывается из очереди команд редактора.
+    public void newDocument() throws IOException, InterruptedException, InvocationTargetException {
+        switchTo(cache.add(null, new PagedDocument(), null));
+    }
+
+    // Новая вкладка с документом, который ещё догружается (большой файл). Вызывается в потоке Swing.
+    public void openLoading(File file, PagedDocument document) {
+        show(cache.add(file, document, null));
+    }
+
+    // Уже открытый файл или null
+    public Buffer find(File file) {
+        return cache.find(file);
+    }
+
+    // Показывает документ в окне; вытесненный документ сначала возвращается в память. Вызывается из очереди команд редактора.
+    public void switchTo(Buffer buffer) throws IOException, InterruptedException, InvocationTargetException {
+        long started = System.nanoTime();
+        PagedDocument document = cache.load(buffer);
+        SwingUtilities.invokeAndWait(() -> show(buffer));
+        cache.trim();  // Прежний документ больше не активен и может быть вытеснен
+        EventLog.global().log(editor.id, "Switch tab", System.nanoTime() - started, document.getLength() * 2L);
+    }
+
+    // Закрывает вкладку; последняя вкладка заменяется пустым документом. Вызывается из очереди команд редактора.
+    public void close(Buffer buffer) throws IOException, InterruptedException, InvocationTargetException {
+        if (buffer == active) {
+            Buffer[] next = new Buffer[1];
+            SwingUtilities.invokeAndWait(() -> {
+                int index = order.indexOf(buffer);
+                next[0] = order.size() > 1 ? order.get(index > 0 ? index - 1 : 1) : null;
+            });
+            if (next[0] != null) {
+                switchTo(next[0]);
+            } else {
+                newDocument();
+            }
+        }
+        cache.remove(buffer);
+        SwingUtilities.invokeAndWait(() -> {
+            int index = order.indexOf(buffer);
+            order.remove(index);
+            tabs.removeTabAt(index);
+        });
+    }
+
+    // Закрывает показанную вкладку
+    public void closeActive() throws IOException, InterruptedException, InvocationTargetException {
+        close(active);
+    }
+
+    // Обновляет заголовок показанной вкладки после Save as или восстановления из журнала
+    public void refreshTitle() {
+        SwingUtilities.invokeLater(() -> {
+            int index = order.indexOf(active);
+            File file = editor.openedFile;
+            if (index >= 0) {
+                tabs.setTitleAt(index, file == null ? "Untitled" : file.getName());
+            }
+        });
+    }
+
+    // Удаляет файл подкачки (окно закрыто)
+    public void dispose() {
+        try {
+            swap.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Меняет документ окна (документ уже в памяти): состояние прежнего документа забирается у редактора, состояние нового ему отдаётся
+    private void show(Buffer buffer) {
+        if (buffer == active) {
+            return;
+        }
+        try {
+            editor.readWriteLock.writeLock();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Buffer previous = active;
+            if (previous != null) {
+                cache.deactivate(previous, editor.openedFile, editor.engine.getDocument(), editor.engine.baseline,
+                        editor.engine.dirtyRanges.reset(), editor.history.detach());
+                int index = order.indexOf(previous);
+                if (index >= 0) {
+                    tabs.setTitleAt(index, previous.getName());
+                }
+            }
+            editor.setDocument(buffer.getDocument(), buffer.getHistory());  // Повторный захват записи; изменённые диапазоны и исходное состояние сбрасываются
+            editor.engine.baseline = buffer.getBaseline();
+            editor.engine.dirtyRanges.restore(buffer.getDirty());
+            editor.openedFile = buffer.getFile();
+            cache.activate(buffer);
+            active = buffer;  // До выбора вкладки: слушатель вкладок не должен переключать ещё раз
+            if (!order.contains(buffer)) {
+                order.add(buffer);
+                tabs.addTab(buffer.getName(), null);
+            }
+            tabs.setSelectedIndex(order.indexOf(buffer));
+            if (buffer.getFile() != null && editor.engine.baseline != null && editor.engine.dirtyRanges.isEmpty()) {
+                editor.restartJournal(buffer.getFile());  // Документ совпадает с файлом - журнал продолжается от файла
+            } else {
+                editor.engine.checkpointJournal();  // Журнал продолжается от снимка нового документа
+            }
+        } finally {
+            editor.readWriteLock.writeUnlock();
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package diff;
+
+import document.TextSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Разница двух снимков: участки по возрастанию строк. Это и список для показа рядом, и наименьшая правка:
+// заменить в первом тексте участки на строки второго (DocumentEngine.apply) - получится второй текст.
+public final class DiffResult {
+
+    private final TextSnapshot a;
+    private final TextSnapshot b;
+    private final int linesA;
+    private final int linesB;
+    private final List<Hunk> hunks;
+    private final long nanos;  // Время сравнения
+
+    DiffResult(TextSnapshot a, TextSnapshot b, int linesA, int linesB, List<Hunk> hunks, long nanos) {
+        this.a = a;
+        this.b = b;
+        this.linesA = linesA;
+        this.linesB = linesB;
+        this.hunks = Collections.unmodifiableList(hunks);
+        this.nanos = nanos;
+    }
+
+    public TextSnapshot getA() {
+        return a;
+    }
+
+    public TextSnapshot getB() {
+        return b;
+    }
+
+    public int getLineCountA() {
+        return linesA;
+    }
+
+    public int getLineCountB() {
+        return linesB;
+    }
+
+    public List<Hunk> getHunks() {
+        return hunks;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public boolean isEmpty() {
+        return hunks.isEmpty();
+    }
+
+    // Правка из одного участка (принять одно различие)
+    public DiffResult only(Hunk hunk) {
+        return new DiffResult(a, b, linesA, linesB, Collections.singletonList(hunk), 0);
+    }
+
+    // Разница в обратную сторону: правка превращает второй текст в первый
+    public DiffResult reversed() {
+        List<Hunk> swapped = new ArrayList<>(hunks.size());
+        for (Hunk hunk : hunks) {
+            swapped.add(hunk.reversed());
+        }
+        return new DiffResult(b, a, linesB, linesA, swapped, nanos);
+    }
+
+    // Разница после того, как участок с номером index применён к первому тексту и тот стал text: участок исчезает,
+    // следующие сдвигаются на разницу длин. Сравнивать тексты заново не нужно.
+    public DiffResult applied(int index, TextSnapshot text) {
+        Hunk hunk = hunks.get(index);
+        int lines = hunk.getCountB() - hunk.getCountA();
+        int chars = hunk.getLengthB() - hunk.getLengthA();
+        List<Hunk> rest = new ArrayList<>(hunks.size() - 1);
+        rest.addAll(hunks.subList(0, index));
+        for (Hunk other : hunks.subList(index + 1, hunks.size())) {
+            rest.add(other.shifted(lines, chars));
+        }
+        return new DiffResult(text, b, linesA + lines, linesB, rest, nanos);
+    }
+
+    // Разница после того, как применены все участки и первый текст стал text (совпадает со вторым)
+    public DiffResult applied(TextSnapshot text) {
+        return new DiffResult(text, b, linesB, linesB, Collections.emptyList(), nanos);
+    }
+
+    // Строка второго текста, соответствующая строке первого (для согласованной прокрутки)
+    public int lineInB(int lineA) {
+        int low = 0;
+        int high = hunks.size();
+        while (low < high) {  // Первый участок, начинающийся после lineA
+            int middle = (low + high) >>> 1;
+            if (hunks.get(middle).getStartA() <= lineA) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int lineB = lineA;
+        if (low > 0) {
+            Hunk hunk = hunks.get(low - 1);
+            int endA = hunk.getStartA() + hunk.getCountA();
+            lineB = lineA < endA
+                    ? hunk.getStartB() + Math.min(lineA - hunk.getStartA(), Math.max(0, hunk.getCountB() - 1))
+                    : lineA + hunk.getStartB() + hunk.getCountB() - endA;
+        }
+        return Math.max(0, Math.min(lineB, linesB - 1));
+    }
+
+    // Номер участка, который начинается в строке lineA первого текста или после неё; -1 - таких нет
+    public int nextHunk(int lineA) {
+        int low = 0;
+        int high = hunks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Hunk hunk = hunks.get(middle);
+            if (hunk.getStartA() + Math.max(1, hunk.getCountA()) <= lineA) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < hunks.size() ? low : -1;
+    }
+
+    @Override
+    public String toString() {
+        long deleted = 0;
+        long inserted = 0;
+        for (Hunk hunk : hunks) {
+            deleted += hunk.getCountA();
+            inserted += hunk.getCountB();
+        }
+        return String.format("различий %d: -%d +%d строк (строк %d и %d) за %.1f мс", hunks.size(), deleted, inserted,
+                linesA, linesB, nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,74 @@
+package diff;
+
+// Участок различия: строки [startA, startA + countA) первого текста заменяются строками [startB, startB + countB)
+// второго. Строка включает свой перевод строки. Смещения и длины в символах - те же участки в тексте.
+public final class Hunk {
+
+    private final int startA;
+    private final int countA;
+    private final int startB;
+    private final int countB;
+    private final int offsetA;
+    private final int lengthA;
+    private final int offsetB;
+    private final int lengthB;
+
+    public Hunk(int startA, int countA, int startB, int countB, int offsetA, int lengthA, int offsetB, int lengthB) {
+        this.startA = startA;
+        this.countA = countA;
+        this.startB = startB;
+        this.countB = countB;
+        this.offsetA = offsetA;
+        this.lengthA = lengthA;
+        this.offsetB = offsetB;
+        this.lengthB = lengthB;
+    }
+
+    public int getStartA() {
+        return startA;
+    }
+
+    public int getCountA() {
+        return countA;
+    }
+
+    public int getStartB() {
+        return startB;
+    }
+
+    public int getCountB() {
+        return countB;
+    }
+
+    public int getOffsetA() {
+        return offsetA;
+    }
+
+    public int getLengthA() {
+        return lengthA;
+    }
+
+    public int getOffsetB() {
+        return offsetB;
+    }
+
+    public int getLengthB() {
+        return lengthB;
+    }
+
+    // Тот же участок со сторонами наоборот
+    Hunk reversed() {
+        return new Hunk(startB, countB, startA, countA, offsetB, lengthB, offsetA, lengthA);
+    }
+
+    // Тот же участок, сдвинутый в первом тексте (перед ним применён другой участок)
+    Hunk shifted(int lines, int chars) {
+        return new Hunk(startA + lines, countA, startB, countB, offsetA + chars, lengthA, offsetB, lengthB);
+    }
+
+    // Заголовок в духе unified diff: номера строк с единицы
+    @Override
+    public String toString() {
+        return "@@ -" + (startA + 1) + "," + countA + " +" + (startB + 1) + "," + countB + " @@";
+    }
+}
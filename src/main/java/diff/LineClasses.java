@@ -0,0 +1,111 @@
+package diff;
+
+import document.TextSnapshot;
+
+import java.util.Arrays;
+
+// Классы равенства строк двух текстов: одинаковые строки получают один номер, и дальше строки сравниваются как числа.
+// Строки ищутся в открытой хеш-таблице по 64-битному хешу. Обычно совпадение хеша считается совпадением строк, а
+// совпадения проверяет TextDiff одним проходом по одинаковым участкам; в точном режиме (если проверка нашла коллизию)
+// при совпадении хеша сравниваются символы. Заодно считается, сколько раз класс встречается в каждом тексте.
+final class LineClasses {
+
+    private static final int COMPARE_CHARS = 8 * 1024;  // Длинные строки сравниваются порциями
+
+    final int[] a;  // Класс каждой строки первого текста
+    final int[] b;
+    final int[] countA;  // Сколько строк класса в первом тексте
+    final int[] countB;
+    final int size;  // Число классов
+
+    private final char[] left = new char[COMPARE_CHARS];
+    private final char[] right = new char[COMPARE_CHARS];
+    private final boolean exact;  // Сравнивать символы строк с одинаковым хешем
+    private long[] classHash;
+    private int[] classStart;  // Первая строка класса: начало и длина в тексте, где она встретилась
+    private int[] classLength;
+    private TextSnapshot[] classText;
+    private int classes;
+
+    LineClasses(LineTable first, LineTable second, boolean exact) {
+        this.exact = exact;
+        int total = first.count + second.count;
+        int capacity = Integer.highestOneBit(Math.max(1, total)) << 2;  // Таблица заполнена не больше чем наполовину
+        int[] table = new int[capacity];  // Номер класса + 1; 0 - пусто
+        int initial = Math.max(16, total / 4);
+        classHash = new long[initial];
+        classStart = new int[initial];
+        classLength = new int[initial];
+        classText = new TextSnapshot[initial];
+        a = assign(first, table);
+        b = assign(second, table);
+        size = classes;
+        countA = new int[size];
+        countB = new int[size];
+        for (int c : a) {
+            countA[c]++;
+        }
+        for (int c : b) {
+            countB[c]++;
+        }
+        classHash = null;  // Нужны только во время построения
+        classStart = null;
+        classLength = null;
+        classText = null;
+    }
+
+    private int[] assign(LineTable lines, int[] table) {
+        int mask = table.length - 1;
+        int[] result = new int[lines.count];
+        for (int line = 0; line < lines.count; line++) {
+            long hash = lines.hashes[line];
+            int start = lines.start(line);
+            int length = lines.length(line);
+            int slot = (int) hash & mask;
+            while (true) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    result[line] = add(hash, lines.text, start, length);
+                    table[slot] = result[line] + 1;
+                    break;
+                }
+                int c = entry - 1;
+                if (classHash[c] == hash && classLength[c] == length
+                        && (!exact || equal(classText[c], classStart[c], lines.text, start, length))) {
+                    result[line] = c;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return result;
+    }
+
+    private int add(long hash, TextSnapshot text, int start, int length) {
+        if (classes == classHash.length) {
+            int grown = classes * 2;
+            classHash = Arrays.copyOf(classHash, grown);
+            classStart = Arrays.copyOf(classStart, grown);
+            classLength = Arrays.copyOf(classLength, grown);
+            classText = Arrays.copyOf(classText, grown);
+        }
+        classHash[classes] = hash;
+        classStart[classes] = start;
+        classLength[classes] = length;
+        classText[classes] = text;
+        return classes++;
+    }
+
+    // Совпадают ли length символов двух текстов
+    private boolean equal(TextSnapshot first, int firstStart, TextSnapshot second, int secondStart, int length) {
+        for (int done = 0; done < length; done += COMPARE_CHARS) {
+            int count = Math.min(COMPARE_CHARS, length - done);
+            first.getChars(firstStart + done, count, left, 0);
+            second.getChars(secondStart + done, count, right, 0);
+            if (!Arrays.equals(left, 0, count, right, 0, count)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,156 @@
+package diff;
+
+import document.TextSnapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Строки снимка: начало каждой строки и 64-битный хеш её символов вместе с переводом строки. Текст читается один раз:
+// участки параллельно ищут переводы строк и считают полиномиальные хеши строк, а хеш строки на границе участков
+// склеивается из двух частей (h(s1 s2) = h(s1) * B^|s2| + h(s2)). Память - int и long на строку.
+final class LineTable {
+
+    private static final int CHUNK_CHARS = 1 << 20;  // Участок текста для одной задачи
+    private static final long BASE = 0x100000001B3L;  // Основание полиномиального хеша (нечётное)
+
+    final TextSnapshot text;
+    final int count;  // Число строк; последняя может быть без перевода строки, пустой текст - ноль строк
+    final int[] starts;  // Начала строк и длина текста в конце: строка i - [starts[i], starts[i + 1])
+    final long[] hashes;
+
+    LineTable(TextSnapshot text, ForkJoinPool pool) {
+        this.text = text;
+        Chunk[] chunks = new Chunk[(text.length() + CHUNK_CHARS - 1) / CHUNK_CHARS];
+        if (chunks.length > 0) {
+            pool.invoke(new ChunkTask(text, chunks, 0, chunks.length));
+        }
+        int breaks = 0;
+        for (Chunk chunk : chunks) {
+            breaks += chunk.count;
+        }
+        boolean tail = chunks.length > 0 && chunks[chunks.length - 1].tailLength > 0;  // Последняя строка без \n
+        count = breaks + (tail ? 1 : 0);
+        starts = new int[count + 1];
+        hashes = new long[count];
+        int line = 0;
+        long carryHash = 0;  // Начало строки из предыдущих участков
+        int carryLength = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.count == 0) {
+                carryHash = carryHash * power(chunk.tailLength) + chunk.tailHash;
+                carryLength += chunk.tailLength;
+                continue;
+            }
+            int headLength = chunk.breaks[0] - chunk.start + 1;
+            hashes[line] = finish(carryHash * power(headLength) + chunk.hashes[0], carryLength + headLength);
+            starts[++line] = chunk.breaks[0] + 1;
+            for (int i = 1; i < chunk.count; i++) {
+                hashes[line] = finish(chunk.hashes[i], chunk.breaks[i] - chunk.breaks[i - 1]);
+                starts[++line] = chunk.breaks[i] + 1;  // Строка начинается после \n
+            }
+            carryHash = chunk.tailHash;
+            carryLength = chunk.tailLength;
+        }
+        if (tail) {
+            hashes[line] = finish(carryHash, carryLength);
+        }
+        starts[count] = text.length();
+    }
+
+    int start(int line) {
+        return starts[line];
+    }
+
+    int length(int line) {
+        return starts[line + 1] - starts[line];
+    }
+
+    // BASE в степени n по модулю 2^64
+    private static long power(int n) {
+        long result = 1;
+        long base = BASE;
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            n >>= 1;
+        }
+        return result;
+    }
+
+    // Перемешивание битов, чтобы и младшие биты хеша зависели от всех символов
+    private static long finish(long hash, int length) {
+        hash ^= length * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // Переводы строк участка и хеши: hashes[0] - от начала участка до первого \n, hashes[i] - строки между \n,
+    // tail - после последнего \n (весь участок, если \n нет)
+    private static final class Chunk {
+        private int start;
+        private int count;
+        private int[] breaks = new int[1024];
+        private long[] hashes = new long[1024];
+        private long tailHash;
+        private int tailLength;
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private final TextSnapshot text;
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(TextSnapshot text, Chunk[] chunks, int from, int to) {
+            this.text = text;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(text, chunks, from, middle), new ChunkTask(text, chunks, middle, to));
+                return;
+            }
+            Chunk chunk = new Chunk();
+            chunk.start = from * CHUNK_CHARS;
+            int[] position = {chunk.start};  // Позиция в тексте
+            long[] state = {0};  // Хеш текущей строки
+            text.forEachSegment(chunk.start, Math.min(CHUNK_CHARS, text.length() - chunk.start), segment -> {
+                char[] array = segment.array;
+                int offset = position[0] - segment.offset;  // Позиция в тексте = индекс в сегменте + offset
+                long hash = state[0];
+                for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+                    char c = array[i];
+                    hash = BASE * hash + c;
+                    if (c == '\n') {
+                        add(chunk, offset + i, hash);
+                        hash = 0;
+                    }
+                }
+                position[0] += segment.count;
+                state[0] = hash;
+            });
+            chunk.tailHash = state[0];
+            chunk.tailLength = position[0] - (chunk.count > 0 ? chunk.breaks[chunk.count - 1] + 1 : chunk.start);
+            chunks[from] = chunk;
+        }
+
+        private static void add(Chunk chunk, int position, long hash) {
+            if (chunk.count == chunk.breaks.length) {
+                chunk.breaks = Arrays.copyOf(chunk.breaks, chunk.count * 2);
+                chunk.hashes = Arrays.copyOf(chunk.hashes, chunk.count * 2);
+            }
+            chunk.breaks[chunk.count] = position;
+            chunk.hashes[chunk.count++] = hash;
+        }
+    }
+}
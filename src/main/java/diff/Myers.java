@@ -0,0 +1,169 @@
+package diff;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+// Алгоритм Майерса за линейную память: ищется середина кратчайшего пути правок (прямой и обратный поиск навстречу),
+// участки до неё и после неё независимы и сравниваются отдельно - большие параллельно в пуле fork-join.
+// Если путь длиннее costLimit, участок делится по самой дальней точке прямого поиска: результат остаётся верным,
+// но может быть не самым коротким (так поступает GNU diff). Это ограничивает время на сильно различающихся текстах.
+// Память поиска - O(costLimit) на задачу, а не O(N + M).
+final class Myers extends RecursiveAction {
+
+    private static final int PARALLEL_LINES = 8 * 1024;  // Участки меньше этого сравниваются в текущей задаче
+
+    private final int[] x;
+    private final int[] y;
+    private final boolean[] changedX;  // Строки x, которых нет в y (удалённые)
+    private final boolean[] changedY;  // Строки y, которых нет в x (вставленные)
+    private final int costLimit;
+    private int xStart;
+    private int xEnd;
+    private int yStart;
+    private int yEnd;
+
+    Myers(int[] x, int[] y, boolean[] changedX, boolean[] changedY, int costLimit,
+          int xStart, int xEnd, int yStart, int yEnd) {
+        this.x = x;
+        this.y = y;
+        this.changedX = changedX;
+        this.changedY = changedY;
+        this.costLimit = costLimit;
+        this.xStart = xStart;
+        this.xEnd = xEnd;
+        this.yStart = yStart;
+        this.yEnd = yEnd;
+    }
+
+    // Предел длины пути для текстов из n и m строк: не меньше 4096, растёт как корень из размера
+    static int costLimit(int n, int m) {
+        return Math.max(4096, (int) Math.sqrt((double) n + m) * 4);
+    }
+
+    @Override
+    protected void compute() {
+        while (xStart < xEnd && yStart < yEnd && x[xStart] == y[yStart]) {  // Общее начало
+            xStart++;
+            yStart++;
+        }
+        while (xStart < xEnd && yStart < yEnd && x[xEnd - 1] == y[yEnd - 1]) {  // Общий конец
+            xEnd--;
+            yEnd--;
+        }
+        if (xStart == xEnd || yStart == yEnd) {
+            Arrays.fill(changedX, xStart, xEnd, true);
+            Arrays.fill(changedY, yStart, yEnd, true);
+            return;
+        }
+        long split = split();
+        int xSplit = (int) (split >>> 32);
+        int ySplit = (int) split;
+        if (split < 0 || (xSplit == xStart && ySplit == yStart) || (xSplit == xEnd && ySplit == yEnd)) {
+            Arrays.fill(changedX, xStart, xEnd, true);  // Общих строк нет (или деление не уменьшает участок)
+            Arrays.fill(changedY, yStart, yEnd, true);
+            return;
+        }
+        Myers before = new Myers(x, y, changedX, changedY, costLimit, xStart, xSplit, yStart, ySplit);
+        Myers after = new Myers(x, y, changedX, changedY, costLimit, xSplit, xEnd, ySplit, yEnd);
+        if ((xEnd - xStart) + (yEnd - yStart) > PARALLEL_LINES) {
+            invokeAll(before, after);
+        } else {
+            before.compute();
+            after.compute();
+        }
+    }
+
+    // Точка деления участка (x << 32 | y) или -1, если делить не нужно: у участка нет общих строк.
+    // Прямой поиск идёт от начала по диагоналям k = i - j, обратный - от конца; v хранят самый дальний i на диагонали.
+    private long split() {
+        int n = xEnd - xStart;
+        int m = yEnd - yStart;
+        int maxCost = (n + m + 1) / 2;
+        int limit = Math.min(maxCost, costLimit);
+        int offset = limit + 1;
+        int length = 2 * offset + 1;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;  // При нечётной разнице встреча видна в прямом поиске, при чётной - в обратном
+        int kStart = 0;  // Сколько диагоналей с краёв уже вышли за участок
+        int kEnd = 0;
+        int k2Start = 0;
+        int k2End = 0;
+        for (int d = 0; d < limit; d++) {
+            for (int k = -d + kStart; k <= d - kEnd; k += 2) {
+                int index = offset + k;
+                int i = k == -d || (k != d && forward[index - 1] < forward[index + 1])
+                        ? forward[index + 1] : forward[index - 1] + 1;
+                int j = i - k;
+                while (i < n && j < m && x[xStart + i] == y[yStart + j]) {
+                    i++;
+                    j++;
+                }
+                forward[index] = i;
+                if (i > n) {
+                    kEnd += 2;
+                } else if (j > m) {
+                    kStart += 2;
+                } else if (odd) {
+                    int other = offset + delta - k;
+                    if (other >= 0 && other < length && backward[other] != -1 && i >= n - backward[other]) {
+                        return point(i, j);
+                    }
+                }
+            }
+            for (int k = -d + k2Start; k <= d - k2End; k += 2) {
+                int index = offset + k;
+                int i = k == -d || (k != d && backward[index - 1] < backward[index + 1])
+                        ? backward[index + 1] : backward[index - 1] + 1;
+                int j = i - k;
+                while (i < n && j < m && x[xEnd - 1 - i] == y[yEnd - 1 - j]) {
+                    i++;
+                    j++;
+                }
+                backward[index] = i;
+                if (i > n) {
+                    k2End += 2;
+                } else if (j > m) {
+                    k2Start += 2;
+                } else if (!odd) {
+                    int other = offset + delta - k;
+                    if (other >= 0 && other < length && forward[other] != -1) {
+                        int fi = forward[other];
+                        int fj = fi - (other - offset);
+                        if (fi >= n - i) {
+                            return point(fi, fj);
+                        }
+                    }
+                }
+            }
+        }
+        if (limit == maxCost) {
+            return -1;  // Пути короче n + m нет: общих строк нет
+        }
+        return farthest(forward, offset, limit, n, m);
+    }
+
+    // Самая дальняя от начала точка прямого поиска, если путь оказался длиннее предела
+    private long farthest(int[] forward, int offset, int limit, int n, int m) {
+        int bestI = -1;
+        int bestJ = -1;
+        for (int k = -limit; k <= limit; k++) {
+            int i = forward[offset + k];
+            int j = i - k;
+            if (i >= 0 && i <= n && j >= 0 && j <= m && i + j > bestI + bestJ && i + j < n + m) {
+                bestI = i;
+                bestJ = j;
+            }
+        }
+        return bestI + bestJ <= 0 ? -1 : point(bestI, bestJ);
+    }
+
+    private long point(int i, int j) {
+        return (long) (xStart + i) << 32 | (yStart + j);
+    }
+}
@@ -0,0 +1,188 @@
+package diff;
+
+import document.TextSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Построчное сравнение двух снимков без блокировок редактора.
+// 1. Строки делятся и хешируются параллельно (LineTable), строки с одинаковым хешем получают общий номер класса (LineClasses).
+// 2. Строки, которых нет в другом тексте совсем, сразу отмечаются изменёнными и в поиск не идут: так сильно различающиеся
+//    тексты сводятся к короткому поиску, а одинаковые начало и конец отбрасываются в самом поиске.
+// 3. Оставшиеся номера сравниваются алгоритмом Майерса за линейную память (Myers), независимые половины - параллельно.
+// 4. Текст между участками, признанный одинаковым, сравнивается посимвольно (параллельно, последовательным чтением).
+//    Если это коллизия хеша, сравнение повторяется с проверкой символов каждой строки.
+// Память - несколько int на строку обоих текстов; символы не копируются, участки ссылаются на снимки.
+public final class TextDiff {
+
+    private static final int VERIFY_CHARS = 1 << 20;  // Участок посимвольной проверки для одной задачи
+    private static final int COMPARE_CHARS = 8 * 1024;
+
+    private TextDiff() {
+    }
+
+    public static DiffResult diff(TextSnapshot a, TextSnapshot b, ForkJoinPool pool) {
+        long started = System.nanoTime();
+        LineTable linesA = new LineTable(a, pool);
+        LineTable linesB = new LineTable(b, pool);
+        List<Hunk> hunks = compare(linesA, linesB, pool, false);
+        if (!pool.invoke(new VerifyTask(a, b, gaps(hunks, a.length(), b.length()), 0, -1))) {
+            hunks = compare(linesA, linesB, pool, true);  // Коллизия хеша: строки сравниваются по символам
+        }
+        return new DiffResult(a, b, linesA.count, linesB.count, hunks, System.nanoTime() - started);
+    }
+
+    private static List<Hunk> compare(LineTable linesA, LineTable linesB, ForkJoinPool pool, boolean exact) {
+        LineClasses classes = new LineClasses(linesA, linesB, exact);
+        boolean[] changedA = new boolean[linesA.count];
+        boolean[] changedB = new boolean[linesB.count];
+        int[] keptA = keep(classes.a, classes.countB, changedA);
+        int[] keptB = keep(classes.b, classes.countA, changedB);
+        int[] x = select(classes.a, keptA);
+        int[] y = select(classes.b, keptB);
+        boolean[] changedX = new boolean[x.length];
+        boolean[] changedY = new boolean[y.length];
+        pool.invoke(new Myers(x, y, changedX, changedY, Myers.costLimit(x.length, y.length), 0, x.length, 0, y.length));
+        for (int i = 0; i < x.length; i++) {
+            changedA[keptA[i]] |= changedX[i];
+        }
+        for (int i = 0; i < y.length; i++) {
+            changedB[keptB[i]] |= changedY[i];
+        }
+        return hunks(linesA, linesB, changedA, changedB);
+    }
+
+    // Номера строк, чей класс встречается в другом тексте; остальные строки отмечаются изменёнными
+    private static int[] keep(int[] lineClasses, int[] otherCounts, boolean[] changed) {
+        int count = 0;
+        for (int c : lineClasses) {
+            if (otherCounts[c] > 0) {
+                count++;
+            }
+        }
+        int[] kept = new int[count];
+        int next = 0;
+        for (int line = 0; line < lineClasses.length; line++) {
+            if (otherCounts[lineClasses[line]] > 0) {
+                kept[next++] = line;
+            } else {
+                changed[line] = true;
+            }
+        }
+        return kept;
+    }
+
+    private static int[] select(int[] lineClasses, int[] lines) {
+        int[] selected = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            selected[i] = lineClasses[lines[i]];
+        }
+        return selected;
+    }
+
+    // Подряд идущие изменённые строки обоих текстов между одинаковыми строками - один участок
+    private static List<Hunk> hunks(LineTable linesA, LineTable linesB, boolean[] changedA, boolean[] changedB) {
+        List<Hunk> hunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < changedA.length || j < changedB.length) {
+            if (i < changedA.length && j < changedB.length && !changedA[i] && !changedB[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int startA = i;
+            int startB = j;
+            while (i < changedA.length && changedA[i]) {
+                i++;
+            }
+            while (j < changedB.length && changedB[j]) {
+                j++;
+            }
+            if (i == startA && j == startB) {
+                throw new IllegalStateException("Одинаковых строк в текстах разное число: " + i + ", " + j);
+            }
+            hunks.add(new Hunk(startA, i - startA, startB, j - startB, linesA.start(startA),
+                    linesA.start(i) - linesA.start(startA), linesB.start(startB), linesB.start(j) - linesB.start(startB)));
+        }
+        return hunks;
+    }
+
+    // Участки текста между различиями, которые должны совпадать: по три числа - начало в первом тексте, во втором и длина.
+    // Длинные участки делятся на части по VERIFY_CHARS; длина -1 - участки разной длины, совпасть не могут.
+    private static int[] gaps(List<Hunk> hunks, int lengthA, int lengthB) {
+        int[] gaps = new int[48];
+        int count = 0;
+        int fromA = 0;
+        int fromB = 0;
+        for (int i = 0; i <= hunks.size(); i++) {
+            int toA = i < hunks.size() ? hunks.get(i).getOffsetA() : lengthA;
+            int toB = i < hunks.size() ? hunks.get(i).getOffsetB() : lengthB;
+            if (toA - fromA != toB - fromB) {
+                return new int[]{0, 0, -1};
+            }
+            for (int from = 0; from < toA - fromA; from += VERIFY_CHARS) {
+                if (count + 3 > gaps.length) {
+                    gaps = Arrays.copyOf(gaps, gaps.length * 2);
+                }
+                gaps[count++] = fromA + from;
+                gaps[count++] = fromB + from;
+                gaps[count++] = Math.min(VERIFY_CHARS, toA - fromA - from);
+            }
+            if (i < hunks.size()) {
+                fromA = toA + hunks.get(i).getLengthA();
+                fromB = toB + hunks.get(i).getLengthB();
+            }
+        }
+        return Arrays.copyOf(gaps, count);
+    }
+
+    // Совпадают ли участки [from, to) списка gaps (по номерам участков; to = -1 - до конца)
+    private static final class VerifyTask extends RecursiveTask<Boolean> {
+        private final TextSnapshot a;
+        private final TextSnapshot b;
+        private final int[] gaps;
+        private final int from;
+        private final int to;
+
+        VerifyTask(TextSnapshot a, TextSnapshot b, int[] gaps, int from, int to) {
+            this.a = a;
+            this.b = b;
+            this.gaps = gaps;
+            this.from = from;
+            this.to = to < 0 ? gaps.length / 3 : to;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                VerifyTask second = new VerifyTask(a, b, gaps, middle, to);
+                second.fork();
+                boolean first = new VerifyTask(a, b, gaps, from, middle).compute();
+                return second.join() && first;
+            }
+            if (to == from) {
+                return true;
+            }
+            int length = gaps[3 * from + 2];
+            if (length < 0) {
+                return false;
+            }
+            char[] left = new char[COMPARE_CHARS];
+            char[] right = new char[COMPARE_CHARS];
+            for (int done = 0; done < length; done += COMPARE_CHARS) {
+                int count = Math.min(COMPARE_CHARS, length - done);
+                a.getChars(gaps[3 * from] + done, count, left, 0);
+                b.getChars(gaps[3 * from + 1] + done, count, right, 0);
+                if (!Arrays.equals(left, 0, count, right, 0, count)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
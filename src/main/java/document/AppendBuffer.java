@@ -0,0 +1,36 @@
+package document;
+
+import javax.swing.text.Segment;
+import java.util.Arrays;
+
+// Буфер, в который только дописываются вставленные символы.
+// Записанные символы никогда не меняются, поэтому на них можно ссылаться без копирования.
+final class AppendBuffer implements CharSource {
+
+    private char[] chars = new char[1024];
+    private int length = 0;
+
+    // Дописывает строку и возвращает позицию её начала в буфере
+    synchronized int append(String text) {
+        int start = length;
+        if (length + text.length() > chars.length) {
+            // Старый массив не изменяется: сегменты, выданные раньше, остаются корректными
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + text.length()));
+        }
+        text.getChars(0, text.length(), chars, length);
+        length += text.length();
+        return start;
+    }
+
+    @Override
+    public synchronized void getChars(int start, int length, char[] dst, int dstOffset) {
+        System.arraycopy(chars, start, dst, dstOffset, length);
+    }
+
+    @Override
+    public synchronized void getSegment(int start, int length, Segment segment) {
+        segment.array = chars;
+        segment.offset = start;
+        segment.count = length;
+    }
+}
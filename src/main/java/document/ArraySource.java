@@ -0,0 +1,26 @@
+package document;
+
+import javax.swing.text.Segment;
+
+// Массив символов, который больше не меняется, как источник кусков документа (например, текст, дописанный в файл
+// при слежении за ним): куски ссылаются на массив без копирования
+public final class ArraySource implements CharSource {
+
+    private final char[] chars;
+
+    public ArraySource(char[] chars) {
+        this.chars = chars;
+    }
+
+    @Override
+    public void getChars(int start, int length, char[] dst, int dstOffset) {
+        System.arraycopy(chars, start, dst, dstOffset, length);
+    }
+
+    @Override
+    public void getSegment(int start, int length, Segment segment) {
+        segment.array = chars;
+        segment.offset = start;
+        segment.count = length;
+    }
+}
@@ -0,0 +1,14 @@
+package document;
+
+import javax.swing.text.Segment;
+
+// Источник символов, на который ссылаются куски документа (буфер вставок, отображённый в память файл)
+public interface CharSource {
+
+    // Копирует символы [start, start + length) в массив dst начиная с dstOffset
+    void getChars(int start, int length, char[] dst, int dstOffset);
+
+    // Настраивает сегмент на символы, начинающиеся с start, без копирования.
+    // Сегмент может оказаться короче length, но не пустым.
+    void getSegment(int start, int length, Segment segment);
+}
@@ -0,0 +1,54 @@
+package document;
+
+// Переводы строк и символы замены в декодированном тексте: по ним видно, какой перевод строки у файла
+// и совпадает ли текст с байтами файла
+public final class DecodeStats {
+
+    private long crlf;
+    private long lf;
+    private long cr;
+    private boolean lossy;
+
+    // Учитывает символы [offset, offset + length); пара \r\n, разрезанная между вызовами, считается как \r и \n
+    public void count(char[] chars, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                if (i > offset && chars[i - 1] == '\r') {
+                    crlf++;
+                } else {
+                    lf++;
+                }
+            } else if (c == '\r') {
+                if (i + 1 == end || chars[i + 1] != '\n') {
+                    cr++;
+                }
+            } else if (c == '\uFFFD') {
+                lossy = true;  // Символ замены: неверная последовательность байт или настоящий U+FFFD, различить нельзя
+            }
+        }
+    }
+
+    public void add(DecodeStats other) {
+        crlf += other.crlf;
+        lf += other.lf;
+        cr += other.cr;
+        lossy |= other.lossy;
+    }
+
+    // Преобладающий перевод строки: "\r\n", "\r" или "\n" (и для текста без переводов строки)
+    public String getLineSeparator() {
+        if (crlf > lf && crlf >= cr) {
+            return "\r\n";
+        }
+        if (cr > lf && cr > crlf) {
+            return "\r";
+        }
+        return "\n";
+    }
+
+    public boolean isLossy() {
+        return lossy;
+    }
+}
@@ -0,0 +1,89 @@
+package document;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Кодировка файла по его началу. Метка порядка байт (BOM) определяет UTF-8, UTF-16LE или UTF-16BE; метка остаётся
+// в тексте символом U+FEFF (декодеры этих кодировок её не снимают) и при сохранении записывается обратно как была.
+// Без метки: нулевые байты через один - UTF-16 без метки, корректный UTF-8 с не-ASCII символами - UTF-8,
+// иначе кодировка по умолчанию (для текста только из ASCII вместо US-ASCII берётся UTF-8, чтобы правки не терялись).
+// Если и кодировка по умолчанию не читает байты без замен, берётся ISO-8859-1: каждый байт - свой символ,
+// и файл без правок сохраняется байт в байт.
+public final class EncodingDetector {
+
+    static final int SAMPLE_BYTES = 64 * 1024;  // Сколько байт начала файла смотреть
+
+    private EncodingDetector() {
+    }
+
+    // head - начало файла (позиция не меняется), fallback - кодировка по умолчанию
+    public static Charset detect(ByteBuffer head, Charset fallback) {
+        ByteBuffer sample = head.duplicate();
+        sample.limit(sample.position() + Math.min(sample.remaining(), SAMPLE_BYTES));
+        int length = sample.remaining();
+        int start = sample.position();
+        if (length >= 3 && (sample.get(start) & 0xFF) == 0xEF && (sample.get(start + 1) & 0xFF) == 0xBB
+                && (sample.get(start + 2) & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (sample.get(start) & 0xFF) == 0xFF && (sample.get(start + 1) & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (length >= 2 && (sample.get(start) & 0xFF) == 0xFE && (sample.get(start + 1) & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        int evenZeros = 0;
+        int oddZeros = 0;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            byte b = sample.get(start + i);
+            if (b == 0) {
+                if ((i & 1) == 0) {
+                    evenZeros++;
+                } else {
+                    oddZeros++;
+                }
+            } else if (b < 0) {
+                ascii = false;
+            }
+        }
+        int pairs = length / 2;
+        if (pairs > 0 && oddZeros > pairs * 0.3 && evenZeros < pairs * 0.05) {  // Латиница в UTF-16: старший байт нулевой
+            return StandardCharsets.UTF_16LE;
+        }
+        if (pairs > 0 && evenZeros > pairs * 0.3 && oddZeros < pairs * 0.05) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (ascii) {
+            return fallback.equals(StandardCharsets.US_ASCII) ? StandardCharsets.UTF_8 : fallback;
+        }
+        if (decodes(sample, StandardCharsets.UTF_8)) {
+            return StandardCharsets.UTF_8;
+        }
+        return decodes(sample, fallback) ? fallback : StandardCharsets.ISO_8859_1;
+    }
+
+    // Читает ли кодировка выборку без замен; последний символ выборки может быть обрезан
+    private static boolean decodes(ByteBuffer sample, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer chars = CharBuffer.allocate(8192);
+        ByteBuffer bytes = sample.duplicate();
+        while (true) {
+            CoderResult result = decoder.decode(bytes, chars, false);
+            if (result.isError()) {
+                return false;
+            }
+            if (result.isUnderflow()) {
+                return bytes.remaining() < 4;  // Остались только байты обрезанного символа
+            }
+            chars.clear();
+        }
+    }
+}
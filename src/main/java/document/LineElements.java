@@ -0,0 +1,142 @@
+package document;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+
+// Корневой элемент документа поверх индекса строк: элемент строки создаётся при обращении и не хранится.
+// Заменяет структуру строк PlainDocument (на каждую строку объект элемента и две позиции), поэтому большой файл
+// не держит объект на строку, а JTextArea.getLineOfOffset и Utilities.getParagraphElement работают за O(log n).
+// Как и у PlainDocument, строка заканчивается после своего перевода строки, последняя - после служебного.
+final class LineElements implements Element {
+
+    private final PagedDocument document;
+    private final LineIndex lines;
+
+    LineElements(PagedDocument document, LineIndex lines) {
+        this.document = document;
+        this.lines = lines;
+    }
+
+    @Override
+    public PagedDocument getDocument() {
+        return document;
+    }
+
+    @Override
+    public Element getParentElement() {
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return AbstractDocument.ParagraphElementName;
+    }
+
+    @Override
+    public AttributeSet getAttributes() {
+        return SimpleAttributeSet.EMPTY;
+    }
+
+    @Override
+    public int getStartOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getEndOffset() {
+        return lines.getLength() + 1;
+    }
+
+    @Override
+    public int getElementIndex(int offset) {
+        return lines.getLineOfOffset(offset);
+    }
+
+    @Override
+    public int getElementCount() {
+        return lines.getLineCount();
+    }
+
+    @Override
+    public Element getElement(int index) {
+        if (index < 0 || index >= lines.getLineCount()) {
+            return null;
+        }
+        int start = lines.getLineStart(index);
+        int end = index + 1 < lines.getLineCount() ? lines.getLineStart(index + 1) : lines.getLength() + 1;
+        return new Line(start, end);
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return false;
+    }
+
+    // Строка на момент обращения
+    private final class Line implements Element {
+        private final int start;
+        private final int end;
+
+        Line(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public PagedDocument getDocument() {
+            return document;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return LineElements.this;
+        }
+
+        @Override
+        public String getName() {
+            return AbstractDocument.ContentElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return start;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return end;
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Override
+        public Element getElement(int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Line[" + start + ", " + end + ")";
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Индекс строк документа: длины строк (вместе с переводом строки) лежат в блоках подряд идущих строк,
+// над блоками два дерева Фенвика - число символов и число строк. Строка по смещению и начало строки по номеру
+// находятся за O(log n) по блокам и проход по одному блоку, правка меняет только затронутые блоки.
+// Длина строки занимает два байта (блок с очень длинной строкой переходит на четыре): 50 миллионов строк - около 100 МБ.
+// Строки нумеруются с нуля; последняя строка - текст после последнего перевода строки, она может быть пустой.
+// Служебный перевод строки в конце содержимого документа в индекс не входит.
+public final class LineIndex {
+
+    static final int BLOCK_LINES = 1024;  // Строк в блоке после перестройки
+    private static final int MAX_BLOCK_LINES = 4 * BLOCK_LINES;  // Блок, выросший больше, перестраивается в несколько
+
+    // Длины подряд идущих строк
+    private static final class Block {
+        private char[] narrow = new char[16];  // Длины, пока все они меньше Character.MAX_VALUE
+        private int[] wide;  // Вместо narrow, если в блоке есть длинная строка
+        private int size;
+        private int chars;  // Сумма длин
+
+        int get(int index) {
+            return wide != null ? wide[index] : narrow[index];
+        }
+
+        void set(int index, int length) {
+            chars += length - get(index);
+            store(index, length);
+        }
+
+        void add(int length) {
+            open(size, 1);
+            store(size - 1, length);
+            chars += length;
+        }
+
+        // Освобождает count мест начиная с index, строки после сдвигаются
+        void open(int index, int count) {
+            int capacity = wide != null ? wide.length : narrow.length;
+            if (size + count > capacity) {
+                int grown = Math.max(size + count, Math.min(MAX_BLOCK_LINES, capacity * 2));
+                if (wide != null) {
+                    wide = Arrays.copyOf(wide, grown);
+                } else {
+                    narrow = Arrays.copyOf(narrow, grown);
+                }
+            }
+            if (wide != null) {
+                System.arraycopy(wide, index, wide, index + count, size - index);
+            } else {
+                System.arraycopy(narrow, index, narrow, index + count, size - index);
+            }
+            size += count;
+        }
+
+        // Удаляет строки [from, to)
+        void close(int from, int to) {
+            for (int i = from; i < to; i++) {
+                chars -= get(i);
+            }
+            if (wide != null) {
+                System.arraycopy(wide, to, wide, from, size - to);
+            } else {
+                System.arraycopy(narrow, to, narrow, from, size - to);
+            }
+            size -= to - from;
+        }
+
+        // Записывает длину без пересчёта chars
+        private void store(int index, int length) {
+            if (wide == null && length >= Character.MAX_VALUE) {
+                wide = new int[narrow.length];
+                for (int i = 0; i < size; i++) {
+                    wide[i] = narrow[i];
+                }
+                narrow = null;
+            }
+            if (wide != null) {
+                wide[index] = length;
+            } else {
+                narrow[index] = (char) length;
+            }
+        }
+    }
+
+    // Строка, в которой лежит смещение
+    private static final class Location {
+        private int block;
+        private int index;  // Номер строки в блоке
+        private int column;  // Смещение от начала строки
+    }
+
+    // Складывает строки в новые блоки по BLOCK_LINES
+    private static final class Packer {
+        private final List<Block> blocks = new ArrayList<>();
+        private Block current;
+
+        void add(int length) {
+            if (current == null || current.size == BLOCK_LINES) {
+                current = new Block();
+                blocks.add(current);
+            }
+            current.add(length);
+        }
+
+        void addAll(Block block, int from, int to) {
+            for (int i = from; i < to; i++) {
+                add(block.get(i));
+            }
+        }
+    }
+
+    private Block[] blocks = new Block[16];
+    private int blockCount;
+    private int[] charTree = new int[17];  // Деревья Фенвика над блоками, нумерация с единицы
+    private int[] lineTree = new int[17];
+    private int length;
+    private int lineCount;
+
+    public LineIndex() {
+        Block empty = new Block();
+        empty.add(0);  // Пустой документ - одна пустая строка
+        blocks[0] = empty;
+        blockCount = 1;
+        rebuildFrom(0);
+        lineCount = 1;
+    }
+
+    public synchronized int getLength() {
+        return length;
+    }
+
+    public synchronized int getLineCount() {
+        return lineCount;
+    }
+
+    // Номер строки, в которой лежит offset (смещение за концом текста - последняя строка)
+    public synchronized int getLineOfOffset(int offset) {
+        Location at = locate(offset);
+        return lines(at.block) + at.index;
+    }
+
+    // Смещение начала строки line
+    public synchronized int getLineStart(int line) {
+        checkLine(line);
+        int block = blockOfLine(line);
+        int start = chars(block);
+        Block current = blocks[block];
+        for (int i = 0, index = line - lines(block); i < index; i++) {
+            start += current.get(i);
+        }
+        return start;
+    }
+
+    // Смещение конца строки line без перевода строки
+    public synchronized int getLineEnd(int line) {
+        int start = getLineStart(line);
+        int block = blockOfLine(line);
+        int end = start + blocks[block].get(line - lines(block));
+        return line == lineCount - 1 ? end : end - 1;
+    }
+
+    // Учитывает вставку count символов text[from, from + count) в позицию offset
+    public synchronized void insert(int offset, char[] text, int from, int count) {
+        if (count == 0) {
+            return;
+        }
+        Location at = locate(offset);
+        Block block = blocks[at.block];
+        int lineLength = block.get(at.index);
+        int newlines = 0;
+        int first = -1;  // Первый перевод строки
+        int last = -1;  // Последний перевод строки
+        for (int i = from, end = from + count; i < end; i++) {
+            if (text[i] == '\n') {
+                if (first < 0) {
+                    first = i;
+                }
+                last = i;
+                newlines++;
+            }
+        }
+        length += count;
+        if (newlines == 0) {  // Строка просто стала длиннее
+            block.set(at.index, lineLength + count);
+            add(at.block, count, 0);
+            return;
+        }
+        lineCount += newlines;
+        int head = at.column + first - from + 1;  // Начало строки до места вставки и вставка до первого перевода строки
+        int tail = from + count - last - 1 + lineLength - at.column;  // Остаток вставки и конец прежней строки
+        if (block.size + newlines <= MAX_BLOCK_LINES) {  // Строки помещаются в тот же блок
+            block.open(at.index + 1, newlines);
+            block.set(at.index, head);
+            int index = at.index + 1;
+            for (int i = first + 1, start = first + 1; i <= last; i++) {
+                if (text[i] == '\n') {
+                    block.store(index++, i - start + 1);
+                    block.chars += i - start + 1;
+                    start = i + 1;
+                }
+            }
+            block.store(index, tail);
+            block.chars += tail;
+            add(at.block, count, newlines);
+            return;
+        }
+        Packer packer = new Packer();
+        packer.addAll(block, 0, at.index);
+        packer.add(head);
+        for (int i = first + 1, start = first + 1; i <= last; i++) {
+            if (text[i] == '\n') {
+                packer.add(i - start + 1);
+                start = i + 1;
+            }
+        }
+        packer.add(tail);
+        packer.addAll(block, at.index + 1, block.size);
+        replace(at.block, at.block, packer.blocks);
+    }
+
+    // Учитывает удаление символов [offset, offset + count)
+    public synchronized void remove(int offset, int count) {
+        if (count == 0) {
+            return;
+        }
+        Location start = locate(offset);
+        Location end = locate(offset + count);
+        length -= count;
+        Block first = blocks[start.block];
+        Block last = blocks[end.block];
+        int merged = start.column + last.get(end.index) - end.column;  // Начало первой строки и конец последней
+        if (start.block == end.block) {
+            int removedLines = end.index - start.index;
+            first.set(start.index, merged);
+            first.close(start.index + 1, end.index + 1);
+            lineCount -= removedLines;
+            add(start.block, -count, -removedLines);
+            return;
+        }
+        lineCount -= lines(end.block) + end.index - lines(start.block) - start.index;
+        Packer packer = new Packer();
+        packer.addAll(first, 0, start.index);
+        packer.add(merged);
+        packer.addAll(last, end.index + 1, last.size);
+        replace(start.block, end.block, packer.blocks);
+    }
+
+    // Число блоков и оценка занятой памяти в байтах
+    public synchronized int getBlockCount() {
+        return blockCount;
+    }
+
+    public synchronized long getBytes() {
+        long bytes = (blocks.length + charTree.length + lineTree.length) * 4L;
+        for (int i = 0; i < blockCount; i++) {
+            Block block = blocks[i];
+            bytes += 40 + (block.wide != null ? block.wide.length * 4L : block.narrow.length * 2L);
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LineIndex[lines=" + lineCount + ", chars=" + length + ", blocks=" + blockCount + "]";
+    }
+
+    private Location locate(int offset) {
+        offset = Math.max(0, Math.min(offset, length));
+        int position = 0;  // Сколько блоков целиком до offset
+        int rest = offset;
+        for (int step = Integer.highestOneBit(blockCount); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= blockCount && charTree[next] <= rest) {
+                position = next;
+                rest -= charTree[next];
+            }
+        }
+        if (position == blockCount) {  // Конец текста
+            position--;
+            rest += blocks[position].chars;
+        }
+        Block block = blocks[position];
+        int index = 0;
+        while (index < block.size - 1 && rest >= block.get(index)) {
+            rest -= block.get(index);
+            index++;
+        }
+        Location at = new Location();
+        at.block = position;
+        at.index = index;
+        at.column = rest;
+        return at;
+    }
+
+    private int blockOfLine(int line) {
+        int position = 0;
+        int rest = line;
+        for (int step = Integer.highestOneBit(blockCount); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= blockCount && lineTree[next] <= rest) {
+                position = next;
+                rest -= lineTree[next];
+            }
+        }
+        return position;
+    }
+
+    // Символов в блоках до block
+    private int chars(int block) {
+        int sum = 0;
+        for (int i = block; i > 0; i -= i & -i) {
+            sum += charTree[i];
+        }
+        return sum;
+    }
+
+    // Строк в блоках до block
+    private int lines(int block) {
+        int sum = 0;
+        for (int i = block; i > 0; i -= i & -i) {
+            sum += lineTree[i];
+        }
+        return sum;
+    }
+
+    private void add(int block, int chars, int lines) {
+        for (int i = block + 1; i <= blockCount; i += i & -i) {
+            charTree[i] += chars;
+            lineTree[i] += lines;
+        }
+    }
+
+    // Заменяет блоки [from, to] новыми и пересчитывает деревья с from
+    private void replace(int from, int to, List<Block> replacement) {
+        int count = blockCount - (to - from + 1) + replacement.size();
+        if (count > blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(count, blocks.length * 2));
+            charTree = Arrays.copyOf(charTree, blocks.length + 1);
+            lineTree = Arrays.copyOf(lineTree, blocks.length + 1);
+        }
+        System.arraycopy(blocks, to + 1, blocks, from + replacement.size(), blockCount - to - 1);
+        for (int i = 0; i < replacement.size(); i++) {
+            blocks[from + i] = replacement.get(i);
+        }
+        if (count < blockCount) {
+            Arrays.fill(blocks, count, blockCount, null);
+        }
+        blockCount = count;
+        rebuildFrom(from);
+    }
+
+    // Пересчитывает узлы деревьев, покрывающие блоки с from: узел i - сумма блоков (i - (i & -i), i]
+    private void rebuildFrom(int from) {
+        for (int i = from + 1; i <= blockCount; i++) {
+            int chars = blocks[i - 1].chars;
+            int lines = blocks[i - 1].size;
+            for (int step = 1; step < (i & -i); step <<= 1) {
+                chars += charTree[i - step];
+                lines += lineTree[i - step];
+            }
+            charTree[i] = chars;
+            lineTree[i] = lines;
+        }
+    }
+
+    private void checkLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Строка " + line + " вне документа из " + lineCount + " строк");
+        }
+    }
+}
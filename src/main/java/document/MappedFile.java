@@ -0,0 +1,388 @@
+package document;
+
+import javax.swing.text.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Файл, отображённый в память и разбитый на страницы.
+// Страницы заканчиваются на переводе строки, декодируются только при обращении и хранятся в небольшом кэше,
+// поэтому расход кучи не зависит от размера файла. Индекс страниц строится постепенно методом indexNextPage
+// или параллельно порциями методом indexNextPages. Кодировка определяется по началу файла (EncodingDetector),
+// переводы строк остаются в тексте как в файле, поэтому файл без правок сохраняется байт в байт.
+public class MappedFile implements CharSource {
+
+    private static final int PAGE_BYTES = 1 << 16;  // Желаемый размер страницы
+    private static final int MAX_PAGE_BYTES = PAGE_BYTES * 4;  // Предел страницы, если в ней нет перевода строки
+    private static final long REGION_BYTES = 1L << 30;  // Размер одного отображения (MappedByteBuffer ограничен 2 ГБ)
+    private static final int CACHED_PAGES = 64;  // Сколько декодированных страниц держать в памяти
+
+    private final Path path;
+    private final long size;
+    private final MappedByteBuffer[] regions;
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private final int unit;  // Ширина единицы кодировки при поиске перевода строки: 2 для UTF-16, иначе 1
+    private final boolean bigEndian;  // Порядок байт единицы UTF-16
+
+    private long[] pageBytes = new long[1024];  // Начало страницы в байтах; pageBytes[pages] - конец последней
+    private int[] pageChars = new int[1024];  // Начало страницы в символах; pageChars[pages] - всего символов
+    private int pages = 0;
+    private boolean truncated = false;  // Файл длиннее, чем может адресовать документ Swing
+    private final DecodeStats stats = new DecodeStats();  // Переводы строк и символы замены проиндексированной части
+
+    // Последние декодированные страницы в порядке использования
+    private final Map<Integer, char[]> cache = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    // Страницы, закреплённые в куче перед перезаписью файла на месте: их байты на диске больше не совпадают с текстом
+    private final Map<Integer, char[]> pinned = new HashMap<>();
+
+    // Страницы, декодированные последним indexNextPages и ещё не прочитанные: при первом обращении переходят в cache
+    private final Map<Integer, char[]> prefetched = new HashMap<>();
+
+    private MappedFile(Path path, long size, MappedByteBuffer[] regions, Charset charset) {
+        this.path = path;
+        this.size = size;
+        this.regions = regions;
+        this.charset = charset;
+        this.decoder = newDecoder();
+        this.unit = charset.equals(StandardCharsets.UTF_16LE) || charset.equals(StandardCharsets.UTF_16BE) ? 2 : 1;
+        this.bigEndian = charset.equals(StandardCharsets.UTF_16BE);
+    }
+
+    // Отображает файл в память, кодировка определяется по началу файла
+    public static MappedFile map(Path path) throws IOException {
+        return map(path, null);
+    }
+
+    // Отображает файл в память; charset null - определить по началу файла.
+    // Канал закрывается сразу: отображения остаются действительными.
+    public static MappedFile map(Path path, Charset charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) ((size + REGION_BYTES - 1) / REGION_BYTES);
+            MappedByteBuffer[] regions = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * REGION_BYTES;
+                // Области перекрываются на MAX_PAGE_BYTES, чтобы любая страница целиком лежала в одной области
+                long length = Math.min(size - start, REGION_BYTES + MAX_PAGE_BYTES);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            if (charset == null) {
+                charset = EncodingDetector.detect(count > 0 ? regions[0] : ByteBuffer.allocate(0), Charset.defaultCharset());
+            }
+            return new MappedFile(path, size, regions, charset);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    // Преобладающий в проиндексированной части перевод строки
+    public synchronized String getLineSeparator() {
+        return stats.getLineSeparator();
+    }
+
+    public synchronized long indexedBytes() {
+        return pageBytes[pages];
+    }
+
+    public synchronized int indexedChars() {
+        return pageChars[pages];
+    }
+
+    public synchronized boolean isIndexed() {
+        return truncated || pageBytes[pages] == size;
+    }
+
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
+    public synchronized boolean isLossy() {
+        return stats.isLossy();  // Символы замены: текст не совпадает с байтами файла
+    }
+
+    // Количество проиндексированных страниц
+    public synchronized int pageCount() {
+        return pages;
+    }
+
+    // Начало страницы page в символах; pageCount() - конец последней
+    public synchronized int pageStartChar(int page) {
+        return pageChars[page];
+    }
+
+    // Начало страницы page в байтах; pageCount() - конец последней
+    public synchronized long pageStartByte(int page) {
+        return pageBytes[page];
+    }
+
+    // Декодирует и закрепляет в куче страницы, пересекающие байты [fromByte, toByte).
+    // Вызывается перед записью в сам отображённый файл, иначе документ прочитал бы уже новые байты.
+    public synchronized void pin(long fromByte, long toByte) {
+        int index = Arrays.binarySearch(pageBytes, 0, pages + 1, fromByte);
+        int page = Math.max(0, index >= 0 ? index : -index - 2);  // Страница, в которой лежит fromByte
+        for (; page < pages && pageBytes[page] < toByte; page++) {
+            if (!pinned.containsKey(page)) {
+                pinned.put(page, page(page));
+            }
+        }
+    }
+
+    // Сколько байт уже закреплено в куче
+    public synchronized long pinnedBytes() {
+        long total = 0;
+        for (int page : pinned.keySet()) {
+            total += pageBytes[page + 1] - pageBytes[page];
+        }
+        return total;
+    }
+
+    // Добавляет в индекс следующую страницу и возвращает количество её символов, или -1, если файл проиндексирован
+    public synchronized int indexNextPage() {
+        if (isIndexed()) {
+            return -1;
+        }
+        long start = pageBytes[pages];
+        long end = pageEnd(start);
+        char[] chars = decode(decoder, start, (int) (end - start));
+        DecodeStats page = new DecodeStats();
+        page.count(chars, 0, chars.length);
+        if (!addPage(end, chars)) {
+            return -1;
+        }
+        cache.put(pages - 1, chars);
+        stats.add(page);
+        return chars.length;
+    }
+
+    // Индексирует следующие batchBytes байт файла (до границы строки) параллельно в пуле pool и возвращает число
+    // добавленных символов, или -1, если файл проиндексирован. Порция делится на куски по границам строк, каждый
+    // кусок декодирует своя задача своим декодером прямо из отображения; страницы добавляются в индекс по порядку.
+    // Декодированные страницы хранятся до первого обращения, и вставка порции в документ не декодирует их заново.
+    public int indexNextPages(ForkJoinPool pool, long batchBytes) {
+        long start;
+        synchronized (this) {
+            if (isIndexed()) {
+                return -1;
+            }
+            prefetched.clear();  // Непрочитанные страницы прошлой порции декодируются заново при обращении
+            start = pageBytes[pages];
+        }
+        long end = size - start <= batchBytes ? size : boundary(start + batchBytes, Math.min(size, start + batchBytes + MAX_PAGE_BYTES));
+        int count = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, (end - start) / (PAGE_BYTES * 4)));
+        long[] bounds = new long[count + 1];  // Начала кусков на границах строк
+        bounds[0] = start;
+        bounds[count] = end;
+        for (int i = 1; i < count; i++) {
+            long from = Math.max(bounds[i - 1], start + (end - start) * i / count);
+            bounds[i] = Math.min(end, boundary(from, Math.min(end, from + MAX_PAGE_BYTES)));
+        }
+        List<ForkJoinTask<Piece>> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long from = bounds[i];
+            long to = bounds[i + 1];
+            tasks.add(pool.submit(() -> decodePiece(from, to)));
+        }
+        List<Piece> pieces = new ArrayList<>();
+        for (ForkJoinTask<Piece> task : tasks) {
+            pieces.add(task.join());
+        }
+
+        synchronized (this) {
+            int added = 0;
+            for (Piece piece : pieces) {
+                for (int i = 0; i < piece.pages.size(); i++) {
+                    char[] chars = piece.pages.get(i);
+                    if (!addPage(piece.ends.get(i), chars)) {
+                        return added;
+                    }
+                    prefetched.put(pages - 1, chars);
+                    added += chars.length;
+                }
+                stats.add(piece.stats);
+            }
+            return added;
+        }
+    }
+
+    @Override
+    public synchronized void getChars(int start, int length, char[] dst, int dstOffset) {
+        while (length > 0) {
+            int page = pageOf(start);
+            char[] chars = page(page);
+            int inPage = start - pageChars[page];
+            int count = Math.min(length, chars.length - inPage);
+            System.arraycopy(chars, inPage, dst, dstOffset, count);
+            start += count;
+            dstOffset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public synchronized void getSegment(int start, int length, Segment segment) {
+        int page = pageOf(start);
+        char[] chars = page(page);
+        int inPage = start - pageChars[page];
+        segment.array = chars;
+        segment.offset = inPage;
+        segment.count = Math.min(length, chars.length - inPage);
+    }
+
+    // Добавляет в индекс страницу, которая кончается на байте end; false - смещения документа больше не помещаются в int
+    private boolean addPage(long end, char[] chars) {
+        if ((long) pageChars[pages] + chars.length >= Integer.MAX_VALUE - 1) {
+            truncated = true;
+            return false;
+        }
+        if (pages + 1 == pageBytes.length) {
+            pageBytes = Arrays.copyOf(pageBytes, pageBytes.length * 2);
+            pageChars = Arrays.copyOf(pageChars, pageChars.length * 2);
+        }
+        pages++;
+        pageBytes[pages] = end;
+        pageChars[pages] = pageChars[pages - 1] + chars.length;
+        return true;
+    }
+
+    // Страницы байт [from, to) со своим декодером; выполняется в пуле без блокировки файла
+    private Piece decodePiece(long from, long to) {
+        CharsetDecoder pieceDecoder = newDecoder();
+        Piece piece = new Piece();
+        for (long position = from; position < to; ) {
+            long end = Math.min(pageEnd(position), to);
+            char[] chars = decode(pieceDecoder, position, (int) (end - position));
+            piece.stats.count(chars, 0, chars.length);
+            piece.ends.add(end);
+            piece.pages.add(chars);
+            position = end;
+        }
+        return piece;
+    }
+
+    // Конец страницы: первый перевод строки после PAGE_BYTES, иначе граница символа
+    private long pageEnd(long start) {
+        if (size - start <= PAGE_BYTES) {
+            return size;
+        }
+        return boundary(start + PAGE_BYTES, Math.min(size, start + MAX_PAGE_BYTES));
+    }
+
+    // Позиция после первого перевода строки в [from, limit), иначе граница символа не дальше limit.
+    // В UTF-16 перевод строки - единица 0A 00 (00 0A) на чётной позиции, суррогатная пара не разрезается;
+    // в остальных кодировках - байт 0A, не разрезается многобайтовый символ UTF-8.
+    private long boundary(long from, long limit) {
+        if (unit == 2) {
+            int low = bigEndian ? 1 : 0;  // Младший байт единицы
+            for (long position = from + (from & 1); position + 1 < limit; position += 2) {
+                if (byteAt(position + low) == '\n' && byteAt(position + 1 - low) == 0) {
+                    return position + 2;
+                }
+            }
+            if (limit >= size) {
+                return size;
+            }
+            long end = limit - (limit & 1);
+            if (end - 2 > from && (byteAt(end - 1 - low) & 0xFC) == 0xD8) {
+                end -= 2;  // Последняя единица - начало суррогатной пары
+            }
+            return end;
+        }
+        for (long position = from; position < limit; position++) {
+            if (byteAt(position) == '\n') {
+                return position + 1;
+            }
+        }
+        long end = limit;
+        while (end > from && end < size && (byteAt(end) & 0xC0) == 0x80) {
+            end--;  // Не разрезаем многобайтовый символ
+        }
+        return end;
+    }
+
+    private int pageOf(int charOffset) {
+        int index = Arrays.binarySearch(pageChars, 0, pages + 1, charOffset);
+        return index >= 0 ? Math.min(index, pages - 1) : -index - 2;
+    }
+
+    private char[] page(int page) {
+        char[] chars = pinned.get(page);
+        if (chars != null) {
+            return chars;
+        }
+        chars = cache.get(page);
+        if (chars == null) {
+            chars = prefetched.remove(page);
+            if (chars == null) {
+                chars = decode(decoder, pageBytes[page], (int) (pageBytes[page + 1] - pageBytes[page]));
+            }
+            cache.put(page, chars);
+        }
+        return chars;
+    }
+
+    private CharsetDecoder newDecoder() {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private char[] decode(CharsetDecoder decoder, long start, int length) {
+        ByteBuffer bytes = slice(start, length);
+        CharBuffer chars = CharBuffer.allocate((int) Math.ceil(length * (double) decoder.maxCharsPerByte()));
+        decoder.reset();
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        return Arrays.copyOf(chars.array(), chars.position());
+    }
+
+    private ByteBuffer slice(long start, int length) {
+        int region = (int) (start / REGION_BYTES);
+        int offset = (int) (start - region * REGION_BYTES);
+        return regions[region].duplicate().position(offset).limit(offset + length);
+    }
+
+    private byte byteAt(long position) {
+        int region = (int) (position / REGION_BYTES);
+        return regions[region].get((int) (position - region * REGION_BYTES));
+    }
+
+    // Страницы куска порции, декодированные одной задачей
+    private static class Piece {
+        final List<Long> ends = new ArrayList<>();  // Конец каждой страницы в байтах
+        final List<char[]> pages = new ArrayList<>();
+        final DecodeStats stats = new DecodeStats();
+    }
+}
@@ -0,0 +1,165 @@
+package document;
+
+import javax.swing.text.Position;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+// Позиции в документе, которые сдвигаются при вставке и удалении (правила те же, что у StringContent).
+// Позиции отсортированы и разбиты на блоки с общим сдвигом, поэтому правка меняет отдельные позиции
+// только в одном блоке, а у остальных блоков - один счётчик. Неиспользуемые позиции удаляются
+// через ReferenceQueue, как в GapContent.
+final class MarkList {
+
+    private static final int BLOCK_SIZE = 256;  // После удвоения блок делится пополам
+
+    // Позиция, которую получает документ; пока она жива, запись о ней хранится в списке
+    private static final class Handle implements Position {
+        private Entry entry;
+
+        @Override
+        public int getOffset() {
+            return entry.absolute();
+        }
+    }
+
+    // Запись о позиции: смещение относительно сдвига своего блока
+    private static final class Entry extends WeakReference<Handle> {
+        private int offset;
+        private Block block;
+
+        Entry(Handle handle, ReferenceQueue<Handle> queue) {
+            super(handle, queue);
+        }
+
+        int absolute() {
+            return block.shift + offset;
+        }
+    }
+
+    private static final class Block {
+        private int shift;  // Сдвиг, общий для всех позиций блока
+        private final List<Entry> entries = new ArrayList<>();
+
+        int last() {
+            return entries.get(entries.size() - 1).absolute();
+        }
+    }
+
+    private final List<Block> blocks = new ArrayList<>();
+    private final ReferenceQueue<Handle> queue = new ReferenceQueue<>();
+
+    Position create(int offset) {
+        purge();
+        Handle handle = new Handle();
+        Entry entry = new Entry(handle, queue);  // Запись ссылается на позицию слабо, позиция на запись - сильно
+        handle.entry = entry;
+
+        Block block;
+        if (blocks.isEmpty()) {
+            block = new Block();
+            blocks.add(block);
+        } else {
+            int index = blockFor(offset);
+            block = blocks.get(index == blocks.size() ? index - 1 : index);  // Позиция после всех остальных - в последний блок
+        }
+        int position = 0;
+        while (position < block.entries.size() && block.entries.get(position).absolute() < offset) {
+            position++;
+        }
+        entry.block = block;
+        entry.offset = offset - block.shift;
+        block.entries.add(position, entry);
+        if (block.entries.size() > 2 * BLOCK_SIZE) {
+            split(blocks.indexOf(block));
+        }
+        return handle;
+    }
+
+    // Сдвигает позиции после вставки; позиция 0 остаётся на месте, как и в стандартных Content
+    void insert(int offset, int length) {
+        purge();
+        int from = offset == 0 ? 1 : offset;
+        int index = blockFor(from);
+        if (index == blocks.size()) {
+            return;  // Все позиции раньше места вставки
+        }
+        Block block = blocks.get(index);
+        for (Entry entry : block.entries) {
+            if (entry.absolute() >= from) {
+                entry.offset += length;
+            }
+        }
+        for (int i = index + 1; i < blocks.size(); i++) {
+            blocks.get(i).shift += length;
+        }
+    }
+
+    // Сдвигает позиции после удаления; позиции внутри удалённого диапазона переходят на его начало
+    void remove(int offset, int length) {
+        purge();
+        int end = offset + length;
+        for (int i = blockFor(offset); i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            boolean reachedEnd = false;
+            for (Entry entry : block.entries) {
+                int absolute = entry.absolute();
+                if (absolute >= end) {
+                    entry.offset -= length;
+                    reachedEnd = true;
+                } else if (absolute >= offset) {
+                    entry.offset = offset - block.shift;
+                }
+            }
+            if (reachedEnd) {
+                for (int j = i + 1; j < blocks.size(); j++) {
+                    blocks.get(j).shift -= length;
+                }
+                return;
+            }
+        }
+    }
+
+    // Индекс первого блока, в котором есть позиция не меньше offset (или blocks.size())
+    private int blockFor(int offset) {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (blocks.get(middle).last() < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void split(int index) {
+        Block block = blocks.get(index);
+        Block tail = new Block();
+        tail.shift = block.shift;
+        List<Entry> moved = block.entries.subList(BLOCK_SIZE, block.entries.size());
+        for (Entry entry : moved) {
+            entry.block = tail;
+        }
+        tail.entries.addAll(moved);
+        moved.clear();
+        blocks.add(index + 1, tail);
+    }
+
+    // Удаляет записи позиций, которые больше никем не используются
+    private void purge() {
+        Reference<? extends Handle> reference;
+        while ((reference = queue.poll()) != null) {
+            Entry entry = (Entry) reference;
+            Block block = entry.block;
+            block.entries.remove(entry);
+            if (block.entries.isEmpty()) {
+                blocks.remove(block);
+            }
+        }
+    }
+}
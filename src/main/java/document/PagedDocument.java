@@ -0,0 +1,189 @@
+package document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Segment;
+import java.nio.charset.Charset;
+
+// Текстовый документ на основе таблицы кусков вместо стандартного GapContent.
+// Позволяет вставлять диапазоны внешнего источника (страницы отображённого файла) без копирования в строку
+// и отдаёт неизменяемые снимки текста. Строки документа знает LineIndex: структура строк PlainDocument
+// (элемент на строку) не строится, корневой элемент отвечает по индексу (LineElements).
+public class PagedDocument extends PlainDocument {
+
+    public static final String CHARSET_PROPERTY = "charset";  // Свойство документа: кодировка файла
+
+    private final LineIndex lines = new LineIndex();  // Строки документа: корневой элемент, переход к строке, строка состояния
+    private final LineElements root = new LineElements(this, lines);
+
+    private volatile boolean modified = false;  // Были ли правки, кроме загрузки через insertSource
+    private volatile boolean loading = false;  // Документ ещё догружается из файла
+    private volatile boolean sourceInsert = false;  // Сейчас рассылается событие вставки из insertSource
+    private volatile boolean sourceRemove = false;  // Сейчас рассылается событие удаления из removeSource
+
+    public PagedDocument() {
+        super(new PieceTableContent());
+    }
+
+    // Снимок текущего текста; не берёт блокировку документа
+    public TextSnapshot snapshot() {
+        return ((PieceTableContent) getContent()).snapshot();
+    }
+
+    // Индекс строк; читается без блокировки документа
+    public LineIndex getLineIndex() {
+        return lines;
+    }
+
+    // Менялся ли текст после загрузки
+    public boolean isModified() {
+        return modified;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+    }
+
+    // Кодировка, в которой документ прочитан из файла и в которой сохраняется; по умолчанию - кодировка системы
+    public Charset getCharset() {
+        Object charset = getProperty(CHARSET_PROPERTY);
+        return charset instanceof Charset ? (Charset) charset : Charset.defaultCharset();
+    }
+
+    public void setCharset(Charset charset) {
+        putProperty(CHARSET_PROPERTY, charset);
+    }
+
+    // Перевод строки файла: его вставляет Enter. Переводы строк в тексте хранятся как в файле.
+    public String getLineSeparator() {
+        Object separator = getProperty(DefaultEditorKit.EndOfLineStringProperty);
+        return separator instanceof String ? (String) separator : "\n";
+    }
+
+    public void setLineSeparator(String separator) {
+        putProperty(DefaultEditorKit.EndOfLineStringProperty, separator);
+    }
+
+    // Вызвано ли текущее событие вставки загрузкой через insertSource (для слушателей документа)
+    public boolean isSourceInsert() {
+        return sourceInsert;
+    }
+
+    // Вызвано ли текущее событие удаления removeSource
+    public boolean isSourceRemove() {
+        return sourceRemove;
+    }
+
+    @Override
+    public void insertString(int offs, String str, AttributeSet a) throws BadLocationException {
+        modified = true;
+        super.insertString(offs, str, a);
+    }
+
+    @Override
+    public void remove(int offs, int len) throws BadLocationException {
+        modified = true;
+        super.remove(offs, len);
+    }
+
+    // Выполняет несколько правок под одной блокировкой записи документа: чужие правки между ними не попадут
+    public void edit(Runnable action) {
+        writeLock();
+        try {
+            action.run();
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    @Override
+    public Element getDefaultRootElement() {
+        return root;
+    }
+
+    @Override
+    public Element getParagraphElement(int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    // Вместо структуры строк PlainDocument обновляется индекс строк; символы вставки читаются из кусков без копирования
+    @Override
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+        int offset = chng.getOffset();
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);  // Символы кусков без копирования
+        try {
+            for (int done = 0; done < chng.getLength(); done += segment.count) {
+                getContent().getChars(offset + done, chng.getLength() - done, segment);
+                lines.insert(offset + done, segment.array, segment.offset, segment.count);
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+        lines.remove(chng.getOffset(), chng.getLength());
+    }
+
+    // Двунаправленный текст не размечается: его разметка при вставке тоже не строится
+    @Override
+    protected void postRemoveUpdate(DefaultDocumentEvent chng) {
+    }
+
+    // Вставляет символы [start, start + count) источника в позицию offset.
+    // Такая вставка не попадает в историю отмены: это загрузка, а не правка пользователя.
+    public void insertSource(int offset, CharSource source, int start, int count) throws BadLocationException {
+        insert(offset, source, start, count, true);
+    }
+
+    // Удаляет символы так же, как insertSource вставляет: не правка пользователя, в историю отмены не попадает
+    // (например, начало документа, вышедшее за предел строк в режиме слежения за файлом)
+    public void removeSource(int offset, int count) throws BadLocationException {
+        writeLock();
+        try {
+            sourceRemove = true;
+            super.remove(offset, count);
+        } finally {
+            sourceRemove = false;
+            writeUnlock();
+        }
+    }
+
+    // Вставляет символы источника как обычную правку (например, возврат большого фрагмента при отмене):
+    // слушатели видят её так же, как insertString, но символы не копируются
+    public void insertPieces(int offset, CharSource source, int start, int count) throws BadLocationException {
+        modified = true;
+        insert(offset, source, start, count, false);
+    }
+
+    private void insert(int offset, CharSource source, int start, int count, boolean fromSource) throws BadLocationException {
+        if (count == 0) {
+            return;
+        }
+        writeLock();
+        try {
+            ((PieceTableContent) getContent()).insert(offset, source, start, count);
+            DefaultDocumentEvent event = new DefaultDocumentEvent(offset, count, DocumentEvent.EventType.INSERT);
+            insertUpdate(event, null);  // Обновление индекса строк
+            event.end();
+            sourceInsert = fromSource;
+            try {
+                fireInsertUpdate(event);
+            } finally {
+                sourceInsert = false;
+            }
+        } finally {
+            writeUnlock();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package document;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+// Содержимое документа в виде таблицы кусков: текст не копируется, а собирается из ссылок
+// на неизменяемые источники (буфер вставок, отображённый в память файл).
+// Куски хранятся в неизменяемом сбалансированном дереве, поэтому правка стоит O(log n),
+// а снимок текста для сохранения, уведомлений и поиска создаётся за O(1).
+// Как и у стандартных Content, в конце всегда есть служебный перевод строки.
+public class PieceTableContent implements AbstractDocument.Content {
+
+    private final AppendBuffer added = new AppendBuffer();  // Всё, что было напечатано или вставлено
+    private final MarkList marks = new MarkList();
+    private volatile PieceTree.Node root;  // Текущая версия текста; старые корни принадлежат снимкам
+
+    public PieceTableContent() {
+        root = PieceTree.leaf(added, added.append("\n"), 1);  // Служебный перевод строки
+    }
+
+    // Неизменяемый снимок текущего текста без служебного перевода строки.
+    // Не требует блокировок: корень дерева публикуется через volatile.
+    public TextSnapshot snapshot() {
+        PieceTree.Node current = root;
+        return new TextSnapshot(current, PieceTree.length(current) - 1);
+    }
+
+    @Override
+    public synchronized Position createPosition(int offset) throws BadLocationException {
+        return marks.create(offset);
+    }
+
+    @Override
+    public int length() {
+        return PieceTree.length(root);
+    }
+
+    @Override
+    public synchronized UndoableEdit insertString(int where, String str) throws BadLocationException {
+        checkInsert(where);
+        if (str.isEmpty()) {
+            return null;
+        }
+        insertTree(where, PieceTree.leaf(added, added.append(str), str.length()));
+        return new InsertUndo(where, str.length());
+    }
+
+    // Вставляет диапазон внешнего источника без копирования символов (например, страницу файла)
+    public synchronized UndoableEdit insert(int where, CharSource source, int start, int count) throws BadLocationException {
+        checkInsert(where);
+        if (count == 0) {
+            return null;
+        }
+        insertTree(where, PieceTree.leaf(source, start, count));
+        return new InsertUndo(where, count);
+    }
+
+    @Override
+    public synchronized UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        checkRange(where, nitems);
+        if (where + nitems == length()) {
+            throw new BadLocationException("Нельзя удалить служебный перевод строки", length() - 1);
+        }
+        PieceTree.Node removed = removeTree(where, nitems);
+        return new RemoveUndo(where, nitems, removed);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        PieceTree.Node current = root;
+        checkRange(current, where, len);
+        char[] chars = new char[len];
+        PieceTree.copy(current, where, len, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        PieceTree.Node current = root;
+        checkRange(current, where, len);
+        if (txt.isPartialReturn() && len > 0) {
+            // Отдаём символы куска, в котором начинается диапазон, без копирования
+            int[] inPiece = new int[1];
+            PieceTree.Node node = PieceTree.find(current, where, inPiece);
+            node.source.getSegment(node.start + inPiece[0], Math.min(len, node.pieceLength - inPiece[0]), txt);
+            return;
+        }
+        char[] chars = new char[len];
+        PieceTree.copy(current, where, len, chars, 0);
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    private void insertTree(int where, PieceTree.Node inserted) {
+        PieceTree.Node[] parts = PieceTree.split(root, where);
+        root = PieceTree.merge(PieceTree.merge(parts[0], inserted), parts[1]);
+        marks.insert(where, PieceTree.length(inserted));
+    }
+
+    private PieceTree.Node removeTree(int where, int count) {
+        PieceTree.Node[] head = PieceTree.split(root, where);
+        PieceTree.Node[] tail = PieceTree.split(head[1], count);
+        root = PieceTree.merge(head[0], tail[1]);
+        marks.remove(where, count);
+        return tail[0];  // Удалённые куски нужны для отмены
+    }
+
+    private void checkInsert(int where) throws BadLocationException {
+        if (where < 0 || where >= length()) {
+            throw new BadLocationException("Неверная позиция вставки", where);
+        }
+    }
+
+    private void checkRange(int where, int len) throws BadLocationException {
+        checkRange(root, where, len);
+    }
+
+    private static void checkRange(PieceTree.Node current, int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > PieceTree.length(current)) {
+            throw new BadLocationException("Неверный диапазон", where + len);
+        }
+    }
+
+    // Отмена вставки: вырезанные куски сохраняются для повтора, текст не копируется
+    private final class InsertUndo extends AbstractUndoableEdit {
+        private final int offset;
+        private final int count;
+        private PieceTree.Node pieces;
+
+        InsertUndo(int offset, int count) {
+            this.offset = offset;
+            this.count = count;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            synchronized (PieceTableContent.this) {
+                pieces = removeTree(offset, count);
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            synchronized (PieceTableContent.this) {
+                insertTree(offset, pieces);
+                pieces = null;
+            }
+        }
+    }
+
+    // Отмена удаления: удалённые куски возвращаются на место
+    private final class RemoveUndo extends AbstractUndoableEdit {
+        private final int offset;
+        private final int count;
+        private PieceTree.Node pieces;
+
+        RemoveUndo(int offset, int count, PieceTree.Node pieces) {
+            this.offset = offset;
+            this.count = count;
+            this.pieces = pieces;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            synchronized (PieceTableContent.this) {
+                insertTree(offset, pieces);
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            synchronized (PieceTableContent.this) {
+                pieces = removeTree(offset, count);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package document;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Неизменяемое декартово дерево кусков с неявным ключом (позицией в тексте).
+// Каждое изменение создаёт новые узлы только на пути от корня, поэтому вставка и удаление стоят O(log n),
+// а старый корень остаётся корректным снимком текста.
+final class PieceTree {
+
+    static final class Node {
+        final CharSource source;  // Источник символов куска
+        final int start;  // Начало куска в источнике
+        final int pieceLength;  // Длина куска
+        final Node left;
+        final Node right;
+        final int priority;  // Приоритет декартова дерева, задаёт форму дерева
+        final int length;  // Длина текста всего поддерева
+
+        Node(CharSource source, int start, int pieceLength, Node left, Node right, int priority) {
+            this.source = source;
+            this.start = start;
+            this.pieceLength = pieceLength;
+            this.left = left;
+            this.right = right;
+            this.priority = priority;
+            this.length = length(left) + pieceLength + length(right);
+        }
+
+        private Node with(Node left, Node right) {
+            return new Node(source, start, pieceLength, left, right, priority);
+        }
+    }
+
+    private PieceTree() {
+    }
+
+    static int length(Node node) {
+        return node == null ? 0 : node.length;
+    }
+
+    static Node leaf(CharSource source, int start, int length) {
+        return new Node(source, start, length, null, null, ThreadLocalRandom.current().nextInt());
+    }
+
+    // Делит дерево на два: в первом ровно offset символов
+    static Node[] split(Node node, int offset) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        int leftLength = length(node.left);
+        if (offset <= leftLength) {
+            Node[] parts = split(node.left, offset);
+            return new Node[]{parts[0], node.with(parts[1], node.right)};
+        }
+        int pieceEnd = leftLength + node.pieceLength;
+        if (offset >= pieceEnd) {
+            Node[] parts = split(node.right, offset - pieceEnd);
+            return new Node[]{node.with(node.left, parts[0]), parts[1]};
+        }
+        // Позиция внутри куска: кусок режется на два, у каждой половины остаётся одно поддерево
+        int head = offset - leftLength;
+        Node first = new Node(node.source, node.start, head, node.left, null, node.priority);
+        Node second = new Node(node.source, node.start + head, node.pieceLength - head, null, node.right, node.priority);
+        return new Node[]{first, second};
+    }
+
+    // Склеивает два дерева: все символы first идут перед символами second
+    static Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            return first.with(first.left, merge(first.right, second));
+        }
+        return second.with(merge(first, second.left), second.right);
+    }
+
+    // Копирует символы [offset, offset + count) дерева в dst
+    static void copy(Node node, int offset, int count, char[] dst, int dstOffset) {
+        while (node != null && count > 0) {
+            int leftLength = length(node.left);
+            if (offset < leftLength) {
+                int fromLeft = Math.min(count, leftLength - offset);
+                copy(node.left, offset, fromLeft, dst, dstOffset);
+                offset += fromLeft;
+                dstOffset += fromLeft;
+                count -= fromLeft;
+                continue;
+            }
+            int inPiece = offset - leftLength;
+            if (inPiece < node.pieceLength) {
+                int fromPiece = Math.min(count, node.pieceLength - inPiece);
+                node.source.getChars(node.start + inPiece, fromPiece, dst, dstOffset);
+                offset += fromPiece;
+                dstOffset += fromPiece;
+                count -= fromPiece;
+            }
+            // Оставшееся лежит в правом поддереве
+            offset -= leftLength + node.pieceLength;
+            node = node.right;
+        }
+    }
+
+    // Узел, содержащий символ offset; в position[0] записывается смещение внутри его куска
+    static Node find(Node node, int offset, int[] position) {
+        while (node != null) {
+            int leftLength = length(node.left);
+            if (offset < leftLength) {
+                node = node.left;
+            } else if (offset < leftLength + node.pieceLength) {
+                position[0] = offset - leftLength;
+                return node;
+            } else {
+                offset -= leftLength + node.pieceLength;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,80 @@
+package document;
+
+import javax.swing.text.Segment;
+import java.util.function.Consumer;
+
+// Неизменяемый снимок текста документа. Создаётся за O(1) и читается без блокировок редактора и документа:
+// дальнейшие правки строят новое дерево кусков и не затрагивают этот снимок.
+// Снимок сам может быть источником кусков: так история правок возвращает большой удалённый фрагмент без копирования.
+public final class TextSnapshot implements CharSource {
+
+    private final PieceTree.Node root;
+    private final int length;  // Длина текста без служебного перевода строки
+
+    TextSnapshot(PieceTree.Node root, int length) {
+        this.root = root;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    // Копирует символы [offset, offset + count) в массив dst
+    @Override
+    public void getChars(int offset, int count, char[] dst, int dstOffset) {
+        checkRange(offset, count);
+        PieceTree.copy(root, offset, count, dst, dstOffset);
+    }
+
+    // Сегмент символов куска, в котором лежит offset
+    @Override
+    public void getSegment(int offset, int count, Segment segment) {
+        checkRange(offset, count);
+        int[] inPiece = new int[1];
+        PieceTree.Node node = PieceTree.find(root, offset, inPiece);
+        node.source.getSegment(node.start + inPiece[0], Math.min(count, node.pieceLength - inPiece[0]), segment);
+    }
+
+    // Тот же текст без сравнения символов: между снимками документ не менялся
+    public boolean isSameVersion(TextSnapshot other) {
+        return other != null && root == other.root && length == other.length;
+    }
+
+    public String getText(int offset, int count) {
+        char[] chars = new char[count];
+        getChars(offset, count, chars, 0);
+        return new String(chars);
+    }
+
+    // Передаёт символы [offset, offset + count) по частям без копирования.
+    // Сегмент действителен только внутри вызова consumer.
+    public void forEachSegment(int offset, int count, Consumer<Segment> consumer) {
+        checkRange(offset, count);
+        Segment segment = new Segment();
+        int[] inPiece = new int[1];
+        while (count > 0) {
+            PieceTree.Node node = PieceTree.find(root, offset, inPiece);
+            int fromPiece = Math.min(count, node.pieceLength - inPiece[0]);
+            int done = 0;
+            while (done < fromPiece) {  // Источник может отдать кусок в несколько сегментов (страницы файла)
+                node.source.getSegment(node.start + inPiece[0] + done, fromPiece - done, segment);
+                done += segment.count;
+                consumer.accept(segment);
+            }
+            offset += fromPiece;
+            count -= fromPiece;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getText(0, length);
+    }
+
+    private void checkRange(int offset, int count) {
+        if (offset < 0 || count < 0 || offset + count > length) {
+            throw new IndexOutOfBoundsException("Диапазон [" + offset + ", " + (offset + count) + ") вне снимка длины " + length);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package engine;
+
+import io.SaveResult;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+// Применяет сценарий правок к множеству файлов параллельно в ForkJoinPool.
+// Список файлов делится пополам до отдельных файлов, поэтому свободные потоки забирают работу у занятых
+// (большие файлы не задерживают остальных). Каждый файл открывается, правится и сохраняется своим DocumentEngine;
+// ошибка одного файла не останавливает обработку остальных.
+public class BatchProcessor {
+
+    // Файл для обработки и куда сохранить результат (может совпадать с исходным)
+    public static final class Job {
+        private final Path source;
+        private final Path target;
+
+        public Job(Path source, Path target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Path getTarget() {
+            return target;
+        }
+    }
+
+    // Итог обработки одного файла
+    public static final class FileResult {
+        private final Job job;
+        private final long bytes;  // Размер исходного файла
+        private final int edits;  // Выполненные правки
+        private final long nanos;  // Открытие, правка и сохранение
+        private final SaveResult save;  // null, если файл не сохранён
+        private final Exception error;  // null, если файл обработан
+
+        FileResult(Job job, long bytes, int edits, long nanos, SaveResult save, Exception error) {
+            this.job = job;
+            this.bytes = bytes;
+            this.edits = edits;
+            this.nanos = nanos;
+            this.save = save;
+            this.error = error;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getEdits() {
+            return edits;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public SaveResult getSave() {
+            return save;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        // Скорость обработки в мегабайтах в секунду
+        public double getMegabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return "ОШИБКА " + job.source + ": " + error;
+            }
+            return String.format("OK %s: %d байт, правок %d, %.1f мс, %.1f МБ/с", job.source, bytes, edits,
+                    nanos / 1e6, getMegabytesPerSecond());
+        }
+    }
+
+    // Сводка по всей обработке
+    public static final class Report {
+        private final List<FileResult> results;
+        private final long nanos;
+
+        Report(List<FileResult> results, long nanos) {
+            this.results = Collections.unmodifiableList(results);
+            this.nanos = nanos;
+        }
+
+        public List<FileResult> getResults() {
+            return results;
+        }
+
+        public int getFailed() {
+            int failed = 0;
+            for (FileResult result : results) {
+                if (result.isFailed()) {
+                    failed++;
+                }
+            }
+            return failed;
+        }
+
+        public long getBytes() {
+            long bytes = 0;
+            for (FileResult result : results) {
+                bytes += result.bytes;
+            }
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = nanos / 1e9;
+            return String.format("Файлов %d, ошибок %d, %d байт за %.2f с (%.1f файлов/с, %.1f МБ/с)",
+                    results.size(), getFailed(), getBytes(), seconds,
+                    seconds == 0 ? 0 : results.size() / seconds,
+                    seconds == 0 ? 0 : getBytes() / (1024.0 * 1024.0) / seconds);
+        }
+    }
+
+    private final EditScript script;
+    private final Charset charset;  // null - кодировка каждого файла определяется по его началу
+    private final int parallelism;
+
+    public BatchProcessor(EditScript script, Charset charset, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Число потоков должно быть положительным");
+        }
+        this.script = script;
+        this.charset = charset;
+        this.parallelism = parallelism;
+    }
+
+    // Обрабатывает все файлы и возвращает сводку; listener получает итог каждого файла сразу по готовности (из разных потоков)
+    public Report run(List<Job> jobs, Consumer<FileResult> listener) {
+        FileResult[] results = new FileResult[jobs.size()];
+        long started = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Split(jobs, 0, jobs.size(), results, listener));
+        } finally {
+            pool.shutdown();
+        }
+        List<FileResult> list = new ArrayList<>(results.length);
+        Collections.addAll(list, results);
+        return new Report(list, System.nanoTime() - started);
+    }
+
+    // Обрабатывает один файл: открытие, сценарий, сохранение
+    FileResult process(Job job) {
+        long started = System.nanoTime();
+        long bytes = 0;
+        int edits = 0;
+        try {
+            bytes = Files.size(job.source);
+            DocumentEngine engine = DocumentEngine.open(job.source, charset);
+            edits = script.apply(engine);
+            SaveResult save = null;
+            if (edits > 0 || !job.target.equals(job.source)) {  // Файл без правок на месте не переписывается
+                Path parent = job.target.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                save = engine.save(job.target, engine.getDocument().getCharset());  // В кодировке исходного файла
+            }
+            return new FileResult(job, bytes, edits, System.nanoTime() - started, save, null);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return new FileResult(job, bytes, edits, System.nanoTime() - started, null, e);
+        }
+    }
+
+    // Задача над диапазоном файлов [from, to): делится пополам, пока не останется один файл
+    private final class Split extends RecursiveAction {
+        private final List<Job> jobs;
+        private final int from;
+        private final int to;
+        private final FileResult[] results;
+        private final Consumer<FileResult> listener;
+
+        Split(List<Job> jobs, int from, int to, FileResult[] results, Consumer<FileResult> listener) {
+            this.jobs = jobs;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Split(jobs, from, middle, results, listener), new Split(jobs, middle, to, results, listener));
+                return;
+            }
+            if (to == from) {
+                return;
+            }
+            FileResult result = process(jobs.get(from));
+            results[from] = result;
+            if (listener != null) {
+                listener.accept(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package engine;
+
+import codec.Codec;
+import codec.CodecResult;
+import codec.Codecs;
+import codec.CompressedFiles;
+import controller.ReadWriteLock;
+import diff.DiffResult;
+import diff.Hunk;
+import document.MappedFile;
+import document.PagedDocument;
+import document.TextSnapshot;
+import history.EditHistory;
+import io.ByteIndex;
+import io.DirtyRanges;
+import io.IncrementalSaver;
+import io.SaveBaseline;
+import io.SaveResult;
+import io.SnapshotSaver;
+import journal.EditJournal;
+import journal.JournalBase;
+import macro.Macro;
+import search.DocumentSearch;
+import search.Match;
+import search.Replacement;
+import search.SearchQuery;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+// Ядро редактирования без окна: документ, блокировка, история отмены, изменённые диапазоны, журнал и сохранение.
+// Editor показывает документ ядра в JTextArea; пакетная обработка (BatchApplication) работает с ядром напрямую.
+public class DocumentEngine {
+
+    public static final long LOAD_BATCH_BYTES = 16L << 20;  // Порция файла, декодируемая параллельно и вставляемая за раз
+    private static final int REPLAY_BATCH = 4096;  // Записей макроса под одним захватом блокировки
+    private static final int LOCK_FREE_SEARCHES = 3;  // Попыток поиска без блокировки, пока документ меняется
+
+    public final ReadWriteLock readWriteLock = new ReadWriteLock();
+
+    public final EditHistory history = new EditHistory(EditHistory.DEFAULT_BUDGET_BYTES);  // История отмены и повтора документа
+
+    public final DirtyRanges dirtyRanges = new DirtyRanges();  // Что изменилось с последнего сохранения или открытия
+
+    public volatile SaveBaseline baseline;  // Текст и байтовые точки файла на диске, относительно них считаются dirtyRanges
+
+    public volatile EditJournal journal;  // Журнал правок для восстановления после сбоя; null - не ведётся
+
+    private volatile PagedDocument document;
+
+    private volatile boolean batchEdit;  // Идёт замена всех вхождений одной правкой
+
+    // Слушатель документа: изменённые диапазоны для сохранения на месте и записи журнала
+    private final DocumentListener documentListener = new DocumentListener() {
+        public void insertUpdate(DocumentEvent e) {
+            dirtyRanges.insert(e.getOffset(), e.getLength());
+            EditJournal currentJournal = journal;
+            PagedDocument changed = (PagedDocument) e.getDocument();
+            // Загрузка файла в журнал не пишется: при восстановлении файл читается заново.
+            // Вставка из источника после загрузки (слежение за файлом) сдвигает текст мимо журнала.
+            if (currentJournal != null && changed.isSourceInsert()) {
+                if (!changed.isLoading()) {
+                    currentJournal.invalidate();
+                }
+            } else if (currentJournal != null) {
+                try {
+                    currentJournal.edit(e.getOffset(), 0, e.getDocument().getText(e.getOffset(), e.getLength()));
+                } catch (BadLocationException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+
+        public void removeUpdate(DocumentEvent e) {
+            dirtyRanges.remove(e.getOffset(), e.getLength());
+            EditJournal currentJournal = journal;
+            if (currentJournal != null && ((PagedDocument) e.getDocument()).isSourceRemove()) {
+                currentJournal.invalidate();  // Обрезка начала документа при слежении за файлом
+            } else if (currentJournal != null) {
+                currentJournal.edit(e.getOffset(), e.getLength(), "");
+            }
+        }
+
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+
+    public DocumentEngine() {
+        this(new PagedDocument());
+    }
+
+    public DocumentEngine(PagedDocument document) {
+        this.document = document;
+        history.attach(document);
+        document.addDocumentListener(documentListener);
+    }
+
+    // Прочитанный файл: документ, исходное состояние для сохранения на месте и итог распаковки сжатого файла
+    public static final class Opened {
+        public final PagedDocument document;
+        public final SaveBaseline baseline;  // null для сжатого файла: он всегда сохраняется заново
+        public final CodecResult codec;  // null для несжатого файла
+
+        Opened(PagedDocument document, SaveBaseline baseline, CodecResult codec) {
+            this.document = document;
+            this.baseline = baseline;
+            this.codec = codec;
+        }
+    }
+
+    // Открывает файл целиком: страницы берутся из отображения без копирования, сохранение сразу может идти на месте.
+    // charset null - кодировка определяется по началу файла.
+    public static DocumentEngine open(Path file, Charset charset) throws IOException {
+        Opened opened = read(file, charset);
+        DocumentEngine engine = new DocumentEngine(opened.document);
+        engine.baseline = opened.baseline;
+        engine.dirtyRanges.reset();  // Загрузка страниц не считается изменением
+        return engine;
+    }
+
+    // Читает файл в новый документ. Сжатый файл (формат по первым байтам, см. Codecs) распаковывается потоком,
+    // остальные отображаются в память. charset null - кодировка определяется по началу текста.
+    public static Opened read(Path file, Charset charset) throws IOException {
+        Codec codec = Codecs.detect(file);
+        if (codec != null) {
+            PagedDocument document = new PagedDocument();
+            CodecResult result = CompressedFiles.load(file, codec, charset, document);
+            return new Opened(document, null, result);
+        }
+        MappedFile mapped = MappedFile.map(file, charset);
+        PagedDocument document = load(mapped);
+        return new Opened(document, SaveBaseline.ofMapped(mapped, document.snapshot(), mapped.getCharset()), null);
+    }
+
+    // Документ со всеми страницами отображённого файла; загрузка не считается правкой.
+    // Страницы декодируются параллельно порциями, каждая порция сразу вставляется в документ.
+    public static PagedDocument load(MappedFile mapped) throws IOException {
+        PagedDocument document = new PagedDocument();
+        document.setCharset(mapped.getCharset());
+        int loaded = 0;
+        try {
+            while (mapped.indexNextPages(ForkJoinPool.commonPool(), LOAD_BATCH_BYTES) >= 0) {
+                int count = mapped.indexedChars() - loaded;
+                document.insertSource(document.getLength(), mapped, loaded, count);
+                loaded += count;
+            }
+        } catch (BadLocationException e) {
+            throw new IOException(e);
+        }
+        if (mapped.isTruncated()) {
+            throw new IOException("Файл слишком большой: " + mapped.getPath());
+        }
+        document.setLineSeparator(mapped.getLineSeparator());
+        return document;
+    }
+
+    public PagedDocument getDocument() {
+        return document;
+    }
+
+    // Заменяет документ ядра и переносит слушателя; история и исходное состояние прежнего документа сбрасываются
+    public void setDocument(PagedDocument next) throws InterruptedException {
+        setDocument(next, null);
+    }
+
+    // Заменяет документ ядра и продолжает его прежнюю историю (записи взяты history.detach у этого документа)
+    public void setDocument(PagedDocument next, EditHistory.Records records) throws InterruptedException {
+        readWriteLock.write(() -> {
+            document.removeDocumentListener(documentListener);
+            document = next;
+            history.attach(next, records);  // История прежнего документа к новому не относится
+            next.addDocumentListener(documentListener);
+            baseline = null;  // Исходное состояние нового документа задаёт тот, кто его загружает
+            dirtyRanges.reset();
+        });
+    }
+
+    // Неизменяемый снимок текста. Создаётся за O(1) и читается без блокировки.
+    public TextSnapshot snapshot() {
+        return document.snapshot();
+    }
+
+    public int getLength() {
+        return document.getLength();
+    }
+
+    public void insert(int offset, String text) throws BadLocationException, InterruptedException {
+        replace(offset, 0, text);
+    }
+
+    public void remove(int offset, int length) throws BadLocationException, InterruptedException {
+        replace(offset, length, "");
+    }
+
+    // Заменяет length символов с offset на text одной записью истории
+    public void replace(int offset, int length, String text) throws BadLocationException, InterruptedException {
+        BadLocationException[] failure = new BadLocationException[1];
+        readWriteLock.write(() -> {
+            history.beginGroup();
+            try {
+                document.replace(offset, length, text, null);
+            } catch (BadLocationException e) {
+                failure[0] = e;
+            } finally {
+                history.endGroup();
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    // Заменяет все вхождения строки target на replacement; возвращает число замен
+    public int replaceAll(String target, String replacement) throws InterruptedException {
+        return replaceAll(SearchQuery.literal(target, true), replacement, null).getCount();
+    }
+
+    // Заменяет все вхождения одной правкой и одной записью истории. Поиск идёт параллельно по снимку без блокировки;
+    // если документ за это время изменился, поиск повторяется, а после нескольких неудач - под блокировкой записи
+    // документа (её берёт и набор текста), так что найденное всегда применяется.
+    public Replacement replaceAll(SearchQuery query, String replacement, Consumer<List<Match>> listener) throws InterruptedException {
+        for (int attempt = 0; attempt < LOCK_FREE_SEARCHES; attempt++) {
+            Replacement found = DocumentSearch.replaceAll(snapshot(), query, replacement, ForkJoinPool.commonPool(), listener);
+            if (apply(found)) {
+                return found;
+            }
+        }
+        Replacement[] found = new Replacement[1];
+        readWriteLock.write(() -> document.edit(() -> {
+            found[0] = DocumentSearch.replaceAll(document.snapshot(), query, replacement, ForkJoinPool.commonPool(), listener);
+            applyFound(found[0]);
+        }));
+        return found[0];
+    }
+
+    // Применяет найденную замену, если документ не менялся после снимка: участок от первого до последнего вхождения
+    // удаляется и вставляется заново кусками, ссылающимися на снимок (два события документа на всю замену)
+    public boolean apply(Replacement replacement) throws InterruptedException {
+        boolean[] applied = new boolean[1];
+        readWriteLock.write(() -> document.edit(() -> {
+            if (!document.snapshot().isSameVersion(replacement.getText())) {
+                return;
+            }
+            applied[0] = true;
+            applyFound(replacement);
+        }));
+        return applied[0];
+    }
+
+    // Вызывается под блокировкой записи документа, снимок замены - текущая версия документа
+    private void applyFound(Replacement replacement) {
+        if (replacement.getCount() == 0) {
+            return;
+        }
+        batchEdit = true;
+        history.beginGroup();
+        try {
+            document.remove(replacement.getStart(), replacement.getRemovedLength());
+            document.insertPieces(replacement.getStart(), replacement, 0, replacement.getInsertedLength());
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);  // Участок найден в снимке этой же версии документа
+        } finally {
+            history.endGroup();
+            batchEdit = false;
+        }
+    }
+
+    // Применяет разницу к документу, если он не менялся после её первого снимка: участки заменяются строками второго
+    // снимка с конца документа к началу, вставленные куски ссылаются на второй снимок без копирования. Одна запись
+    // истории на всю разницу. Возвращает снимок документа после правки или null, если документ успел измениться.
+    public TextSnapshot apply(DiffResult diff) throws InterruptedException {
+        TextSnapshot[] applied = new TextSnapshot[1];
+        readWriteLock.write(() -> document.edit(() -> {  // Набор текста не вклинится между проверкой и правкой
+            if (!document.snapshot().isSameVersion(diff.getA())) {
+                return;
+            }
+            List<Hunk> hunks = diff.getHunks();
+            batchEdit = true;
+            history.beginGroup();
+            try {
+                for (int i = hunks.size() - 1; i >= 0; i--) {  // Смещения участков ниже по тексту не сдвигаются
+                    Hunk hunk = hunks.get(i);
+                    if (hunk.getLengthA() > 0) {
+                        document.remove(hunk.getOffsetA(), hunk.getLengthA());
+                    }
+                    if (hunk.getLengthB() > 0) {
+                        document.insertPieces(hunk.getOffsetA(), diff.getB(), hunk.getOffsetB(), hunk.getLengthB());
+                    }
+                }
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);  // Участки найдены в снимке этой же версии документа
+            } finally {
+                history.endGroup();
+                batchEdit = false;
+            }
+            applied[0] = document.snapshot();
+        }));
+        return applied[0];
+    }
+
+    // Идёт ли замена всех вхождений или применение разницы (слушатели документа могут не разбирать её события по одному)
+    public boolean isBatchEdit() {
+        return batchEdit;
+    }
+
+    // Воспроизводит макрос: правки применяются прямо к документу пачками под блокировкой записи, читатели успевают между пачками.
+    // Команды без окна не выполняются - правки New, отмены и повтора уже записаны в макросе.
+    public Macro.Stats replay(Macro macro) throws BadLocationException, InterruptedException {
+        Macro.Player player = macro.player(new Macro.Target() {
+            public void insert(int offset, String text) throws BadLocationException {
+                document.insertString(offset, text, null);
+            }
+
+            public void remove(int offset, int length) throws BadLocationException {
+                document.remove(offset, length);
+            }
+
+            public void command(String name) {
+            }
+        });
+        BadLocationException[] failure = new BadLocationException[1];
+        while (!player.isDone() && failure[0] == null) {
+            readWriteLock.write(() -> {
+                try {
+                    player.step(REPLAY_BATCH);
+                } catch (BadLocationException e) {
+                    failure[0] = e;
+                }
+            });
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return player.getStats();
+    }
+
+    // Сохраняет текст в файл. Снимок и изменённые диапазоны берутся под блокировкой документа, запись идёт без неё.
+    // Если файл на диске совпадает с последним сохранением, переписываются только изменённые места,
+    // иначе весь текст пишется через временный файл и атомарное переименование. Файл с расширением сжатого формата
+    // или уже сжатый на диске сохраняется в том же формате, всегда целиком.
+    public SaveResult save(Path file, Charset charset) throws IOException, InterruptedException {
+        PagedDocument current = readWriteLock.read(() -> document);
+        TextSnapshot[] text = new TextSnapshot[1];
+        List<DirtyRanges.Range> changes = new ArrayList<>();
+        EditJournal.Mark[] mark = new EditJournal.Mark[1];
+        SaveBaseline base = baseline;
+        EditJournal currentJournal = journal;
+        current.render(() -> {  // Правки документа ждут, пока снимок, диапазоны и место в журнале не взяты вместе
+            text[0] = current.snapshot();
+            changes.addAll(dirtyRanges.reset());
+            mark[0] = currentJournal == null ? null : currentJournal.mark();
+        });
+
+        try {
+            Codec codec = Codecs.forTarget(file);
+            SaveResult result;
+            SaveBaseline next;
+            if (codec != null) {
+                result = CompressedFiles.save(text[0], file, charset, codec);
+                next = null;  // Байтовых точек в сжатом файле нет
+            } else {
+                ByteIndex index = base == null ? null : new ByteIndex(base.getIndex());
+                result = IncrementalSaver.save(base, changes, text[0], file, charset, index);
+                MappedFile mapped = null;
+                if (result != null) {
+                    mapped = base.getMapped();  // Тот же файл на диске, отображение по-прежнему его читает
+                } else {
+                    index = new ByteIndex();
+                    result = SnapshotSaver.save(text[0], file, charset, index);  // Новый файл, старое отображение смотрит на прежний
+                }
+                next = SaveBaseline.of(file, text[0], index, charset, mapped);
+            }
+            readWriteLock.write(() -> {
+                if (document == current) {
+                    baseline = next;
+                }
+            });
+            if (currentJournal != null && !current.isLoading()) {
+                currentJournal.rebase(mark[0], JournalBase.file(file));  // Правки до сохранения уже есть в файле
+            }
+            return result;
+        } catch (IOException e) {
+            dirtyRanges.restore(changes);  // Изменения остаются несохранёнными
+            baseline = null;  // Файл мог быть переписан частично
+            throw e;
+        }
+    }
+
+    // Подключает журнал правок: дальнейшие правки документа пишутся в него, снимки для сжатия берутся отсюда
+    public void attachJournal(EditJournal journal) {
+        journal.setStateSource(this::journalState);
+        this.journal = journal;
+    }
+
+    // Начинает журнал заново с файла, который сейчас загружается в документ (вызывается сразу после setDocument)
+    public void restartJournal(Path file) {
+        EditJournal currentJournal = journal;
+        if (currentJournal == null) {
+            return;
+        }
+        try {
+            currentJournal.rebase(currentJournal.mark(), JournalBase.file(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Делает контрольную точку журнала с текущим текстом: документ заменён не файлом, а другим текстом
+    public void checkpointJournal() {
+        EditJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.checkpoint();
+        }
+    }
+
+    // Закрывает журнал и удаляет его: документ закрыт штатно, восстанавливать нечего
+    public void closeJournal() {
+        EditJournal currentJournal = journal;
+        journal = null;
+        if (currentJournal != null) {
+            currentJournal.discard();
+        }
+    }
+
+    // Снимок текста вместе с местом в журнале для сжатия журнала; null, пока документ догружается из файла
+    private EditJournal.State journalState() {
+        PagedDocument current;
+        try {
+            current = readWriteLock.read(() -> document);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        EditJournal currentJournal = journal;
+        if (current.isLoading() || currentJournal == null) {
+            return null;
+        }
+        EditJournal.State[] state = new EditJournal.State[1];
+        current.render(() -> state[0] = new EditJournal.State(current.snapshot(), currentJournal.checkpointMark(),
+                current.getCharset(), current.getLineSeparator()));
+        return state[0];
+    }
+}
@@ -0,0 +1,153 @@
+package engine;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Сценарий правок для пакетной обработки. Одна операция на строку, поля разделены табуляцией:
+//   replace <что> <на что>        - замена всех вхождений
+//   insert  <позиция> <текст>     - вставка; позиция - число, start или end
+//   delete  <позиция> <длина>     - удаление; позиция - число, start или end (тогда длина отсчитывается назад)
+// В тексте допускаются \n, \r, \t и \\. Пустые строки и строки, начинающиеся с #, пропускаются.
+public final class EditScript {
+
+    // Одна операция сценария
+    public interface Operation {
+        int apply(DocumentEngine engine) throws BadLocationException, InterruptedException;  // Возвращает число правок
+    }
+
+    private final List<Operation> operations;
+
+    private EditScript(List<Operation> operations) {
+        this.operations = Collections.unmodifiableList(operations);
+    }
+
+    public static EditScript read(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    public static EditScript parse(List<String> lines) {
+        List<Operation> operations = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            try {
+                operations.add(operation(fields));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Строка " + (i + 1) + " сценария: " + e.getMessage(), e);
+            }
+        }
+        return new EditScript(operations);
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    // Применяет все операции по порядку и возвращает число правок
+    public int apply(DocumentEngine engine) throws BadLocationException, InterruptedException {
+        int edits = 0;
+        for (Operation operation : operations) {
+            edits += operation.apply(engine);
+        }
+        return edits;
+    }
+
+    private static Operation operation(String[] fields) {
+        if (fields.length != 3) {
+            throw new IllegalArgumentException("ожидается операция и два поля через табуляцию");
+        }
+        switch (fields[0]) {
+            case "replace": {
+                String target = unescape(fields[1]);
+                String replacement = unescape(fields[2]);
+                if (target.isEmpty()) {
+                    throw new IllegalArgumentException("пустая строка поиска");
+                }
+                return engine -> engine.replaceAll(target, replacement);
+            }
+            case "insert": {
+                String position = fields[1];
+                String text = unescape(fields[2]);
+                position(position, 0);  // Проверка формата до запуска
+                return engine -> {
+                    engine.insert(position(position, engine.getLength()), text);
+                    return 1;
+                };
+            }
+            case "delete": {
+                String position = fields[1];
+                int length = number(fields[2]);
+                position(position, 0);
+                return engine -> {
+                    int offset = position.equals("end") ? engine.getLength() - length : position(position, engine.getLength());
+                    engine.remove(offset, length);
+                    return 1;
+                };
+            }
+            default:
+                throw new IllegalArgumentException("неизвестная операция " + fields[0]);
+        }
+    }
+
+    private static int position(String position, int length) {
+        switch (position) {
+            case "start":
+                return 0;
+            case "end":
+                return length;
+            default:
+                return number(position);
+        }
+    }
+
+    private static int number(String field) {
+        try {
+            int value = Integer.parseInt(field.trim());
+            if (value < 0) {
+                throw new IllegalArgumentException("отрицательное число " + field);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ожидается число: " + field);
+        }
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder text = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\' || i + 1 == field.length()) {
+                text.append(c);
+                continue;
+            }
+            char next = field.charAt(++i);
+            switch (next) {
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                default:
+                    text.append(next);  // \\ и любой другой символ после обратной косой черты
+                    break;
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package history;
+
+import document.PagedDocument;
+
+import javax.swing.text.BadLocationException;
+
+// Одна правка: в offset текст removed заменён на inserted
+final class Delta {
+
+    private static final long OVERHEAD = 32;
+
+    final int offset;
+    final Fragment removed;
+    final Fragment inserted;
+
+    Delta(int offset, Fragment removed, Fragment inserted) {
+        this.offset = offset;
+        this.removed = removed;
+        this.inserted = inserted;
+    }
+
+    long bytes() {
+        return OVERHEAD + removed.bytes() + inserted.bytes();
+    }
+
+    void undo(PagedDocument document) throws BadLocationException {
+        if (inserted.length() > 0) {
+            document.remove(offset, inserted.length());
+        }
+        removed.insertInto(document, offset);
+    }
+
+    void redo(PagedDocument document) throws BadLocationException {
+        if (removed.length() > 0) {
+            document.remove(offset, removed.length());
+        }
+        inserted.insertInto(document, offset);
+    }
+
+    // Склеивает следующую правку с этой, если это продолжение набора, удаления или замены выделения.
+    // Возвращает null, если правки нужно отменять по отдельности.
+    Delta merge(Delta next, int limit) {
+        if (!removed.isCopied() || !inserted.isCopied() || !next.removed.isCopied() || !next.inserted.isCopied()
+                || removed.length() + inserted.length() + next.removed.length() + next.inserted.length() > limit) {
+            return null;
+        }
+        boolean nextInsert = next.removed.length() == 0;
+        boolean nextRemove = next.inserted.length() == 0;
+        if (nextInsert && next.offset == offset + inserted.length() && !inserted.endsWith('\n')) {
+            // Набор подряд или поверх только что удалённого выделения; перевод строки начинает новую запись
+            return new Delta(offset, removed, inserted.concat(next.inserted));
+        }
+        if (nextRemove && inserted.length() == 0 && next.offset + next.removed.length() == offset) {
+            return new Delta(next.offset, next.removed.concat(removed), Fragment.EMPTY);  // Backspace подряд
+        }
+        if (nextRemove && inserted.length() == 0 && next.offset == offset) {
+            return new Delta(offset, removed.concat(next.removed), Fragment.EMPTY);  // Delete подряд
+        }
+        return null;
+    }
+}
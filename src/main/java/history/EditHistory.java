@@ -0,0 +1,356 @@
+package history;
+
+import document.PagedDocument;
+import document.TextSnapshot;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// История отмены и повтора одного документа.
+// Хранит только правки (место, удалённый и вставленный текст), а не копии всего текста; набор, Backspace и Delete подряд
+// склеиваются в одну запись. Объём истории ограничен в байтах: при превышении удаляются самые старые записи.
+// Повтор многоуровневый: отменённые записи лежат в своём стеке, пока не появится новая правка.
+public class EditHistory implements DocumentListener {
+
+    public static final long DEFAULT_BUDGET_BYTES = 16L << 20;  // 16 МБ на документ
+    private static final long MERGE_WINDOW_MILLIS = 1000;  // Правки с большей паузой не склеиваются
+    private static final int MERGE_LIMIT = Fragment.COPY_LIMIT;  // Наибольший склеенный фрагмент
+    private static final long ENTRY_OVERHEAD = 48;
+
+    // Запись истории: правки, которые отменяются и повторяются вместе
+    private static final class Entry {
+        private final List<Delta> deltas = new ArrayList<>(1);
+        private long bytes = ENTRY_OVERHEAD;
+        private boolean sealed;  // В запись больше ничего не склеивается
+    }
+
+    // Записи истории документа, который убран из окна: хранятся с документом и возвращаются при показе
+    public static final class Records {
+        private final ArrayDeque<Entry> undo;
+        private final ArrayDeque<Entry> redo;
+        private final long bytes;
+
+        private Records(ArrayDeque<Entry> undo, ArrayDeque<Entry> redo, long bytes) {
+            this.undo = undo;
+            this.redo = redo;
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final long budgetBytes;
+    private ArrayDeque<Entry> undo = new ArrayDeque<>();  // Последняя запись - самая новая
+    private ArrayDeque<Entry> redo = new ArrayDeque<>();
+    private long bytes;  // Объём обоих стеков
+
+    private PagedDocument document;
+    private TextSnapshot previous;  // Текст до очередной правки: из него берётся удалённый фрагмент
+    private boolean replaying;  // Идёт отмена или повтор - их правки не записываются
+    private Entry group;  // Открытая группа правок
+    private int groupDepth;
+    private long lastEditAt;
+
+    public EditHistory(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    // Начинает вести историю документа; история прежнего документа удаляется
+    public synchronized void attach(PagedDocument document) {
+        attach(document, null);
+    }
+
+    // Начинает вести историю документа с его прежними записями (null - с пустой истории).
+    // Записи должны быть взяты detach у этого же документа.
+    public synchronized void attach(PagedDocument document, Records records) {
+        if (this.document != null) {
+            this.document.removeDocumentListener(this);
+        }
+        clear();
+        if (records != null) {
+            undo = records.undo;
+            redo = records.redo;
+            bytes = records.bytes;
+            if (!undo.isEmpty()) {
+                undo.peekLast().sealed = true;  // Набор после возврата к документу начинает новую запись
+            }
+        }
+        this.document = document;
+        document.addDocumentListener(this);
+        previous = document.snapshot();
+    }
+
+    // Перестаёт вести историю документа и отдаёт его записи для последующего attach
+    public synchronized Records detach() {
+        if (document != null) {
+            document.removeDocumentListener(this);
+            document = null;
+        }
+        Records records = new Records(undo, redo, bytes);
+        undo = new ArrayDeque<>();
+        redo = new ArrayDeque<>();
+        clear();
+        return records;
+    }
+
+    public synchronized void clear() {
+        undo.clear();
+        redo.clear();
+        bytes = 0;
+        group = null;
+        groupDepth = 0;
+    }
+
+    // Правки до парного endGroup отменяются одной записью (замена всего текста, замена всех вхождений)
+    public synchronized void beginGroup() {
+        if (groupDepth++ == 0) {
+            group = new Entry();
+            group.sealed = true;
+        }
+    }
+
+    public synchronized void endGroup() {
+        if (groupDepth == 0 || --groupDepth > 0) {
+            return;
+        }
+        Entry finished = group;
+        group = null;
+        if (!finished.deltas.isEmpty()) {
+            push(finished);
+        }
+    }
+
+    public synchronized boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public synchronized boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    // Объём истории в байтах
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getUndoCount() {
+        return undo.size();
+    }
+
+    // Отменяет последнюю запись. Вызывать в потоке Swing.
+    public synchronized boolean undo() {
+        Entry entry = undo.pollLast();
+        if (entry == null) {
+            return false;
+        }
+        entry.sealed = true;
+        replaying = true;
+        try {
+            for (int i = entry.deltas.size() - 1; i >= 0; i--) {
+                entry.deltas.get(i).undo(document);
+            }
+            redo.addLast(entry);
+            if (!undo.isEmpty()) {
+                undo.peekLast().sealed = true;  // Набор после отмены начинает новую запись
+            }
+            return true;
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            clear();  // Документ не совпадает с историей - дальше отменять нельзя
+            return false;
+        } finally {
+            replaying = false;
+        }
+    }
+
+    // Повторяет последнюю отменённую запись. Вызывать в потоке Swing.
+    public synchronized boolean redo() {
+        Entry entry = redo.pollLast();
+        if (entry == null) {
+            return false;
+        }
+        replaying = true;
+        try {
+            for (Delta delta : entry.deltas) {
+                delta.redo(document);
+            }
+            undo.addLast(entry);
+            return true;
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            clear();
+            return false;
+        } finally {
+            replaying = false;
+        }
+    }
+
+    @Override
+    public synchronized void insertUpdate(DocumentEvent e) {
+        TextSnapshot current = document.snapshot();
+        if (document.isSourceInsert()) {  // Загрузка файла не отменяется, но сдвигает записанные правки
+            rebase(e.getOffset(), 0, e.getLength());
+        } else if (!replaying) {
+            record(new Delta(e.getOffset(), Fragment.EMPTY, Fragment.of(current, e.getOffset(), e.getLength())));
+        }
+        previous = current;
+    }
+
+    @Override
+    public synchronized void removeUpdate(DocumentEvent e) {
+        if (document.isSourceRemove()) {
+            rebase(e.getOffset(), e.getLength(), 0);
+        } else if (!replaying) {
+            record(new Delta(e.getOffset(), Fragment.of(previous, e.getOffset(), e.getLength()), Fragment.EMPTY));
+        }
+        previous = document.snapshot();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+    }
+
+    // Переносит записи через правку, которой нет в истории (загрузка, обрезка начала документа при слежении за файлом):
+    // в offset удалено removed символов и вставлено inserted. Записи после этого места сдвигаются. Если правка задевает
+    // записанный текст, отменить его на прежнем месте нельзя - история очищается.
+    private void rebase(int offset, int removed, int inserted) {
+        List<Delta> undone = new ArrayList<>();  // Записи отмены от новых к старым, затем записи повтора по порядку применения
+        if (group != null) {
+            for (int i = group.deltas.size() - 1; i >= 0; i--) {
+                undone.add(group.deltas.get(i));
+            }
+        }
+        for (Iterator<Entry> entries = undo.descendingIterator(); entries.hasNext(); ) {
+            List<Delta> deltas = entries.next().deltas;
+            for (int i = deltas.size() - 1; i >= 0; i--) {
+                undone.add(deltas.get(i));
+            }
+        }
+        int undoCount = undone.size();
+        for (Iterator<Entry> entries = redo.descendingIterator(); entries.hasNext(); ) {
+            undone.addAll(entries.next().deltas);
+        }
+        if (undone.isEmpty()) {
+            return;
+        }
+        int[] shifted = new int[undone.size()];
+        // Дописанное в конец (слежение) остаётся после всех правок: правка на том же месте оказывается перед ним
+        boolean tail = removed == 0 && offset + inserted == document.getLength();
+        int at = offset;  // Место правки в тексте до очередной отменяемой записи
+        for (int i = 0; i < undoCount; i++) {
+            Delta delta = undone.get(i);
+            int end = delta.offset + delta.inserted.length();
+            if (at + removed <= delta.offset && !(tail && at >= end)) {
+                shifted[i] = delta.offset + inserted - removed;
+            } else if (at >= end) {
+                shifted[i] = delta.offset;
+                at += delta.removed.length() - delta.inserted.length();
+            } else {
+                clear();
+                return;
+            }
+        }
+        at = offset;  // Место правки в тексте после очередной повторяемой записи
+        for (int i = undoCount; i < undone.size(); i++) {
+            Delta delta = undone.get(i);
+            int end = delta.offset + delta.removed.length();
+            if (at + removed <= delta.offset && !(tail && at >= end)) {
+                shifted[i] = delta.offset + inserted - removed;
+            } else if (at >= end) {
+                shifted[i] = delta.offset;
+                at += delta.inserted.length() - delta.removed.length();
+            } else {
+                clear();
+                return;
+            }
+        }
+        int[] next = {0};
+        if (group != null) {
+            shift(group.deltas, shifted, next, true);
+        }
+        for (Iterator<Entry> entries = undo.descendingIterator(); entries.hasNext(); ) {
+            shift(entries.next().deltas, shifted, next, true);
+        }
+        for (Iterator<Entry> entries = redo.descendingIterator(); entries.hasNext(); ) {
+            shift(entries.next().deltas, shifted, next, false);
+        }
+    }
+
+    // Ставит записям новые места в том порядке, в каком rebase их обходил
+    private static void shift(List<Delta> deltas, int[] shifted, int[] next, boolean backwards) {
+        for (int j = 0; j < deltas.size(); j++) {
+            int i = backwards ? deltas.size() - 1 - j : j;
+            Delta delta = deltas.get(i);
+            int offset = shifted[next[0]++];
+            if (offset != delta.offset) {
+                deltas.set(i, new Delta(offset, delta.removed, delta.inserted));
+            }
+        }
+    }
+
+    private void record(Delta delta) {
+        for (Entry entry : redo) {
+            bytes -= entry.bytes;  // Новая правка отменяет возможность повтора
+        }
+        redo.clear();
+        if (group != null) {
+            add(group, delta);  // Группа попадёт в стек целиком в endGroup
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Entry last = undo.peekLast();
+        boolean recent = now - lastEditAt <= MERGE_WINDOW_MILLIS;
+        lastEditAt = now;
+        if (last != null && !last.sealed && recent) {
+            long before = last.bytes;
+            if (merge(last, delta)) {
+                bytes += last.bytes - before;
+                trim();
+                return;
+            }
+        }
+        Entry entry = new Entry();
+        add(entry, delta);
+        push(entry);
+    }
+
+    // Склеивает правку с последней правкой записи
+    private boolean merge(Entry entry, Delta delta) {
+        Delta last = entry.deltas.get(entry.deltas.size() - 1);
+        Delta merged = last.merge(delta, MERGE_LIMIT);
+        if (merged == null) {
+            return false;
+        }
+        entry.deltas.set(entry.deltas.size() - 1, merged);
+        entry.bytes += merged.bytes() - last.bytes();
+        return true;
+    }
+
+    private void add(Entry entry, Delta delta) {
+        if (!entry.deltas.isEmpty() && merge(entry, delta)) {
+            return;
+        }
+        entry.deltas.add(delta);
+        entry.bytes += delta.bytes();
+    }
+
+    private void push(Entry entry) {
+        undo.addLast(entry);
+        bytes += entry.bytes;
+        trim();
+    }
+
+    // Удаляет самые старые записи, пока история не уложится в бюджет; последняя запись остаётся всегда
+    private void trim() {
+        while (bytes > budgetBytes && undo.size() > 1) {
+            bytes -= undo.pollFirst().bytes;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package history;
+
+import document.PagedDocument;
+import document.TextSnapshot;
+
+import javax.swing.text.BadLocationException;
+
+// Вставленный или удалённый текст одной правки. Короткий текст хранится строкой,
+// длинный - ссылкой на диапазон неизменяемого снимка документа, которая стоит O(1) независимо от длины.
+final class Fragment {
+
+    static final int COPY_LIMIT = 4096;  // Длиннее этого текст не копируется
+    private static final long STRING_OVERHEAD = 56;  // Заголовки строки и её массива
+    private static final long SLICE_BYTES = 256;  // Ссылка на снимок и узлы дерева, которые держит только он
+
+    static final Fragment EMPTY = new Fragment("", null, 0, 0);
+
+    private final String text;  // Текст, если он скопирован
+    private final TextSnapshot snapshot;  // Или снимок, в котором он лежит
+    private final int start;
+    private final int length;
+
+    private Fragment(String text, TextSnapshot snapshot, int start, int length) {
+        this.text = text;
+        this.snapshot = snapshot;
+        this.start = start;
+        this.length = length;
+    }
+
+    // Символы [start, start + length) снимка
+    static Fragment of(TextSnapshot snapshot, int start, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        if (length <= COPY_LIMIT) {
+            return new Fragment(snapshot.getText(start, length), null, 0, length);
+        }
+        return new Fragment(null, snapshot, start, length);
+    }
+
+    int length() {
+        return length;
+    }
+
+    boolean isCopied() {
+        return text != null;
+    }
+
+    boolean endsWith(char c) {
+        return text != null && !text.isEmpty() && text.charAt(text.length() - 1) == c;
+    }
+
+    // Приблизительный объём памяти, который держит фрагмент
+    long bytes() {
+        return text != null ? STRING_OVERHEAD + 2L * length : SLICE_BYTES;
+    }
+
+    // Склейка двух скопированных фрагментов (набор или удаление подряд)
+    Fragment concat(Fragment next) {
+        return new Fragment(text + next.text, null, 0, length + next.length);
+    }
+
+    void insertInto(PagedDocument document, int offset) throws BadLocationException {
+        if (length == 0) {
+            return;
+        }
+        if (text != null) {
+            document.insertString(offset, text, null);
+        } else {
+            document.insertPieces(offset, snapshot, start, length);
+        }
+    }
+}
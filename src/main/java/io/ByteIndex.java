@@ -0,0 +1,57 @@
+package io;
+
+import java.util.Arrays;
+
+// Редкие контрольные точки "смещение в символах -> смещение в байтах" для файла на диске.
+// Позволяют найти байтовую позицию любого символа, перекодировав не больше одного промежутка между точками.
+public final class ByteIndex {
+
+    private int[] chars = new int[256];
+    private long[] bytes = new long[256];
+    private int size = 0;
+
+    public ByteIndex() {
+        add(0, 0);
+    }
+
+    public ByteIndex(ByteIndex other) {
+        chars = Arrays.copyOf(other.chars, Math.max(other.size, 1));
+        bytes = Arrays.copyOf(other.bytes, Math.max(other.size, 1));
+        size = other.size;
+    }
+
+    // Добавляет точку; точки должны идти по возрастанию
+    public void add(int charOffset, long byteOffset) {
+        if (size > 0 && chars[size - 1] >= charOffset) {
+            return;
+        }
+        if (size == chars.length) {
+            chars = Arrays.copyOf(chars, size * 2);
+            bytes = Arrays.copyOf(bytes, size * 2);
+        }
+        chars[size] = charOffset;
+        bytes[size] = byteOffset;
+        size++;
+    }
+
+    // Удаляет точки после charOffset (хвост файла будет переписан)
+    public void truncate(int charOffset) {
+        while (size > 1 && chars[size - 1] > charOffset) {
+            size--;
+        }
+    }
+
+    // Индекс ближайшей точки не правее charOffset
+    int floor(int charOffset) {
+        int index = Arrays.binarySearch(chars, 0, size, charOffset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    int charAt(int index) {
+        return chars[index];
+    }
+
+    long byteAt(int index) {
+        return bytes[index];
+    }
+}
@@ -0,0 +1,95 @@
+package io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Диапазоны текста, изменённые после последнего сохранения, в координатах текущего документа.
+// Для каждого диапазона известна и его длина в сохранённом файле, поэтому видно, поменялась ли длина.
+public final class DirtyRanges {
+
+    // Изменённый диапазон: [start, start + length) сейчас соответствует oldLength символам сохранённого текста
+    public static final class Range {
+        private final int start;
+        private final int length;
+        private final int oldLength;
+
+        Range(int start, int length, int oldLength) {
+            this.start = start;
+            this.length = length;
+            this.oldLength = oldLength;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getOldLength() {
+            return oldLength;
+        }
+    }
+
+    private List<Range> ranges = new ArrayList<>();  // Отсортированы и не соприкасаются
+
+    public synchronized void insert(int offset, int count) {
+        change(offset, 0, count);
+    }
+
+    public synchronized void remove(int offset, int count) {
+        change(offset, count, 0);
+    }
+
+    // Забирает накопленные диапазоны и начинает отсчёт заново (текст в этот момент становится сохранённым)
+    public synchronized List<Range> reset() {
+        List<Range> taken = ranges;
+        ranges = new ArrayList<>();
+        return taken;
+    }
+
+    // Возвращает диапазоны неудавшегося сохранения; правки, сделанные после reset(), накладываются поверх них
+    public synchronized void restore(List<Range> taken) {
+        List<Range> later = ranges;
+        ranges = new ArrayList<>(taken);
+        for (Range range : later) {  // Слева направо: левее очередного диапазона текст уже в текущих координатах
+            change(range.start, range.oldLength, range.length);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    // Заменяет removed символов в offset на inserted символов, объединяя затронутые и соседние диапазоны
+    private void change(int offset, int removed, int inserted) {
+        int first = 0;
+        while (first < ranges.size() && ranges.get(first).start + ranges.get(first).length < offset) {
+            first++;
+        }
+        int last = first;
+        int start = offset;
+        int end = offset + removed;
+        int rangesLength = 0;
+        int rangesOldLength = 0;
+        while (last < ranges.size() && ranges.get(last).start <= offset + removed) {
+            Range range = ranges.get(last);
+            start = Math.min(start, range.start);
+            end = Math.max(end, range.start + range.length);
+            rangesLength += range.length;
+            rangesOldLength += range.oldLength;
+            last++;
+        }
+        // Чистые символы объединения переходят в сохранённый текст 1:1, изменённые - со своей старой длиной
+        int oldLength = (end - start - rangesLength) + rangesOldLength;
+        int delta = inserted - removed;
+        List<Range> merged = ranges.subList(first, last);
+        merged.clear();
+        merged.add(new Range(start, end - start + delta, oldLength));
+        for (int i = first + 1; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            ranges.set(i, new Range(range.start + delta, range.length, range.oldLength));
+        }
+    }
+}
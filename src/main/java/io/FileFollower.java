@@ -0,0 +1,159 @@
+package io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Слежение за растущим файлом (tail -f): каталог файла слушает WatchService, а позиция прочитанного запоминается,
+// поэтому после каждой записи в файл читаются и декодируются только дописанные байты. Всё дописанное с прошлого раза
+// отдаётся слушателю одним куском. Если файл стал короче или заменён новым (ротация журнала), чтение начинается сначала.
+// Многобайтовый символ, разрезанный записью, декодируется, когда дописан целиком.
+public class FileFollower implements Closeable {
+
+    private static final long POLL_MILLIS = 1000;  // Проверка без события: не все файловые системы сообщают об изменениях
+    private static final int BATCH_BYTES = 1 << 20;  // Наибольшая порция байт, читаемая и отдаваемая за раз
+
+    // Получатель дописанного текста; вызывается в потоке слежения
+    public interface Listener {
+        // Дописан текст; массив больше не меняется и может стать источником кусков документа
+        void appended(char[] text) throws InterruptedException;
+
+        // Файл обрезан или заменён: прежний текст больше не соответствует файлу, дальше текст идёт с начала файла
+        void reset() throws InterruptedException;
+    }
+
+    private final Path file;
+    private final Listener listener;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BATCH_BYTES);  // Прочитанные байты и начало неполного символа
+    private final CharBuffer chars;
+    private final WatchService watcher;
+    private final Thread thread;
+
+    private volatile long position;  // Сколько байт файла уже отдано (вместе с началом неполного символа)
+    private Object fileKey;  // Признак самого файла: меняется, когда файл заменяют новым
+    private volatile long appendedBytes;
+    private volatile long batches;
+    private volatile long resets;
+
+    // Следит за файлом, первые position байт которого уже прочитаны
+    public FileFollower(Path file, Charset charset, long position, Listener listener) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.listener = listener;
+        this.position = position;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate((int) Math.ceil(BATCH_BYTES * (double) decoder.maxCharsPerByte()));
+        this.fileKey = fileKey();
+        this.watcher = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        this.thread = new Thread(this::run, "follow-" + this.file.getFileName());
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    // Останавливает слежение
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watcher.close();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getAppendedBytes() {
+        return appendedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("прочитано %d байт, дописано %d байт за %d порций, сначала %d раз", position, appendedBytes,
+                batches, resets);
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();  // События каталога не разбираются: изменился ли файл, видно по его размеру
+                    key.reset();
+                }
+                readAppended();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Слежение остановлено
+        }
+    }
+
+    // Читает всё дописанное с прошлого раза; при ошибке чтения (файл удалён) ждёт следующего события
+    private void readAppended() throws InterruptedException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Object key = fileKey();
+            long size = channel.size();
+            if (size < position || (key != null && !key.equals(fileKey))) {
+                fileKey = key;
+                position = 0;
+                bytes.clear();
+                decoder.reset();
+                resets++;
+                listener.reset();
+            }
+            while (position < size) {
+                int length = (int) Math.min(size - position, bytes.remaining());
+                bytes.limit(bytes.position() + length);
+                int read = channel.read(bytes, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                appendedBytes += read;
+                bytes.flip();
+                chars.clear();
+                decoder.decode(bytes, chars, false);
+                bytes.compact();  // Начало разрезанного символа остаётся до следующей порции
+                chars.flip();
+                if (chars.hasRemaining()) {
+                    batches++;
+                    listener.appended(Arrays.copyOf(chars.array(), chars.limit()));
+                }
+            }
+        } catch (IOException e) {
+            fileKey = null;  // Файла нет: появившийся файл с тем же именем читается сначала
+        }
+    }
+
+    private Object fileKey() {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io;
+
+import document.MappedFile;
+import document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Сохранение на месте: в файл пишутся только изменённые с прошлого сохранения диапазоны.
+// Диапазон, байтовая длина которого не поменялась, перезаписывается позиционной записью FileChannel;
+// начиная с первого диапазона, поменявшего длину, файл переписывается до конца и обрезается.
+// В отличие от SnapshotSaver запись не атомарна: сбой посреди записи оставит файл частично обновлённым.
+public final class IncrementalSaver {
+
+    private static final long MAX_PINNED_BYTES = 64L << 20;  // Сколько байт отображённого файла можно закрепить в куче ради перезаписи хвоста
+
+    // Перезапись диапазона того же размера в байтах
+    private static final class Patch {
+        private final int start;
+        private final int length;
+        private final long position;
+
+        Patch(int start, int length, long position) {
+            this.start = start;
+            this.length = length;
+            this.position = position;
+        }
+    }
+
+    private IncrementalSaver() {
+    }
+
+    // Сохраняет text в target, переписывая только ranges. Возвращает null, если сохранить на месте нельзя
+    // (нет исходного состояния, файл изменили со стороны, кодировка с состоянием, хвост слишком велик или начинается с нуля),
+    // тогда нужно полное сохранение. index - копия контрольных точек исходного состояния, обновляется для нового текста.
+    public static SaveResult save(SaveBaseline baseline, List<DirtyRanges.Range> ranges, TextSnapshot text,
+                                  Path target, Charset charset, ByteIndex index) throws IOException {
+        long started = System.nanoTime();
+        if (baseline == null || !baseline.matches(target, charset) || !stateless(charset)) {
+            return null;
+        }
+
+        // План записи считается до первой записи: смещения берутся из старого текста и старых байт
+        List<Patch> patches = new ArrayList<>();
+        int tailChar = -1;
+        long tailByte = -1;
+        for (DirtyRanges.Range range : ranges) {
+            int start = range.getStart();
+            int length = range.getLength();
+            int oldLength = range.getOldLength();
+            if (start > 0 && Character.isHighSurrogate(charAt(text, start - 1))) {
+                start--;  // Не режем суррогатную пару: соседний символ не менялся, он одинаков в обоих текстах
+                length++;
+                oldLength++;
+            }
+            if (start + length < text.length() && Character.isLowSurrogate(charAt(text, start + length))) {
+                length++;
+                oldLength++;
+            }
+            long from = baseline.byteOffset(start);  // До этого диапазона длины не менялись, позиция та же в обоих текстах
+            if (length == oldLength
+                    && SaveBaseline.encodedLength(text, start, length, charset) == baseline.byteOffset(start + oldLength) - from) {
+                patches.add(new Patch(start, length, from));
+                continue;
+            }
+            tailChar = start;
+            tailByte = from;
+            break;
+        }
+        if (tailChar == 0) {
+            return null;  // Меняется весь файл - атомарное сохранение не медленнее
+        }
+
+        MappedFile mapped = baseline.getMapped();
+        if (mapped != null) {
+            // Документ читает этот же файл через отображение: затрагиваемые страницы нужно держать в куче до записи
+            long tailBytes = tailChar < 0 ? 0 : baseline.getSize() - tailByte;
+            if (mapped.pinnedBytes() + tailBytes > MAX_PINNED_BYTES) {
+                return null;
+            }
+            for (Patch patch : patches) {
+                mapped.pin(patch.position, baseline.byteOffset(patch.start + patch.length));
+            }
+            if (tailChar > 0) {
+                mapped.pin(tailByte, baseline.getSize());
+            }
+        }
+
+        long bytes = 0;
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            for (Patch patch : patches) {
+                channel.position(patch.position);
+                bytes += SnapshotSaver.write(text, patch.start, patch.length, channel, charset, null, false);
+            }
+            if (tailChar > 0) {
+                index.truncate(tailChar);
+                channel.position(tailByte);
+                long tail = SnapshotSaver.write(text, tailChar, text.length() - tailChar, channel, charset, index, false);
+                channel.truncate(tailByte + tail);
+                bytes += tail;
+            }
+            channel.force(true);
+        }
+        return new SaveResult(text.length(), bytes, System.nanoTime() - started);
+    }
+
+    // Кодировка без состояния: фрагмент кодируется так же, как внутри текста (без BOM и переключения режимов)
+    private static boolean stateless(Charset charset) {
+        return charset.canEncode() && charset.encode("aa").remaining() == 2 * charset.encode("a").remaining();
+    }
+
+    private static char charAt(TextSnapshot text, int offset) {
+        char[] c = new char[1];
+        text.getChars(offset, 1, c, 0);
+        return c[0];
+    }
+}
@@ -0,0 +1,133 @@
+package io;
+
+import document.MappedFile;
+import document.TextSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+// Что лежит на диске после последнего сохранения или открытия: текст, байтовые контрольные точки
+// и признаки файла, по которым видно, что его не меняли со стороны.
+public final class SaveBaseline {
+
+    private final Path file;
+    private final long size;
+    private final FileTime modified;
+    private final TextSnapshot text;  // Текст файла на диске
+    private final ByteIndex index;  // Контрольные точки символ -> байт для этого текста
+    private final Charset charset;
+    private final MappedFile mapped;  // Отображение этого же файла, на которое ссылается документ, или null
+
+    private SaveBaseline(Path file, long size, FileTime modified, TextSnapshot text, ByteIndex index,
+                         Charset charset, MappedFile mapped) {
+        this.file = file;
+        this.size = size;
+        this.modified = modified;
+        this.text = text;
+        this.index = index;
+        this.charset = charset;
+        this.mapped = mapped;
+    }
+
+    public static SaveBaseline of(Path file, TextSnapshot text, ByteIndex index, Charset charset, MappedFile mapped) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        return new SaveBaseline(absolute, Files.size(absolute), Files.getLastModifiedTime(absolute), text, index, charset, mapped);
+    }
+
+    // Исходное состояние только что открытого отображённого файла: контрольные точки - границы его страниц.
+    // Возвращает null, если текст документа не совпадает с байтами файла (файл загружен не полностью или с заменами).
+    public static SaveBaseline ofMapped(MappedFile mapped, TextSnapshot text, Charset charset) throws IOException {
+        if (mapped.isTruncated() || mapped.isLossy() || !mapped.isIndexed() || text.length() != mapped.indexedChars()) {
+            return null;
+        }
+        ByteIndex index = new ByteIndex();
+        for (int page = 1; page <= mapped.pageCount(); page++) {
+            index.add(mapped.pageStartChar(page), mapped.pageStartByte(page));
+        }
+        return of(mapped.getPath(), text, index, charset, mapped);
+    }
+
+    // Можно ли дописывать изменения прямо в этот файл: тот же путь и кодировка, файл не менялся со стороны
+    public boolean matches(Path target, Charset targetCharset) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        return absolute.equals(file) && targetCharset.equals(charset) && Files.exists(absolute)
+                && Files.size(absolute) == size && Files.getLastModifiedTime(absolute).equals(modified);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public TextSnapshot getText() {
+        return text;
+    }
+
+    public ByteIndex getIndex() {
+        return index;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public MappedFile getMapped() {
+        return mapped;
+    }
+
+    // Байтовая позиция символа charOffset в файле: ближайшая точка плюс длина промежутка в кодировке файла
+    public long byteOffset(int charOffset) {
+        int point = index.floor(charOffset);
+        int from = index.charAt(point);
+        return index.byteAt(point) + encodedLength(text, from, charOffset - from, charset);
+    }
+
+    // Длина фрагмента текста в байтах
+    static long encodedLength(TextSnapshot text, int offset, int count, Charset charset) {
+        if (count == 0) {
+            return 0;
+        }
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(8192);
+        CharBuffer chars = CharBuffer.allocate(8192);
+        long[] length = new long[1];
+        text.forEachSegment(offset, count, segment -> {
+            int from = segment.offset;
+            int end = segment.offset + segment.count;
+            while (from < end) {
+                int chunk = Math.min(chars.remaining(), end - from);
+                chars.put(segment.array, from, chunk);
+                from += chunk;
+                chars.flip();
+                while (encoder.encode(chars, bytes, false) == CoderResult.OVERFLOW) {
+                    length[0] += bytes.position();
+                    bytes.clear();
+                }
+                chars.compact();  // Половина суррогатной пары ждёт следующий сегмент
+            }
+        });
+        chars.flip();
+        while (encoder.encode(chars, bytes, true) == CoderResult.OVERFLOW) {
+            length[0] += bytes.position();
+            bytes.clear();
+        }
+        while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+            length[0] += bytes.position();
+            bytes.clear();
+        }
+        return length[0] + bytes.position();
+    }
+}
@@ -0,0 +1,52 @@
+package io;
+
+// Итог сохранения: сколько записано и за какое время
+public final class SaveResult {
+
+    private final long chars;  // Сохранено символов
+    private final long bytes;  // Записано байт
+    private final long textBytes;  // Байт текста до сжатия; для несжатого файла равно bytes
+    private final long nanos;  // Длительность сохранения
+
+    public SaveResult(long chars, long bytes, long nanos) {
+        this(chars, bytes, bytes, nanos);
+    }
+
+    public SaveResult(long chars, long bytes, long textBytes, long nanos) {
+        this.chars = chars;
+        this.bytes = bytes;
+        this.textBytes = textBytes;
+        this.nanos = nanos;
+    }
+
+    public long getChars() {
+        return chars;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getTextBytes() {
+        return textBytes;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    // Пропускная способность в мегабайтах в секунду
+    public double getMegabytesPerSecond() {
+        return nanos == 0 ? 0 : bytes / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        String text = String.format("%d байт за %.1f мс (%.1f МБ/с)", bytes, nanos / 1_000_000.0, getMegabytesPerSecond());
+        if (textBytes != bytes) {
+            text += String.format(", до сжатия %d байт (%.1f МБ/с)", textBytes,
+                    nanos == 0 ? 0 : textBytes / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0));
+        }
+        return text;
+    }
+}
@@ -0,0 +1,192 @@
+package io;
+
+import document.TextSnapshot;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.security.SecureRandom;
+
+// Сохранение снимка документа: текст по частям кодируется в прямой буфер и пишется через FileChannel
+// во временный файл рядом с целевым, затем force() и атомарное переименование поверх целевого.
+// Блокировки редактора на время записи не нужны, а сбой посреди записи не портит старый файл.
+// Права и владелец старого файла переносятся на новый, символическая ссылка не заменяется обычным файлом.
+public final class SnapshotSaver {
+
+    private static final int BUFFER_BYTES = 256 * 1024;  // Размер прямого буфера записи
+    private static final int CHUNK_CHARS = 8 * 1024;  // Сколько символов кодировать за раз
+    private static final int CHECKPOINT_CHARS = 64 * 1024;  // Как часто записывать контрольную точку символ -> байт
+    private static final SecureRandom RANDOM = new SecureRandom();  // Имена временных файлов
+
+    private SnapshotSaver() {
+    }
+
+    public static SaveResult save(TextSnapshot snapshot, Path target, Charset charset) throws IOException {
+        return save(snapshot, target, charset, null);
+    }
+
+    // То же, но по ходу записи заполняет index контрольными точками сохранённого файла (для следующего сохранения на месте)
+    public static SaveResult save(TextSnapshot snapshot, Path target, Charset charset, ByteIndex index) throws IOException {
+        long started = System.nanoTime();
+        Path file = resolve(target);
+        Path temp = createTemp(file);
+        try {
+            long bytes;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                bytes = write(snapshot, 0, snapshot.length(), channel, charset, index, true);
+                channel.force(true);  // Данные на диске до переименования
+            }
+            move(temp, file);
+            return new SaveResult(snapshot.length(), bytes, System.nanoTime() - started);
+        } finally {
+            Files.deleteIfExists(temp);  // После успешного переименования временного файла уже нет
+        }
+    }
+
+    // Кодирует весь снимок в канал (например, в поток сжатия) и возвращает количество байт текста
+    public static long encode(TextSnapshot snapshot, WritableByteChannel channel, Charset charset) throws IOException {
+        return write(snapshot, 0, snapshot.length(), channel, charset, null, true);
+    }
+
+    // Кодирует символы [offset, offset + count) снимка и пишет их в канал с его текущей позиции.
+    // Возвращает количество записанных байт; если index не null (только для FileChannel), добавляет в него контрольные точки.
+    // Запись на месте не прерывается (cancellable = false): наполовину переписанный файл хуже долгого сохранения.
+    static long write(TextSnapshot snapshot, int offset, int count, WritableByteChannel channel, Charset charset,
+                      ByteIndex index, boolean cancellable) throws IOException {
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        CharBuffer chars = CharBuffer.allocate(CHUNK_CHARS);
+        long startByte = index != null ? ((FileChannel) channel).position() : 0;
+        long[] written = new long[1];
+        int[] consumed = {offset, offset};  // Закодированные символы и последняя контрольная точка
+        try {
+            snapshot.forEachSegment(offset, count, segment -> {
+                try {
+                    int from = segment.offset;
+                    int end = segment.offset + segment.count;
+                    while (from < end) {
+                        if (cancellable && Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Сохранение отменено");
+                        }
+                        int chunk = Math.min(chars.remaining(), end - from);
+                        chars.put(segment.array, from, chunk);
+                        from += chunk;
+                        consumed[0] += chunk;
+                        chars.flip();
+                        encode(encoder, chars, bytes, channel, written, false);
+                        chars.compact();  // Половина суррогатной пары остаётся до следующего куска
+                        if (index != null && chars.position() == 0 && consumed[0] - consumed[1] >= CHECKPOINT_CHARS) {
+                            index.add(consumed[0], startByte + written[0] + bytes.position());  // Все символы до этой точки уже закодированы
+                            consumed[1] = consumed[0];
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        chars.flip();
+        encode(encoder, chars, bytes, channel, written, true);
+        while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+            drain(bytes, channel, written);
+        }
+        drain(bytes, channel, written);
+        return written[0];
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes, WritableByteChannel channel,
+                               long[] written, boolean endOfInput) throws IOException {
+        while (encoder.encode(chars, bytes, endOfInput) == CoderResult.OVERFLOW) {
+            drain(bytes, channel, written);
+        }
+    }
+
+    private static void drain(ByteBuffer bytes, WritableByteChannel channel, long[] written) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            written[0] += channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    // Куда на самом деле писать: символическая ссылка остаётся ссылкой, заменяется файл, на который она указывает
+    public static Path resolve(Path target) throws IOException {
+        return Files.exists(target) ? target.toRealPath() : target.toAbsolutePath();
+    }
+
+    // Временный файл рядом с целевым. Новый файл получает права по умолчанию (с учётом umask), а не 0600
+    // как у createTempFile; существующий - права, владельца и группу (или ACL) заменяемого файла.
+    public static Path createTemp(Path target) throws IOException {
+        Path directory = target.getParent();
+        Path temp;
+        while (true) {
+            temp = directory.resolve("." + target.getFileName() + "." + Long.toUnsignedString(RANDOM.nextLong(), 36) + ".tmp");
+            try {
+                Files.createFile(temp);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Имя занято - пробуем другое
+            }
+        }
+        try {
+            if (Files.exists(target)) {
+                copyAttributes(target, temp);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    private static void copyAttributes(Path from, Path to) throws IOException {
+        PosixFileAttributeView source = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+        PosixFileAttributeView copy = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        if (source != null && copy != null) {
+            PosixFileAttributes attributes = source.readAttributes();
+            try {
+                copy.setGroup(attributes.group());
+                copy.setOwner(attributes.owner());  // Сменить владельца может только root, иначе файл останется нашим
+            } catch (IOException e) {
+                // Владелец и группа остаются как есть, права ниже всё равно копируются
+            }
+            copy.setPermissions(attributes.permissions());  // После смены владельца: chown сбрасывает setuid/setgid
+            return;
+        }
+        AclFileAttributeView acl = Files.getFileAttributeView(from, AclFileAttributeView.class);
+        AclFileAttributeView aclCopy = Files.getFileAttributeView(to, AclFileAttributeView.class);
+        if (acl != null && aclCopy != null) {
+            aclCopy.setAcl(acl.getAcl());
+        }
+    }
+
+    // Заменяет целевой файл временным
+    public static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);  // Файловая система без атомарного переименования
+        }
+    }
+}
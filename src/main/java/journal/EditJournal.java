@@ -0,0 +1,564 @@
+package journal;
+
+import document.TextSnapshot;
+import io.SnapshotSaver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Журнал правок документа, который пишется до диска раньше, чем пользователь нажмёт Save.
+// Правка только кодируется в буфер в памяти (микросекунды), фоновый поток пишет накопившиеся записи одним вызовом
+// (групповая фиксация) и раз в секунду делает fsync. Когда журнал разрастается, тот же поток сохраняет снимок текста
+// в файл контрольной точки и начинает новое поколение журнала, в котором остаются только правки после снимка.
+//
+// Формат файла: MAGIC, поколение, затем записи [длина тела][тип][тело][CRC32 тела].
+// Первая запись - исходное состояние (JournalBase), остальные - правки. Оборванная при сбое запись отбрасывается по CRC.
+// Пока журнал открыт, процесс держит блокировку файла name.lock: другой процесс не восстанавливает и не перезаписывает
+// живой журнал, а после сбоя блокировку снимает система.
+public class EditJournal implements Closeable {
+
+    static final int MAGIC = 0x4A524E4C;  // "JRNL"
+    static final int HEADER_BYTES = 4 + 8;
+    static final byte EDIT = 1;
+    static final byte BASE_EMPTY = 2;
+    static final byte BASE_FILE = 3;
+    static final byte BASE_CHECKPOINT = 4;
+
+    private static final long FSYNC_INTERVAL_MILLIS = 1000;  // Как часто сбрасывать записанное на диск
+    private static final long COMPACT_BYTES = 4L << 20;  // Журнал меньше этого не сжимается
+    private static final Set<Path> HELD = ConcurrentHashMap.newKeySet();  // Файлы блокировки журналов этого процесса
+
+    // Место в журнале, соответствующее снимку текста: всё, что записано после него, - правки поверх снимка
+    public static final class Mark {
+        private final long generation;
+        private final long position;
+
+        Mark(long generation, long position) {
+            this.generation = generation;
+            this.position = position;
+        }
+    }
+
+    // Снимок текста документа вместе с местом в журнале, взятые одновременно
+    public static final class State {
+        private final TextSnapshot text;
+        private final Mark mark;
+        private final Charset charset;  // Кодировка и перевод строки документа: восстанавливаются вместе с текстом
+        private final String lineSeparator;
+
+        public State(TextSnapshot text, Mark mark, Charset charset, String lineSeparator) {
+            this.text = text;
+            this.mark = mark;
+            this.charset = charset;
+            this.lineSeparator = lineSeparator;
+        }
+    }
+
+    // Запрос начать новое поколение с исходного состояния base
+    private static final class Rebase {
+        private final Mark mark;
+        private final JournalBase base;
+
+        Rebase(Mark mark, JournalBase base) {
+            this.mark = mark;
+            this.base = base;
+        }
+    }
+
+    private final Path directory;
+    private final String name;
+
+    // Общее состояние: меняется под lock
+    private final Object lock = new Object();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);  // Записи, ещё не отданные в файл
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);  // Второй буфер, пока первый пишется
+    private long generation;
+    private long appended;  // Логическая длина журнала текущего поколения вместе с pending
+    private long switchedAt = -1;  // Где в прошлом поколении начались правки, перенесённые в текущее
+    private long switchedTo;  // Где они начинаются в текущем
+    private Rebase rebase;
+    private boolean checkpoint;  // Запрошено сжатие со снимком независимо от размера журнала
+    private boolean stale;  // Документ изменён мимо журнала: правки не пишутся до контрольной точки
+    private boolean closed;
+
+    // Состояние потока записи
+    private FileChannel channel;
+    private long written;  // Сколько байт текущего поколения уже в файле
+    private long compactedLength;  // Длина текста на момент последнего нового поколения
+    private boolean unforced;  // Записано, но не сброшено на диск
+    private long forcedAt;
+
+    private volatile Supplier<State> stateSource;  // Откуда брать снимок для сжатия; null - не сжимать
+    private final Thread writer;
+    private final FileLock ownership;  // Блокировка файла name.lock на всё время жизни журнала
+
+    private EditJournal(Path directory, String name, FileLock ownership, FileChannel channel, long generation, long length,
+                        long compactedLength) {
+        this.directory = directory;
+        this.name = name;
+        this.ownership = ownership;
+        this.channel = channel;
+        this.generation = generation;
+        this.appended = length;
+        this.written = length;
+        this.compactedLength = compactedLength;
+        this.forcedAt = System.currentTimeMillis();
+        this.writer = new Thread(this::run, "journal-" + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Каталог журналов по умолчанию
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".texteditor", "journal");
+    }
+
+    // Захватывает журнал name для этого процесса. null - журнал открыт другим процессом (или уже этим):
+    // его нельзя ни восстанавливать, ни начинать заново. Блокировку затем получает create или resume.
+    public static FileLock lock(Path directory, String name) throws IOException {
+        Files.createDirectories(directory);
+        Path path = lockPath(directory, name).toAbsolutePath();
+        if (!HELD.add(path)) {
+            return null;  // Не открывать файл ещё раз: закрытие второго канала сняло бы и нашу блокировку (POSIX)
+        }
+        FileLock lock = null;
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                lock = channel.tryLock();
+            } finally {
+                if (lock == null) {
+                    channel.close();
+                }
+            }
+            return lock;
+        } catch (OverlappingFileLockException e) {
+            return null;
+        } finally {
+            if (lock == null) {
+                HELD.remove(path);
+            }
+        }
+    }
+
+    // Новый журнал для пустого документа; прежний журнал с этим именем удаляется. lock - из lock(directory, name)
+    public static EditJournal create(Path directory, String name, FileLock lock) throws IOException {
+        Files.createDirectories(directory);
+        deleteCheckpoints(directory, name, -1);
+        ByteBuffer head = header(0, JournalBase.empty());
+        FileChannel channel = FileChannel.open(journalPath(directory, name), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);  // Чтение - для переноса правок в новое поколение
+        write(channel, head);
+        channel.force(false);
+        return new EditJournal(directory, name, lock, channel, 0, head.limit(), 0);
+    }
+
+    // Продолжает существующий журнал после восстановления документа из него: оборванный хвост обрезается
+    public static EditJournal resume(Path directory, String name, FileLock lock) throws IOException {
+        JournalRecovery.Scan scan = JournalRecovery.scan(journalPath(directory, name), null);
+        if (scan == null) {
+            return create(directory, name, lock);
+        }
+        FileChannel channel = FileChannel.open(journalPath(directory, name), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(scan.validEnd);
+        channel.position(scan.validEnd);
+        return new EditJournal(directory, name, lock, channel, scan.generation, scan.validEnd, scan.base.getSize());
+    }
+
+    // Источник снимков для фонового сжатия. Может вернуть null, если снимок сейчас брать нельзя.
+    public void setStateSource(Supplier<State> stateSource) {
+        this.stateSource = stateSource;
+    }
+
+    // Записывает правку: removed символов в offset заменены на inserted.
+    // Вызывается из слушателя документа, поэтому только кодирует запись в буфер.
+    public void edit(int offset, int removed, String inserted) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (stale) {  // Места правки не совпадают с исходным состоянием журнала: правка войдёт в снимок
+                checkpoint = true;
+                lock.notifyAll();
+                return;
+            }
+            int body = 1 + 4 + 4 + 4 + inserted.length() * 2;
+            ensureCapacity(4 + body + 4);
+            int start = pending.position();
+            pending.putInt(body).put(EDIT).putInt(offset).putInt(removed).putInt(inserted.length());
+            for (int i = 0; i < inserted.length(); i++) {
+                pending.putChar(inserted.charAt(i));
+            }
+            finishRecord(start, body);
+            if (start == 0) {
+                lock.notifyAll();  // Поток записи спит, пока буфер пуст
+            }
+        }
+    }
+
+    // Текущее место в журнале; брать вместе со снимком текста под блокировкой документа
+    public Mark mark() {
+        synchronized (lock) {
+            return new Mark(generation, appended);
+        }
+    }
+
+    // Место в журнале для снимка контрольной точки: брать под блокировкой документа вместе со снимком.
+    // Правки после него снова пишутся, даже если документ менялся мимо журнала: снимок это изменение уже содержит.
+    public Mark checkpointMark() {
+        synchronized (lock) {
+            stale = false;
+            return new Mark(generation, appended);
+        }
+    }
+
+    // Документ изменён без записи в журнал (дописанный в файл текст при слежении, обрезка начала документа):
+    // правки после этого не пишутся, а вызывают контрольную точку с текущим текстом. Если сбой случится раньше неё,
+    // восстановится текст до изменения, а не правки на чужих местах.
+    public void invalidate() {
+        synchronized (lock) {
+            stale = true;
+        }
+    }
+
+    // Начинает новое поколение с base: правки до mark больше не нужны (текст сохранён в файл или заменён файлом)
+    public void rebase(Mark mark, JournalBase base) {
+        synchronized (lock) {
+            rebase = new Rebase(mark, base);
+            lock.notifyAll();
+        }
+    }
+
+    // Просит поток записи сделать контрольную точку с текущим текстом (документ окна заменён другим, не файлом)
+    public void checkpoint() {
+        synchronized (lock) {
+            checkpoint = true;
+            lock.notifyAll();
+        }
+    }
+
+    // Дописывает накопленное, сбрасывает на диск и останавливает поток записи
+    @Override
+    public void close() {
+        stop();
+        release();
+    }
+
+    // Закрывает журнал и удаляет его файлы: документ закрыт, восстанавливать нечего
+    public void discard() {
+        stop();
+        try {
+            Files.deleteIfExists(journalPath(directory, name));
+            deleteCheckpoints(directory, name, -1);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            release();  // Только после удаления: иначе другой процесс мог бы начать восстанавливать удаляемый журнал
+        }
+    }
+
+    private void stop() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Файл блокировки не удаляется: процесс, открывший его до удаления, держал бы блокировку уже другого файла
+    private void release() {
+        try {
+            ownership.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        HELD.remove(lockPath(directory, name).toAbsolutePath());
+    }
+
+    static Path journalPath(Path directory, String name) {
+        return directory.resolve(name + ".journal");
+    }
+
+    static Path lockPath(Path directory, String name) {
+        return directory.resolve(name + ".lock");
+    }
+
+    static Path checkpointPath(Path directory, String name, long generation) {
+        return directory.resolve(name + "." + generation + ".checkpoint");
+    }
+
+    // Поток записи: групповая фиксация, периодический fsync, новые поколения
+    private void run() {
+        try {
+            while (true) {
+                ByteBuffer batch;
+                Rebase request;
+                boolean snapshot;
+                boolean finishing;
+                synchronized (lock) {
+                    while (pending.position() == 0 && rebase == null && !checkpoint && !closed) {
+                        long wait = FSYNC_INTERVAL_MILLIS - (System.currentTimeMillis() - forcedAt);
+                        if (unforced && wait <= 0) {
+                            break;  // Пора сбросить на диск то, что уже записано
+                        }
+                        lock.wait(unforced ? wait : 0);
+                    }
+                    batch = swap();
+                    request = rebase;
+                    rebase = null;
+                    snapshot = checkpoint;
+                    checkpoint = false;
+                    finishing = closed;
+                }
+                writeBatch(batch);
+                try {
+                    if (request != null) {
+                        long from = resolve(request.mark);
+                        if (from >= 0) {  // Иначе после mark уже было сжатие со снимком новее
+                            switchGeneration(from, request.base, null);
+                            compactedLength = request.base.getSize();
+                        }
+                    } else if (snapshot || written >= Math.max(COMPACT_BYTES, compactedLength)) {
+                        compact();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();  // Журнал остаётся в прежнем поколении и продолжает писаться
+                    compactedLength = written * 2;
+                }
+                if (unforced && (finishing || System.currentTimeMillis() - forcedAt >= FSYNC_INTERVAL_MILLIS)) {
+                    force();
+                }
+                if (finishing) {
+                    synchronized (lock) {
+                        if (pending.position() == 0) {
+                            break;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Сжатие: снимок текста сохраняется в файл контрольной точки, новое поколение начинается с неё
+    private void compact() throws IOException {
+        Supplier<State> source = stateSource;
+        State state = source == null ? null : source.get();
+        if (state == null) {
+            compactedLength = written * 2;  // Снимок сейчас недоступен (идёт загрузка) - повторить, когда журнал вырастет вдвое
+            return;
+        }
+        long from = resolve(state.mark);
+        if (from < 0) {
+            return;
+        }
+        long next = currentGeneration() + 1;
+        try {
+            SnapshotSaver.save(state.text, checkpointPath(directory, name, next), StandardCharsets.UTF_8);
+            switchGeneration(from, JournalBase.checkpoint(state.text.length(), state.charset, state.lineSeparator), state);
+        } catch (IOException e) {
+            invalidate();  // Правки после снимка записаны поверх него, а снимка нет: дальше не писать до новой попытки
+            throw e;
+        }
+        compactedLength = state.text.length() * 2L;
+    }
+
+    // Переписывает журнал: заголовок нового поколения, base и правки текущего поколения начиная с from.
+    // Под lock правки, пришедшие во время копирования, только забираются из буфера и дописываются в новый файл;
+    // fsync и атомарная замена файла идут без lock, а новые правки тем временем копятся в pending
+    // и попадают уже в новое поколение. Смещения в нём линейны: место в старом - from + начало правок в новом.
+    private void switchGeneration(long from, JournalBase base, State compacted) throws IOException {
+        long next = currentGeneration() + 1;
+        Path journal = journalPath(directory, name);
+        Path temp = directory.resolve(name + ".journal.tmp");
+        FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);  // Станет каналом журнала, из которого читает следующее поколение
+        ByteBuffer batch = null;
+        ByteBuffer head = header(next, base);
+        try {
+            write(out, head);
+            long position = from;
+            while (position < written) {
+                position += channel.transferTo(position, written - position, out);
+            }
+            synchronized (lock) {
+                batch = swap();
+            }
+            batch.flip();
+            if (from > written) {
+                batch.position((int) (from - written));  // Эти правки ещё не были в файле, но уже вошли в снимок
+            }
+            write(out, batch);
+            out.force(false);
+            move(temp, journal);
+        } catch (IOException e) {
+            out.close();
+            Files.deleteIfExists(temp);
+            if (batch != null) {
+                batch.rewind();  // Забранные правки остаются в прежнем поколении, до правок, накопившихся после них
+                try {
+                    written += write(channel, batch);
+                    unforced = true;
+                } catch (IOException lost) {
+                    e.addSuppressed(lost);
+                }
+                batch.clear();
+            }
+            throw e;
+        }
+        FileChannel previous = channel;
+        channel = out;
+        written = out.position();
+        synchronized (lock) {
+            switchedAt = from;
+            switchedTo = head.limit();
+            appended = written + pending.position();  // Правки, пришедшие после swap, уже считаются в новом поколении
+            generation = next;
+        }
+        batch.clear();
+        unforced = false;
+        forcedAt = System.currentTimeMillis();
+        try {
+            previous.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        deleteCheckpoints(directory, name, compacted == null ? -1 : next);
+    }
+
+    // Положение mark в текущем поколении, или -1, если правки после mark не сохранились в журнале
+    private long resolve(Mark mark) {
+        synchronized (lock) {
+            if (mark.generation == generation) {
+                return mark.position;
+            }
+            if (mark.generation == generation - 1 && switchedAt >= 0 && mark.position >= switchedAt) {
+                return mark.position - switchedAt + switchedTo;
+            }
+            return -1;
+        }
+    }
+
+    private long currentGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    private void writeBatch(ByteBuffer batch) throws IOException {
+        batch.flip();
+        if (batch.hasRemaining()) {
+            written += write(channel, batch);
+            unforced = true;
+        }
+        batch.clear();
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        unforced = false;
+        forcedAt = System.currentTimeMillis();
+    }
+
+    // Меняет местами буферы: поток записи забирает накопленное, правки идут во второй буфер (под lock)
+    private ByteBuffer swap() {
+        ByteBuffer batch = pending;
+        pending = spare;
+        pending.clear();
+        spare = batch;
+        return batch;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    // Дописывает CRC тела записи, начатой в start
+    private void finishRecord(int start, int body) {
+        crc.reset();
+        crc.update(pending.array(), start + 4, body);
+        pending.putInt((int) crc.getValue());
+        appended += 4 + body + 4;
+    }
+
+    // Заголовок поколения вместе с записью исходного состояния
+    private static ByteBuffer header(long generation, JournalBase base) {
+        int body = 1 + base.payloadBytes();
+        ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + 4 + body + 4);
+        head.putInt(MAGIC).putLong(generation);
+        head.putInt(body).put(base.type());
+        base.write(head);
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), HEADER_BYTES + 4, body);
+        head.putInt((int) crc.getValue());
+        head.flip();
+        return head;
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long count = 0;
+        while (buffer.hasRemaining()) {
+            count += channel.write(buffer);
+        }
+        return count;
+    }
+
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Удаляет контрольные точки журнала name, кроме поколения keep
+    private static void deleteCheckpoints(Path directory, String name, long keep) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, name + ".*.checkpoint")) {
+            for (Path file : files) {
+                if (!file.equals(checkpointPath(directory, name, keep))) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        e.printStackTrace();  // Файл ещё отображён в память (Windows) - удалится при следующем сжатии
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// С чего начинается текст, к которому применяются правки журнала:
+// с пустого документа, с файла на диске (открытого или только что сохранённого) или с контрольной точки журнала.
+public final class JournalBase {
+
+    enum Kind {EMPTY, FILE, CHECKPOINT}
+
+    private final Kind kind;
+    private final byte[] path;  // Путь к файлу в UTF-8, для FILE
+    private final long size;  // Размер файла; для CHECKPOINT - длина текста в символах
+    private final long modified;  // Время изменения файла, по нему видно, что файл не трогали
+    private final byte[] charset;  // Для CHECKPOINT: имя кодировки, в которой документ сохраняется (файл точки всегда в UTF-8)
+    private final byte[] lineSeparator;  // Для CHECKPOINT: перевод строки документа
+
+    private JournalBase(Kind kind, byte[] path, long size, long modified, byte[] charset, byte[] lineSeparator) {
+        this.kind = kind;
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+        this.charset = charset;
+        this.lineSeparator = lineSeparator;
+    }
+
+    public static JournalBase empty() {
+        return new JournalBase(Kind.EMPTY, new byte[0], 0, 0, new byte[0], new byte[0]);
+    }
+
+    // Файл в его текущем состоянии на диске
+    public static JournalBase file(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        return new JournalBase(Kind.FILE, absolute.toString().getBytes(StandardCharsets.UTF_8),
+                Files.size(absolute), Files.getLastModifiedTime(absolute).toMillis(), new byte[0], new byte[0]);
+    }
+
+    static JournalBase checkpoint(long chars, Charset charset, String lineSeparator) {
+        return new JournalBase(Kind.CHECKPOINT, new byte[0], chars, 0, charset.name().getBytes(StandardCharsets.UTF_8),
+                lineSeparator.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    Path getPath() {
+        return Path.of(new String(path, StandardCharsets.UTF_8));
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    // Кодировка документа контрольной точки; null - не записана (журнал старой версии) или не поддерживается
+    Charset getCharset() {
+        String name = new String(charset, StandardCharsets.UTF_8);
+        return !name.isEmpty() && Charset.isSupported(name) ? Charset.forName(name) : null;
+    }
+
+    // Перевод строки документа контрольной точки; null - не записан
+    String getLineSeparator() {
+        return lineSeparator.length == 0 ? null : new String(lineSeparator, StandardCharsets.UTF_8);
+    }
+
+    // Совпадает ли файл на диске с тем, что был записан в журнал
+    boolean isFileUnchanged() throws IOException {
+        Path file = getPath();
+        return Files.exists(file) && Files.size(file) == size && Files.getLastModifiedTime(file).toMillis() == modified;
+    }
+
+    byte type() {
+        switch (kind) {
+            case FILE:
+                return EditJournal.BASE_FILE;
+            case CHECKPOINT:
+                return EditJournal.BASE_CHECKPOINT;
+            default:
+                return EditJournal.BASE_EMPTY;
+        }
+    }
+
+    int payloadBytes() {
+        return 4 + path.length + 8 + 8 + 4 + charset.length + 4 + lineSeparator.length;
+    }
+
+    void write(ByteBuffer buffer) {
+        buffer.putInt(path.length).put(path).putLong(size).putLong(modified)
+                .putInt(charset.length).put(charset).putInt(lineSeparator.length).put(lineSeparator);
+    }
+
+    static JournalBase read(byte type, ByteBuffer buffer) {
+        byte[] path = new byte[buffer.getInt()];
+        buffer.get(path);
+        long size = buffer.getLong();
+        long modified = buffer.getLong();
+        byte[] charset = new byte[0];
+        byte[] lineSeparator = new byte[0];
+        if (buffer.hasRemaining()) {  // В журналах прежней версии кодировки и перевода строки нет
+            charset = new byte[buffer.getInt()];
+            buffer.get(charset);
+            lineSeparator = new byte[buffer.getInt()];
+            buffer.get(lineSeparator);
+        }
+        Kind kind = type == EditJournal.BASE_FILE ? Kind.FILE : type == EditJournal.BASE_CHECKPOINT ? Kind.CHECKPOINT : Kind.EMPTY;
+        return new JournalBase(kind, path, size, modified, charset, lineSeparator);
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.FILE ? "FILE " + getPath() : kind.toString();
+    }
+}
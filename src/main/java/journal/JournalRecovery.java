@@ -0,0 +1,226 @@
+package journal;
+
+import codec.Codec;
+import codec.Codecs;
+import codec.CompressedFiles;
+import document.MappedFile;
+import document.PagedDocument;
+
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+// Восстановление документа из журнала, оставшегося после сбоя: исходное состояние (файл, контрольная точка
+// или пустой документ) и поверх него все целые правки по порядку.
+public final class JournalRecovery {
+
+    private static final long LOAD_BATCH_BYTES = 16L << 20;  // Порция файла, декодируемая параллельно
+
+    // Восстановленный документ и файл, с которым он связан (null, если документ ещё не сохранялся),
+    // и сообщение для пользователя: итог восстановления или почему правки журнала отброшены
+    public static final class Recovered {
+        private final PagedDocument document;
+        private final File file;
+        private final int edits;
+        private final String message;
+
+        Recovered(PagedDocument document, File file, int edits, String message) {
+            this.document = document;
+            this.file = file;
+            this.edits = edits;
+            this.message = message;
+        }
+
+        // null - журнал не восстановлен (см. getMessage), редактор начинает новый
+        public PagedDocument getDocument() {
+            return document;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getEdits() {
+            return edits;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    // Получатель правок при чтении журнала; false - остановить чтение
+    interface EditVisitor {
+        boolean edit(int offset, int removed, String inserted);
+    }
+
+    // Результат чтения журнала
+    static final class Scan {
+        long generation;
+        JournalBase base;
+        long validEnd;  // Конец последней целой записи
+        int edits;
+    }
+
+    private JournalRecovery() {
+    }
+
+    // Восстанавливает документ журнала name. Возвращает null, если журнала нет или он пуст; если исходный файл
+    // изменился после записи журнала, документа в результате нет, а сообщение говорит, сколько правок отброшено
+    public static Recovered recover(Path directory, String name) throws IOException {
+        Path journal = EditJournal.journalPath(directory, name);
+        if (!Files.exists(journal)) {
+            return null;
+        }
+        Scan head = scan(journal, (offset, removed, inserted) -> false);  // Только исходное состояние
+        if (head == null) {
+            return null;
+        }
+        PagedDocument document = new PagedDocument();
+        File file = null;
+        switch (head.base.getKind()) {
+            case FILE:
+                if (!head.base.isFileUnchanged()) {
+                    int lost = scan(journal, null).edits;
+                    return new Recovered(null, null, 0, "Журнал " + name + " не восстановлен: файл " + head.base.getPath()
+                            + " изменился, правок отброшено: " + lost);
+                }
+                load(document, head.base.getPath(), null);  // Кодировка - по началу файла, как при открытии
+                file = head.base.getPath().toFile();
+                break;
+            case CHECKPOINT:
+                load(document, EditJournal.checkpointPath(directory, name, head.generation), StandardCharsets.UTF_8);
+                if (head.base.getCharset() != null) {  // Файл точки в UTF-8, а сохраняется документ в своей кодировке
+                    document.setCharset(head.base.getCharset());
+                }
+                if (head.base.getLineSeparator() != null) {
+                    document.setLineSeparator(head.base.getLineSeparator());
+                }
+                break;
+            default:
+                break;
+        }
+        Scan scan = scan(journal, (offset, removed, inserted) -> {
+            try {
+                if (removed > 0) {
+                    document.remove(offset, removed);
+                }
+                if (!inserted.isEmpty()) {
+                    document.insertString(offset, inserted, null);
+                }
+                return true;
+            } catch (BadLocationException e) {
+                return false;  // Правка вне документа: восстановление останавливается на ней
+            }
+        });
+        int total = scan(journal, null).edits;
+        if (total == 0 && head.base.getKind() == JournalBase.Kind.EMPTY) {
+            return null;  // Пустой документ без правок - восстанавливать нечего
+        }
+        String message = scan.edits == total ? "Восстановлен документ " + name + ": правок " + total
+                : "Журнал " + name + ": правка вне документа, восстановлено правок " + scan.edits + " из " + total;
+        return new Recovered(document, file, scan.edits, message);
+    }
+
+    // Читает журнал: заголовок, исходное состояние и правки до первой испорченной записи.
+    // Возвращает null, если файла нет или у него нет целого заголовка.
+    static Scan scan(Path journal, EditVisitor visitor) throws IOException {
+        if (!Files.exists(journal)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journal));
+        if (buffer.remaining() < EditJournal.HEADER_BYTES || buffer.getInt() != EditJournal.MAGIC) {
+            return null;
+        }
+        Scan scan = new Scan();
+        scan.generation = buffer.getLong();
+        CRC32 crc = new CRC32();
+        while (true) {
+            int start = buffer.position();
+            ByteBuffer body = record(buffer, crc);
+            if (body == null) {
+                buffer.position(start);
+                break;
+            }
+            byte type = body.get();
+            try {
+                if (scan.base == null) {
+                    if (type == EditJournal.EDIT) {
+                        break;  // Первая запись обязана быть исходным состоянием
+                    }
+                    scan.base = JournalBase.read(type, body);
+                } else if (type == EditJournal.EDIT) {
+                    int offset = body.getInt();
+                    int removed = body.getInt();
+                    char[] inserted = new char[body.getInt()];
+                    body.asCharBuffer().get(inserted);
+                    if (visitor != null && !visitor.edit(offset, removed, new String(inserted))) {
+                        buffer.position(start);
+                        break;
+                    }
+                    scan.edits++;
+                } else {
+                    break;
+                }
+            } catch (BufferUnderflowException e) {
+                buffer.position(start);  // Тело не соответствует типу - считаем запись испорченной
+                break;
+            }
+        }
+        if (scan.base == null) {
+            return null;
+        }
+        scan.validEnd = buffer.position();
+        return scan;
+    }
+
+    // Тело следующей записи с верной контрольной суммой, или null, если запись оборвана или испорчена
+    private static ByteBuffer record(ByteBuffer buffer, CRC32 crc) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int length = buffer.getInt();
+        if (length < 1 || buffer.remaining() < length + 4) {
+            return null;
+        }
+        int start = buffer.position();
+        crc.reset();
+        crc.update(buffer.array(), start, length);
+        buffer.position(start + length);
+        if (buffer.getInt() != (int) crc.getValue()) {
+            return null;
+        }
+        return ByteBuffer.wrap(buffer.array(), start, length).slice();
+    }
+
+    // Загружает файл в документ целиком, страницы берутся из отображения без копирования; charset null - определить.
+    // Сжатый файл распаковывается потоком.
+    private static void load(PagedDocument document, Path file, Charset charset) throws IOException {
+        Codec codec = Codecs.detect(file);
+        if (codec != null) {
+            CompressedFiles.load(file, codec, charset, document);
+            return;
+        }
+        MappedFile mapped = MappedFile.map(file, charset);
+        try {
+            // Индекс строится до конца: документ восстанавливается до показа окна. Порция вставляется сразу после
+            // декодирования, пока её страницы не вытеснены.
+            while (mapped.indexNextPages(ForkJoinPool.commonPool(), LOAD_BATCH_BYTES) >= 0) {
+                int loaded = document.getLength();
+                document.insertSource(loaded, mapped, loaded, mapped.indexedChars() - loaded);
+            }
+        } catch (BadLocationException e) {
+            throw new IOException(e);
+        }
+        document.setCharset(mapped.getCharset());
+        document.setLineSeparator(mapped.getLineSeparator());
+    }
+}
@@ -0,0 +1,272 @@
+package log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Журнал событий редактора (команды, сохранения, зависания потока Swing) вместо печати в консоль.
+// Записи фиксированного размера (время, редактор, событие, длительность, байты) кладутся в заранее выделенное
+// кольцо без блокировок: место занимается CAS-ом, готовность ячейки отмечается номером записи.
+// Фоновый поток забирает записи пачками и дописывает их строками JSON в файл, который при переполнении
+// переименовывается в events.1.jsonl, events.2.jsonl и так далее.
+public class EventLog implements Closeable {
+
+    // Что делать, если кольцо заполнено
+    public enum Overflow {
+        DROP,  // Запись отбрасывается и считается; поток, пишущий событие, не ждёт никогда
+        BLOCK  // Поток ждёт, пока фоновый поток освободит место
+    }
+
+    public static final int DEFAULT_CAPACITY = 1 << 14;  // Записей в кольце
+    public static final long DEFAULT_FILE_BYTES = 8L << 20;  // Размер файла до переименования
+    public static final int DEFAULT_KEEP_FILES = 5;  // Сколько старых файлов хранить
+    private static final int BATCH = 256;  // Наибольшая пачка записей за одну запись в файл
+    private static final long IDLE_PARK_NANOS = 5_000_000;  // Пауза фонового потока, когда записей нет
+
+    private static final EventLog DISABLED = new EventLog();
+    private static volatile EventLog global = DISABLED;
+
+    private final int mask;
+    private final long[] timestamps;
+    private final int[] editors;
+    private final String[] events;  // Ссылки на строки-константы команд, сами строки не копируются
+    private final long[] durations;
+    private final long[] bytes;
+    private final AtomicLongArray published;  // Номер записи + 1, опубликованной в ячейке
+    private final AtomicLong claimed = new AtomicLong();  // Следующий свободный номер записи
+    private volatile long consumed;  // Следующий номер, который заберёт фоновый поток
+
+    private final Overflow overflow;
+    private final LongAdder dropped = new LongAdder();
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int keepFiles;
+    private FileChannel channel;
+    private long fileBytes;
+    private long written;
+
+    private final Thread writer;
+    private volatile boolean running;
+
+    public EventLog(Path directory, int capacity, Overflow overflow, long maxFileBytes, int keepFiles) throws IOException {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Размер кольца должен быть степенью двойки: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.timestamps = new long[capacity];
+        this.editors = new int[capacity];
+        this.events = new String[capacity];
+        this.durations = new long[capacity];
+        this.bytes = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.overflow = overflow;
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.keepFiles = keepFiles;
+        Files.createDirectories(directory);
+        openFile();
+        this.running = true;
+        this.writer = new Thread(this::run, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Выключенный журнал: события отбрасываются без учёта
+    private EventLog() {
+        this.mask = 0;
+        this.timestamps = null;
+        this.editors = null;
+        this.events = null;
+        this.durations = null;
+        this.bytes = null;
+        this.published = null;
+        this.overflow = Overflow.DROP;
+        this.directory = null;
+        this.maxFileBytes = 0;
+        this.keepFiles = 0;
+        this.writer = null;
+    }
+
+    // Журнал с настройками по умолчанию
+    public static EventLog open(Path directory, Overflow overflow) throws IOException {
+        return new EventLog(directory, DEFAULT_CAPACITY, overflow, DEFAULT_FILE_BYTES, DEFAULT_KEEP_FILES);
+    }
+
+    // Каталог журнала событий по умолчанию
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".texteditor", "log");
+    }
+
+    // Журнал приложения; до install события никуда не пишутся
+    public static EventLog global() {
+        return global;
+    }
+
+    public static void install(EventLog log) {
+        global = log;
+    }
+
+    // Добавляет событие. Не выделяет память и не берёт блокировок; при политике DROP никогда не ждёт.
+    // Возвращает false, если запись отброшена.
+    public boolean log(int editor, String event, long durationNanos, long byteCount) {
+        if (published == null) {
+            return false;
+        }
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - consumed > mask) {  // Кольцо заполнено
+                if (overflow == Overflow.DROP || !running) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.parkNanos(50_000);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int slot = (int) sequence & mask;
+        timestamps[slot] = System.currentTimeMillis();
+        editors[slot] = editor;
+        events[slot] = event;
+        durations[slot] = durationNanos;
+        bytes[slot] = byteCount;
+        published.lazySet(slot, sequence + 1);  // Публикация после записи полей
+        if (sequence - consumed == (mask + 1) / 2) {
+            LockSupport.unpark(writer);  // Кольцо заполнено наполовину - фоновый поток не дожидается конца паузы
+        }
+        return true;
+    }
+
+    // Отброшенные из-за переполнения записи
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Записи, уже попавшие в файл
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    // Дописывает оставшиеся записи и закрывает файл
+    @Override
+    public void close() {
+        if (writer == null || !running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Фоновый поток: забирает опубликованные записи по порядку и пишет их пачками
+    private void run() {
+        StringBuilder text = new StringBuilder(BATCH * 128);
+        while (true) {
+            long sequence = consumed;
+            int count = 0;
+            text.setLength(0);
+            while (count < BATCH && published.get((int) sequence & mask) == sequence + 1) {
+                int slot = (int) sequence & mask;
+                format(text, slot);
+                events[slot] = null;
+                sequence++;
+                count++;
+            }
+            if (count > 0) {
+                consumed = sequence;  // Ячейки свободны для новых записей
+                write(text, count);
+                continue;
+            }
+            if (!running && claimed.get() == consumed) {
+                return;  // Всё записано
+            }
+            if (!running) {
+                Thread.onSpinWait();  // Запись занята, но ещё не опубликована
+                continue;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void format(StringBuilder text, int slot) {
+        text.append("{\"ts\":").append(timestamps[slot])
+                .append(",\"editor\":").append(editors[slot])
+                .append(",\"event\":\"");
+        String event = events[slot];
+        for (int i = 0; i < event.length(); i++) {
+            char c = event.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c < 0x20) {
+                text.append(String.format("\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        text.append("\",\"durationNanos\":").append(durations[slot])
+                .append(",\"bytes\":").append(bytes[slot])
+                .append("}\n");
+    }
+
+    private synchronized void write(StringBuilder text, int count) {
+        ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            if (fileBytes > 0 && fileBytes + buffer.remaining() > maxFileBytes) {
+                roll();
+            }
+            while (buffer.hasRemaining()) {
+                fileBytes += channel.write(buffer);
+            }
+            written += count;
+        } catch (IOException e) {
+            e.printStackTrace();  // Журнал событий не должен останавливать редактор
+        }
+    }
+
+    // events.jsonl -> events.1.jsonl -> ... -> events.<keepFiles>.jsonl (самый старый удаляется)
+    private void roll() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file(keepFiles));
+        for (int i = keepFiles - 1; i >= 0; i--) {
+            Path from = file(i);
+            if (Files.exists(from)) {
+                Files.move(from, file(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        openFile();
+    }
+
+    private void openFile() throws IOException {
+        channel = FileChannel.open(file(0), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+    }
+
+    private Path file(int index) {
+        return directory.resolve(index == 0 ? "events.jsonl" : "events." + index + ".jsonl");
+    }
+}
@@ -0,0 +1,195 @@
+package macro;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Записанный макрос: правки документа и команды в компактном двоичном виде.
+// Формат: заголовок MAGIC, затем записи [тип][пауза в мкс от предыдущей записи, varint][данные]:
+//   INSERT  - смещение (zigzag varint относительно конца предыдущей правки), текст (длина varint + UTF-8)
+//   REMOVE  - смещение (так же), длина varint
+//   COMMAND - имя команды (длина varint + UTF-8)
+// Набор подряд кодируется смещением 0, поэтому нажатие клавиши занимает около пяти байт.
+public final class Macro {
+
+    static final int MAGIC = 0x454D4331;  // "EMC1"
+    static final byte INSERT = 1;
+    static final byte REMOVE = 2;
+    static final byte COMMAND = 3;
+
+    // Куда воспроизводится макрос
+    public interface Target {
+        void insert(int offset, String text) throws BadLocationException;
+
+        void remove(int offset, int length) throws BadLocationException;
+
+        void command(String name);
+    }
+
+    // Итог воспроизведения
+    public static final class Stats {
+        private final int edits;
+        private final int commands;
+        private final long recordedMicros;  // Длительность записи
+        private final long nanos;  // Длительность воспроизведения
+
+        Stats(int edits, int commands, long recordedMicros, long nanos) {
+            this.edits = edits;
+            this.commands = commands;
+            this.recordedMicros = recordedMicros;
+            this.nanos = nanos;
+        }
+
+        public int getEdits() {
+            return edits;
+        }
+
+        public int getCommands() {
+            return commands;
+        }
+
+        public long getRecordedMicros() {
+            return recordedMicros;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("правок %d, команд %d за %.1f мс (записано за %.1f с, %.0f правок/с)",
+                    edits, commands, nanos / 1e6, recordedMicros / 1e6, nanos == 0 ? 0 : edits / (nanos / 1e9));
+        }
+    }
+
+    // Пошаговое воспроизведение: вызывающий решает, сколько записей применять под одним захватом блокировки
+    public final class Player {
+        private final Target target;
+        private int position = 4;  // После MAGIC
+        private int cursor;  // Конец предыдущей правки
+        private int edits;
+        private int commands;
+        private long recordedMicros;
+        private long nanos;
+
+        Player(Target target) {
+            this.target = target;
+        }
+
+        public boolean isDone() {
+            return position >= length;
+        }
+
+        // Применяет до count записей; возвращает число применённых
+        public int step(int count) throws BadLocationException {
+            long started = System.nanoTime();
+            int applied = 0;
+            try {
+                while (applied < count && position < length) {
+                    byte type = data[position++];
+                    recordedMicros += readVarLong();
+                    switch (type) {
+                        case INSERT: {
+                            int offset = cursor + zigzag(readVarInt());
+                            String text = readString();
+                            target.insert(offset, text);
+                            cursor = offset + text.length();
+                            edits++;
+                            break;
+                        }
+                        case REMOVE: {
+                            int offset = cursor + zigzag(readVarInt());
+                            target.remove(offset, readVarInt());
+                            cursor = offset;
+                            edits++;
+                            break;
+                        }
+                        case COMMAND:
+                            target.command(readString());
+                            commands++;
+                            break;
+                        default:
+                            throw new IllegalStateException("Неизвестная запись макроса: " + type);
+                    }
+                    applied++;
+                }
+            } finally {
+                nanos += System.nanoTime() - started;
+            }
+            return applied;
+        }
+
+        public Stats getStats() {
+            return new Stats(edits, commands, recordedMicros, nanos);
+        }
+
+        private int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private String readString() {
+            int bytes = readVarInt();
+            String text = new String(data, position, bytes, StandardCharsets.UTF_8);
+            position += bytes;
+            return text;
+        }
+    }
+
+    private final byte[] data;
+    private final int length;
+
+    Macro(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+    }
+
+    public static Macro read(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < 4 || (data[0] << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF)) != MAGIC) {
+            throw new IOException("Файл не является макросом: " + file);
+        }
+        return new Macro(data, data.length);
+    }
+
+    public void write(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(data, 0, length);
+        }
+    }
+
+    // Размер записи в байтах
+    public int size() {
+        return length;
+    }
+
+    public Player player(Target target) {
+        return new Player(target);
+    }
+
+    // Воспроизводит макрос целиком
+    public Stats replay(Target target) throws BadLocationException {
+        Player player = player(target);
+        player.step(Integer.MAX_VALUE);
+        return player.getStats();
+    }
+
+    private static int zigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,85 @@
+package macro;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Запись макроса: правки документа и команды дописываются в растущий массив байт (формат - в Macro).
+// Методы вызываются из слушателя документа и при выполнении команд, поэтому запись только кодирует данные в массив.
+public class MacroRecorder {
+
+    private byte[] data = new byte[4096];
+    private int length;
+    private int cursor;  // Конец предыдущей правки
+    private long lastAt = System.nanoTime();
+
+    public MacroRecorder() {
+        writeInt(Macro.MAGIC);
+    }
+
+    public synchronized void inserted(int offset, String text) {
+        header(Macro.INSERT);
+        writeVarLong(zigzag(offset - cursor));
+        writeString(text);
+        cursor = offset + text.length();
+    }
+
+    public synchronized void removed(int offset, int count) {
+        header(Macro.REMOVE);
+        writeVarLong(zigzag(offset - cursor));
+        writeVarLong(count);
+        cursor = offset;
+    }
+
+    public synchronized void command(String name) {
+        header(Macro.COMMAND);
+        writeString(name);
+    }
+
+    // Записанное до этого момента; запись можно продолжать
+    public synchronized Macro toMacro() {
+        return new Macro(Arrays.copyOf(data, length), length);
+    }
+
+    private void header(byte type) {
+        long now = System.nanoTime();
+        ensure(1);
+        data[length++] = type;
+        writeVarLong((now - lastAt) / 1000);
+        lastAt = now;
+    }
+
+    private void writeString(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, data, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensure(4);
+        data[length++] = (byte) (value >>> 24);
+        data[length++] = (byte) (value >>> 16);
+        data[length++] = (byte) (value >>> 8);
+        data[length++] = (byte) value;
+    }
+
+    private void ensure(int bytes) {
+        if (length + bytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + bytes));
+        }
+    }
+
+    private static long zigzag(int value) {
+        return Integer.toUnsignedLong((value << 1) ^ (value >> 31));
+    }
+}
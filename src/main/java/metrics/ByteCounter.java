@@ -0,0 +1,31 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Счётчик операций и байт; запись без выделения памяти
+public class ByteCounter implements ByteCounterMXBean {
+
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    public void record(long count) {
+        operations.increment();
+        bytes.add(count);
+    }
+
+    @Override
+    public long getOperations() {
+        return operations.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        operations.reset();
+        bytes.reset();
+    }
+}
@@ -0,0 +1,11 @@
+package metrics;
+
+// Объём ввода-вывода для JMX: операции и байты
+public interface ByteCounterMXBean {
+
+    long getOperations();
+
+    long getBytes();
+
+    void reset();
+}
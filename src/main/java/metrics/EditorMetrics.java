@@ -0,0 +1,80 @@
+package metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Метрики редактора. Каждая гистограмма и счётчик регистрируется как MBean в домене texteditor
+// (смотреть в jconsole или VisualVM): texteditor:type=Latency,name=... и texteditor:type=Bytes,name=...
+public final class EditorMetrics {
+
+    private static final String DOMAIN = "texteditor";
+
+    public static final LatencyHistogram SET_TEXT = latency("editor.setText");
+    public static final LatencyHistogram NOTIFY_OBSERVERS = latency("editor.notifyObservers");
+    public static final LatencyHistogram LOCK_READ_WAIT = latency("lock.readWait");
+    public static final LatencyHistogram LOCK_WRITE_WAIT = latency("lock.writeWait");
+    public static final LatencyHistogram OPEN = latency("io.open");
+    public static final LatencyHistogram SAVE = latency("io.save");
+    public static final LatencyHistogram EDT_DISPATCH = latency("edt.dispatch");  // Обработка одного события потоком Swing
+    public static final LatencyHistogram EDT_STALLS = latency("edt.stalls");  // Только события дольше порога
+
+    public static final ByteCounter READ_BYTES = bytes("io.read");
+    public static final ByteCounter WRITTEN_BYTES = bytes("io.written");
+    public static final LatencyHistogram DECOMPRESS = latency("codec.decompress");  // Открытие сжатого файла целиком
+    public static final LatencyHistogram COMPRESS = latency("codec.compress");
+    public static final ByteCounter COMPRESSED_READ_BYTES = bytes("codec.compressedRead");  // Байты сжатых файлов
+    public static final ByteCounter DECOMPRESSED_BYTES = bytes("codec.decompressed");  // Байты текста после распаковки
+    public static final ByteCounter COMPRESSED_WRITTEN_BYTES = bytes("codec.compressedWritten");
+    public static final ByteCounter UNCOMPRESSED_BYTES = bytes("codec.uncompressed");  // Байты текста до сжатия
+
+    private static final Map<String, LatencyHistogram> commands = new ConcurrentHashMap<>();  // Команда меню -> обработка в потоке Swing
+    private static final Map<String, LatencyHistogram> backgroundCommands = new ConcurrentHashMap<>();  // Команда -> выполнение в очереди документа
+
+    private EditorMetrics() {
+    }
+
+    // Гистограмма обработки команды в потоке Swing; повторный вызов с той же командой не выделяет память
+    public static LatencyHistogram command(String command) {
+        LatencyHistogram histogram = commands.get(command);
+        return histogram != null ? histogram : commands.computeIfAbsent(command, name -> latency("command." + name));
+    }
+
+    // Гистограмма выполнения команды в очереди документа (открытие, сохранение)
+    public static LatencyHistogram backgroundCommand(String command) {
+        LatencyHistogram histogram = backgroundCommands.get(command);
+        return histogram != null ? histogram : backgroundCommands.computeIfAbsent(command, name -> latency("background." + name));
+    }
+
+    public static LatencyHistogram latency(String name) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        register("Latency", name, histogram);
+        return histogram;
+    }
+
+    public static ByteCounter bytes(String name) {
+        ByteCounter counter = new ByteCounter();
+        register("Bytes", name, counter);
+        return counter;
+    }
+
+    // Регистрирует MBean; метрика работает и без JMX, если регистрация не удалась
+    private static void register(String type, String name, Object bean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);  // Метрики второго загрузчика классов заменяют прежние
+            }
+            server.registerMBean(bean, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            // Зарегистрирована параллельно - остаётся прежняя
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package metrics;
+
+import log.EventLog;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+
+// Следит за потоком Swing: измеряет обработку каждого события и сообщает о зависаниях дольше порога.
+// Очередь событий заменяется своей, которая засекает начало и конец dispatchEvent; отдельный поток-сторож
+// проверяет, не затянулось ли текущее событие, и один раз на зависание пишет стек потока Swing в журнал событий.
+public class EdtStallDetector extends EventQueue {
+
+    private final long thresholdNanos;
+    private volatile long dispatchStarted;  // Начало текущего события, 0 - поток Swing свободен
+    private volatile Thread dispatchThread;
+    private volatile long reportedStart;  // Зависание, о котором уже сообщено
+
+    private EdtStallDetector(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+    }
+
+    // Подключает детектор к очереди событий приложения
+    public static EdtStallDetector install(long thresholdMillis) {
+        EdtStallDetector detector = new EdtStallDetector(thresholdMillis);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(detector);
+        Thread watchdog = new Thread(detector::watch, "edt-stall-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        return detector;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long started = System.nanoTime();
+        boolean outer = dispatchStarted == 0;  // Вложенный цикл модального окна не перезаписывает внешнее событие
+        if (outer) {
+            dispatchThread = Thread.currentThread();
+            dispatchStarted = started;
+        }
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            if (outer) {
+                dispatchStarted = 0;
+            }
+            EditorMetrics.EDT_DISPATCH.record(elapsed);
+            if (elapsed > thresholdNanos) {
+                EditorMetrics.EDT_STALLS.record(elapsed);
+                EventLog.global().log(0, "EdtStall", elapsed, 0);
+            }
+        }
+    }
+
+    // Проверяет поток Swing каждые полпорога
+    private void watch() {
+        long period = Math.max(1, thresholdNanos / 2_000_000);
+        while (true) {
+            try {
+                Thread.sleep(period);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long started = dispatchStarted;
+            Thread thread = dispatchThread;
+            if (started == 0 || thread == null || started == reportedStart || System.nanoTime() - started <= thresholdNanos) {
+                continue;
+            }
+            reportedStart = started;
+            StringBuilder report = new StringBuilder("EdtStall stack");  // Событие ещё идёт: длительность - на момент проверки
+            for (StackTraceElement element : thread.getStackTrace()) {
+                report.append("\n\tat ").append(element);
+            }
+            EventLog.global().log(0, report.toString(), System.nanoTime() - started, 0);
+        }
+    }
+}
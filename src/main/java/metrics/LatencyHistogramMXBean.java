@@ -0,0 +1,21 @@
+package metrics;
+
+// Задержки одной операции для JMX: количество, среднее, процентили и максимум в микросекундах
+public interface LatencyHistogramMXBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
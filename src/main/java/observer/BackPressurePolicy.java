@@ -0,0 +1,7 @@
+package observer;
+
+// Что делать, если очередь наблюдателя переполнена
+public enum BackPressurePolicy {
+    BLOCK,  // Источник изменений ждёт, пока наблюдатель освободит место в очереди
+    RESYNC  // Очередь сбрасывается, наблюдатель позже получает полный текст одним вызовом update(String)
+}
@@ -0,0 +1,80 @@
+package observer;
+
+import document.TextSnapshot;
+
+// Описание одного изменения документа: вместо всего текста передаётся только разница.
+// Изменение загрузкой (insertSource, removeSource) не копирует вставленные символы: они берутся из снимка документа,
+// и получатель применяет его тоже как загрузку, а не как правку пользователя.
+public final class EditorChange {
+
+    private final int offset;  // Позиция начала изменения
+    private final int removedLength;  // Количество удалённых символов
+    private final String insertedText;  // Вставленный текст (пустая строка, если ничего не вставлено или он в снимке)
+    private final long version;  // Версия документа после применения изменения
+    private final boolean fromSource;  // Загрузка или обрезка документа, а не правка пользователя
+    private final TextSnapshot source;  // Снимок со вставленными символами загрузки; null - вставки нет
+    private final int sourceStart;
+    private final int sourceLength;
+
+    public EditorChange(int offset, int removedLength, String insertedText, long version) {
+        this(offset, removedLength, insertedText == null ? "" : insertedText, version, false, null, 0, 0);
+    }
+
+    private EditorChange(int offset, int removedLength, String insertedText, long version, boolean fromSource,
+                         TextSnapshot source, int sourceStart, int sourceLength) {
+        this.offset = offset;
+        this.removedLength = removedLength;
+        this.insertedText = insertedText;
+        this.version = version;
+        this.fromSource = fromSource;
+        this.source = source;
+        this.sourceStart = sourceStart;
+        this.sourceLength = sourceLength;
+    }
+
+    // Изменение загрузкой: удалено removedLength символов, вставлены символы [start, start + length) снимка
+    // (source может быть null, если ничего не вставлено)
+    public static EditorChange fromSource(int offset, int removedLength, TextSnapshot source, int start, int length,
+                                          long version) {
+        return new EditorChange(offset, removedLength, "", version, true, length == 0 ? null : source, start, length);
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRemovedLength() {
+        return removedLength;
+    }
+
+    // Вставленный текст правки пользователя; у изменения загрузкой символы не копируются - см. getSource
+    public String getInsertedText() {
+        return insertedText;
+    }
+
+    public int getInsertedLength() {
+        return fromSource ? sourceLength : insertedText.length();
+    }
+
+    public boolean isFromSource() {
+        return fromSource;
+    }
+
+    public TextSnapshot getSource() {
+        return source;
+    }
+
+    public int getSourceStart() {
+        return sourceStart;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "EditorChange{offset=" + offset + ", removed=" + removedLength
+                + ", inserted=" + getInsertedLength() + (fromSource ? ", source" : "") + ", version=" + version + "}";
+    }
+}
@@ -0,0 +1,24 @@
+package observer;
+
+import document.TextSnapshot;
+
+import java.util.List;
+
+// Наблюдатель, который получает изменения документа по частям (смещение, удалённая длина, вставленный текст).
+// Полная синхронизация приходит снимком текста; метод update(String) из EditorObserver остаётся для совместимости.
+public interface EditorChangeObserver extends EditorObserver {
+
+    // Полная синхронизация: снимок неизменяем, наблюдатель может сослаться на него, не копируя текст
+    default void update(TextSnapshot text) {
+        update(text.toString());
+    }
+
+    void changed(EditorChange change); // Применение одного изменения к своему документу
+
+    // Применение пачки изменений, накопленных диспетчером; наблюдатель может переопределить для одного обновления
+    default void changed(List<EditorChange> changes) {
+        for (EditorChange change : changes) {
+            changed(change);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package observer;
+
+import document.TextSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Диспетчер уведомлений наблюдателей, работающий вне потока Swing.
+// У каждого наблюдателя своя ограниченная очередь; раз в flushIntervalMillis накопленные изменения
+// склеиваются и доставляются пачкой, поэтому медленный наблюдатель не задерживает остальных и набор текста.
+public class ObserverDispatcher {
+
+    // Состояние документа для полной синхронизации: снимок текста и версия, которой он соответствует
+    public static final class Snapshot {
+        private final TextSnapshot text;
+        private final long version;
+
+        public Snapshot(TextSnapshot text, long version) {
+            this.text = text;
+            this.version = version;
+        }
+
+        public TextSnapshot getText() {
+            return text;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    private final int queueCapacity;  // Размер очереди каждого наблюдателя
+    private final BackPressurePolicy policy;  // Поведение при переполнении очереди
+    private final Supplier<Snapshot> snapshotSupplier;  // Источник полного текста для старых наблюдателей и пересинхронизации
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService ticker;  // Таймер сброса очередей
+    private final ExecutorService delivery;  // Потоки доставки, у каждого наблюдателя не больше одной задачи одновременно
+
+    public ObserverDispatcher(long flushIntervalMillis, int queueCapacity, BackPressurePolicy policy,
+                              Supplier<Snapshot> snapshotSupplier) {
+        if (flushIntervalMillis <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Интервал и размер очереди должны быть положительными");
+        }
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.snapshotSupplier = snapshotSupplier;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads("observer-dispatcher"));
+        this.delivery = Executors.newCachedThreadPool(daemonThreads("observer-delivery"));
+        ticker.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Добавляет наблюдателя со своей очередью
+    public void subscribe(EditorObserver observer) {
+        subscriptions.add(new Subscription(observer, queueCapacity));
+    }
+
+    // Удаляет наблюдателя, недоставленные изменения отбрасываются
+    public void unsubscribe(EditorObserver observer) {
+        subscriptions.removeIf(subscription -> subscription.observer == observer);
+    }
+
+    // Ставит изменение в очереди всех наблюдателей
+    public void publish(EditorChange change) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(change);
+        }
+    }
+
+    // Просит передать всем наблюдателям актуальный полный текст (старый путь уведомления)
+    public void publishText() {
+        for (Subscription subscription : subscriptions) {
+            subscription.requestResync();
+        }
+    }
+
+    // Количество недоставленных изменений у всех наблюдателей
+    public int pending() {
+        int pending = 0;
+        for (Subscription subscription : subscriptions) {
+            pending += subscription.queue.size();
+        }
+        return pending;
+    }
+
+    // Останавливает потоки диспетчера
+    public void close() {
+        ticker.shutdownNow();
+        delivery.shutdownNow();
+    }
+
+    // Запускает доставку для каждого наблюдателя, у которого есть изменения и нет активной доставки
+    private void flush() {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.hasWork() && subscription.running.compareAndSet(false, true)) {
+                delivery.execute(subscription::drain);
+            }
+        }
+    }
+
+    // Склеивает соседние изменения: набор подряд, удаление только что набранного, серии Delete и Backspace
+    static List<EditorChange> coalesce(List<EditorChange> changes) {
+        List<EditorChange> merged = new ArrayList<>(changes.size());
+        for (EditorChange next : changes) {
+            if (!merged.isEmpty()) {
+                EditorChange last = merged.get(merged.size() - 1);
+                EditorChange combined = merge(last, next);
+                if (combined != null) {
+                    merged.set(merged.size() - 1, combined);
+                    continue;
+                }
+            }
+            merged.add(next);
+        }
+        return merged;
+    }
+
+    private static EditorChange merge(EditorChange a, EditorChange b) {
+        if (a.isFromSource() || b.isFromSource()) {
+            return null;  // Загрузка не склеивается: её символы не копируются в строку
+        }
+        int aEnd = a.getOffset() + a.getInsertedText().length();  // Конец текста, вставленного изменением a
+        if (b.getRemovedLength() == 0 && b.getOffset() == aEnd) {  // Продолжение набора
+            return new EditorChange(a.getOffset(), a.getRemovedLength(), a.getInsertedText() + b.getInsertedText(), b.getVersion());
+        }
+        if (b.getInsertedText().isEmpty() && b.getOffset() >= a.getOffset()
+                && b.getOffset() + b.getRemovedLength() == aEnd) {  // Удаление хвоста только что вставленного текста
+            return new EditorChange(a.getOffset(), a.getRemovedLength(),
+                    a.getInsertedText().substring(0, b.getOffset() - a.getOffset()), b.getVersion());
+        }
+        if (a.getInsertedText().isEmpty() && b.getInsertedText().isEmpty()) {
+            if (b.getOffset() == a.getOffset()) {  // Серия Delete
+                return new EditorChange(a.getOffset(), a.getRemovedLength() + b.getRemovedLength(), "", b.getVersion());
+            }
+            if (b.getOffset() + b.getRemovedLength() == a.getOffset()) {  // Серия Backspace
+                return new EditorChange(b.getOffset(), a.getRemovedLength() + b.getRemovedLength(), "", b.getVersion());
+            }
+        }
+        return null;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);  // Потоки диспетчера не должны мешать завершению приложения
+            return thread;
+        };
+    }
+
+    // Очередь и состояние доставки одного наблюдателя
+    private final class Subscription {
+        private final EditorObserver observer;
+        private final BlockingQueue<EditorChange> queue;
+        private final AtomicBoolean running = new AtomicBoolean();  // Идёт ли сейчас доставка этому наблюдателю
+        private volatile boolean resync;  // Нужно передать полный текст вместо очереди
+
+        Subscription(EditorObserver observer, int capacity) {
+            this.observer = observer;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void offer(EditorChange change) {
+            if (!(observer instanceof EditorChangeObserver)) {
+                resync = true;  // Старому наблюдателю нужен только последний полный текст
+                return;
+            }
+            if (queue.offer(change)) {
+                return;
+            }
+            if (policy == BackPressurePolicy.BLOCK) {
+                try {
+                    queue.put(change);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    resync = true;
+                }
+            } else {
+                requestResync();
+            }
+        }
+
+        void requestResync() {
+            resync = true;
+            queue.clear();
+        }
+
+        boolean hasWork() {
+            return resync || !queue.isEmpty();
+        }
+
+        void drain() {
+            try {
+                List<EditorChange> batch = new ArrayList<>();
+                if (resync) {
+                    resync = false;
+                    Snapshot snapshot = snapshotSupplier.get();
+                    if (observer instanceof EditorChangeObserver) {
+                        ((EditorChangeObserver) observer).update(snapshot.getText());  // Без копирования текста
+                    } else {
+                        observer.update(snapshot.getText().toString());
+                    }
+                    queue.drainTo(batch);
+                    batch.removeIf(change -> change.getVersion() <= snapshot.getVersion());  // Уже учтены в полном тексте
+                } else {
+                    queue.drainTo(batch);
+                }
+                if (resync) {
+                    return;  // Очередь переполнилась во время доставки: в пачке пропуск, следующая доставка - полным текстом
+                }
+                if (!batch.isEmpty()) {
+                    ((EditorChangeObserver) observer).changed(coalesce(batch));
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package observer;
 
 import controller.Editor;
+import document.TextSnapshot;
 
-public class TextEditorObserver implements EditorObserver {
+import javax.swing.SwingUtilities;
+import java.util.List;
+
+public class TextEditorObserver implements EditorChangeObserver {
 
     private Editor editor;
 
@@ -12,6 +16,25 @@ public class TextEditorObserver implements EditorObserver {
 
     @Override
     public void update(String text) { // Реализация метода update интерфейса EditorObserver
-        editor.setText(text); // Вызов метода setText экземпляра Editor с переданным текстом
+        SwingUtilities.invokeLater(() -> editor.setText(text)); // Вызов setText в потоке Swing, в том же порядке, что и пачки изменений
+    }
+
+    @Override
+    public void update(TextSnapshot text) { // Полная синхронизация ссылкой на снимок, без строки во весь текст
+        SwingUtilities.invokeLater(() -> editor.setText(text));
+    }
+
+    @Override
+    public void changed(EditorChange change) { // Применение изменения без копирования всего текста
+        editor.applyChange(change);
+    }
+
+    @Override
+    public void changed(List<EditorChange> changes) { // Пачка изменений применяется в потоке Swing за один проход
+        SwingUtilities.invokeLater(() -> {
+            for (EditorChange change : changes) {
+                editor.applyChange(change);
+            }
+        });
     }
 }
@@ -0,0 +1,180 @@
+package replication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// Двоичный протокол репликации. Кадр: [int длина типа и данных][byte тип][данные]; числа в данных - varint
+// (по 7 бит, младшие вперёд), текст - CESU-8 (каждый char отдельно в 1-3 байтах, поэтому одиночные суррогаты
+// передаются без потерь). Кадры:
+//   HELLO    клиент -> сервер: эпоха сервера, номер клиента (0 - новый), ревизия клиента + 1 (0 - текста нет)
+//   WELCOME  сервер -> клиент: эпоха сервера и номер клиента
+//   SNAPSHOT сервер -> клиент: ревизия и длина текста, дальше текст кадрами CHUNK
+//   CHUNK    сервер -> клиент: часть текста снимка
+//   OP       клиент -> сервер: ревизия, от которой построена операция, время правки (мс), операция
+//   OPS      сервер -> клиент: ревизия первой записи и число записей, записи - номер клиента, время правки и
+//            операция (своя операция клиента - без операции: это подтверждение), ревизии записей идут подряд
+//   SYNCED   сервер -> клиент: клиент догнал сервер до этой ревизии
+final class Frames {
+
+    static final byte HELLO = 1;
+    static final byte WELCOME = 2;
+    static final byte SNAPSHOT = 3;
+    static final byte CHUNK = 4;
+    static final byte OP = 5;
+    static final byte OPS = 6;
+    static final byte SYNCED = 7;
+
+    static final int HEADER = 5;  // Длина и тип
+    static final int MAX_FRAME = 1 << 30;  // Больше - ошибка протокола
+
+    private Frames() {
+    }
+
+    // Буфер кадра с заполненным заголовком; payload - точная длина данных
+    static ByteBuffer frame(byte type, int payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + payload);
+        buffer.putInt(payload + 1);
+        buffer.put(type);
+        return buffer;
+    }
+
+    static int varLongSize(long value) {
+        int bytes = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Слишком длинное число");
+    }
+
+    // Размер текста в CESU-8
+    static int charsSize(CharSequence text, int from, int to) {
+        int bytes = to - from;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                bytes += c >= 0x800 ? 2 : 1;
+            }
+        }
+        return bytes;
+    }
+
+    static int charsSize(char[] text, int from, int to) {
+        int bytes = to - from;
+        for (int i = from; i < to; i++) {
+            char c = text[i];
+            if (c >= 0x80) {
+                bytes += c >= 0x800 ? 2 : 1;
+            }
+        }
+        return bytes;
+    }
+
+    static void putChars(ByteBuffer out, CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            putChar(out, text.charAt(i));
+        }
+    }
+
+    static void putChars(ByteBuffer out, char[] text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            putChar(out, text[i]);
+        }
+    }
+
+    // Дописывает в text символы из bytes байт CESU-8
+    static void getChars(ByteBuffer in, int bytes, StringBuilder text) {
+        int end = in.position() + bytes;
+        while (in.position() < end) {
+            int b = in.get() & 0xFF;
+            if (b < 0x80) {
+                text.append((char) b);
+            } else if (b < 0xE0) {
+                text.append((char) ((b & 0x1F) << 6 | (in.get() & 0x3F)));
+            } else {
+                text.append((char) ((b & 0x0F) << 12 | (in.get() & 0x3F) << 6 | (in.get() & 0x3F)));
+            }
+        }
+    }
+
+    private static void putChar(ByteBuffer out, char c) {
+        if (c < 0x80) {
+            out.put((byte) c);
+        } else if (c < 0x800) {
+            out.put((byte) (0xC0 | c >> 6));
+            out.put((byte) (0x80 | c & 0x3F));
+        } else {
+            out.put((byte) (0xE0 | c >> 12));
+            out.put((byte) (0x80 | c >> 6 & 0x3F));
+            out.put((byte) (0x80 | c & 0x3F));
+        }
+    }
+
+    // Собирает кадры из байтов соединения
+    static final class Reader {
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);  // В режиме записи
+
+        // Читает из канала, что есть; -1 - соединение закрыто
+        int read(ReadableByteChannel channel) throws IOException {
+            if (!buffer.hasRemaining()) {
+                buffer = grow(buffer, buffer.capacity() * 2);
+            }
+            return channel.read(buffer);
+        }
+
+        // Следующий полный кадр (позиция на типе) или null
+        ByteBuffer next() throws IOException {
+            if (buffer.position() < 4) {
+                return null;
+            }
+            int length = buffer.getInt(0);
+            if (length < 1 || length > MAX_FRAME) {
+                throw new IOException("Неверная длина кадра: " + length);
+            }
+            if (buffer.position() < 4 + length) {
+                if (buffer.capacity() < 4 + length) {
+                    buffer = grow(buffer, 4 + length);
+                }
+                return null;
+            }
+            buffer.flip();
+            buffer.position(4);
+            ByteBuffer frame = ByteBuffer.allocate(length);
+            int limit = buffer.limit();
+            buffer.limit(4 + length);
+            frame.put(buffer);
+            buffer.limit(limit);
+            buffer.compact();
+            frame.flip();
+            return frame;
+        }
+
+        private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            return grown;
+        }
+    }
+}
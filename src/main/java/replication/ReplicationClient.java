@@ -0,0 +1,536 @@
+package replication;
+
+import controller.ReadWriteLock;
+import document.PagedDocument;
+import log.EventLog;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Клиент совместного редактирования: держит документ в согласии с сервером (ReplicationServer).
+// Состояние как у клиента ot.js: ревизия сервера, одна отправленная и не подтверждённая операция (pending)
+// и правки, сделанные после её отправки (buffer, склеиваются compose). Пока ждём подтверждения, все правки
+// копятся в одну операцию, поэтому частота кадров не больше одного на задержку до сервера, сколько бы ни печатали.
+// Чужая операция преобразуется против pending и buffer и применяется к документу.
+// Сеть - отдельный поток на Selector; принятое применяется по порядку исполнителем applier (в окне - поток Swing)
+// под блокировкой редактора и документа: блокировки берутся в том же порядке, что и при любой правке.
+// После обрыва клиент переподключается и догоняет сервер по журналу; если сервер его уже не помнит, приходит снимок
+// текста, а неподтверждённые правки теряются (это видно в статистике, а пользователю сообщает notices). Удалённые правки попадают в историю отмены
+// как обычные, отмена своей правки после чужих откатывает по старым смещениям.
+public class ReplicationClient implements Closeable {
+
+    private static final int MAX_APPLY = 1024;  // Сообщений за один заход в applier: поток Swing не занят надолго
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    // Принятое сообщение и соединение, из которого оно пришло
+    private static final class Inbound {
+        private final long connection;
+        private final Runnable action;
+
+        Inbound(long connection, Runnable action) {
+            this.connection = connection;
+            this.action = action;
+        }
+    }
+
+    private final InetSocketAddress address;
+    private final PagedDocument document;
+    private final ReadWriteLock lock;  // Блокировка редактора; null - только блокировка документа
+    private final Executor applier;
+    private final int editorId;  // Редактор, которому принадлежит документ: его номер в журнале событий
+    private final Consumer<String> notices;  // Сообщения для пользователя: потеря правок и расхождение с сервером
+    private final ReplicationStats stats;
+    private final long reportNanos;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Inbound> inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean reconnectRequested;
+    private volatile boolean resyncRequested;  // Текст разошёлся с сервером: переподключиться за снимком
+    private volatile long discardBefore;  // Сообщения соединений раньше этого не применяются (после расхождения)
+    private boolean applying;  // Документ меняется применением чужой операции; под блокировкой документа
+
+    // Поток сети
+    private volatile long connection;  // Номер соединения
+    private volatile long siteId;  // Номер клиента у сервера, 0 - ещё не получен
+    private long epoch;
+    private long receivedRevision = -1;  // Ревизия после всего принятого (применяется позже); -1 - текста нет
+    private SocketChannel channel;
+    private SelectionKey key;
+    private Frames.Reader reader;
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+    private StringBuilder snapshotText;  // Принимаемый снимок
+    private long snapshotRevision;
+    private int snapshotLength;
+
+    // Состояние согласования, под монитором клиента
+    private long revision = -1;
+    private TextOperation pending;
+    private long pendingCreatedAt;  // Время первой правки операции, мс
+    private long pendingSentAt;  // Время отправки, нс
+    private boolean pendingSent;  // Отправлена в текущее соединение
+    private TextOperation buffer;
+    private long bufferCreatedAt;
+    private long syncedConnection = -1;  // Соединение, в котором клиент догнал сервер
+
+    private final DocumentListener listener = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            if (applying) {
+                return;
+            }
+            try {
+                String text = document.getText(e.getOffset(), e.getLength());
+                local(TextOperation.insert(document.getLength() - e.getLength(), e.getOffset(), text));
+            } catch (BadLocationException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            if (!applying) {
+                local(TextOperation.remove(document.getLength() + e.getLength(), e.getOffset(), e.getLength()));
+            }
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+
+    // Подключает документ к серверу. applier выполняет применение принятого (SwingUtilities::invokeLater для окна,
+    // Runnable::run - прямо в потоке сети); name - имя метрик; reportSeconds > 0 - писать отчёт в журнал событий.
+    // notices вызывается из applier или потока сети.
+    public ReplicationClient(InetSocketAddress address, PagedDocument document, ReadWriteLock lock, Executor applier,
+                             int editorId, String name, int reportSeconds, Consumer<String> notices) throws IOException {
+        this.address = address;
+        this.document = document;
+        this.lock = lock;
+        this.applier = applier;
+        this.editorId = editorId;
+        this.notices = notices;
+        this.stats = new ReplicationStats(name);
+        this.reportNanos = reportSeconds * 1_000_000_000L;
+        this.selector = Selector.open();
+        document.addDocumentListener(listener);
+        thread = new Thread(this::run, "replication-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public ReplicationStats getStats() {
+        return stats;
+    }
+
+    // Меняется ли документ сейчас применением принятого с сервера (для других слушателей документа)
+    public boolean isApplying() {
+        return applying;
+    }
+
+    public synchronized long getRevision() {
+        return revision;
+    }
+
+    // Догнал сервер и все правки подтверждены
+    public synchronized boolean isIdle() {
+        return syncedConnection == connection && pending == null && buffer == null && inbound.isEmpty();
+    }
+
+    // Ждёт, пока клиент догонит сервер в текущем соединении; false - не дождался
+    public boolean awaitSynced(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (this) {
+                if (syncedConnection == connection && inbound.isEmpty()) {
+                    return true;
+                }
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    // Обрывает соединение; клиент подключится заново и догонит сервер
+    public void reconnect() {
+        reconnectRequested = true;
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(CONNECT_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        document.removeDocumentListener(listener);
+        selector.close();
+    }
+
+    // Местная правка: склеивается с ещё не отправленными
+    private void local(TextOperation operation) {
+        synchronized (this) {
+            if (buffer == null) {
+                buffer = operation;
+                bufferCreatedAt = System.currentTimeMillis();
+            } else {
+                buffer = TextOperation.compose(buffer, operation);
+            }
+        }
+        stats.edits.increment();
+        selector.wakeup();
+    }
+
+    private void run() {
+        long backoff = 100;
+        while (running) {
+            try {
+                connect();
+                backoff = 100;
+                loop();
+            } catch (IOException e) {
+                if (running) {
+                    EventLog.global().log(editorId, "Replication error " + address + ": " + e.getMessage(), 0, 0);
+                }
+            } finally {
+                disconnect();
+            }
+            if (running) {
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        channel = SocketChannel.open();
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().connect(address, CONNECT_TIMEOUT_MILLIS);
+        channel.configureBlocking(false);
+        key = channel.register(selector, SelectionKey.OP_READ);
+        reader = new Frames.Reader();
+        connection++;
+        if (resyncRequested) {
+            resyncRequested = false;
+            receivedRevision = -1;  // Свой текст не годится: сервер пришлёт снимок
+        }
+        ByteBuffer hello = Frames.frame(Frames.HELLO,
+                Frames.varLongSize(epoch) + Frames.varLongSize(siteId) + Frames.varLongSize(receivedRevision + 1));
+        Frames.putVarLong(hello, epoch);
+        Frames.putVarLong(hello, siteId);
+        Frames.putVarLong(hello, receivedRevision + 1);
+        enqueue(hello);
+    }
+
+    private void disconnect() {
+        out.clear();
+        snapshotText = null;
+        synchronized (this) {
+            pendingSent = false;  // В новом соединении отправить заново, если не подтверждена
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+
+    private void loop() throws IOException {
+        long reportedAt = System.nanoTime();
+        while (running) {
+            if (reconnectRequested || resyncRequested) {
+                reconnectRequested = false;
+                return;
+            }
+            sendLocal();
+            key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            selector.select(100);
+            selector.selectedKeys().clear();
+            read();
+            flush();
+            if (reportNanos > 0 && System.nanoTime() - reportedAt >= reportNanos) {
+                reportedAt = System.nanoTime();
+                EventLog.global().log(editorId, "Replication report: " + stats.report(), 0, getRevision());
+            }
+        }
+    }
+
+    // Отправляет buffer, если ничего не ждёт подтверждения, или заново pending после переподключения
+    private void sendLocal() {
+        ByteBuffer frame = null;
+        synchronized (this) {
+            if (syncedConnection != connection) {
+                return;  // Сначала догнать сервер
+            }
+            if (pending == null && buffer != null) {
+                pending = buffer;
+                pendingCreatedAt = bufferCreatedAt;
+                buffer = null;
+                pendingSent = false;
+            }
+            if (pending != null && !pendingSent) {
+                frame = Frames.frame(Frames.OP, Frames.varLongSize(revision) + Frames.varLongSize(pendingCreatedAt)
+                        + pending.encodedSize());
+                Frames.putVarLong(frame, revision);
+                Frames.putVarLong(frame, pendingCreatedAt);
+                pending.encode(frame);
+                pendingSent = true;
+                pendingSentAt = System.nanoTime();
+            }
+        }
+        if (frame != null) {
+            enqueue(frame);
+            stats.sentOps.increment();
+        }
+    }
+
+    private void enqueue(ByteBuffer frame) {
+        frame.flip();
+        out.add(frame);
+    }
+
+    private void flush() throws IOException {
+        while (!out.isEmpty()) {
+            ByteBuffer head = out.peek();
+            stats.sent.record(channel.write(head));
+            if (head.hasRemaining()) {
+                return;
+            }
+            out.poll();
+        }
+    }
+
+    private void read() throws IOException {
+        int count;
+        while ((count = reader.read(channel)) > 0) {
+            stats.received.record(count);
+        }
+        ByteBuffer frame;
+        while ((frame = reader.next()) != null) {
+            receive(frame);
+        }
+        if (count < 0) {
+            throw new IOException("сервер закрыл соединение");
+        }
+    }
+
+    private void receive(ByteBuffer frame) throws IOException {
+        byte type = frame.get();
+        switch (type) {
+            case Frames.WELCOME:
+                epoch = Frames.getVarLong(frame);
+                siteId = Frames.getVarLong(frame);
+                break;
+            case Frames.SNAPSHOT:
+                snapshotRevision = Frames.getVarLong(frame);
+                snapshotLength = (int) Frames.getVarLong(frame);
+                snapshotText = new StringBuilder(snapshotLength);
+                snapshotReceived();
+                break;
+            case Frames.CHUNK:
+                if (snapshotText == null) {
+                    throw new IOException("Часть снимка без его начала");
+                }
+                Frames.getChars(frame, frame.remaining(), snapshotText);
+                snapshotReceived();
+                break;
+            case Frames.OPS:
+                long first = Frames.getVarLong(frame);
+                int count = (int) Frames.getVarLong(frame);
+                long[] sites = new long[count];
+                long[] createdAt = new long[count];
+                TextOperation[] operations = new TextOperation[count];
+                for (int i = 0; i < count; i++) {
+                    sites[i] = Frames.getVarLong(frame);
+                    createdAt[i] = Frames.getVarLong(frame);
+                    operations[i] = sites[i] == siteId ? null : TextOperation.decode(frame);
+                }
+                receivedRevision = first + count - 1;
+                deliver(() -> applyOperations(first, sites, createdAt, operations));
+                break;
+            case Frames.SYNCED:
+                long current = connection;
+                deliver(() -> synced(current));
+                break;
+            default:
+                throw new IOException("Неожиданный кадр " + type);
+        }
+    }
+
+    private void snapshotReceived() {
+        if (snapshotText.length() < snapshotLength) {
+            return;
+        }
+        String text = snapshotText.toString();
+        long snapshotAt = snapshotRevision;
+        snapshotText = null;
+        receivedRevision = snapshotAt;
+        deliver(() -> applySnapshot(snapshotAt, text));
+    }
+
+    // Передаёт принятое исполнителю; несколько сообщений применяются одним заходом
+    private void deliver(Runnable action) {
+        inbound.add(new Inbound(connection, action));
+        if (scheduled.compareAndSet(false, true)) {
+            applier.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        Runnable batch = () -> document.edit(() -> {
+            applying = true;
+            try {
+                for (int i = 0; i < MAX_APPLY; i++) {
+                    Inbound next = inbound.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next.connection >= discardBefore) {
+                        next.action.run();
+                    }
+                }
+            } finally {
+                applying = false;
+            }
+        });
+        try {
+            if (lock != null) {
+                lock.write(batch);
+            } else {
+                batch.run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!inbound.isEmpty() && scheduled.compareAndSet(false, true)) {
+            applier.execute(this::drain);
+        }
+        selector.wakeup();  // После подтверждения можно отправить накопленное
+    }
+
+    // Записи журнала сервера: подтверждение своей операции или чужая операция
+    private void applyOperations(long first, long[] sites, long[] createdAt, TextOperation[] operations) {
+        for (int i = 0; i < sites.length; i++) {
+            TextOperation operation = operations[i];
+            synchronized (this) {
+                revision = first + i;
+                if (operation == null) {
+                    if (pending != null) {
+                        stats.ack.record(System.nanoTime() - pendingSentAt);
+                        pending = null;
+                    }
+                    continue;
+                }
+                try {
+                    if (pending != null) {
+                        TextOperation[] pair = TextOperation.transform(pending, operation);
+                        pending = pair[0];
+                        operation = pair[1];
+                    }
+                    if (buffer != null) {
+                        TextOperation[] pair = TextOperation.transform(buffer, operation);
+                        buffer = pair[0];
+                        operation = pair[1];
+                    }
+                } catch (IllegalArgumentException e) {
+                    diverged(e.getMessage());
+                    return;
+                }
+            }
+            if (operation.getBaseLength() != document.getLength()) {
+                diverged("операция для текста длины " + operation.getBaseLength() + ", длина " + document.getLength());
+                return;
+            }
+            try {
+                operation.apply(new TextOperation.Target() {
+                    @Override
+                    public void insert(int offset, String text) throws BadLocationException {
+                        document.insertString(offset, text, null);
+                    }
+
+                    @Override
+                    public void remove(int offset, int count) throws BadLocationException {
+                        document.remove(offset, count);
+                    }
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                diverged(e.toString());
+                return;
+            }
+            stats.appliedOps.increment();
+            stats.lag.record((System.currentTimeMillis() - createdAt[i]) * 1_000_000L);
+        }
+        EventLog.global().log(editorId, "Replication apply", 0, sites.length);
+    }
+
+    // Снимок заменяет текст; неподтверждённые правки построены от другого текста и отбрасываются
+    private void applySnapshot(long snapshotRevision, String text) {
+        int lost;
+        synchronized (this) {
+            lost = (pending != null ? 1 : 0) + (buffer != null ? 1 : 0);
+            if (lost > 0) {
+                stats.lostEdits.add(lost);
+            }
+            pending = null;
+            buffer = null;
+            revision = snapshotRevision;
+        }
+        stats.resyncs.increment();
+        try {
+            if (document.getLength() != text.length() || !document.getText(0, document.getLength()).equals(text)) {
+                document.remove(0, document.getLength());
+                document.insertString(0, text, null);
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        if (lost > 0) {  // После замены текста: правка документа не должна стереть сообщение
+            String message = "Репликация: текст заменён снимком сервера, неподтверждённых операций потеряно: " + lost;
+            EventLog.global().log(editorId, message, 0, lost);
+            notices.accept(message);
+        }
+    }
+
+    // Клиент догнал сервер: можно отправлять свои правки
+    private synchronized void synced(long syncedIn) {
+        syncedConnection = syncedIn;
+    }
+
+    // Текст разошёлся с сервером (не должно случаться): всё принятое по текущему соединению отбрасывается,
+    // клиент переподключается за снимком
+    private void diverged(String reason) {
+        String message = "Репликация: текст разошёлся с сервером (" + reason + "), запрошен снимок";
+        EventLog.global().log(editorId, message, 0, 0);
+        notices.accept(message);
+        discardBefore = connection + 1;
+        resyncRequested = true;
+        selector.wakeup();
+    }
+}
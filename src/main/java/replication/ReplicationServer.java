@@ -0,0 +1,397 @@
+package replication;
+
+import document.PagedDocument;
+import document.TextSnapshot;
+import log.EventLog;
+
+import javax.swing.text.BadLocationException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Сервер совместного редактирования: один поток на Selector, авторитетная копия текста и порядок правок.
+// Операция клиента построена от его ревизии; сервер преобразует её против записей журнала после этой ревизии,
+// применяет, даёт следующую ревизию и рассылает. Каждый проход цикла клиенту уходит один кадр OPS со всеми
+// записями, которых у него ещё нет (его собственная - подтверждением), пока очередь соединения не больше
+// HIGH_WATER: медленный клиент получает записи позже и большими кадрами, не задерживая остальных.
+// Журнал хранит последние logOps записей; переподключившийся клиент догоняет по нему, а если отстал сильнее
+// (или сервер перезапущен - другая эпоха) - получает снимок текста.
+public class ReplicationServer implements Closeable {
+
+    public static final int DEFAULT_LOG_OPS = 4096;
+    private static final int HIGH_WATER = 1 << 20;  // Байт в очереди соединения, после которых новые записи ждут
+    private static final int FRAME_BYTES = 256 * 1024;  // Записей в кадре OPS примерно на столько байт
+    private static final int CHUNK_CHARS = 64 * 1024;  // Символов снимка в кадре CHUNK
+
+    // Запись журнала: операция после преобразования и её готовая запись для OPS
+    private static final class Entry {
+        private final long siteId;
+        private final TextOperation operation;
+        private final byte[] bytes;  // Номер клиента, время правки, операция
+        private final int headerLength;  // Без операции - подтверждение автору
+
+        Entry(long siteId, long createdAt, TextOperation operation) {
+            this.siteId = siteId;
+            this.operation = operation;
+            headerLength = Frames.varLongSize(siteId) + Frames.varLongSize(createdAt);
+            ByteBuffer buffer = ByteBuffer.allocate(headerLength + operation.encodedSize());
+            Frames.putVarLong(buffer, siteId);
+            Frames.putVarLong(buffer, createdAt);
+            operation.encode(buffer);
+            bytes = buffer.array();
+        }
+
+        int size(long receiver) {
+            return receiver == siteId ? headerLength : bytes.length;
+        }
+    }
+
+    // Соединение с клиентом
+    private static final class Session {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final Frames.Reader reader = new Frames.Reader();
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        private long queued;  // Байт в out
+        private long siteId;  // 0 - ещё не поздоровался
+        private long revision;  // Последняя ревизия, поставленная в очередь клиенту
+        private boolean needsSynced;  // После догона отправить SYNCED
+        private TextSnapshot snapshot;  // Отправляемый снимок
+        private int snapshotSent;
+
+        Session(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final PagedDocument document = new PagedDocument();
+    private final List<Session> sessions = new ArrayList<>();
+    private final ArrayList<Entry> log = new ArrayList<>();
+    private final int logOps;
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);  // Отличает перезапуск сервера
+    private final ReplicationStats stats = new ReplicationStats("server");
+    private final long reportNanos;
+    private long firstLogged = 1;  // Ревизия первой записи журнала
+    private volatile long revision;
+    private volatile int clients;  // Соединений сейчас
+    private long nextSiteId;
+    private Thread thread;
+
+    // port 0 - любой свободный; initial - начальный текст (может быть null), reportSeconds > 0 - писать отчёт в журнал событий
+    public ReplicationServer(int port, TextSnapshot initial, int logOps, int reportSeconds) throws IOException {
+        this.logOps = Math.max(1, logOps);
+        this.reportNanos = reportSeconds * 1_000_000_000L;
+        if (initial != null && initial.length() > 0) {
+            try {
+                document.insertSource(0, initial, 0, initial.length());  // Куски снимка без копирования
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    public ReplicationStats getStats() {
+        return stats;
+    }
+
+    public synchronized void start() {
+        thread = new Thread(this::run, "replication-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        selector.close();
+        server.close();
+    }
+
+    private void run() {
+        long reportedAt = System.nanoTime();
+        try {
+            while (selector.isOpen()) {
+                selector.select(100);
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Session session = (Session) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(session);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(session);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        drop(session, e);
+                    }
+                }
+                for (Session session : new ArrayList<>(sessions)) {
+                    try {
+                        pull(session);
+                        flush(session);
+                    } catch (IOException | RuntimeException e) {
+                        drop(session, e);
+                    }
+                }
+                if (reportNanos > 0 && System.nanoTime() - reportedAt >= reportNanos) {
+                    reportedAt = System.nanoTime();
+                    EventLog.global().log(0, "Replication server report: клиентов " + sessions.size() + ", " + stats.report(), 0, revision);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Сервер закрыт
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Session session : sessions) {
+            closeQuietly(session);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);  // Кадры и так собраны в пачки, ждать Нейгла незачем
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Session session = new Session(channel, key);
+        key.attach(session);
+        sessions.add(session);
+        clients = sessions.size();
+    }
+
+    private void read(Session session) throws IOException {
+        int count;
+        while ((count = session.reader.read(session.channel)) > 0) {
+            stats.received.record(count);
+        }
+        ByteBuffer frame;
+        while ((frame = session.reader.next()) != null) {
+            byte type = frame.get();
+            if (type == Frames.HELLO) {
+                hello(session, frame);
+            } else if (type == Frames.OP && session.siteId != 0) {
+                operation(session, frame);
+            } else {
+                throw new IOException("Неожиданный кадр " + type);
+            }
+        }
+        if (count < 0) {
+            throw new IOException("Соединение закрыто");
+        }
+    }
+
+    // Новый клиент получает номер; клиент с известной сервером ревизией догоняет по журналу, остальные - снимком
+    private void hello(Session session, ByteBuffer frame) throws IOException {
+        long clientEpoch = Frames.getVarLong(frame);
+        long siteId = Frames.getVarLong(frame);
+        long clientRevision = Frames.getVarLong(frame) - 1;
+        boolean known = clientEpoch == epoch && siteId > 0 && siteId <= nextSiteId;
+        if (!known) {
+            siteId = ++nextSiteId;
+        } else {
+            for (Session other : new ArrayList<>(sessions)) {  // Прежнее соединение того же клиента: его операции уже не придут
+                if (other != session && other.siteId == siteId) {
+                    drop(other, null);
+                }
+            }
+        }
+        session.siteId = siteId;
+        ByteBuffer welcome = Frames.frame(Frames.WELCOME, Frames.varLongSize(epoch) + Frames.varLongSize(siteId));
+        Frames.putVarLong(welcome, epoch);
+        Frames.putVarLong(welcome, siteId);
+        enqueue(session, welcome);
+        session.needsSynced = true;
+        if (known && clientRevision >= firstLogged - 1 && clientRevision <= revision) {
+            session.revision = clientRevision;
+            return;
+        }
+        TextSnapshot snapshot = document.snapshot();
+        ByteBuffer begin = Frames.frame(Frames.SNAPSHOT, Frames.varLongSize(revision) + Frames.varLongSize(snapshot.length()));
+        Frames.putVarLong(begin, revision);
+        Frames.putVarLong(begin, snapshot.length());
+        enqueue(session, begin);
+        session.revision = revision;
+        session.snapshot = snapshot.length() > 0 ? snapshot : null;
+        session.snapshotSent = 0;
+        stats.resyncs.increment();
+    }
+
+    // Операция клиента: преобразуется против записей после её ревизии, применяется и попадает в журнал
+    private void operation(Session session, ByteBuffer frame) throws IOException {
+        long base = Frames.getVarLong(frame);
+        long createdAt = Frames.getVarLong(frame);
+        TextOperation operation = TextOperation.decode(frame);
+        if (base > revision || base < firstLogged - 1) {
+            throw new IOException("Операция от ревизии " + base + ", в журнале " + firstLogged + ".." + revision);
+        }
+        for (long r = base + 1; r <= revision; r++) {
+            operation = TextOperation.transform(operation, entry(r).operation)[0];
+        }
+        if (operation.getBaseLength() != document.getLength()) {
+            throw new IOException("Операция для текста длины " + operation.getBaseLength() + ", длина " + document.getLength());
+        }
+        try {
+            operation.apply(new TextOperation.Target() {
+                @Override
+                public void insert(int offset, String text) throws BadLocationException {
+                    document.insertString(offset, text, null);
+                }
+
+                @Override
+                public void remove(int offset, int count) throws BadLocationException {
+                    document.remove(offset, count);
+                }
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Операция не применилась к тексту сервера", e);
+        }
+        log.add(new Entry(session.siteId, createdAt, operation));
+        revision++;
+        if (log.size() >= 2 * logOps) {  // Старые записи удаляются пачкой
+            log.subList(0, log.size() - logOps).clear();
+            firstLogged = revision - log.size() + 1;
+        }
+        stats.edits.increment();
+        stats.appliedOps.increment();
+        stats.lag.record((System.currentTimeMillis() - createdAt) * 1_000_000L);
+        EventLog.global().log(0, "Replication op", 0, frame.capacity());
+    }
+
+    private Entry entry(long revision) {
+        return log.get((int) (revision - firstLogged));
+    }
+
+    // Ставит в очередь клиента то, чего у него нет: очередную часть снимка или записи журнала одним кадром
+    private void pull(Session session) throws IOException {
+        if (session.siteId == 0) {
+            return;
+        }
+        while (session.snapshot != null && session.queued < HIGH_WATER) {
+            TextSnapshot snapshot = session.snapshot;
+            int count = Math.min(CHUNK_CHARS, snapshot.length() - session.snapshotSent);
+            char[] chars = new char[count];
+            snapshot.getChars(session.snapshotSent, count, chars, 0);
+            ByteBuffer chunk = Frames.frame(Frames.CHUNK, Frames.charsSize(chars, 0, count));
+            Frames.putChars(chunk, chars, 0, count);
+            enqueue(session, chunk);
+            session.snapshotSent += count;
+            if (session.snapshotSent == snapshot.length()) {
+                session.snapshot = null;
+            }
+        }
+        if (session.snapshot != null) {
+            return;
+        }
+        if (session.revision < firstLogged - 1) {
+            throw new IOException("Клиент " + session.siteId + " отстал от журнала");  // Переподключится и получит снимок
+        }
+        if (session.revision < revision && session.queued < HIGH_WATER) {
+            long first = session.revision + 1;
+            long last = first;
+            int bytes = 0;
+            while (last <= revision && (bytes == 0 || bytes < FRAME_BYTES)) {
+                bytes += entry(last).size(session.siteId);
+                last++;
+            }
+            long count = last - first;
+            ByteBuffer frame = Frames.frame(Frames.OPS, Frames.varLongSize(first) + Frames.varLongSize(count) + bytes);
+            Frames.putVarLong(frame, first);
+            Frames.putVarLong(frame, count);
+            for (long r = first; r < last; r++) {
+                Entry entry = entry(r);
+                frame.put(entry.bytes, 0, entry.size(session.siteId));
+            }
+            enqueue(session, frame);
+            session.revision = last - 1;
+            stats.sentOps.add(count);
+        }
+        if (session.needsSynced && session.revision == revision) {
+            ByteBuffer synced = Frames.frame(Frames.SYNCED, Frames.varLongSize(revision));
+            Frames.putVarLong(synced, revision);
+            enqueue(session, synced);
+            session.needsSynced = false;
+        }
+    }
+
+    private void enqueue(Session session, ByteBuffer frame) {
+        frame.flip();
+        session.out.add(frame);
+        session.queued += frame.remaining();
+    }
+
+    // Пишет очередь, пока сокет принимает; остаток - по готовности к записи
+    private void flush(Session session) throws IOException {
+        while (!session.out.isEmpty()) {
+            ByteBuffer head = session.out.peek();
+            int written = session.channel.write(head);
+            session.queued -= written;
+            stats.sent.record(written);
+            if (head.hasRemaining()) {
+                session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            session.out.poll();
+        }
+        session.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void drop(Session session, Exception cause) {
+        if (cause != null && !(cause instanceof IOException && "Соединение закрыто".equals(cause.getMessage()))) {
+            EventLog.global().log(0, "Replication client " + session.siteId + " dropped: " + cause, 0, 0);
+        }
+        sessions.remove(session);
+        clients = sessions.size();
+        closeQuietly(session);
+    }
+
+    private static void closeQuietly(Session session) {
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
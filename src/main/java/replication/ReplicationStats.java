@@ -0,0 +1,60 @@
+package replication;
+
+import metrics.ByteCounter;
+import metrics.EditorMetrics;
+import metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Счётчики репликации одного клиента или сервера. Гистограммы и байты видны через JMX
+// (texteditor:type=Latency,name=replication.<имя>.lag и т.д.), report() даёт строку со скоростями с прошлого отчёта.
+public final class ReplicationStats {
+
+    public final LatencyHistogram lag;  // От правки у автора до применения здесь (часы процессов одной машины)
+    public final LatencyHistogram ack;  // От отправки операции до подтверждения сервером
+    public final ByteCounter sent;
+    public final ByteCounter received;
+    public final LongAdder edits = new LongAdder();  // Местные правки (у сервера - принятые операции)
+    public final LongAdder sentOps = new LongAdder();  // Отправленные операции (у сервера - записи OPS)
+    public final LongAdder appliedOps = new LongAdder();  // Применённые чужие операции (у сервера - упорядоченные)
+    public final LongAdder resyncs = new LongAdder();  // Полученные снимки
+    public final LongAdder lostEdits = new LongAdder();  // Неподтверждённые правки, заменённые снимком
+
+    private long reportedAt = System.nanoTime();
+    private long reportedEdits;
+    private long reportedSent;
+    private long reportedApplied;
+
+    public ReplicationStats(String name) {
+        lag = EditorMetrics.latency("replication." + name + ".lag");
+        ack = EditorMetrics.latency("replication." + name + ".ack");
+        sent = EditorMetrics.bytes("replication." + name + ".sent");
+        received = EditorMetrics.bytes("replication." + name + ".received");
+    }
+
+    // Скорости с прошлого отчёта и задержки за всё время
+    public synchronized String report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - reportedAt) / 1e9);
+        long editCount = edits.sum();
+        long sentCount = sentOps.sum();
+        long appliedCount = appliedOps.sum();
+        String text = String.format("правок/с %.0f, отправлено оп/с %.0f, применено оп/с %.0f; %s",
+                (editCount - reportedEdits) / seconds, (sentCount - reportedSent) / seconds,
+                (appliedCount - reportedApplied) / seconds, this);
+        reportedAt = now;
+        reportedEdits = editCount;
+        reportedSent = sentCount;
+        reportedApplied = appliedCount;
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("правок %d, отправлено оп %d, применено оп %d, задержка p50=%.1fмс p99=%.1fмс max=%.1fмс, "
+                        + "подтверждение p50=%.1fмс p99=%.1fмс, байт отправлено %d получено %d, снимков %d, потеряно правок %d",
+                edits.sum(), sentOps.sum(), appliedOps.sum(), lag.getP50Micros() / 1000, lag.getP99Micros() / 1000,
+                lag.getMaxMicros() / 1000, ack.getP50Micros() / 1000, ack.getP99Micros() / 1000,
+                sent.getBytes(), received.getBytes(), resyncs.sum(), lostEdits.sum());
+    }
+}
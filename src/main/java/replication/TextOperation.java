@@ -0,0 +1,321 @@
+package replication;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Операция над всем текстом для операционного преобразования (как в ot.js): последовательность "пропустить n",
+// "вставить строку", "удалить n", которая проходит документ длины baseLength от начала до конца.
+// Подряд идущие правки склеиваются compose в одну операцию, параллельные правки двух сторон сводятся transform:
+// transform(a, b) = (a', b'), и a затем b' даёт тот же текст, что b затем a'. При вставке в одно место
+// первой оказывается вставка операции a. Операция неизменяема после построения.
+public final class TextOperation {
+
+    private static final byte RETAIN = 0;
+    private static final byte DELETE = 1;
+    private static final byte INSERT = 2;
+
+    private byte[] kinds = new byte[4];
+    private int[] counts = new int[4];  // Для вставки - длина строки
+    private String[] texts = new String[4];
+    private int size;
+    private int baseLength;  // Длина текста до операции
+    private int targetLength;  // Длина текста после операции
+
+    // Вставка text в offset документа длины length
+    public static TextOperation insert(int length, int offset, String text) {
+        return new TextOperation().retain(offset).insert(text).retain(length - offset);
+    }
+
+    // Удаление count символов с offset документа длины length
+    public static TextOperation remove(int length, int offset, int count) {
+        return new TextOperation().retain(offset).delete(count).retain(length - offset - count);
+    }
+
+    public int getBaseLength() {
+        return baseLength;
+    }
+
+    public int getTargetLength() {
+        return targetLength;
+    }
+
+    // Ничего не меняет (только пропуски)
+    public boolean isNoop() {
+        return size == 0 || (size == 1 && kinds[0] == RETAIN);
+    }
+
+    public TextOperation retain(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Отрицательный пропуск: " + count);
+        }
+        if (count == 0) {
+            return this;
+        }
+        baseLength += count;
+        targetLength += count;
+        if (size > 0 && kinds[size - 1] == RETAIN) {
+            counts[size - 1] += count;
+        } else {
+            add(RETAIN, count, null);
+        }
+        return this;
+    }
+
+    public TextOperation insert(String text) {
+        if (text.isEmpty()) {
+            return this;
+        }
+        targetLength += text.length();
+        if (size > 0 && kinds[size - 1] == INSERT) {
+            texts[size - 1] += text;
+            counts[size - 1] += text.length();
+        } else if (size > 0 && kinds[size - 1] == DELETE) {
+            // Вставка и удаление в одном месте всегда идут в порядке "вставка, удаление"
+            if (size > 1 && kinds[size - 2] == INSERT) {
+                texts[size - 2] += text;
+                counts[size - 2] += text.length();
+            } else {
+                add(DELETE, counts[size - 1], null);
+                kinds[size - 2] = INSERT;
+                counts[size - 2] = text.length();
+                texts[size - 2] = text;
+            }
+        } else {
+            add(INSERT, text.length(), text);
+        }
+        return this;
+    }
+
+    public TextOperation delete(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Отрицательное удаление: " + count);
+        }
+        if (count == 0) {
+            return this;
+        }
+        baseLength += count;
+        if (size > 0 && kinds[size - 1] == DELETE) {
+            counts[size - 1] += count;
+        } else {
+            add(DELETE, count, null);
+        }
+        return this;
+    }
+
+    // Применяет операцию к тексту по частям: пропуск - сдвиг позиции, вставка и удаление - правки цели
+    public void apply(Target target) throws Exception {
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            switch (kinds[i]) {
+                case RETAIN:
+                    position += counts[i];
+                    break;
+                case INSERT:
+                    target.insert(position, texts[i]);
+                    position += counts[i];
+                    break;
+                default:
+                    target.remove(position, counts[i]);
+                    break;
+            }
+        }
+    }
+
+    // Получатель правок операции
+    public interface Target {
+        void insert(int offset, String text) throws Exception;
+
+        void remove(int offset, int count) throws Exception;
+    }
+
+    // Операция, равная a, а затем b
+    public static TextOperation compose(TextOperation a, TextOperation b) {
+        if (a.targetLength != b.baseLength) {
+            throw new IllegalArgumentException("Длина после первой операции " + a.targetLength + " не совпадает с длиной до второй " + b.baseLength);
+        }
+        TextOperation result = new TextOperation();
+        Cursor first = new Cursor(a);
+        Cursor second = new Cursor(b);
+        while (first.hasNext() || second.hasNext()) {
+            if (first.kind() == DELETE) {
+                result.delete(first.take(first.left()));
+            } else if (second.kind() == INSERT) {
+                result.insert(second.takeText(second.left()));
+            } else if (!first.hasNext() || !second.hasNext()) {
+                throw new IllegalStateException("Операции разной длины");
+            } else {
+                int count = Math.min(first.left(), second.left());
+                if (first.kind() == RETAIN && second.kind() == RETAIN) {
+                    first.take(count);
+                    result.retain(second.take(count));
+                } else if (first.kind() == INSERT && second.kind() == DELETE) {
+                    first.take(count);  // Вставленное и тут же удалённое пропадает
+                    second.take(count);
+                } else if (first.kind() == INSERT) {
+                    second.take(count);
+                    result.insert(first.takeText(count));
+                } else {
+                    first.take(count);
+                    result.delete(second.take(count));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Сводит параллельные операции над одним текстом: [a', b'], где a затем b' равно b затем a'
+    public static TextOperation[] transform(TextOperation a, TextOperation b) {
+        if (a.baseLength != b.baseLength) {
+            throw new IllegalArgumentException("Операции над текстами разной длины: " + a.baseLength + " и " + b.baseLength);
+        }
+        TextOperation aPrime = new TextOperation();
+        TextOperation bPrime = new TextOperation();
+        Cursor first = new Cursor(a);
+        Cursor second = new Cursor(b);
+        while (first.hasNext() || second.hasNext()) {
+            if (first.kind() == INSERT) {  // Вставка a идёт первой
+                String text = first.takeText(first.left());
+                aPrime.insert(text);
+                bPrime.retain(text.length());
+            } else if (second.kind() == INSERT) {
+                String text = second.takeText(second.left());
+                aPrime.retain(text.length());
+                bPrime.insert(text);
+            } else if (!first.hasNext() || !second.hasNext()) {
+                throw new IllegalStateException("Операции разной длины");
+            } else {
+                int count = Math.min(first.left(), second.left());
+                byte kindA = first.kind();
+                byte kindB = second.kind();
+                first.take(count);
+                second.take(count);
+                if (kindA == RETAIN && kindB == RETAIN) {
+                    aPrime.retain(count);
+                    bPrime.retain(count);
+                } else if (kindA == DELETE && kindB == RETAIN) {
+                    aPrime.delete(count);
+                } else if (kindA == RETAIN) {
+                    bPrime.delete(count);
+                }
+                // Обе удаляют одно и то же - в обеих преобразованных операциях этого уже нет
+            }
+        }
+        return new TextOperation[]{aPrime, bPrime};
+    }
+
+    // Размер в байтах после encode
+    public int encodedSize() {
+        int bytes = Frames.varLongSize(size);
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == INSERT) {
+                int textBytes = Frames.charsSize(texts[i], 0, counts[i]);
+                bytes += Frames.varLongSize((long) textBytes << 2 | INSERT) + textBytes;
+            } else {
+                bytes += Frames.varLongSize((long) counts[i] << 2 | kinds[i]);
+            }
+        }
+        return bytes;
+    }
+
+    // Число частей, затем каждая часть: varint (длина << 2 | вид); у вставки длина в байтах и сам текст
+    public void encode(ByteBuffer out) {
+        Frames.putVarLong(out, size);
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == INSERT) {
+                Frames.putVarLong(out, (long) Frames.charsSize(texts[i], 0, counts[i]) << 2 | INSERT);
+                Frames.putChars(out, texts[i], 0, counts[i]);
+            } else {
+                Frames.putVarLong(out, (long) counts[i] << 2 | kinds[i]);
+            }
+        }
+    }
+
+    public static TextOperation decode(ByteBuffer in) {
+        TextOperation operation = new TextOperation();
+        long parts = Frames.getVarLong(in);
+        StringBuilder text = new StringBuilder();
+        for (long i = 0; i < parts; i++) {
+            long header = Frames.getVarLong(in);
+            int count = (int) (header >>> 2);
+            switch ((int) header & 3) {
+                case RETAIN:
+                    operation.retain(count);
+                    break;
+                case DELETE:
+                    operation.delete(count);
+                    break;
+                case INSERT:
+                    text.setLength(0);
+                    Frames.getChars(in, count, text);
+                    operation.insert(text.toString());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестная часть операции: " + header);
+            }
+        }
+        return operation;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("TextOperation[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(kinds[i] == RETAIN ? "retain " + counts[i]
+                    : kinds[i] == DELETE ? "delete " + counts[i] : "insert " + counts[i]);
+        }
+        return text.append("]").toString();
+    }
+
+    private void add(byte kind, int count, String text) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+            texts = Arrays.copyOf(texts, size * 2);
+        }
+        kinds[size] = kind;
+        counts[size] = count;
+        texts[size] = text;
+        size++;
+    }
+
+    // Чтение частей операции кусками произвольной длины
+    private static final class Cursor {
+        private final TextOperation operation;
+        private int index;
+        private int offset;  // Уже взято из текущей части
+
+        Cursor(TextOperation operation) {
+            this.operation = operation;
+        }
+
+        boolean hasNext() {
+            return index < operation.size;
+        }
+
+        byte kind() {
+            return hasNext() ? operation.kinds[index] : -1;
+        }
+
+        int left() {
+            return operation.counts[index] - offset;
+        }
+
+        int take(int count) {
+            offset += count;
+            if (offset == operation.counts[index]) {
+                index++;
+                offset = 0;
+            }
+            return count;
+        }
+
+        String takeText(int count) {
+            String text = operation.texts[index].substring(offset, offset + count);
+            take(count);
+            return text;
+        }
+    }
+}
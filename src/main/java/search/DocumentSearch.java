@@ -0,0 +1,246 @@
+package search;
+
+import document.TextSnapshot;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+
+// Поиск по снимку документа без блокировок редактора и без копирования всего текста в строку.
+// Текст делится на участки по CHUNK_CHARS символов, которые ищутся параллельно в пуле fork-join; каждый участок читается
+// с перекрытием, чтобы найти вхождения на границе. Найденное отдаётся слушателю по порядку, как только готовы
+// все предыдущие участки. Результат совпадает с последовательным поиском слева направо: вхождения не пересекаются,
+// а если вхождение из предыдущего участка заходит в следующий, следующий участок досматривается заново от его конца.
+// Вхождения регулярного выражения длиннее REGEX_OVERLAP на границе участков могут быть не найдены.
+public final class DocumentSearch {
+
+    public static final int CHUNK_CHARS = 1 << 20;  // Участок параллельного поиска
+    public static final int REGEX_OVERLAP = 1 << 12;  // Сколько символов регулярное выражение видит за границами участка
+
+    private DocumentSearch() {
+    }
+
+    // Все вхождения по возрастанию. listener (может быть null) получает их порциями по порядку, из потоков пула.
+    public static List<Match> findAll(TextSnapshot text, SearchQuery query, ForkJoinPool pool, Consumer<List<Match>> listener) {
+        return search(text, query, null, pool, listener);
+    }
+
+    // Все вхождения вместе с текстом замены (в регулярном выражении работают ссылки на группы $1, ${name})
+    public static Replacement replaceAll(TextSnapshot text, SearchQuery query, String replacement, ForkJoinPool pool,
+                                         Consumer<List<Match>> listener) {
+        return new Replacement(text, search(text, query, replacement, pool, listener));
+    }
+
+    // Первое вхождение, начинающееся не раньше from; если до конца текста его нет - первое с начала. null - нет совсем.
+    public static Match findNext(TextSnapshot text, SearchQuery query, int from) {
+        from = Math.max(0, Math.min(from, text.length()));
+        Match found = findForward(text, query, from, text.length());
+        return found != null ? found : findForward(text, query, 0, from);
+    }
+
+    private static Match findForward(TextSnapshot text, SearchQuery query, int from, int to) {
+        List<Match> out = new ArrayList<>(1);
+        int start = from;
+        do {  // Участки по порядку, до первого вхождения
+            int end = Math.min(to, start + CHUNK_CHARS);
+            scan(text, query, null, start, end, false, out, null, 1);
+            if (!out.isEmpty()) {
+                return out.get(0);
+            }
+            start = end;
+        } while (start < to);
+        return null;
+    }
+
+    private static List<Match> search(TextSnapshot text, SearchQuery query, String replacement, ForkJoinPool pool,
+                                      Consumer<List<Match>> listener) {
+        int chunks = Math.max(1, (text.length() + CHUNK_CHARS - 1) / CHUNK_CHARS);
+        Merge merge = new Merge(text, query, replacement, chunks, listener);
+        if (chunks == 1) {
+            merge.found(0, chunk(text, query, replacement, 0));
+        } else {
+            pool.invoke(new ChunkTask(merge, 0, chunks));
+        }
+        return merge.result;
+    }
+
+    // Ищет участки [from, to) делением пополам до одного участка
+    private static final class ChunkTask extends RecursiveAction {
+        private final Merge merge;
+        private final int from;
+        private final int to;
+
+        ChunkTask(Merge merge, int from, int to) {
+            this.merge = merge;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                merge.found(from, chunk(merge.text, merge.query, merge.replacement, from));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(merge, from, middle), new ChunkTask(merge, middle, to));
+        }
+    }
+
+    // Склейка результатов участков по порядку: готовые участки, перед которыми всё готово, сразу дописываются в результат
+    private static final class Merge {
+        private final TextSnapshot text;
+        private final SearchQuery query;
+        private final String replacement;
+        private final Consumer<List<Match>> listener;
+        private final List<List<Match>> chunks;  // Готовые, но ещё не склеенные участки; null - участок не готов
+        private final List<Match> result = new ArrayList<>();
+        private int next;  // Первый ещё не склеенный участок
+        private int end = -1;  // Конец последнего вхождения в результате
+        private boolean emptyAtEnd;  // Последнее вхождение пустое
+
+        Merge(TextSnapshot text, SearchQuery query, String replacement, int chunks, Consumer<List<Match>> listener) {
+            this.text = text;
+            this.query = query;
+            this.replacement = replacement;
+            this.listener = listener;
+            this.chunks = new ArrayList<>(Collections.nCopies(chunks, null));
+        }
+
+        synchronized void found(int chunk, List<Match> matches) {
+            chunks.set(chunk, matches);
+            while (next < chunks.size() && chunks.get(next) != null) {
+                List<Match> added = append(next, chunks.get(next));
+                chunks.set(next, null);
+                next++;
+                if (listener != null && !added.isEmpty()) {
+                    listener.accept(added);
+                }
+            }
+        }
+
+        // Дописывает вхождения участка; если первое из них пересекается с уже найденным, участок досматривается от конца найденного
+        private List<Match> append(int chunk, List<Match> matches) {
+            int from = 0;
+            List<Match> added = new ArrayList<>();
+            if (!matches.isEmpty() && overlapsPrevious(matches.get(0))) {
+                int chunkEnd = Math.min(text.length(), (chunk + 1) * CHUNK_CHARS);
+                int synced = scan(text, query, replacement, end, chunkEnd, emptyAtEnd, added, matches, Integer.MAX_VALUE);
+                from = synced < 0 ? matches.size() : synced;
+            }
+            added.addAll(matches.subList(from, matches.size()));
+            if (!added.isEmpty()) {
+                Match last = added.get(added.size() - 1);
+                end = last.getEnd();
+                emptyAtEnd = last.getLength() == 0;
+                result.addAll(added);
+            }
+            return added;
+        }
+
+        private boolean overlapsPrevious(Match first) {
+            return first.getStart() < end || (first.getStart() == end && emptyAtEnd && first.getLength() == 0);
+        }
+    }
+
+    private static List<Match> chunk(TextSnapshot text, SearchQuery query, String replacement, int chunk) {
+        int from = chunk * CHUNK_CHARS;
+        int to = Math.min(text.length(), from + CHUNK_CHARS);
+        List<Match> out = new ArrayList<>();
+        scan(text, query, replacement, from, to, false, out, null, Integer.MAX_VALUE);
+        return out.isEmpty() ? Collections.emptyList() : out;
+    }
+
+    // Вхождения, начинающиеся в [from, to), слева направо от from - не больше max.
+    // Если вхождение начинается там же, где одно из sync (результат поиска того же участка с другого места),
+    // дальше поиск совпадёт с sync: возвращается его индекс, иначе -1.
+    private static int scan(TextSnapshot text, SearchQuery query, String replacement, int from, int to, boolean skipEmptyAtFrom,
+                            List<Match> out, List<Match> sync, int max) {
+        if (query.getPattern() == null) {
+            return scanLiteral(text, query, replacement, from, to, out, sync, max);
+        }
+        int bufferStart = Math.max(0, from - REGEX_OVERLAP);
+        int bufferEnd = Math.min(text.length(), to + REGEX_OVERLAP);
+        char[] chars = new char[bufferEnd - bufferStart];
+        text.getChars(bufferStart, chars.length, chars, 0);
+        Matcher matcher = query.getPattern().matcher(CharBuffer.wrap(chars));
+        matcher.useTransparentBounds(true);  // Просмотр вперёд и назад видит текст за границами участка
+        matcher.useAnchoringBounds(false);  // ^ и $ не срабатывают на границах участка
+        matcher.region(from - bufferStart, chars.length);
+        StringBuilder replaced = replacement == null || !query.isRegex() ? null : new StringBuilder();
+        int appended = 0;  // Докуда matcher уже дописал текст в appendReplacement
+        while (out.size() < max && matcher.find()) {
+            int start = matcher.start() + bufferStart;
+            if (start > to || (start == to && to < text.length())) {
+                break;  // Начинается в следующем участке (пустое вхождение в конце текста - в последнем)
+            }
+            if (skipEmptyAtFrom && start == from && matcher.end() == matcher.start()) {
+                continue;  // Пустое вхождение в этом месте уже найдено
+            }
+            int synced = indexOf(sync, start);
+            if (synced >= 0) {
+                return synced;
+            }
+            String substituted = replacement;  // Строка без учёта регистра заменяется как есть
+            if (replaced != null) {
+                replaced.setLength(0);
+                matcher.appendReplacement(replaced, replacement);  // Текст от прошлого вхождения и подстановка
+                substituted = replaced.substring(matcher.start() - appended);
+                appended = matcher.end();
+            }
+            out.add(new Match(start, matcher.end() + bufferStart, substituted));
+        }
+        return -1;
+    }
+
+    private static int scanLiteral(TextSnapshot text, SearchQuery query, String replacement, int from, int to,
+                                   List<Match> out, List<Match> sync, int max) {
+        Horspool horspool = new Horspool(query.getText());
+        int bufferEnd = Math.min(text.length(), to + horspool.length() - 1);
+        if (bufferEnd - from < horspool.length()) {
+            return -1;
+        }
+        char[] chars = new char[bufferEnd - from];
+        text.getChars(from, chars.length, chars, 0);
+        int at = 0;
+        while (out.size() < max) {
+            at = horspool.indexOf(chars, at, to - from, chars.length);
+            if (at < 0) {
+                break;
+            }
+            int synced = indexOf(sync, from + at);
+            if (synced >= 0) {
+                return synced;
+            }
+            out.add(new Match(from + at, from + at + horspool.length(), replacement));
+            at += horspool.length();  // Вхождения не пересекаются
+        }
+        return -1;
+    }
+
+    // Индекс вхождения, начинающегося в start, в отсортированном списке; -1 - нет
+    private static int indexOf(List<Match> matches, int start) {
+        if (matches == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = matches.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = matches.get(middle).getStart();
+            if (value < start) {
+                low = middle + 1;
+            } else if (value > start) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
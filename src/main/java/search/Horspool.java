@@ -0,0 +1,46 @@
+package search;
+
+import java.util.Arrays;
+
+// Поиск строки алгоритмом Бойера - Мура - Хорспула: окно сравнивается с конца, при несовпадении
+// сдвигается по таблице последнего вхождения символа, так что на длинном образце просматривается малая часть текста.
+// Таблица сдвигов - по младшему байту символа: совпадение младших байтов лишь уменьшает сдвиг, но не ломает поиск.
+final class Horspool {
+
+    private final char[] needle;
+    private final int[] shift = new int[256];
+
+    Horspool(String needle) {
+        this.needle = needle.toCharArray();
+        int last = this.needle.length - 1;
+        Arrays.fill(shift, this.needle.length);
+        for (int i = 0; i < last; i++) {
+            shift[this.needle[i] & 0xFF] = last - i;
+        }
+    }
+
+    int length() {
+        return needle.length;
+    }
+
+    // Первое вхождение, начинающееся в [from, to), в text[0, limit); -1 - нет
+    int indexOf(char[] text, int from, int to, int limit) {
+        int last = needle.length - 1;
+        int end = Math.min(to - 1, limit - needle.length);
+        int at = from;
+        while (at <= end) {
+            char c = text[at + last];
+            if (c == needle[last]) {
+                int i = last - 1;
+                while (i >= 0 && text[at + i] == needle[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return at;
+                }
+            }
+            at += shift[c & 0xFF];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,36 @@
+package search;
+
+// Найденное вхождение [start, end); при замене - ещё и текст, которым оно заменяется
+public final class Match {
+
+    private final int start;
+    private final int end;
+    private final String replacement;  // null - только поиск
+
+    Match(int start, int end, String replacement) {
+        this.start = start;
+        this.end = end;
+        this.replacement = replacement;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public int getLength() {
+        return end - start;
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ")";
+    }
+}
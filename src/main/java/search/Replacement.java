@@ -0,0 +1,138 @@
+package search;
+
+import document.CharSource;
+import document.TextSnapshot;
+
+import javax.swing.text.Segment;
+import java.util.Arrays;
+import java.util.List;
+
+// Замена всех вхождений как одна правка: участок от начала первого до конца последнего вхождения
+// заменяется новым текстом. Новый текст не собирается в строку - это источник кусков, который берёт символы
+// между вхождениями из исходного снимка, а подстановки - из своих массивов. Вставка такого текста в документ
+// (PagedDocument.insertPieces) даёт одно событие и одну запись истории вместо пары на каждое вхождение.
+public final class Replacement implements CharSource {
+
+    private final TextSnapshot text;  // Снимок, в котором найдены вхождения
+    private final List<Match> matches;
+    private final int start;  // Начало заменяемого участка в снимке
+    private final int end;
+    private final int[] offsets;  // Начало части нового текста; offsets[parts] - длина нового текста
+    private final int[] sourceStart;  // Начало части в снимке; -1 - часть из подстановки
+    private final char[][] inserted;
+    private final int parts;
+
+    Replacement(TextSnapshot text, List<Match> matches) {
+        this.text = text;
+        this.matches = matches;
+        this.start = matches.isEmpty() ? 0 : matches.get(0).getStart();
+        this.end = matches.isEmpty() ? 0 : matches.get(matches.size() - 1).getEnd();
+        int capacity = matches.size() * 2 + 1;
+        int[] partOffsets = new int[capacity];
+        int[] partSources = new int[capacity];
+        char[][] partChars = new char[capacity][];
+        int count = 0;
+        int length = 0;
+        int previousEnd = start;
+        String previousReplacement = null;
+        char[] previousChars = null;
+        for (Match match : matches) {
+            if (match.getStart() > previousEnd) {  // Текст между вхождениями остаётся прежним
+                partOffsets[count] = length;
+                partSources[count] = previousEnd;
+                count++;
+                length += match.getStart() - previousEnd;
+            }
+            String replacement = match.getReplacement();
+            if (!replacement.isEmpty()) {
+                if (!replacement.equals(previousReplacement)) {  // Одинаковые подстановки делят один массив
+                    previousReplacement = replacement;
+                    previousChars = replacement.toCharArray();
+                }
+                partOffsets[count] = length;
+                partSources[count] = -1;
+                partChars[count] = previousChars;
+                count++;
+                length += previousChars.length;
+            }
+            previousEnd = match.getEnd();
+        }
+        this.parts = count;
+        this.offsets = Arrays.copyOf(partOffsets, count + 1);
+        this.offsets[count] = length;
+        this.sourceStart = Arrays.copyOf(partSources, count);
+        this.inserted = Arrays.copyOf(partChars, count);
+    }
+
+    public TextSnapshot getText() {
+        return text;
+    }
+
+    public List<Match> getMatches() {
+        return matches;
+    }
+
+    public int getCount() {
+        return matches.size();
+    }
+
+    // Начало заменяемого участка
+    public int getStart() {
+        return start;
+    }
+
+    // Длина заменяемого участка в исходном тексте
+    public int getRemovedLength() {
+        return end - start;
+    }
+
+    // Длина нового текста участка
+    public int getInsertedLength() {
+        return offsets[parts];
+    }
+
+    // Новый текст участка строкой (для наблюдателей и небольших замен)
+    public String getInsertedText() {
+        char[] chars = new char[getInsertedLength()];
+        getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public void getChars(int start, int length, char[] dst, int dstOffset) {
+        int part = part(start);
+        while (length > 0) {
+            int inPart = start - offsets[part];
+            int count = Math.min(length, offsets[part + 1] - start);
+            if (sourceStart[part] < 0) {
+                System.arraycopy(inserted[part], inPart, dst, dstOffset, count);
+            } else {
+                text.getChars(sourceStart[part] + inPart, count, dst, dstOffset);
+            }
+            start += count;
+            dstOffset += count;
+            length -= count;
+            part++;
+        }
+    }
+
+    @Override
+    public void getSegment(int start, int length, Segment segment) {
+        int part = part(start);
+        int inPart = start - offsets[part];
+        int count = Math.min(length, offsets[part + 1] - start);
+        if (sourceStart[part] < 0) {
+            segment.array = inserted[part];
+            segment.offset = inPart;
+            segment.count = count;
+        } else {
+            text.getSegment(sourceStart[part] + inPart, count, segment);
+        }
+    }
+
+    // Часть нового текста, в которой лежит offset
+    private int part(int offset) {
+        int found = Arrays.binarySearch(offsets, 0, parts, offset);
+        return found >= 0 ? found : -found - 2;
+    }
+}
@@ -0,0 +1,58 @@
+package search;
+
+import java.util.regex.Pattern;
+
+// Что искать: строка как есть или регулярное выражение, с учётом регистра или без
+public final class SearchQuery {
+
+    private final String text;
+    private final boolean regex;
+    private final boolean matchCase;
+    private final Pattern pattern;  // null - поиск строки с учётом регистра (Бойер - Мур - Хорспул)
+
+    private SearchQuery(String text, boolean regex, boolean matchCase) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Пустая строка поиска");
+        }
+        this.text = text;
+        this.regex = regex;
+        this.matchCase = matchCase;
+        if (regex) {
+            this.pattern = Pattern.compile(text, matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } else if (!matchCase) {
+            this.pattern = Pattern.compile(text, Pattern.LITERAL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } else {
+            this.pattern = null;
+        }
+    }
+
+    public static SearchQuery literal(String text, boolean matchCase) {
+        return new SearchQuery(text, false, matchCase);
+    }
+
+    // Регулярное выражение java.util.regex; ошибка в выражении - PatternSyntaxException
+    public static SearchQuery regex(String text, boolean matchCase) {
+        return new SearchQuery(text, true, matchCase);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isRegex() {
+        return regex;
+    }
+
+    public boolean isMatchCase() {
+        return matchCase;
+    }
+
+    Pattern getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return (regex ? "/" + text + "/" : "\"" + text + "\"") + (matchCase ? "" : "i");
+    }
+}
@@ -0,0 +1,106 @@
+package ui;
+
+import document.LineIndex;
+import document.PagedDocument;
+
+import javax.swing.text.BadLocationException;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+
+// Текстовая область одной стороны сравнения: изменённые строки подсвечиваются, место вставки на другой стороне -
+// чертой. Подсвечиваются только видимые участки (двоичный поиск по началам участков), поэтому число различий
+// не влияет на перерисовку.
+class DiffTextArea extends VirtualTextArea {
+
+    private static final Color CHANGED = new Color(255, 236, 200);
+    private static final Color CURRENT = new Color(255, 210, 140);
+    private static final Color INSERTED = new Color(220, 120, 0);
+
+    private int[] starts = new int[0];  // Первая строка каждого участка на этой стороне, по возрастанию
+    private int[] counts = new int[0];  // Число строк участка; 0 - на этой стороне ничего нет, на другой вставка
+    private int current = -1;  // Выбранный участок
+
+    DiffTextArea(PagedDocument document) {
+        super(document);
+        setEditable(false);  // Правки - в окнах редакторов, здесь только сравнение и принятие различий
+    }
+
+    void setHunks(int[] starts, int[] counts, int current) {
+        this.starts = starts;
+        this.counts = counts;
+        this.current = current;
+        repaint();
+    }
+
+    // Координата y начала строки
+    int lineY(int line) {
+        Rectangle2D bounds = lineBounds(line);
+        return bounds == null ? 0 : (int) bounds.getY();
+    }
+
+    // Строка в точке y области
+    int lineAt(int y) {
+        LineIndex lines = ((PagedDocument) getDocument()).getLineIndex();
+        return lines.getLineOfOffset(Math.max(0, viewToModel2D(new Point(0, y))));
+    }
+
+    @Override
+    protected void paintLineBackground(Graphics g) {
+        if (!(getDocument() instanceof PagedDocument) || starts.length == 0) {
+            return;
+        }
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int first = lineAt(clip.y);
+        int last = lineAt(clip.y + clip.height);
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {  // Первый участок, который кончается не раньше first
+            int middle = (low + high) >>> 1;
+            if (starts[middle] + Math.max(1, counts[middle]) <= first) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < starts.length && starts[i] <= last; i++) {
+            Rectangle2D top = lineBounds(starts[i]);
+            if (top == null) {
+                continue;
+            }
+            int y = (int) top.getY();
+            int lineHeight = (int) Math.ceil(top.getHeight());
+            if (counts[i] == 0) {
+                g.setColor(INSERTED);
+                g.fillRect(clip.x, y - 1, clip.width, 2);
+            } else {
+                g.setColor(i == current ? CURRENT : CHANGED);
+                g.fillRect(clip.x, y, clip.width, lineHeight * counts[i]);
+            }
+        }
+    }
+
+    // Прямоугольник начала строки; строка за концом текста - под последней
+    private Rectangle2D lineBounds(int line) {
+        LineIndex lines = ((PagedDocument) getDocument()).getLineIndex();
+        int count = lines.getLineCount();
+        try {
+            if (line < count) {
+                return modelToView2D(Math.min(lines.getLineStart(line), getDocument().getLength()));
+            }
+            Rectangle2D last = modelToView2D(lines.getLineStart(count - 1));
+            if (last == null) {
+                return null;
+            }
+            double height = last.getHeight();
+            return new Rectangle2D.Double(last.getX(), last.getY() + height * (line - count + 1), last.getWidth(), height);
+        } catch (BadLocationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package ui;
+
+import diff.DiffResult;
+import diff.Hunk;
+import document.PagedDocument;
+import document.TextSnapshot;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.BorderLayout;
+import java.awt.Point;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Окно сравнения двух документов рядом: слева первый текст разницы, справа второй. Прокрутка согласована по строкам,
+// изменённые участки подсвечены. Участок можно принять в любую сторону (если сторона изменяемая), все участки -
+// одной правкой. После принятия разница пересчитывается сдвигом участков, без нового сравнения; если документ
+// изменили в редакторе, сравнение повторяется по кнопке.
+public class DiffView {
+
+    // Стороны сравнения: как сравнить заново и как применить правку. Вызовы идут из потока Swing,
+    // done вызывается в потоке Swing.
+    public interface Sides {
+        void compare(Consumer<DiffResult> done);
+
+        // Применяет правку к левой (left) или правой стороне; done получает снимок после правки или null,
+        // если документ изменился после сравнения
+        void apply(boolean left, DiffResult patch, Consumer<TextSnapshot> done);
+
+        boolean canApply(boolean left);
+    }
+
+    private final JFrame frame;
+    private final DiffTextArea left;
+    private final DiffTextArea right;
+    private final JScrollPane leftScroll;
+    private final JScrollPane rightScroll;
+    private final JLabel status = new JLabel();
+    private final Sides sides;
+    private final PagedDocument leftDocument;
+    private final PagedDocument rightDocument;
+    private DiffResult diff;
+    private DiffResult reversed;  // Та же разница справа налево: для прокрутки от правой стороны
+    private int[] startsA;  // Начала и длины участков в строках для подсветки
+    private int[] countsA;
+    private int[] startsB;
+    private int[] countsB;
+    private int current = -1;  // Выбранный участок
+    private boolean busy;  // Идёт сравнение или правка
+    private boolean syncing;  // Прокрутка одной стороны вслед за другой
+
+    public DiffView(String title, PagedDocument leftDocument, PagedDocument rightDocument, DiffResult diff, Sides sides) {
+        this.leftDocument = leftDocument;
+        this.rightDocument = rightDocument;
+        this.sides = sides;
+        frame = new JFrame(title);
+        left = new DiffTextArea(leftDocument);
+        right = new DiffTextArea(rightDocument);
+        leftScroll = new JScrollPane(left);
+        rightScroll = new JScrollPane(right);
+        leftScroll.getViewport().addChangeListener(e -> follow(leftScroll, left, rightScroll, right, true));
+        rightScroll.getViewport().addChangeListener(e -> follow(rightScroll, right, leftScroll, left, false));
+
+        JToolBar tools = new JToolBar();
+        tools.setFloatable(false);
+        tools.add(button("Previous", () -> select(current - 1)));
+        tools.add(button("Next", () -> select(current + 1)));
+        if (sides.canApply(true)) {
+            tools.add(button("Take right", () -> applyCurrent(true)));
+        }
+        if (sides.canApply(false)) {
+            tools.add(button("Take left", () -> applyCurrent(false)));
+        }
+        if (sides.canApply(true)) {
+            tools.add(button("Take all right", () -> applyAll(true)));
+        }
+        if (sides.canApply(false)) {
+            tools.add(button("Take all left", () -> applyAll(false)));
+        }
+        tools.add(button("Compare again", this::compareAgain));
+
+        DocumentListener stale = new DocumentListener() {  // Правка в редакторе: разница могла устареть
+            public void insertUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(DiffView.this::refreshStatus);
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(DiffView.this::refreshStatus);
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+            }
+        };
+        leftDocument.addDocumentListener(stale);
+        rightDocument.addDocumentListener(stale);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                leftDocument.removeDocumentListener(stale);
+                rightDocument.removeDocumentListener(stale);
+            }
+        });
+
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, leftScroll, rightScroll);
+        split.setResizeWeight(0.5);
+        frame.add(tools, BorderLayout.NORTH);
+        frame.add(split);
+        frame.add(status, BorderLayout.SOUTH);
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.setSize(1000, 600);
+        show(diff, diff.isEmpty() ? -1 : 0);
+    }
+
+    public void display() {
+        frame.setVisible(true);
+        select(current);
+    }
+
+    private JButton button(String name, Runnable action) {
+        JButton button = new JButton(name);
+        button.addActionListener(e -> {
+            if (!busy) {
+                action.run();
+            }
+        });
+        return button;
+    }
+
+    // Показывает разницу и выбирает участок
+    private void show(DiffResult next, int selected) {
+        diff = next;
+        reversed = next.reversed();
+        List<Hunk> hunks = next.getHunks();
+        startsA = new int[hunks.size()];
+        countsA = new int[hunks.size()];
+        startsB = new int[hunks.size()];
+        countsB = new int[hunks.size()];
+        for (int i = 0; i < hunks.size(); i++) {
+            Hunk hunk = hunks.get(i);
+            startsA[i] = hunk.getStartA();
+            countsA[i] = hunk.getCountA();
+            startsB[i] = hunk.getStartB();
+            countsB[i] = hunk.getCountB();
+        }
+        current = hunks.isEmpty() ? -1 : Math.max(0, Math.min(selected, hunks.size() - 1));
+        left.setHunks(startsA, countsA, current);
+        right.setHunks(startsB, countsB, current);
+        refreshStatus();
+    }
+
+    private void refreshStatus() {
+        boolean stale = !leftDocument.snapshot().isSameVersion(diff.getA())
+                || !rightDocument.snapshot().isSameVersion(diff.getB());
+        String text = diff.isEmpty() ? "Тексты совпадают" : "Различие " + (current + 1) + " из " + diff.getHunks().size()
+                + "; " + diff;
+        status.setText(busy ? "Сравнение..." : stale ? "Документ изменён после сравнения - сравните заново" : text);
+    }
+
+    // Выбирает участок и прокручивает к нему обе стороны
+    private void select(int index) {
+        if (diff.isEmpty()) {
+            return;
+        }
+        current = Math.max(0, Math.min(index, diff.getHunks().size() - 1));
+        Hunk hunk = diff.getHunks().get(current);
+        left.setHunks(startsA, countsA, current);
+        right.setHunks(startsB, countsB, current);
+        syncing = true;
+        try {
+            scrollTo(leftScroll, left, hunk.getStartA());
+            scrollTo(rightScroll, right, hunk.getStartB());
+        } finally {
+            syncing = false;
+        }
+        refreshStatus();
+    }
+
+    // Ставит строку в верхнюю треть окна
+    private static void scrollTo(JScrollPane scroll, DiffTextArea area, int line) {
+        JViewport viewport = scroll.getViewport();
+        int y = Math.max(0, area.lineY(line) - viewport.getExtentSize().height / 3);
+        int maxY = Math.max(0, area.getHeight() - viewport.getExtentSize().height);
+        viewport.setViewPosition(new Point(viewport.getViewPosition().x, Math.min(y, maxY)));
+    }
+
+    // Прокручивает другую сторону к строке, соответствующей верхней строке этой стороны
+    private void follow(JScrollPane fromScroll, DiffTextArea from, JScrollPane toScroll, DiffTextArea to, boolean fromLeft) {
+        if (syncing) {
+            return;
+        }
+        syncing = true;
+        try {
+            Point position = fromScroll.getViewport().getViewPosition();
+            int line = from.lineAt(position.y);
+            int other = fromLeft ? diff.lineInB(line) : reversed.lineInB(line);
+            int offset = position.y - from.lineY(line);  // Сдвиг внутри строки, чтобы прокрутка была плавной
+            JViewport viewport = toScroll.getViewport();
+            int maxY = Math.max(0, to.getHeight() - viewport.getExtentSize().height);
+            viewport.setViewPosition(new Point(viewport.getViewPosition().x,
+                    Math.max(0, Math.min(to.lineY(other) + offset, maxY))));
+        } finally {
+            syncing = false;
+        }
+    }
+
+    // Принимает выбранный участок: сторона toLeft получает строки другой стороны
+    private void applyCurrent(boolean toLeft) {
+        if (current < 0) {
+            return;
+        }
+        int index = current;
+        DiffResult patch = toLeft ? diff.only(diff.getHunks().get(index)) : reversed.only(reversed.getHunks().get(index));
+        apply(toLeft, patch, text -> toLeft ? diff.applied(index, text) : reversed.applied(index, text).reversed(), index);
+    }
+
+    private void applyAll(boolean toLeft) {
+        apply(toLeft, toLeft ? diff : reversed, text -> toLeft ? diff.applied(text) : reversed.applied(text).reversed(), 0);
+    }
+
+    private void apply(boolean toLeft, DiffResult patch, Function<TextSnapshot, DiffResult> next,
+                       int selected) {
+        busy = true;
+        refreshStatus();
+        sides.apply(toLeft, patch, text -> {
+            busy = false;
+            if (text == null) {
+                refreshStatus();  // Документ изменён после сравнения
+                return;
+            }
+            show(next.apply(text), selected);
+            select(current);
+        });
+    }
+
+    private void compareAgain() {
+        busy = true;
+        refreshStatus();
+        sides.compare(next -> {
+            busy = false;
+            show(next, current);
+            select(current);
+        });
+    }
+}
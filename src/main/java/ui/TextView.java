@@ -0,0 +1,319 @@
+package ui;
+
+import document.LineIndex;
+import document.PagedDocument;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Caret;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.LayeredHighlighter;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+import java.awt.Container;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Представление текста PagedDocument, которое раскладывает и рисует только видимые строки.
+// Строка стоит на высоте "номер * высота строки", номер и начало строки берутся из LineIndex, поэтому прокрутка,
+// изменение размера окна и движение курсора не зависят от размера файла (PlainView измеряет все строки документа).
+// Ширина текста - самая длинная из уже показанных строк. Видимые строки кешируются готовыми глифами (GlyphVector)
+// с координатами символов; правка сбрасывает только свою строку, а если число строк поменялось - строки ниже.
+// Перенос строк не поддерживается.
+public class TextView extends View {
+
+    private static final int CACHED_LINES = 1024;  // Несколько экранов строк
+
+    // Глифы строки и координата x начала каждого символа (последняя - ширина строки)
+    private static final class Run {
+        private final GlyphVector glyphs;
+        private final float[] xs;
+
+        Run(GlyphVector glyphs, float[] xs) {
+            this.glyphs = glyphs;
+            this.xs = xs;
+        }
+
+        float width() {
+            return xs[xs.length - 1];
+        }
+    }
+
+    private final Map<Integer, Run> runs = new LinkedHashMap<>(CACHED_LINES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Run> eldest) {
+            return size() > CACHED_LINES;
+        }
+    };
+    private final Segment segment = new Segment();
+    private Font font;  // Шрифт, для которого посчитаны метрики и глифы
+    private FontRenderContext renderContext;
+    private int lineHeight = 1;
+    private int ascent;
+    private int tabSize = 8;
+    private float widest;  // Самая длинная из показанных строк
+    private int lineCount;  // Число строк при последнем изменении: по нему видно, сдвинулись ли строки ниже правки
+
+    public TextView(Element root) {
+        super(root);
+        lineCount = lines().getLineCount();
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        updateMetrics();
+        if (axis == X_AXIS) {
+            return widest + 1;  // Место под курсор в конце самой длинной строки
+        }
+        return (float) Math.min((long) lines().getLineCount() * lineHeight, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = alloc;
+        }
+        LineIndex lines = lines();
+        int first = Math.max(0, (clip.y - alloc.y) / lineHeight);
+        int last = (int) Math.min(lines.getLineCount() - 1L, ((long) clip.y + clip.height - alloc.y - 1) / lineHeight);
+        JTextComponent host = (JTextComponent) getContainer();
+        Highlighter highlighter = host.getHighlighter();
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setFont(font);
+        g2.setColor(host.isEnabled() ? host.getForeground() : host.getDisabledTextColor());
+        float wider = widest;
+        for (int line = first; line <= last; line++) {
+            if (highlighter instanceof LayeredHighlighter) {  // Выделение и подсветка поиска под текстом строки
+                ((LayeredHighlighter) highlighter).paintLayeredHighlights(g, lines.getLineStart(line), lines.getLineEnd(line),
+                        a, host, this);
+                g2.setColor(host.isEnabled() ? host.getForeground() : host.getDisabledTextColor());
+            }
+            Run run = run(line);
+            wider = Math.max(wider, run.width());
+            int y = alloc.y + top(line);
+            g2.translate(alloc.x, y);  // Целочисленный сдвиг: координаты глифов остаются малыми даже на миллионной строке
+            g2.drawGlyphVector(run.glyphs, 0, ascent);
+            g2.translate(-alloc.x, -y);
+        }
+        if (wider > widest) {
+            widest = wider;
+            SwingUtilities.invokeLater(() -> preferenceChanged(null, true, false));  // Не посреди рисования
+        }
+    }
+
+    @Override
+    public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+        if (pos < 0 || pos > getDocument().getLength() + 1) {
+            throw new BadLocationException("Позиция вне документа", pos);
+        }
+        updateMetrics();
+        Rectangle alloc = a.getBounds();
+        LineIndex lines = lines();
+        int line = lines.getLineOfOffset(pos);
+        Run run = run(line);
+        int column = Math.min(pos - lines.getLineStart(line), run.xs.length - 1);
+        return new Rectangle(alloc.x + Math.round(run.xs[column]), alloc.y + top(line), 1, lineHeight);
+    }
+
+    @Override
+    public int viewToModel(float x, float y, Shape a, Position.Bias[] biasReturn) {
+        updateMetrics();
+        biasReturn[0] = Position.Bias.Forward;
+        Rectangle alloc = a.getBounds();
+        LineIndex lines = lines();
+        int line = (int) Math.max(0, Math.min(lines.getLineCount() - 1L, (long) Math.floor((y - alloc.y) / lineHeight)));
+        float[] xs = run(line).xs;
+        float inLine = x - alloc.x;
+        int low = 0;
+        int high = xs.length - 1;
+        while (low < high) {  // Первая граница символа правее inLine
+            int middle = (low + high) >>> 1;
+            if (xs[middle] < inLine) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int column = low > 0 && inLine - xs[low - 1] < xs[low] - inLine ? low - 1 : low;  // Ближайшая граница
+        return lines.getLineStart(line) + column;
+    }
+
+    // Вверх и вниз - та же координата x на соседней строке (стандартный View ищет её проходом по символам строки)
+    @Override
+    public int getNextVisualPositionFrom(int pos, Position.Bias b, Shape a, int direction, Position.Bias[] biasRet)
+            throws BadLocationException {
+        if (pos < 0 || (direction != NORTH && direction != SOUTH)) {
+            return super.getNextVisualPositionFrom(pos, b, a, direction, biasRet);
+        }
+        biasRet[0] = Position.Bias.Forward;
+        LineIndex lines = lines();
+        int line = lines.getLineOfOffset(pos) + (direction == NORTH ? -1 : 1);
+        if (line < 0 || line >= lines.getLineCount()) {
+            return pos;
+        }
+        Caret caret = ((JTextComponent) getContainer()).getCaret();
+        Point magic = caret == null ? null : caret.getMagicCaretPosition();
+        float x = magic != null ? magic.x : modelToView(pos, a, b).getBounds().x;
+        Rectangle alloc = a.getBounds();
+        return viewToModel(x, alloc.y + top(line), a, biasRet);
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        changed(e, a);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        changed(e, a);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        synchronized (runs) {
+            runs.clear();
+        }
+        repaint(0, Integer.MAX_VALUE);
+    }
+
+    // Сбрасывает глифы изменённых строк и перерисовывает их; если строк стало больше или меньше - и всё ниже
+    private void changed(DocumentEvent e, Shape a) {
+        LineIndex lines = lines();
+        int line = lines.getLineOfOffset(e.getOffset());
+        int count = lines.getLineCount();
+        boolean shifted = count != lineCount;
+        lineCount = count;
+        synchronized (runs) {
+            if (shifted) {
+                for (Iterator<Integer> it = runs.keySet().iterator(); it.hasNext(); ) {
+                    if (it.next() >= line) {
+                        it.remove();
+                    }
+                }
+            } else {
+                runs.remove(line);
+            }
+        }
+        if (shifted) {
+            preferenceChanged(null, false, true);  // Высота текста
+            repaint(line, Integer.MAX_VALUE);
+        } else {
+            repaint(line, 1);
+        }
+    }
+
+    private void repaint(int line, int count) {
+        Container host = getContainer();
+        if (host != null) {
+            host.repaint(0, host.getInsets().top + top(line), host.getWidth(), (int) Math.min((long) count * lineHeight, Integer.MAX_VALUE));
+        }
+    }
+
+    // Верх строки; строки дальше наибольшей высоты компонента прижимаются к ней
+    private int top(int line) {
+        return (int) Math.min((long) line * lineHeight, Integer.MAX_VALUE - lineHeight);
+    }
+
+    // Глифы строки из кеша или построенные заново
+    private Run run(int line) {
+        synchronized (runs) {
+            Run run = runs.get(line);
+            if (run == null) {
+                run = layout(line);
+                runs.put(line, run);
+            }
+            return run;
+        }
+    }
+
+    // Раскладывает строку: табуляция заменяется пробелами до следующей позиции табуляции,
+    // возврат каретки (перевод строки CRLF) и метка порядка байт в начале файла не занимают места
+    private Run layout(int line) {
+        LineIndex lines = lines();
+        int start = lines.getLineStart(line);
+        int length = lines.getLineEnd(line) - start;
+        try {
+            getDocument().getText(start, length, segment);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            length = 0;
+            segment.count = 0;
+        }
+        int[] columns = new int[length + 1];  // Колонка начала каждого символа после замены табуляции
+        int column = 0;
+        for (int i = 0; i < length; i++) {
+            columns[i] = column;
+            char c = segment.array[segment.offset + i];
+            column += c == '\t' ? tabSize - column % tabSize : hidden(c) ? 0 : 1;
+        }
+        columns[length] = column;
+        char[] expanded = new char[column];
+        for (int i = 0; i < length; i++) {
+            char c = segment.array[segment.offset + i];
+            if (c == '\t') {
+                for (int j = columns[i]; j < columns[i + 1]; j++) {
+                    expanded[j] = ' ';
+                }
+            } else if (!hidden(c)) {
+                expanded[columns[i]] = c;
+            }
+        }
+        GlyphVector glyphs = font.createGlyphVector(renderContext, expanded);
+        float[] positions = glyphs.getGlyphPositions(0, glyphs.getNumGlyphs() + 1, null);
+        float[] xs = new float[length + 1];
+        for (int i = 0; i <= length; i++) {
+            xs[i] = positions[2 * Math.min(columns[i], glyphs.getNumGlyphs())];
+        }
+        return new Run(glyphs, xs);
+    }
+
+    private static boolean hidden(char c) {
+        return c == '\r' || c == '\uFEFF';
+    }
+
+    // Метрики шрифта текстовой области; при смене шрифта или табуляции кеш строк сбрасывается
+    private void updateMetrics() {
+        Container host = getContainer();
+        Font current = host != null ? host.getFont() : null;
+        Object tabs = getDocument().getProperty(PlainDocument.tabSizeAttribute);
+        int currentTabSize = tabs instanceof Integer ? Math.max(1, (Integer) tabs) : 8;
+        if (current == null || (current.equals(font) && currentTabSize == tabSize)) {
+            return;
+        }
+        FontMetrics metrics = host.getFontMetrics(current);
+        font = current;
+        renderContext = metrics.getFontRenderContext();
+        lineHeight = Math.max(1, metrics.getHeight());
+        ascent = metrics.getAscent();
+        tabSize = currentTabSize;
+        widest = 0;
+        synchronized (runs) {
+            runs.clear();
+        }
+    }
+
+    private LineIndex lines() {
+        Document document = getDocument();
+        return ((PagedDocument) document).getLineIndex();
+    }
+}
@@ -0,0 +1,122 @@
+package ui;
+
+import document.PagedDocument;
+
+import javax.swing.*;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.NavigationFilter;
+import javax.swing.text.PlainView;
+import javax.swing.text.Position;
+import javax.swing.text.View;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+
+// Текстовая область для PagedDocument: ввод, курсор и выделение остаются от JTextArea, а текст показывает TextView,
+// который рисует только видимые строки. Ставится в JScrollPane.
+// Переводы строк CRLF остаются в тексте как в файле: курсор не встаёт между \r и \n, Enter и вставка дают перевод
+// строки документа, удаление по одному символу удаляет пару \r\n целиком.
+public class VirtualTextArea extends JTextArea {
+
+    public VirtualTextArea(Document document) {
+        super(document);
+        setNavigationFilter(new LineBreakFilter());
+        deleteLineBreak(DefaultEditorKit.deletePrevCharAction, -2);
+        deleteLineBreak(DefaultEditorKit.deleteNextCharAction, 0);
+    }
+
+    @Override
+    public void updateUI() {
+        setUI(new BasicTextAreaUI() {
+            @Override
+            public View create(Element elem) {
+                // Другой документ (например, стандартный, пока область создаётся) показывается как обычно
+                return elem.getDocument() instanceof PagedDocument ? new TextView(elem) : new PlainView(elem);
+            }
+
+            @Override
+            protected void paintBackground(Graphics g) {
+                super.paintBackground(g);
+                paintLineBackground(g);
+            }
+        });
+    }
+
+    // Рисует поверх фона под текстом (например, подсветку строк); по умолчанию ничего
+    protected void paintLineBackground(Graphics g) {
+    }
+
+    // Вставка с клавиатуры и из буфера обмена: переводы строк приводятся к переводу строки документа
+    @Override
+    public void replaceSelection(String content) {
+        Document document = getDocument();
+        if (content != null && document instanceof PagedDocument && "\r\n".equals(((PagedDocument) document).getLineSeparator())) {
+            content = content.replace("\r\n", "\n").replace("\n", "\r\n");
+        }
+        super.replaceSelection(content);
+    }
+
+    // Заменяет действие удаления символа: если без выделения удаляется половина пары \r\n (с места offset от курсора),
+    // удаляется вся пара, иначе работает прежнее действие
+    private void deleteLineBreak(String name, int offset) {
+        Action original = getActionMap().get(name);
+        getActionMap().put(name, new AbstractAction(name) {
+            public void actionPerformed(ActionEvent e) {
+                int dot = getCaretPosition();
+                if (getSelectionStart() == getSelectionEnd() && isLineBreak(getDocument(), dot + offset)) {
+                    try {
+                        getDocument().remove(dot + offset, 2);
+                    } catch (BadLocationException ex) {
+                        ex.printStackTrace();
+                    }
+                } else if (original != null) {
+                    original.actionPerformed(e);
+                }
+            }
+        });
+    }
+
+    // Начинается ли с offset пара \r\n
+    private static boolean isLineBreak(Document document, int offset) {
+        if (offset < 0 || offset + 2 > document.getLength()) {
+            return false;
+        }
+        try {
+            return document.getText(offset, 2).equals("\r\n");
+        } catch (BadLocationException e) {
+            return false;
+        }
+    }
+
+    // Курсор и концы выделения не встают между \r и \n: при движении вправо переходят за \n, иначе - перед \r
+    private class LineBreakFilter extends NavigationFilter {
+        @Override
+        public void setDot(FilterBypass fb, int dot, Position.Bias bias) {
+            fb.setDot(isLineBreak(VirtualTextArea.this, dot) ? dot - 1 : dot, bias);
+        }
+
+        @Override
+        public void moveDot(FilterBypass fb, int dot, Position.Bias bias) {
+            fb.moveDot(isLineBreak(VirtualTextArea.this, dot) ? dot - 1 : dot, bias);
+        }
+
+        @Override
+        public int getNextVisualPositionFrom(JTextComponent text, int pos, Position.Bias bias, int direction,
+                                             Position.Bias[] biasRet) throws BadLocationException {
+            int next = super.getNextVisualPositionFrom(text, pos, bias, direction, biasRet);
+            if (isLineBreak(text, next)) {
+                next += direction == SwingConstants.EAST ? 1 : -1;
+            }
+            return next;
+        }
+
+        // Стоит ли позиция между \r и \n
+        private boolean isLineBreak(JTextComponent text, int position) {
+            return VirtualTextArea.isLineBreak(text.getDocument(), position - 1);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package workspace;
+
+import document.PagedDocument;
+import history.EditHistory;
+import io.DirtyRanges;
+import io.SaveBaseline;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Документ рабочей области (вкладка): файл и состояние, нужное для сохранения.
+// Текст либо в памяти, либо в файле подкачки (изменённый документ), либо только на диске (документ совпадал с файлом).
+public class Buffer {
+
+    private static final long OVERHEAD_BYTES = 1024;  // Дерево кусков, структура строк и прочее помимо символов
+
+    File file;  // null - документ ещё не сохранялся
+    PagedDocument document;  // null - документ вытеснен
+    SaveBaseline baseline;  // Файл на диске, относительно которого считаются dirty; null - следующее сохранение целиком
+    List<DirtyRanges.Range> dirty = new ArrayList<>();  // Изменения с последнего сохранения
+    SwapFile.Slot swapped;  // Текст в файле подкачки
+    Charset charset;  // Кодировка и перевод строки документа, пока он в файле подкачки
+    String lineSeparator;
+    EditHistory.Records history;  // История отмены, пока документ не показан; null - пустая
+
+    Buffer(File file, PagedDocument document) {
+        this.file = file;
+        this.document = document;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // Имя для заголовка вкладки
+    public String getName() {
+        return file == null ? "Untitled" : file.getName();
+    }
+
+    // Документ; null, если вытеснен
+    public PagedDocument getDocument() {
+        return document;
+    }
+
+    public SaveBaseline getBaseline() {
+        return baseline;
+    }
+
+    public List<DirtyRanges.Range> getDirty() {
+        return dirty;
+    }
+
+    public EditHistory.Records getHistory() {
+        return history;
+    }
+
+    public boolean isResident() {
+        return document != null;
+    }
+
+    public boolean isSwapped() {
+        return swapped != null;
+    }
+
+    // Оценка места в куче: два байта на символ (для отображённого файла это верхняя граница)
+    long bytes() {
+        return document == null ? 0 : document.getLength() * 2L + OVERHEAD_BYTES;
+    }
+}
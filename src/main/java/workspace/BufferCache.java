@@ -0,0 +1,184 @@
+package workspace;
+
+import document.PagedDocument;
+import engine.DocumentEngine;
+import history.EditHistory;
+import io.DirtyRanges;
+import io.SaveBaseline;
+
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Документы рабочей области с ограничением памяти. Документы упорядочены по последнему использованию;
+// когда оценка их размера превышает бюджет, давно не использованные вытесняются: совпадающий с файлом документ
+// просто забывается (при возврате файл отображается заново), изменённый записывается в файл подкачки.
+// Активный документ (показанный в окне) и ещё догружающийся документ не вытесняются.
+// История отмены скрытого документа хранится с ним и теряется только при вытеснении.
+public class BufferCache {
+
+    private final long budgetBytes;
+    private final SwapFile swap;
+
+    // Все документы, самый давно использованный - первый
+    private final Map<Buffer, Boolean> buffers = new LinkedHashMap<>(16, 0.75f, true);
+    private Buffer active;
+
+    private long hits;  // Документ был в памяти
+    private long swapIns;  // Прочитан из файла подкачки
+    private long reloads;  // Отображён из файла заново
+    private long spills;  // Записан в файл подкачки
+    private long drops;  // Забыт, потому что совпадал с файлом
+
+    public BufferCache(long budgetBytes, SwapFile swap) {
+        this.budgetBytes = budgetBytes;
+        this.swap = swap;
+    }
+
+    // Добавляет документ; он становится последним использованным
+    public synchronized Buffer add(File file, PagedDocument document, SaveBaseline baseline) {
+        Buffer buffer = new Buffer(file, document);
+        buffer.baseline = baseline;
+        buffers.put(buffer, Boolean.TRUE);
+        return buffer;
+    }
+
+    // Документ открытого файла или null
+    public synchronized Buffer find(File file) {
+        for (Buffer buffer : buffers.keySet()) {
+            if (buffer.file != null && buffer.file.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    // Возвращает документ в память, если он был вытеснен, и отмечает его использованным
+    public synchronized PagedDocument load(Buffer buffer) throws IOException {
+        buffers.get(buffer);  // Перенос в конец порядка использования
+        if (buffer.document != null) {
+            hits++;
+            return buffer.document;
+        }
+        if (buffer.swapped != null) {
+            PagedDocument document = new PagedDocument();
+            try {
+                document.insertString(0, swap.load(buffer.swapped), null);
+            } catch (BadLocationException e) {
+                throw new IOException(e);
+            }
+            document.setCharset(buffer.charset);  // Сохраняется в той же кодировке и с теми же переводами строк
+            document.setLineSeparator(buffer.lineSeparator);
+            swap.free(buffer.swapped);
+            buffer.swapped = null;
+            buffer.document = document;
+            swapIns++;
+        } else {
+            DocumentEngine.Opened opened = DocumentEngine.read(buffer.file.toPath(), null);
+            buffer.baseline = opened.baseline;
+            buffer.dirty = new ArrayList<>();
+            buffer.document = opened.document;
+            reloads++;
+        }
+        return buffer.document;
+    }
+
+    // Документ показан в окне: его состояние хранит редактор, и он не вытесняется
+    public synchronized void activate(Buffer buffer) {
+        buffers.get(buffer);
+        buffer.history = null;  // Записи истории снова ведёт редактор
+        active = buffer;
+    }
+
+    // Документ убран из окна: редактор отдаёт его текущее состояние вместе с историей отмены
+    public synchronized void deactivate(Buffer buffer, File file, PagedDocument document, SaveBaseline baseline,
+                                        List<DirtyRanges.Range> dirty, EditHistory.Records history) {
+        buffer.file = file;
+        buffer.document = document;
+        buffer.baseline = baseline;
+        buffer.dirty = dirty;
+        buffer.history = history;
+        if (active == buffer) {
+            active = null;
+        }
+    }
+
+    // Вытесняет давно не использованные документы, пока остальные не уложатся в бюджет
+    public synchronized void trim() throws IOException {
+        long resident = getResidentBytes();
+        List<Buffer> order = new ArrayList<>(buffers.keySet());
+        for (int i = 0; i < order.size() && resident > budgetBytes; i++) {
+            Buffer buffer = order.get(i);
+            if (buffer == active || buffer.document == null || buffer.document.isLoading()) {
+                continue;
+            }
+            resident -= buffer.bytes();
+            evict(buffer);
+        }
+    }
+
+    // Закрывает документ; его место в файле подкачки освобождается
+    public synchronized void remove(Buffer buffer) {
+        buffers.remove(buffer);
+        if (buffer.swapped != null) {
+            swap.free(buffer.swapped);
+            buffer.swapped = null;
+        }
+        buffer.document = null;
+        buffer.history = null;
+        if (active == buffer) {
+            active = null;
+        }
+    }
+
+    public synchronized List<Buffer> getBuffers() {
+        return new ArrayList<>(buffers.keySet());
+    }
+
+    // Оценка памяти документов в куче
+    public synchronized long getResidentBytes() {
+        long bytes = 0;
+        for (Buffer buffer : buffers.keySet()) {
+            bytes += buffer.bytes();
+        }
+        return bytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("документов %d, в памяти %d КБ из %d КБ, попаданий %d, из подкачки %d, из файла %d, "
+                        + "записано в подкачку %d, забыто %d, подкачка %d КБ",
+                buffers.size(), getResidentBytes() >> 10, budgetBytes >> 10, hits, swapIns, reloads, spills, drops,
+                swap.getUsedBytes() >> 10);
+    }
+
+    private void evict(Buffer buffer) throws IOException {
+        if (isClean(buffer)) {
+            buffer.baseline = null;  // Вместе с отображением файла; при возврате файл отображается заново
+            drops++;
+        } else {
+            buffer.swapped = swap.spill(buffer.document.snapshot());
+            buffer.charset = buffer.document.getCharset();
+            buffer.lineSeparator = buffer.document.getLineSeparator();
+            buffer.baseline = null;  // Документ из подкачки сохраняется целиком
+            buffer.dirty = new ArrayList<>();
+            spills++;
+        }
+        buffer.document = null;
+        buffer.history = null;  // Большие фрагменты истории ссылаются на снимки документа и держали бы его в памяти
+    }
+
+    // Совпадает ли документ с файлом на диске, то есть можно ли прочитать его оттуда заново
+    private boolean isClean(Buffer buffer) throws IOException {
+        return buffer.file != null && buffer.baseline != null && buffer.dirty.isEmpty()
+                && buffer.baseline.matches(buffer.file.toPath(), buffer.document.getCharset());
+    }
+}
@@ -0,0 +1,165 @@
+package workspace;
+
+import document.TextSnapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Файл подкачки для вытесненных из памяти изменённых документов.
+// Текст пишется как есть, символами UTF-16 (без кодирования и потерь), в первый подходящий свободный участок файла;
+// участки освобождаются, когда документ читается обратно или закрывается. Файл создаётся при первой записи и удаляется при закрытии.
+public class SwapFile implements Closeable {
+
+    private static final int CHUNK_CHARS = 1 << 16;  // Символов за одну запись или чтение
+
+    // Участок файла с текстом одного документа
+    public static final class Slot {
+        private final long position;
+        private final int chars;
+
+        Slot(long position, int chars) {
+            this.position = position;
+            this.chars = chars;
+        }
+
+        public int getChars() {
+            return chars;
+        }
+
+        long bytes() {
+            return chars * 2L;
+        }
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    private final List<long[]> free = new ArrayList<>();  // Свободные участки {начало, длина в байтах}, по возрастанию начала
+    private long end;  // Конец занятой части файла
+
+    public SwapFile(Path file) {
+        this.file = file;
+    }
+
+    // Записывает текст снимка и возвращает его участок
+    public synchronized Slot spill(TextSnapshot text) throws IOException {
+        open();
+        Slot slot = new Slot(allocate(text.length() * 2L), text.length());
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_CHARS * 2);
+        char[] chars = new char[CHUNK_CHARS];
+        long position = slot.position;
+        for (int offset = 0; offset < text.length(); offset += CHUNK_CHARS) {
+            int count = Math.min(CHUNK_CHARS, text.length() - offset);
+            text.getChars(offset, count, chars, 0);
+            buffer.clear();
+            buffer.asCharBuffer().put(chars, 0, count);
+            buffer.limit(count * 2);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+        return slot;
+    }
+
+    // Читает текст участка; участок остаётся занятым до free
+    public synchronized String load(Slot slot) throws IOException {
+        char[] text = new char[slot.chars];
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_CHARS * 2);
+        long position = slot.position;
+        for (int offset = 0; offset < slot.chars; offset += CHUNK_CHARS) {
+            int count = Math.min(CHUNK_CHARS, slot.chars - offset);
+            buffer.clear().limit(count * 2);
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Файл подкачки короче записанного: " + file);
+                }
+                position += read;
+            }
+            buffer.flip();
+            CharBuffer chars = buffer.asCharBuffer();
+            chars.get(text, offset, count);
+        }
+        return new String(text);
+    }
+
+    // Освобождает участок; соседние свободные участки склеиваются
+    public synchronized void free(Slot slot) {
+        long start = slot.position;
+        long length = slot.bytes();
+        if (length == 0) {
+            return;
+        }
+        int i = 0;
+        while (i < free.size() && free.get(i)[0] < start) {
+            i++;
+        }
+        free.add(i, new long[]{start, length});
+        if (i + 1 < free.size() && start + length == free.get(i + 1)[0]) {  // Склейка со следующим
+            free.get(i)[1] += free.remove(i + 1)[1];
+        }
+        if (i > 0 && free.get(i - 1)[0] + free.get(i - 1)[1] == start) {  // Склейка с предыдущим
+            free.get(i - 1)[1] += free.remove(i)[1];
+            i--;
+        }
+        if (free.get(i)[0] + free.get(i)[1] == end) {  // Свободный хвост файла
+            end = free.remove(i)[0];
+        }
+    }
+
+    // Размер занятой части файла в байтах
+    public synchronized long getUsedBytes() {
+        long used = end;
+        for (long[] extent : free) {
+            used -= extent[1];
+        }
+        return used;
+    }
+
+    // Закрывает и удаляет файл
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        Files.deleteIfExists(file);
+        free.clear();
+        end = 0;
+    }
+
+    private void open() throws IOException {
+        if (channel == null) {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            file.toFile().deleteOnExit();  // Подкачка не нужна после завершения редактора
+        }
+    }
+
+    // Первый свободный участок, куда помещается length байт, иначе конец файла
+    private long allocate(long length) {
+        for (int i = 0; i < free.size(); i++) {
+            long[] extent = free.get(i);
+            if (extent[1] >= length) {
+                long position = extent[0];
+                extent[0] += length;
+                extent[1] -= length;
+                if (extent[1] == 0) {
+                    free.remove(i);
+                }
+                return position;
+            }
+        }
+        long position = end;
+        end += length;
+        return position;
+    }
+}
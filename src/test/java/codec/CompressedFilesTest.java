@@ -0,0 +1,90 @@
+package codec;
+
+import engine.DocumentEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Сжатый файл, сохранённый через DocumentEngine, открывается обратно тем же текстом, в той же кодировке
+// и с тем же переводом строки. Текст больше порции распаковки, поэтому многобайтные символы режутся границами порций.
+class CompressedFilesTest {
+
+    private static final String[] PIECES = {"a", "ж", "😀", "word ", "\r\n"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void saveAndOpenRoundTrip() throws Exception {
+        String text = randomText(new Random(1), 2_500_000);
+        for (Codec codec : Codecs.all()) {
+            for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16LE}) {
+                Path file = directory.resolve(codec.getName() + "-" + charset.name() + extension(codec));
+                DocumentEngine engine = new DocumentEngine();
+                engine.insert(0, text);
+                engine.save(file, charset);
+                assertSame(codec, Codecs.detect(file), "файл сжат выбранным по имени кодеком");
+                assertTrue(Files.size(file) < text.getBytes(charset).length / 2, "файл действительно сжат");
+                try (InputStream in = codec.decompress(Files.newInputStream(file))) {
+                    assertArrayEquals(text.getBytes(charset), in.readAllBytes());
+                }
+
+                DocumentEngine.Opened opened = DocumentEngine.read(file, charset);
+                assertNotNull(opened.codec);
+                assertEquals(text, opened.document.getText(0, opened.document.getLength()));
+                assertEquals(charset, opened.document.getCharset());
+                assertEquals("\r\n", opened.document.getLineSeparator());
+                assertEquals(text.length(), opened.codec.getChars());
+            }
+        }
+    }
+
+    // Файл без расширения сжатого формата сохраняется в формате, в котором он уже лежит на диске
+    @Test
+    void resaveKeepsFormatOfExistingFile() throws Exception {
+        Codec codec = Codecs.all().get(0);
+        Path compressed = directory.resolve("text" + extension(codec));
+        DocumentEngine engine = new DocumentEngine();
+        engine.insert(0, randomText(new Random(2), 10_000));
+        engine.save(compressed, StandardCharsets.UTF_8);
+        Path file = Files.move(compressed, directory.resolve("text.data"));
+
+        DocumentEngine reopened = DocumentEngine.open(file, null);  // Кодировка определяется по началу текста
+        reopened.insert(0, "начало\r\n");
+        String expected = reopened.snapshot().toString();
+        reopened.save(file, reopened.getDocument().getCharset());
+        assertSame(codec, Codecs.detect(file));
+        DocumentEngine.Opened opened = DocumentEngine.read(file, null);
+        assertEquals(expected, opened.document.getText(0, opened.document.getLength()));
+        assertEquals(StandardCharsets.UTF_8, opened.document.getCharset());
+    }
+
+    private static String extension(Codec codec) {
+        for (String extension : new String[]{".gz", ".zz"}) {
+            if (codec.matchesName("file" + extension)) {
+                return extension;
+            }
+        }
+        throw new IllegalArgumentException("Нет расширения для кодека " + codec.getName());
+    }
+
+    private static String randomText(Random random, int chars) {
+        StringBuilder text = new StringBuilder(chars + 8);
+        while (text.length() < chars) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,138 @@
+package diff;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Поиск середины пути и деление по пределу длины пути: неизменённые строки обеих сторон всегда совпадают по порядку,
+// а без срабатывания предела число изменённых строк минимально (сверяется с LCS динамическим программированием)
+class MyersTest {
+
+    @Test
+    void findsShortestEditScript() {
+        Random random = new Random(1);
+        for (int round = 0; round < 3000; round++) {
+            int alphabet = 1 + random.nextInt(6);
+            int[] x = randomLines(random, random.nextInt(60), alphabet);
+            int[] y = random.nextInt(3) == 0 ? edited(random, x, alphabet) : randomLines(random, random.nextInt(60), alphabet);
+            boolean[][] changed = run(x, y, Integer.MAX_VALUE);
+            assertCommonSubsequence(x, y, changed);
+            assertEquals(x.length + y.length - 2 * lcs(x, y), count(changed[0]) + count(changed[1]),
+                    "без предела путь кратчайший");
+        }
+    }
+
+    // Маленький предел заставляет делить участки по самой дальней точке прямого поиска: ответ остаётся верным
+    @Test
+    void staysValidWhenCostLimitSplits() {
+        Random random = new Random(2);
+        for (int round = 0; round < 3000; round++) {
+            int alphabet = 1 + random.nextInt(8);
+            int[] x = randomLines(random, random.nextInt(200), alphabet);
+            int[] y = random.nextBoolean() ? edited(random, x, alphabet) : randomLines(random, random.nextInt(200), alphabet);
+            boolean[][] changed = run(x, y, 1 + random.nextInt(6));
+            assertCommonSubsequence(x, y, changed);
+        }
+    }
+
+    // Участки больше PARALLEL_LINES сравниваются параллельно; правки в разных частях не теряются
+    @Test
+    void largeInputsSplitInParallel() {
+        Random random = new Random(3);
+        int[] x = randomLines(random, 50_000, 1000);
+        int[] y = x.clone();
+        int edits = 0;
+        for (int i = 0; i < y.length; i += 1 + random.nextInt(500)) {
+            y[i] = -1 - i;  // Строка, которой нет в x
+            edits++;
+        }
+        boolean[][] changed = run(x, y, Myers.costLimit(x.length, y.length));
+        assertCommonSubsequence(x, y, changed);
+        assertEquals(edits, count(changed[0]));
+        assertEquals(edits, count(changed[1]));
+
+        changed = run(x, randomLines(random, 40_000, 50), 64);  // Почти без общего: путь далеко за пределом
+        assertTrue(count(changed[0]) <= x.length);
+    }
+
+    private static boolean[][] run(int[] x, int[] y, int costLimit) {
+        boolean[] changedX = new boolean[x.length];
+        boolean[] changedY = new boolean[y.length];
+        ForkJoinPool.commonPool().invoke(new Myers(x, y, changedX, changedY, costLimit, 0, x.length, 0, y.length));
+        return new boolean[][]{changedX, changedY};
+    }
+
+    // Неизменённые строки x и y - одна и та же последовательность
+    private static void assertCommonSubsequence(int[] x, int[] y, boolean[][] changed) {
+        int i = 0;
+        int j = 0;
+        while (true) {
+            while (i < x.length && changed[0][i]) {
+                i++;
+            }
+            while (j < y.length && changed[1][j]) {
+                j++;
+            }
+            if (i == x.length || j == y.length) {
+                break;
+            }
+            assertEquals(x[i], y[j], "строка " + i + " первой стороны и " + j + " второй");
+            i++;
+            j++;
+        }
+        assertEquals(x.length, i, "в первой стороне остались неизменённые строки без пары");
+        assertEquals(y.length, j, "во второй стороне остались неизменённые строки без пары");
+    }
+
+    private static int lcs(int[] x, int[] y) {
+        int[] row = new int[y.length + 1];
+        for (int i = x.length - 1; i >= 0; i--) {
+            int diagonal = 0;
+            for (int j = y.length - 1; j >= 0; j--) {
+                int below = row[j];
+                row[j] = x[i] == y[j] ? diagonal + 1 : Math.max(row[j], row[j + 1]);
+                diagonal = below;
+            }
+        }
+        return row[0];
+    }
+
+    private static int[] randomLines(Random random, int count, int alphabet) {
+        int[] lines = new int[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = random.nextInt(alphabet);
+        }
+        return lines;
+    }
+
+    // Копия с несколькими вставками, удалениями и заменами строк
+    private static int[] edited(Random random, int[] x, int alphabet) {
+        int[] y = new int[x.length * 2 + 8];
+        int size = 0;
+        for (int i = 0; i <= x.length; i++) {
+            if (random.nextInt(8) == 0) {
+                y[size++] = random.nextInt(alphabet + 2);
+            }
+            if (i < x.length && random.nextInt(8) != 0) {
+                y[size++] = x[i];
+            }
+        }
+        int[] result = new int[size];
+        System.arraycopy(y, 0, result, 0, size);
+        return result;
+    }
+
+    private static int count(boolean[] changed) {
+        int count = 0;
+        for (boolean line : changed) {
+            if (line) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
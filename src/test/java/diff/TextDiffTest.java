@@ -0,0 +1,151 @@
+package diff;
+
+import document.PagedDocument;
+import document.TextSnapshot;
+import engine.DocumentEngine;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Разница, применённая к первому тексту, даёт второй: целиком, по участкам в любом порядке и в обратную сторону.
+// Применение через DocumentEngine отменяется и повторяется одной записью истории.
+class TextDiffTest {
+
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    @Test
+    void patchTurnsFirstTextIntoSecond() throws Exception {
+        Random random = new Random(1);
+        for (int round = 0; round < 2000; round++) {
+            String a = randomText(random, random.nextInt(40), 1 + random.nextInt(6));
+            String b = random.nextInt(3) == 0 ? edited(random, a) : randomText(random, random.nextInt(40), 1 + random.nextInt(6));
+            DiffResult diff = TextDiff.diff(snapshot(a), snapshot(b), POOL);
+            assertEquals(b, patch(a, diff), () -> "a=" + a + " b=" + b);
+            assertEquals(a, patch(b, diff.reversed()));
+            assertEquals(a.equals(b), diff.isEmpty());
+        }
+    }
+
+    // Принятые по одному участки сдвигают оставшиеся (DiffResult.applied), и в итоге документ совпадает со вторым текстом
+    @Test
+    void hunksApplyOneByOneInAnyOrder() throws Exception {
+        Random random = new Random(2);
+        for (int round = 0; round < 500; round++) {
+            String a = randomText(random, random.nextInt(60), 4);
+            String b = edited(random, a);
+            DocumentEngine engine = engine(a);
+            DiffResult rest = TextDiff.diff(engine.snapshot(), snapshot(b), POOL);
+            while (!rest.isEmpty()) {
+                int index = random.nextInt(rest.getHunks().size());
+                TextSnapshot applied = engine.apply(rest.only(rest.getHunks().get(index)));
+                assertNotNull(applied);
+                rest = rest.applied(index, applied);
+            }
+            assertEquals(b, engine.snapshot().toString());
+        }
+    }
+
+    @Test
+    void appliedDiffUndoesAndRedoesAsOneEdit() throws Exception {
+        Random random = new Random(3);
+        for (int round = 0; round < 300; round++) {
+            String a = randomText(random, random.nextInt(80), 5);
+            String b = edited(random, a);
+            DocumentEngine engine = engine(a);
+            DiffResult diff = TextDiff.diff(engine.snapshot(), snapshot(b), POOL);
+            assertNotNull(engine.apply(diff));
+            assertEquals(b, engine.snapshot().toString());
+            if (diff.isEmpty()) {
+                continue;
+            }
+            assertTrue(engine.history.undo());
+            assertEquals(a, engine.snapshot().toString());
+            assertTrue(engine.history.redo());
+            assertEquals(b, engine.snapshot().toString());
+        }
+    }
+
+    // Тексты, различающиеся сильнее предела длины пути (Myers.costLimit): участки делятся не в середине пути,
+    // разница может быть не самой короткой, но остаётся верной
+    @Test
+    void patchStaysExactBeyondCostLimit() throws Exception {
+        Random random = new Random(4);
+        String a = randomText(random, 30_000, 40);
+        String b = randomText(random, 30_000, 40);
+        DiffResult diff = TextDiff.diff(snapshot(a), snapshot(b), POOL);
+        assertEquals(b, patch(a, diff));
+        assertEquals(a, patch(b, diff.reversed()));
+    }
+
+    // Строки с \r\n и последняя строка без перевода строки
+    @Test
+    void keepsLineSeparatorsAndLastLine() throws Exception {
+        String a = "one\r\ntwo\r\nmid\r\nthree";
+        String b = "one\r\n2\r\nmid\r\nthree\n";
+        DiffResult diff = TextDiff.diff(snapshot(a), snapshot(b), POOL);
+        assertEquals(b, patch(a, diff));
+        assertEquals(2, diff.getHunks().size());
+    }
+
+    // Заменяет участки с конца, чтобы смещения остальных не сдвигались
+    private static String patch(String text, DiffResult diff) {
+        StringBuilder result = new StringBuilder(text);
+        String second = diff.getB().toString();
+        List<Hunk> hunks = diff.getHunks();
+        for (int i = hunks.size() - 1; i >= 0; i--) {
+            Hunk hunk = hunks.get(i);
+            if (i > 0) {
+                Hunk previous = hunks.get(i - 1);
+                assertTrue(previous.getOffsetA() + previous.getLengthA() <= hunk.getOffsetA(), "участки по порядку и не пересекаются");
+            }
+            result.replace(hunk.getOffsetA(), hunk.getOffsetA() + hunk.getLengthA(),
+                    second.substring(hunk.getOffsetB(), hunk.getOffsetB() + hunk.getLengthB()));
+        }
+        return result.toString();
+    }
+
+    private static TextSnapshot snapshot(String text) throws BadLocationException {
+        PagedDocument document = new PagedDocument();
+        document.insertString(0, text, null);
+        return document.snapshot();
+    }
+
+    private static DocumentEngine engine(String text) throws Exception {
+        DocumentEngine engine = new DocumentEngine();
+        engine.insert(0, text);
+        engine.history.clear();  // Исходный текст не отменяется
+        return engine;
+    }
+
+    private static String randomText(Random random, int lines, int alphabet) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("line ").append(random.nextInt(alphabet)).append(random.nextInt(6) == 0 ? "\r\n" : "\n");
+        }
+        if (text.length() > 0 && random.nextBoolean()) {
+            text.setLength(text.length() - 1);  // Последняя строка без перевода строки
+        }
+        return text.toString();
+    }
+
+    // Копия с несколькими вставленными, удалёнными и заменёнными строками
+    private static String edited(Random random, String text) {
+        StringBuilder result = new StringBuilder();
+        for (String line : text.split("(?<=\n)")) {
+            if (random.nextInt(6) == 0) {
+                result.append("new ").append(random.nextInt(100)).append('\n');
+            }
+            if (random.nextInt(6) != 0) {
+                result.append(line);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package document;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Индекс строк после случайных вставок и удалений совпадает с разбором текста по '\n':
+// число строк, начало и конец каждой строки, строка по смещению. Правки делят и сливают блоки,
+// длинные строки переводят блок на четырёхбайтные длины.
+class LineIndexTest {
+
+    @Test
+    void randomEditsMatchText() {
+        Random random = new Random(1);
+        for (int round = 0; round < 20; round++) {
+            LineIndex index = new LineIndex();
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 300; i++) {
+                int length = text.length();
+                if (length > 0 && random.nextInt(3) == 0) {
+                    int offset = random.nextInt(length);
+                    int count = Math.min(length - offset, 1 + random.nextInt(random.nextInt(10) == 0 ? 20_000 : 50));
+                    index.remove(offset, count);
+                    text.delete(offset, offset + count);
+                } else {
+                    int offset = random.nextInt(length + 1);
+                    char[] inserted = randomText(random).toCharArray();
+                    index.insert(offset, inserted, 0, inserted.length);
+                    text.insert(offset, inserted);
+                }
+                if (i % 30 == 0) {
+                    check(index, text.toString());
+                }
+            }
+            check(index, text.toString());
+        }
+    }
+
+    // Больше строк, чем помещается в один блок после перестройки, и строка длиннее Character.MAX_VALUE
+    @Test
+    void largeInsertSplitsBlocks() {
+        LineIndex index = new LineIndex();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10 * LineIndex.BLOCK_LINES; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        text.insert(text.length() / 2, "x".repeat(Character.MAX_VALUE + 10));
+        char[] chars = text.toString().toCharArray();
+        index.insert(0, chars, 0, chars.length);
+        assertTrue(index.getBlockCount() > 1);
+        check(index, text.toString());
+
+        int middle = text.indexOf("\n", text.length() / 4);
+        int count = Math.min(text.length() / 3, text.length() - middle);
+        index.remove(middle, count);
+        text.delete(middle, middle + count);
+        check(index, text.toString());
+    }
+
+    private static void check(LineIndex index, String text) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            starts.add(i + 1);
+        }
+        assertEquals(text.length(), index.getLength());
+        assertEquals(starts.size(), index.getLineCount());
+        for (int line = 0; line < starts.size(); line++) {
+            int start = starts.get(line);
+            int end = line + 1 < starts.size() ? starts.get(line + 1) - 1 : text.length();
+            assertEquals(start, index.getLineStart(line), "начало строки " + line);
+            assertEquals(end, index.getLineEnd(line), "конец строки " + line);
+            assertEquals(line, index.getLineOfOffset(start));
+            assertEquals(line, index.getLineOfOffset(end));
+        }
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int pieces = 1 + random.nextInt(random.nextInt(20) == 0 ? 3000 : 20); pieces > 0; pieces--) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    text.append('\n');
+                    break;
+                case 1:
+                    text.append("\r\n");
+                    break;
+                default:
+                    text.append("word ".substring(random.nextInt(5)));
+                    break;
+            }
+        }
+        return text.toString();
+    }
+}
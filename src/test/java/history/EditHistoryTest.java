@@ -0,0 +1,200 @@
+package history;
+
+import document.PagedDocument;
+import engine.DocumentEngine;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Случайные правки: отмена по шагам возвращает каждое прежнее состояние, повтор - каждое следующее.
+// Загрузка и обрезка документа (insertSource/removeSource) сдвигают записанные правки или очищают историю.
+class EditHistoryTest {
+
+    private static final String[] PIECES = {"a", "bc", "\n", "жж", "😀", "word "};
+
+    // Каждая замена - отдельная запись (группа), поэтому каждое состояние достижимо отменой
+    @Test
+    void undoAndRedoWalkThroughEveryState() throws Exception {
+        Random random = new Random(1);
+        for (int round = 0; round < 50; round++) {
+            DocumentEngine engine = new DocumentEngine();
+            List<String> states = new ArrayList<>();
+            states.add(engine.snapshot().toString());
+            for (int i = 0; i < 100; i++) {
+                int length = engine.getLength();
+                int offset = random.nextInt(length + 1);
+                int removed = random.nextInt(Math.min(length - offset, 5) + 1);
+                String inserted = random.nextInt(4) == 0 ? "" : piece(random);
+                if (engine.snapshot().toString().substring(offset, offset + removed).equals(inserted)) {
+                    continue;  // Замена на тот же текст - запись без нового состояния
+                }
+                engine.replace(offset, removed, inserted);
+                states.add(engine.snapshot().toString());
+            }
+            EditHistory history = engine.history;
+            for (int i = states.size() - 2; i >= 0; i--) {
+                assertTrue(history.undo());
+                assertEquals(states.get(i), engine.snapshot().toString());
+            }
+            assertFalse(history.undo());
+            for (int i = 1; i < states.size(); i++) {
+                assertTrue(history.redo());
+                assertEquals(states.get(i), engine.snapshot().toString());
+            }
+            assertFalse(history.redo());
+        }
+    }
+
+    // Набор подряд склеивается в записи; отмена всех записей возвращает исходный текст, повтор - последний
+    @Test
+    void mergedTypingRoundTrips() throws Exception {
+        Random random = new Random(2);
+        for (int round = 0; round < 50; round++) {
+            DocumentEngine engine = new DocumentEngine();
+            engine.insert(0, "start\n");
+            engine.history.clear();
+            String original = engine.snapshot().toString();
+            int caret = engine.getLength();
+            for (int i = 0; i < 300; i++) {
+                int action = random.nextInt(10);
+                if (action < 6) {  // Набор у курсора
+                    String text = piece(random);
+                    engine.insert(caret, text);
+                    caret += text.length();
+                } else if (action < 8 && caret > 0) {  // Backspace
+                    engine.remove(caret - 1, 1);
+                    caret--;
+                } else {  // Курсор в другое место
+                    caret = random.nextInt(engine.getLength() + 1);
+                }
+            }
+            String last = engine.snapshot().toString();
+            EditHistory history = engine.history;
+            while (history.undo()) {
+                // До начала истории
+            }
+            assertEquals(original, engine.snapshot().toString());
+            while (history.redo()) {
+                // До последней правки
+            }
+            assertEquals(last, engine.snapshot().toString());
+        }
+    }
+
+    @Test
+    void newEditDropsRedo() throws Exception {
+        DocumentEngine engine = new DocumentEngine();
+        engine.replace(0, 0, "one");
+        engine.replace(3, 0, " two");
+        assertTrue(engine.history.undo());
+        assertTrue(engine.history.canRedo());
+        engine.replace(3, 0, " three");
+        assertFalse(engine.history.canRedo());
+        assertTrue(engine.history.undo());
+        assertEquals("one", engine.snapshot().toString());
+    }
+
+    // Старые записи вытесняются по объёму, последняя остаётся всегда
+    @Test
+    void staysWithinBudget() throws Exception {
+        PagedDocument document = new PagedDocument();
+        EditHistory history = new EditHistory(4096);
+        history.attach(document);
+        for (int i = 0; i < 200; i++) {
+            history.beginGroup();
+            document.insertString(document.getLength(), "line " + i + "\n", null);
+            history.endGroup();
+            assertTrue(history.getBytes() <= 4096 || history.getUndoCount() == 1);
+        }
+        assertTrue(history.getUndoCount() < 200);
+        while (history.undo()) {
+            // Отменяется только то, что осталось в истории
+        }
+        assertTrue(document.getText(0, document.getLength()).startsWith("line 0\n"));
+    }
+
+    // Текст, дописанный загрузкой или слежением до или после правок, сдвигает их; отмена его не трогает
+    @Test
+    void sourceInsertShiftsRecordedEdits() throws Exception {
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            PagedDocument document = new PagedDocument();
+            EditHistory history = new EditHistory(EditHistory.DEFAULT_BUDGET_BYTES);
+            history.attach(document);
+            insertSource(document, 0, "head\n");
+            for (int i = 0; i < 20; i++) {
+                history.beginGroup();
+                int length = document.getLength();
+                if (length > 0 && random.nextBoolean()) {
+                    int offset = random.nextInt(length);
+                    document.remove(offset, Math.min(length - offset, 1 + random.nextInt(3)));
+                } else {
+                    document.insertString(random.nextInt(length + 1), piece(random), null);
+                }
+                history.endGroup();
+            }
+            String edited = text(document);
+            String appended = "tail " + round + "\n";
+            insertSource(document, document.getLength(), appended);  // Как FileFollower: в конец документа
+            boolean front = random.nextBoolean();
+            if (front) {
+                insertSource(document, 0, "front\n");
+            }
+            assertTrue(history.canUndo());
+            while (history.undo()) {
+                // До начала истории
+            }
+            String undone = text(document);
+            assertTrue(undone.endsWith(appended), undone);
+            assertEquals(front, undone.startsWith("front\n"));
+            while (history.redo()) {
+                // До последней правки
+            }
+            assertEquals((front ? "front\n" : "") + edited + appended, text(document));
+        }
+    }
+
+    // Обрезка начала документа (слежение с пределом строк) до правок сдвигает их, а по правкам - очищает историю
+    @Test
+    void sourceRemoveShiftsOrClearsHistory() throws Exception {
+        PagedDocument document = new PagedDocument();
+        EditHistory history = new EditHistory(EditHistory.DEFAULT_BUDGET_BYTES);
+        history.attach(document);
+        insertSource(document, 0, "0\n1\n2\n3\n");
+        history.beginGroup();
+        document.insertString(6, "edit ", null);
+        history.endGroup();
+        document.removeSource(0, 4);  // Строки 0 и 1 до правки
+        assertEquals("2\nedit 3\n", text(document));
+        assertTrue(history.undo());
+        assertEquals("2\n3\n", text(document));
+        assertTrue(history.redo());
+        assertEquals("2\nedit 3\n", text(document));
+
+        document.removeSource(0, 4);  // Задевает правку: отменять её уже не на чем
+        assertFalse(history.canUndo());
+        assertFalse(history.canRedo());
+        assertEquals("it 3\n", text(document));
+    }
+
+    private static void insertSource(PagedDocument document, int offset, String text) throws BadLocationException {
+        PagedDocument source = new PagedDocument();
+        source.insertString(0, text, null);
+        document.insertSource(offset, source.snapshot(), 0, text.length());
+    }
+
+    private static String text(PagedDocument document) throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+
+    private static String piece(Random random) {
+        return PIECES[random.nextInt(PIECES.length)];
+    }
+}
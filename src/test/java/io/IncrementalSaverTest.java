@@ -0,0 +1,125 @@
+package io;
+
+import engine.DocumentEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Сохранение через DocumentEngine: на месте (переписываются изменённые места и, если сдвинулись байты, хвост)
+// или целиком, если на месте нельзя. В обоих случаях файл совпадает с текстом, а документ, читающий тот же файл
+// через отображение, не меняется от записи в файл.
+class IncrementalSaverTest {
+
+    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+    private static final String[] PIECES = {"x", "ё😁", "\n", "жж"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void randomEditsSaveExactBytes() throws Exception {
+        Random random = new Random(1);
+        String initial = initialText(200_000);
+        Path file = directory.resolve("random.txt");
+        Files.write(file, initial.getBytes(UTF_8));
+        DocumentEngine engine = DocumentEngine.open(file, UTF_8);
+        StringBuilder expected = new StringBuilder(initial);
+        int inPlace = 0;
+        for (int round = 0; round < 150; round++) {
+            for (int edits = 1 + random.nextInt(4); edits > 0; edits--) {
+                edit(engine, expected, random);
+            }
+            long sizeBefore = Files.size(file);
+            SaveResult result = engine.save(file, UTF_8);
+            byte[] want = expected.toString().getBytes(UTF_8);
+            assertArrayEquals(want, Files.readAllBytes(file), "раунд " + round);
+            assertEquals(expected.toString(), engine.snapshot().toString(), "документ после записи в отображённый файл");
+            if (result.getBytes() < Math.min(sizeBefore, want.length)) {
+                inPlace++;
+            }
+        }
+        assertTrue(inPlace > 50, "большая часть сохранений идёт на месте: " + inPlace);
+    }
+
+    // Замена символа тем же числом байт переписывает только его
+    @Test
+    void sameLengthEditWritesOnlyPatch() throws Exception {
+        String initial = initialText(1_000_000);
+        Path file = directory.resolve("patch.txt");
+        Files.write(file, initial.getBytes(UTF_8));
+        DocumentEngine engine = DocumentEngine.open(file, UTF_8);
+        int middle = initial.indexOf('a', initial.length() / 2);
+        engine.replace(middle, 1, "b");
+        SaveResult result = engine.save(file, UTF_8);
+        assertEquals(1, result.getBytes());
+        String expected = initial.substring(0, middle) + "b" + initial.substring(middle + 1);
+        assertArrayEquals(expected.getBytes(UTF_8), Files.readAllBytes(file));
+    }
+
+    // Файл изменили со стороны после открытия: сохранение на месте испортило бы его, файл пишется целиком
+    @Test
+    void externalChangeFallsBackToFullSave() throws Exception {
+        String initial = initialText(50_000);
+        Path file = directory.resolve("external.txt");
+        Files.write(file, initial.getBytes(UTF_8));
+        DocumentEngine engine = DocumentEngine.open(file, UTF_8);
+        String document = engine.snapshot().toString();
+        engine.replace(10, 1, "b");
+        byte[] other = initial.replace('a', 'c').getBytes(UTF_8);  // Тот же размер
+        Files.write(file.resolveSibling("other.txt"), other);
+        Files.move(file.resolveSibling("other.txt"), file, StandardCopyOption.REPLACE_EXISTING);  // Как сохраняют другие редакторы
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        SaveResult result = engine.save(file, UTF_8);
+        String expected = document.substring(0, 10) + "b" + document.substring(11);
+        assertArrayEquals(expected.getBytes(UTF_8), Files.readAllBytes(file));
+        assertEquals(Files.size(file), result.getBytes());
+    }
+
+    // Правка: замена тем же числом символов, вставка или удаление; часть правок - у конца файла
+    private static void edit(DocumentEngine engine, StringBuilder expected, Random random) throws Exception {
+        int length = expected.length();
+        int offset = random.nextInt(4) == 0 ? length - random.nextInt(Math.min(length, 100)) : random.nextInt(length);
+        if (offset > 0 && offset < length && Character.isLowSurrogate(expected.charAt(offset))) {
+            offset--;  // Не разрезать суррогатную пару
+        }
+        int end = offset;
+        for (int points = random.nextInt(4); points > 0 && end < length; points--) {
+            end += Character.charCount(expected.codePointAt(end));
+        }
+        int count = end - offset;
+        String inserted;
+        switch (random.nextInt(3)) {
+            case 0:
+                inserted = "b".repeat(count);  // Тот же размер в символах, а в байтах - если заменялась латиница
+                break;
+            case 1:
+                inserted = PIECES[random.nextInt(PIECES.length)];
+                count = 0;
+                break;
+            default:
+                inserted = "";
+                break;
+        }
+        engine.replace(offset, count, inserted);
+        expected.replace(offset, offset + count, inserted);
+    }
+
+    private static String initialText(int chars) {
+        StringBuilder text = new StringBuilder(chars);
+        for (int i = 0; text.length() < chars; i++) {
+            text.append(i % 50 == 0 ? "\n" : i % 7 == 0 ? "ж" : i % 997 == 0 ? "😀" : "a");
+        }
+        return text.toString();
+    }
+}
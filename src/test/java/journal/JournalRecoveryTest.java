@@ -0,0 +1,143 @@
+package journal;
+
+import document.PagedDocument;
+import engine.DocumentEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Журнал, оставшийся после сбоя: восстанавливается текст после последней целой правки, оборванный или испорченный
+// хвост отбрасывается. Контрольная точка возвращает и кодировку с переводом строки документа.
+class JournalRecoveryTest {
+
+    private static final String[] PIECES = {"a", "bc", "\n", "жж", "😀", "word "};
+
+    @TempDir
+    Path directory;
+
+    // Журнал обрезан на каждой длине (как при сбое посреди записи): восстанавливается состояние после целых правок
+    @Test
+    void truncatedTailRecoversLastWholeEdit() throws Exception {
+        Random random = new Random(1);
+        List<String> states = writeJournal("cut", random, 200);
+        byte[] journal = Files.readAllBytes(EditJournal.journalPath(directory, "cut"));
+        assertEquals(states.get(states.size() - 1), text(recover(journal, journal.length).getDocument()));
+        int previous = Integer.MAX_VALUE;
+        for (int length = journal.length; length >= 0; length -= 1 + random.nextInt(40)) {
+            JournalRecovery.Recovered recovered = recover(journal, length);
+            int edits = recovered == null ? 0 : recovered.getEdits();
+            assertTrue(edits <= previous, "короче журнал - не больше правок");
+            previous = edits;
+            if (recovered != null) {
+                assertEquals(states.get(edits), text(recovered.getDocument()), "длина журнала " + length);
+            }
+        }
+    }
+
+    // Испорченный байт в записи: восстановление останавливается перед ней, более поздние правки не применяются
+    @Test
+    void corruptedRecordStopsRecovery() throws Exception {
+        Random random = new Random(2);
+        List<String> states = writeJournal("corrupt", random, 100);
+        byte[] journal = Files.readAllBytes(EditJournal.journalPath(directory, "corrupt"));
+        for (int round = 0; round < 50; round++) {
+            byte[] damaged = journal.clone();
+            int at = EditJournal.HEADER_BYTES + random.nextInt(journal.length - EditJournal.HEADER_BYTES);
+            damaged[at] ^= (byte) (1 + random.nextInt(255));
+            JournalRecovery.Recovered recovered = recover(damaged, damaged.length);
+            if (recovered != null) {
+                assertTrue(recovered.getEdits() < states.size() - 1);
+                assertEquals(states.get(recovered.getEdits()), text(recovered.getDocument()));
+            }
+        }
+    }
+
+    // Сжатие в контрольную точку: файл точки в UTF-8, но документ восстанавливается в своей кодировке и с \r\n
+    @Test
+    void checkpointKeepsCharsetAndLineSeparator() throws Exception {
+        Charset charset = Charset.forName("windows-1251");
+        PagedDocument document = new PagedDocument();
+        document.setCharset(charset);
+        document.setLineSeparator("\r\n");
+        DocumentEngine engine = new DocumentEngine(document);
+        EditJournal journal = EditJournal.create(directory, "checkpoint", EditJournal.lock(directory, "checkpoint"));
+        engine.attachJournal(journal);
+        engine.insert(0, "строка\r\n");
+        engine.checkpointJournal();
+        engine.insert(engine.getLength(), "ещё\r\n");
+        String expected = text(document);
+        journal.close();  // Как после сбоя: журнал не удалён
+
+        assertTrue(Files.list(directory).anyMatch(file -> file.toString().endsWith(".checkpoint")));
+        JournalRecovery.Recovered recovered = JournalRecovery.recover(directory, "checkpoint");
+        assertEquals(expected, text(recovered.getDocument()));
+        assertEquals(charset, recovered.getDocument().getCharset());
+        assertEquals("\r\n", recovered.getDocument().getLineSeparator());
+    }
+
+    // Файл, с которого начинается журнал, изменился: документа нет, а сообщение говорит, сколько правок отброшено
+    @Test
+    void changedFileIsReportedNotRestored() throws Exception {
+        Path file = directory.resolve("file.txt");
+        Files.write(file, "text\n".getBytes(StandardCharsets.UTF_8));
+        DocumentEngine engine = DocumentEngine.open(file, StandardCharsets.UTF_8);
+        EditJournal journal = EditJournal.create(directory, "file", EditJournal.lock(directory, "file"));
+        engine.attachJournal(journal);
+        engine.save(file, StandardCharsets.UTF_8);  // Журнал начинается с сохранённого файла
+        engine.insert(0, "a");
+        engine.insert(0, "b");
+        journal.close();
+        Files.write(file, "other text\n".getBytes(StandardCharsets.UTF_8));
+
+        JournalRecovery.Recovered recovered = JournalRecovery.recover(directory, "file");
+        assertNotNull(recovered);
+        assertNull(recovered.getDocument());
+        assertTrue(recovered.getMessage().endsWith("правок отброшено: 2"), recovered.getMessage());
+    }
+
+    // Пишет журнал случайных вставок и удалений (по одной записи на правку) и закрывает его без удаления.
+    // Возвращает текст после каждого числа правок, начиная с пустого документа.
+    private List<String> writeJournal(String name, Random random, int edits) throws Exception {
+        DocumentEngine engine = new DocumentEngine();
+        EditJournal journal = EditJournal.create(directory, name, EditJournal.lock(directory, name));
+        engine.attachJournal(journal);
+        List<String> states = new ArrayList<>();
+        states.add("");
+        for (int i = 0; i < edits; i++) {
+            int length = engine.getLength();
+            if (length > 0 && random.nextInt(3) == 0) {
+                int offset = random.nextInt(length);
+                engine.remove(offset, Math.min(length - offset, 1 + random.nextInt(4)));
+            } else {
+                engine.insert(random.nextInt(length + 1), PIECES[random.nextInt(PIECES.length)]);
+            }
+            states.add(engine.snapshot().toString());
+        }
+        journal.close();
+        return states;
+    }
+
+    // Восстанавливает копию журнала из первых length байт
+    private JournalRecovery.Recovered recover(byte[] journal, int length) throws Exception {
+        Path copy = Files.createTempDirectory(directory, "copy");
+        Files.write(EditJournal.journalPath(copy, "copy"), Arrays.copyOf(journal, length));
+        return JournalRecovery.recover(copy, "copy");
+    }
+
+    private static String text(PagedDocument document) throws Exception {
+        return document.getText(0, document.getLength());
+    }
+}
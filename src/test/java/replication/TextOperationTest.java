@@ -0,0 +1,158 @@
+package replication;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Случайные операции над случайными текстами: transform сводит параллельные правки к одному тексту,
+// compose равна последовательному применению, encode/decode ничего не теряет
+class TextOperationTest {
+
+    private static final int ROUNDS = 5000;
+    private static final String[] PIECES = {"a", "b", "\n", "ж", "😀", "xyz"};  // В том числе суррогатная пара
+
+    @Test
+    void transformConverges() throws Exception {
+        Random random = new Random(1);
+        for (int round = 0; round < ROUNDS; round++) {
+            String text = randomText(random, random.nextInt(20));
+            TextOperation a = randomOperation(random, text.length());
+            TextOperation b = randomOperation(random, text.length());
+            TextOperation[] primes = TextOperation.transform(a, b);
+            String left = apply(primes[1], apply(a, text));  // a, затем b'
+            String right = apply(primes[0], apply(b, text));  // b, затем a'
+            assertEquals(left, right, () -> "a=" + a + " b=" + b + " text=" + text);
+            assertEquals(a.getTargetLength(), primes[1].getBaseLength());
+            assertEquals(b.getTargetLength(), primes[0].getBaseLength());
+        }
+    }
+
+    // При вставке в одно место первой оказывается вставка операции a
+    @Test
+    void transformPutsFirstInsertFirst() throws Exception {
+        TextOperation a = TextOperation.insert(3, 1, "A");
+        TextOperation b = TextOperation.insert(3, 1, "B");
+        TextOperation[] primes = TextOperation.transform(a, b);
+        assertEquals("xAByz", apply(primes[1], apply(a, "xyz")));
+        assertEquals("xAByz", apply(primes[0], apply(b, "xyz")));
+    }
+
+    @Test
+    void composeMatchesSequentialApply() throws Exception {
+        Random random = new Random(2);
+        for (int round = 0; round < ROUNDS; round++) {
+            String text = randomText(random, random.nextInt(20));
+            TextOperation a = randomOperation(random, text.length());
+            String middle = apply(a, text);
+            TextOperation b = randomOperation(random, middle.length());
+            TextOperation composed = TextOperation.compose(a, b);
+            assertEquals(apply(b, middle), apply(composed, text), () -> "a=" + a + " b=" + b + " text=" + text);
+            assertEquals(a.getBaseLength(), composed.getBaseLength());
+            assertEquals(b.getTargetLength(), composed.getTargetLength());
+        }
+    }
+
+    // Сходимость сохраняется и для склеенных серий правок, как их отправляет клиент
+    @Test
+    void transformOfComposedOperationsConverges() throws Exception {
+        Random random = new Random(3);
+        for (int round = 0; round < ROUNDS / 5; round++) {
+            String text = randomText(random, random.nextInt(30));
+            TextOperation a = randomSeries(random, text.length());
+            TextOperation b = randomSeries(random, text.length());
+            TextOperation[] primes = TextOperation.transform(a, b);
+            assertEquals(apply(primes[1], apply(a, text)), apply(primes[0], apply(b, text)));
+        }
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() throws Exception {
+        Random random = new Random(4);
+        for (int round = 0; round < ROUNDS; round++) {
+            String text = randomText(random, random.nextInt(20));
+            TextOperation operation = randomOperation(random, text.length());
+            ByteBuffer buffer = ByteBuffer.allocate(operation.encodedSize());
+            operation.encode(buffer);
+            assertFalse(buffer.hasRemaining(), "encodedSize совпадает с записанным");
+            buffer.flip();
+            TextOperation decoded = TextOperation.decode(buffer);
+            assertFalse(buffer.hasRemaining());
+            assertEquals(operation.toString(), decoded.toString());
+            assertEquals(apply(operation, text), apply(decoded, text));
+        }
+    }
+
+    @Test
+    void rejectsOperationsOnDifferentLengths() {
+        assertThrows(IllegalArgumentException.class,
+                () -> TextOperation.transform(TextOperation.insert(2, 0, "a"), TextOperation.insert(3, 0, "b")));
+        assertThrows(IllegalArgumentException.class,
+                () -> TextOperation.compose(TextOperation.insert(2, 0, "a"), TextOperation.insert(2, 0, "b")));
+        assertTrue(new TextOperation().retain(5).isNoop());
+    }
+
+    // Операция над текстом длины length: случайные пропуски, удаления и вставки до конца текста
+    private static TextOperation randomOperation(Random random, int length) {
+        TextOperation operation = new TextOperation();
+        int left = length;
+        while (left > 0 || random.nextInt(3) == 0) {
+            int count = left == 0 ? 0 : 1 + random.nextInt(Math.min(left, 5));
+            switch (random.nextInt(3)) {
+                case 0:
+                    operation.retain(count);
+                    left -= count;
+                    break;
+                case 1:
+                    operation.delete(count);
+                    left -= count;
+                    break;
+                default:
+                    operation.insert(randomText(random, 1 + random.nextInt(3)));
+                    break;
+            }
+            if (left == 0 && random.nextBoolean()) {
+                break;
+            }
+        }
+        return operation;
+    }
+
+    // Несколько операций подряд, склеенные в одну
+    private static TextOperation randomSeries(Random random, int length) {
+        TextOperation series = randomOperation(random, length);
+        for (int i = random.nextInt(4); i > 0; i--) {
+            series = TextOperation.compose(series, randomOperation(random, series.getTargetLength()));
+        }
+        return series;
+    }
+
+    private static String randomText(Random random, int pieces) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+
+    private static String apply(TextOperation operation, String text) throws Exception {
+        assertEquals(text.length(), operation.getBaseLength(), () -> operation + " над текстом длины " + text.length());
+        StringBuilder result = new StringBuilder(text);
+        operation.apply(new TextOperation.Target() {
+            public void insert(int offset, String inserted) {
+                result.insert(offset, inserted);
+            }
+
+            public void remove(int offset, int count) {
+                result.delete(offset, offset + count);
+            }
+        });
+        assertEquals(operation.getTargetLength(), result.length());
+        return result.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package search;
+
+import document.PagedDocument;
+import document.TextSnapshot;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Параллельный поиск по участкам находит то же, что последовательный поиск java.util.regex по всему тексту:
+// те же непересекающиеся вхождения, в том числе на границах участков. Слушатель получает их по порядку.
+class DocumentSearchTest {
+
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+    private static final String[] PIECES = {"a", "b", "A", "ab", "aba", "ж", "Ж", "😀", "\n"};
+
+    @Test
+    void findAllMatchesSequentialSearch() throws Exception {
+        Random random = new Random(1);
+        String text = randomText(random, 3 * DocumentSearch.CHUNK_CHARS + 12345);
+        TextSnapshot snapshot = snapshot(text);
+        SearchQuery[] queries = {
+                SearchQuery.literal("aba", true),
+                SearchQuery.literal("aa", true),
+                SearchQuery.literal("abaab", true),
+                SearchQuery.literal("жa", false),
+                SearchQuery.literal("😀", true),
+                SearchQuery.regex("b(a|ж)+b", true),
+                SearchQuery.regex("a\\nb", false),
+        };
+        for (SearchQuery query : queries) {
+            List<Match> streamed = new ArrayList<>();
+            List<Match> found = DocumentSearch.findAll(snapshot, query, POOL, part -> {
+                synchronized (streamed) {
+                    streamed.addAll(part);
+                }
+            });
+            List<int[]> expected = sequential(text, query);
+            assertEquals(expected.size(), found.size(), query.toString());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i)[0], found.get(i).getStart(), query.toString());
+                assertEquals(expected.get(i)[1], found.get(i).getEnd(), query.toString());
+            }
+            assertEquals(found.size(), streamed.size());
+            for (int i = 0; i < found.size(); i++) {
+                assertEquals(found.get(i).getStart(), streamed.get(i).getStart(), "слушатель получает вхождения по порядку");
+            }
+        }
+    }
+
+    // Вхождение через границу участка и вхождение, которое из предыдущего участка заходит в следующий
+    @Test
+    void matchesAcrossChunkBoundary() throws Exception {
+        int boundary = DocumentSearch.CHUNK_CHARS;
+        StringBuilder text = new StringBuilder("x".repeat(2 * boundary));
+        text.replace(boundary - 2, boundary + 6, "aaaaaaaa");
+        SearchQuery query = SearchQuery.literal("aaa", true);
+        List<Match> found = DocumentSearch.findAll(snapshot(text.toString()), query, POOL, null);
+        List<int[]> expected = sequential(text.toString(), query);
+        assertEquals(expected.size(), found.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], found.get(i).getStart());
+        }
+    }
+
+    // Замена совпадает с Matcher.replaceAll, включая ссылки на группы
+    @Test
+    void replaceAllMatchesSequentialReplace() throws Exception {
+        Random random = new Random(2);
+        String text = randomText(random, 2 * DocumentSearch.CHUNK_CHARS + 777);
+        SearchQuery query = SearchQuery.regex("(a)b(ж?)", true);
+        Replacement replacement = DocumentSearch.replaceAll(snapshot(text), query, "[$2$1]", POOL, null);
+        String expected = Pattern.compile(query.getText()).matcher(text).replaceAll("[$2$1]");
+        String actual = text.substring(0, replacement.getStart()) + replacement.getInsertedText()
+                + text.substring(replacement.getStart() + replacement.getRemovedLength());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void findNextWrapsAround() throws Exception {
+        String text = "one two one";
+        TextSnapshot snapshot = snapshot(text);
+        SearchQuery query = SearchQuery.literal("ONE", false);
+        assertEquals(8, DocumentSearch.findNext(snapshot, query, 1).getStart());
+        assertEquals(0, DocumentSearch.findNext(snapshot, query, 9).getStart());
+        assertNull(DocumentSearch.findNext(snapshot, SearchQuery.literal("three", true), 0));
+    }
+
+    // Последовательный поиск слева направо по всему тексту: [начало, конец) каждого вхождения
+    private static List<int[]> sequential(String text, SearchQuery query) {
+        int flags = (query.isRegex() ? 0 : Pattern.LITERAL)
+                | (query.isMatchCase() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        Matcher matcher = Pattern.compile(query.getText(), flags).matcher(text);
+        List<int[]> matches = new ArrayList<>();
+        while (matcher.find()) {
+            matches.add(new int[]{matcher.start(), matcher.end()});
+        }
+        return matches;
+    }
+
+    private static TextSnapshot snapshot(String text) throws BadLocationException {
+        PagedDocument document = new PagedDocument();
+        document.insertString(0, text, null);
+        return document.snapshot();
+    }
+
+    private static String randomText(Random random, int chars) {
+        StringBuilder text = new StringBuilder(chars + 8);
+        while (text.length() < chars) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+}